@@ -2,6 +2,7 @@ plugins {
 	java
 	id("org.springframework.boot") version "3.4.3"
 	id("io.spring.dependency-management") version "1.1.7"
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "myavocat"
@@ -35,7 +36,6 @@ dependencies {
 
 	// Mail
 	implementation("org.springframework.boot:spring-boot-starter-mail")
-	implementation("com.sun.mail:javax.mail:1.6.2")
 	implementation("org.springframework:spring-context-support")
 
 	// PDF
@@ -59,6 +59,7 @@ dependencies {
 	annotationProcessor("org.projectlombok:lombok")
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 	testImplementation("org.springframework.security:spring-security-test")
+	testRuntimeOnly("com.h2database:h2")
 	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
@@ -66,3 +67,11 @@ dependencies {
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+// Benchmarks JMH (src/jmh) : ./gradlew jmh
+jmh {
+	warmupIterations.set(2)
+	iterations.set(5)
+	fork.set(1)
+	profilers.add("gc")
+}
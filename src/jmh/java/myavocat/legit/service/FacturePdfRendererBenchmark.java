@@ -0,0 +1,93 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.FacturePdfDTO;
+import myavocat.legit.model.ModePaiement;
+import myavocat.legit.model.StatutPaiement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latence et allocation par facture du rendu PDF.
+ *
+ * avant : rendu d'origine (FacturePdfRenduAvant), polices recréées par nom à chaque document,
+ *         PDF bufferisé en byte[] puis recopié dans la réponse
+ * apres : polices en cache, PDF écrit directement dans le flux de sortie
+ * apresCacheMiss : chemin d'un export absent du cache (FacturePdfCache) : PDF écrit dans le flux de sortie
+ *         et copié en même temps pour le cache
+ *
+ * Lancer avec : ./gradlew jmh (profiler gc activé : voir gc.alloc.rate.norm pour les octets alloués par facture)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FacturePdfRendererBenchmark {
+
+    private FacturePdfRenderer renderer;
+    private FacturePdfCache cache;
+    private FacturePdfDTO facture;
+
+    @Setup
+    public void setup() {
+        renderer = new FacturePdfRenderer();
+        cache = new FacturePdfCache(renderer, 64L * 1024 * 1024, "", 0);
+        facture = new FacturePdfDTO(UUID.randomUUID(), "AI-2026-042", LocalDateTime.now(), "DOS-2026-001",
+                "Martin", "Alice", "Honoraires de consultation et rédaction de conclusions",
+                new BigDecimal("1250.00"), true, new BigDecimal("1500.00"),
+                ModePaiement.VIREMENT, StatutPaiement.ATTENTE_REGLEMENT);
+    }
+
+    @Benchmark
+    public void avant(Blackhole blackhole) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FacturePdfRenduAvant.ecrire(facture, baos);
+        byte[] pdf = baos.toByteArray();
+        // Copie du byte[] dans le corps de la réponse
+        blackhole.consume(Arrays.copyOf(pdf, pdf.length));
+    }
+
+    @Benchmark
+    public void apres(Blackhole blackhole) {
+        CountingOutputStream out = new CountingOutputStream();
+        renderer.render(facture, out);
+        blackhole.consume(out.count);
+    }
+
+    @Benchmark
+    public void apresCacheMiss(Blackhole blackhole) {
+        cache.invalider(facture.getId());
+        CountingOutputStream out = new CountingOutputStream();
+        cache.renderEtMettreEnCache(facture, "\"bench\"", out);
+        blackhole.consume(out.count);
+    }
+
+    /**
+     * Flux de sortie qui ne conserve rien (équivalent d'une réponse HTTP déjà envoyée au client)
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package myavocat.legit.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type de la base et extensions PostgreSQL disponibles, déterminés une fois et partagés
+ * par les services qui ont une requête spécifique PostgreSQL et une variante portable (H2 en test).
+ */
+@Component
+public class BaseDeDonnees {
+
+    private static final Logger logger = LoggerFactory.getLogger(BaseDeDonnees.class);
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean postgres;
+    private final Map<String, Boolean> extensions = new ConcurrentHashMap<>();
+
+    public BaseDeDonnees(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgres = detecterPostgres(dataSource);
+    }
+
+    public boolean isPostgres() {
+        return postgres;
+    }
+
+    /**
+     * Verrou exclusif sur (espace, id) jusqu'à la fin de la transaction courante : verrou consultatif
+     * PostgreSQL, qui ne bloque aucune ligne. Sans effet sur les autres bases.
+     */
+    public void verrouillerJusquaFinTransaction(int espace, UUID id) {
+        if (!postgres) {
+            return;
+        }
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, ?)", rs -> null, espace, id.hashCode());
+    }
+
+    /**
+     * Vrai si l'extension est installée dans la base courante (toujours faux hors PostgreSQL).
+     * Le résultat est mémorisé ; voir oublierExtensions().
+     */
+    public boolean extensionInstallee(String nom) {
+        if (!postgres) {
+            return false;
+        }
+        return extensions.computeIfAbsent(nom, this::chercherExtension);
+    }
+
+    /**
+     * À appeler après avoir créé des extensions (PostgresSchemaInitializer)
+     */
+    public void oublierExtensions() {
+        extensions.clear();
+    }
+
+    private boolean chercherExtension(String nom) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM pg_extension WHERE extname = ?")) {
+            statement.setString(1, nom);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        } catch (Exception e) {
+            logger.warn("Impossible de vérifier l'extension {} : {}", nom, e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean detecterPostgres(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            return "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+        } catch (Exception e) {
+            logger.warn("Impossible de déterminer le type de base : {}", e.getMessage());
+            return false;
+        }
+    }
+}
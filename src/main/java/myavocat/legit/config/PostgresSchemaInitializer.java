@@ -0,0 +1,174 @@
+package myavocat.legit.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Objets PostgreSQL que Hibernate ne sait pas générer (extensions, colonnes tsvector, triggers, index GIN).
+ * Chaque instruction est idempotente et rejouée au démarrage, après la création du schéma par Hibernate.
+ * Ignoré sur les autres bases (H2 en test).
+ */
+@Component
+public class PostgresSchemaInitializer implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresSchemaInitializer.class);
+
+    // 🔎 RECHERCHE PLEIN TEXTE DES DOSSIERS
+    // search_vector (pondéré) et search_text (trigrammes) sont tenus à jour par trigger à chaque écriture,
+    // y compris quand les parties liées sont ajoutées, retirées ou renommées.
+    private static final List<String> DOSSIER_SEARCH = List.of(
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+
+            "ALTER TABLE dossiers ADD COLUMN IF NOT EXISTS search_vector tsvector",
+            "ALTER TABLE dossiers ADD COLUMN IF NOT EXISTS search_text text",
+
+            "CREATE OR REPLACE FUNCTION dossier_search_parties(p_id uuid, p_client uuid, p_adversaire uuid) RETURNS text AS $$ " +
+                    "SELECT coalesce(string_agg(p.nom, ' '), '') FROM ( " +
+                    "  SELECT concat_ws(' ', c.prenom, c.nom) AS nom FROM clients c WHERE c.id = p_client " +
+                    "  UNION SELECT concat_ws(' ', c.prenom, c.nom) FROM dossier_clients dc JOIN clients c ON c.id = dc.client_id WHERE dc.dossier_id = p_id " +
+                    "  UNION SELECT concat_ws(' ', a.prenom, a.nom) FROM adversaires a WHERE a.id = p_adversaire " +
+                    "  UNION SELECT concat_ws(' ', a.prenom, a.nom) FROM dossier_adversaires da JOIN adversaires a ON a.id = da.adversaire_id WHERE da.dossier_id = p_id " +
+                    "  UNION SELECT concat_ws(' ', a.prenom, a.nom) FROM adversaire_dossier ad JOIN adversaires a ON a.id = ad.adversaire_id WHERE ad.dossier_id = p_id " +
+                    ") p $$ LANGUAGE sql STABLE",
+
+            "CREATE OR REPLACE FUNCTION dossier_search_update() RETURNS trigger AS $$ " +
+                    "DECLARE parties text; " +
+                    "BEGIN " +
+                    "  parties := dossier_search_parties(NEW.id, NEW.client_id, NEW.adversaire_id); " +
+                    "  NEW.search_text := lower(concat_ws(' ', NEW.reference, NEW.nom_dossier, NEW.type_affaire, NEW.contentieux, parties)); " +
+                    "  NEW.search_vector := " +
+                    "      setweight(to_tsvector('french', coalesce(NEW.reference, '') || ' ' || coalesce(NEW.nom_dossier, '')), 'A') " +
+                    "   || setweight(to_tsvector('french', coalesce(parties, '')), 'B') " +
+                    "   || setweight(to_tsvector('french', coalesce(NEW.type_affaire, '')), 'C') " +
+                    "   || setweight(to_tsvector('french', coalesce(NEW.contentieux, '')), 'D'); " +
+                    "  RETURN NEW; " +
+                    "END $$ LANGUAGE plpgsql",
+
+            "DROP TRIGGER IF EXISTS trg_dossier_search ON dossiers",
+            "CREATE TRIGGER trg_dossier_search BEFORE INSERT OR UPDATE ON dossiers " +
+                    "FOR EACH ROW EXECUTE FUNCTION dossier_search_update()",
+
+            // Ajout / retrait d'une partie : on force le recalcul du dossier concerné
+            "CREATE OR REPLACE FUNCTION dossier_search_touch_link() RETURNS trigger AS $$ " +
+                    "BEGIN " +
+                    "  UPDATE dossiers SET search_text = search_text " +
+                    "  WHERE id = (CASE WHEN TG_OP = 'DELETE' THEN OLD.dossier_id ELSE NEW.dossier_id END); " +
+                    "  RETURN NULL; " +
+                    "END $$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS trg_dossier_clients_search ON dossier_clients",
+            "CREATE TRIGGER trg_dossier_clients_search AFTER INSERT OR DELETE ON dossier_clients " +
+                    "FOR EACH ROW EXECUTE FUNCTION dossier_search_touch_link()",
+            "DROP TRIGGER IF EXISTS trg_dossier_adversaires_search ON dossier_adversaires",
+            "CREATE TRIGGER trg_dossier_adversaires_search AFTER INSERT OR DELETE ON dossier_adversaires " +
+                    "FOR EACH ROW EXECUTE FUNCTION dossier_search_touch_link()",
+            "DROP TRIGGER IF EXISTS trg_adversaire_dossier_search ON adversaire_dossier",
+            "CREATE TRIGGER trg_adversaire_dossier_search AFTER INSERT OR DELETE ON adversaire_dossier " +
+                    "FOR EACH ROW EXECUTE FUNCTION dossier_search_touch_link()",
+
+            // Renommage d'un client / adversaire : recalcul des dossiers où il apparaît
+            "CREATE OR REPLACE FUNCTION dossier_search_touch_client() RETURNS trigger AS $$ " +
+                    "BEGIN " +
+                    "  IF NEW.nom IS DISTINCT FROM OLD.nom OR NEW.prenom IS DISTINCT FROM OLD.prenom THEN " +
+                    "    UPDATE dossiers SET search_text = search_text WHERE client_id = NEW.id " +
+                    "      OR id IN (SELECT dossier_id FROM dossier_clients WHERE client_id = NEW.id); " +
+                    "  END IF; " +
+                    "  RETURN NULL; " +
+                    "END $$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS trg_clients_search ON clients",
+            "CREATE TRIGGER trg_clients_search AFTER UPDATE ON clients " +
+                    "FOR EACH ROW EXECUTE FUNCTION dossier_search_touch_client()",
+            "CREATE OR REPLACE FUNCTION dossier_search_touch_adversaire() RETURNS trigger AS $$ " +
+                    "BEGIN " +
+                    "  IF NEW.nom IS DISTINCT FROM OLD.nom OR NEW.prenom IS DISTINCT FROM OLD.prenom THEN " +
+                    "    UPDATE dossiers SET search_text = search_text WHERE adversaire_id = NEW.id " +
+                    "      OR id IN (SELECT dossier_id FROM dossier_adversaires WHERE adversaire_id = NEW.id) " +
+                    "      OR id IN (SELECT dossier_id FROM adversaire_dossier WHERE adversaire_id = NEW.id); " +
+                    "  END IF; " +
+                    "  RETURN NULL; " +
+                    "END $$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS trg_adversaires_search ON adversaires",
+            "CREATE TRIGGER trg_adversaires_search AFTER UPDATE ON adversaires " +
+                    "FOR EACH ROW EXECUTE FUNCTION dossier_search_touch_adversaire()",
+
+            "CREATE INDEX IF NOT EXISTS idx_dossiers_search_vector ON dossiers USING GIN (search_vector)",
+            "CREATE INDEX IF NOT EXISTS idx_dossiers_search_trgm ON dossiers USING GIN (search_text gin_trgm_ops)",
+
+            // Premier démarrage : indexation des dossiers existants
+            "UPDATE dossiers SET search_text = search_text WHERE search_vector IS NULL"
+    );
+
+    // 📧 RELANCES : parcours par id des seules factures ouvertes
+    private static final List<String> FACTURE_RELANCES = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_factures_relance ON factures (id, date_echeance) " +
+                    "WHERE statut_paiement IN ('ATTENTE_REGLEMENT', 'PARTIELLEMENT_REGLEE')"
+    );
+
+    // 📄 RECHERCHE DANS LES DOCUMENTS
+    // search_vector recalculé par trigger seulement quand le texte extrait change ; un texte trop long
+    // pour un tsvector (1 Mo) est indexé sur son début plutôt que de faire échouer l'enregistrement.
+    private static final List<String> DOCUMENT_SEARCH = List.of(
+            "ALTER TABLE documents_textes ADD COLUMN IF NOT EXISTS search_vector tsvector",
+
+            "CREATE OR REPLACE FUNCTION document_texte_search_update() RETURNS trigger AS $$ " +
+                    "BEGIN " +
+                    "  BEGIN " +
+                    "    NEW.search_vector := to_tsvector('french', coalesce(NEW.contenu, '')); " +
+                    "  EXCEPTION WHEN program_limit_exceeded THEN " +
+                    "    NEW.search_vector := to_tsvector('french', left(NEW.contenu, 200000)); " +
+                    "  END; " +
+                    "  RETURN NEW; " +
+                    "END $$ LANGUAGE plpgsql",
+
+            "DROP TRIGGER IF EXISTS trg_document_texte_search ON documents_textes",
+            "CREATE TRIGGER trg_document_texte_search BEFORE INSERT OR UPDATE OF contenu ON documents_textes " +
+                    "FOR EACH ROW EXECUTE FUNCTION document_texte_search_update()",
+
+            "CREATE INDEX IF NOT EXISTS idx_documents_textes_search_vector ON documents_textes USING GIN (search_vector)",
+
+            "UPDATE documents_textes SET contenu = contenu WHERE search_vector IS NULL AND contenu IS NOT NULL"
+    );
+
+    private final BaseDeDonnees baseDeDonnees;
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostgresSchemaInitializer(BaseDeDonnees baseDeDonnees, JdbcTemplate jdbcTemplate) {
+        this.baseDeDonnees = baseDeDonnees;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!baseDeDonnees.isPostgres()) {
+            logger.info("Base non PostgreSQL : objets spécifiques (recherche plein texte, triggers) ignorés");
+            return;
+        }
+        apply("recherche dossiers", DOSSIER_SEARCH);
+        apply("relances factures", FACTURE_RELANCES);
+        apply("recherche documents", DOCUMENT_SEARCH);
+        // pg_trgm a pu être créée ci-dessus
+        baseDeDonnees.oublierExtensions();
+    }
+
+    private void apply(String groupe, List<String> statements) {
+        for (String sql : statements) {
+            try {
+                jdbcTemplate.execute(sql);
+            } catch (Exception e) {
+                logger.warn("Initialisation PostgreSQL ({}) : instruction ignorée [{}] : {}",
+                        groupe, abbreviate(sql), e.getMessage());
+            }
+        }
+        logger.info("Initialisation PostgreSQL ({}) terminée", groupe);
+    }
+
+
+    private String abbreviate(String sql) {
+        return sql.length() > 80 ? sql.substring(0, 80) + "…" : sql;
+    }
+}
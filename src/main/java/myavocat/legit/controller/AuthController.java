@@ -129,6 +129,7 @@ public class AuthController {
             // Génération du token
             String token = jwtUtil.generateToken(
                     user.getEmail(),
+                    user.getId(),
                     user.getOffice().getId(),
                     user.getOffice().getName()
             );
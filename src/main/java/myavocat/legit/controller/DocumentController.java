@@ -1,22 +1,32 @@
 package myavocat.legit.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import myavocat.legit.dto.DocumentPageDTO;
+import myavocat.legit.dto.DocumentSearchResultDTO;
 import myavocat.legit.model.Document;
+import myavocat.legit.service.DocumentApercuService;
+import myavocat.legit.service.DocumentConversionService;
+import myavocat.legit.service.DocumentSearchService;
 import myavocat.legit.service.DocumentService;
+import myavocat.legit.service.DocumentTelechargementService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.http.ResponseEntity;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -24,10 +34,20 @@ import java.util.UUID;
 public class DocumentController {
 
     private final DocumentService documentService;
+    private final DocumentTelechargementService documentTelechargementService;
+    private final DocumentApercuService documentApercuService;
+    private final DocumentSearchService documentSearchService;
+    private final DocumentConversionService documentConversionService;
 
     @Autowired
-    public DocumentController(DocumentService documentService) {
+    public DocumentController(DocumentService documentService, DocumentTelechargementService documentTelechargementService,
+                              DocumentApercuService documentApercuService, DocumentSearchService documentSearchService,
+                              DocumentConversionService documentConversionService) {
         this.documentService = documentService;
+        this.documentTelechargementService = documentTelechargementService;
+        this.documentApercuService = documentApercuService;
+        this.documentSearchService = documentSearchService;
+        this.documentConversionService = documentConversionService;
     }
 
     @PostMapping("/upload")
@@ -48,6 +68,30 @@ public class DocumentController {
         }
     }
 
+    /**
+     * Dépôt en flux : le corps de la requête est le fichier lui-même (pas de multipart),
+     * lu directement jusqu'au stockage sans jamais être chargé en mémoire.
+     */
+    @PostMapping("/upload/stream")
+    public ResponseEntity<?> uploadDocumentStream(
+            @RequestParam("nomFichier") String nomFichier,
+            @RequestParam("dossierId") UUID dossierId,
+            @RequestParam("userId") UUID userId,
+            @RequestParam("typeFichier") String typeFichier,
+            @RequestParam(value = "description", required = false) String description,
+            HttpServletRequest request
+    ) {
+        try {
+            Document savedDocument = documentService.uploadDocument(request.getInputStream(), nomFichier, dossierId, userId,
+                    typeFichier, description, DocumentService.EXTENSIONS_DEPOT);
+            return ResponseEntity.ok(savedDocument);
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body("Erreur lors du téléchargement du fichier.");
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/dossier/{dossierId}")
     public ResponseEntity<List<Document>> getDocumentsByDossier(@PathVariable UUID dossierId) {
         return ResponseEntity.ok(documentService.getDocumentsByDossier(dossierId));
@@ -58,45 +102,116 @@ public class DocumentController {
         return ResponseEntity.ok(documentService.getDocumentsByUser(userId));
     }
 
-    @GetMapping("/{documentId}/download")
-    public ResponseEntity<?> downloadDocument(@PathVariable UUID documentId) {
+    /**
+     * Page de documents d'un dossier (projection légère). Tri : createdAt (défaut), nomFichier, typeFichier, taille
+     */
+    @GetMapping("/dossier/{dossierId}/page")
+    public ResponseEntity<?> getDocumentsPageByDossier(@PathVariable UUID dossierId,
+                                                       @RequestParam("userId") UUID userId,
+                                                       @RequestParam(required = false) Integer page,
+                                                       @RequestParam(required = false) Integer size,
+                                                       @RequestParam(required = false) String sort,
+                                                       @RequestParam(required = false) String direction) {
         try {
-            Document document = documentService.getDocumentById(documentId);
-            System.out.println("Document trouvé: " + document.getNomFichier());
-
-            // Le problème est ici - le chemin stocké en BDD est juste "uploads/..."
-            // alors que le chemin réel dans le conteneur est "/app/uploads/..."
-            String cheminOriginal = document.getCheminFichier();
-            System.out.println("Chemin stocké en BDD: " + cheminOriginal);
-
-            // Si le chemin ne commence pas par "/app/" et qu'il commence par "uploads/"
-            Path path;
-            if (cheminOriginal.startsWith("uploads/") && !cheminOriginal.startsWith("/app/")) {
-                // Nous devons remplacer "uploads/" par "/app/uploads/"
-                path = Paths.get("/app/" + cheminOriginal);
-            } else {
-                // Sinon, utiliser le chemin tel quel
-                path = Paths.get(cheminOriginal);
-            }
+            DocumentPageDTO result = documentService.getDocumentsPageByDossier(dossierId, userId, page, size, sort, direction);
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Page des documents déposés par l'utilisateur dans les dossiers de son cabinet (mêmes paramètres)
+     */
+    @GetMapping("/user/{userId}/page")
+    public ResponseEntity<?> getDocumentsPageByUser(@PathVariable UUID userId,
+                                                    @RequestParam(required = false) Integer page,
+                                                    @RequestParam(required = false) Integer size,
+                                                    @RequestParam(required = false) String sort,
+                                                    @RequestParam(required = false) String direction) {
+        try {
+            DocumentPageDTO result = documentService.getDocumentsPageByUser(userId, page, size, sort, direction);
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
-            System.out.println("Chemin final utilisé: " + path.toAbsolutePath());
+    /**
+     * Recherche dans le contenu des documents du cabinet (résultats classés, paginés, avec extraits surlignés)
+     */
+    @GetMapping("/user/{userId}/search")
+    public ResponseEntity<?> searchDocuments(@PathVariable UUID userId,
+                                             @RequestParam String q,
+                                             @RequestParam(required = false) Integer page,
+                                             @RequestParam(required = false) Integer size) {
+        try {
+            DocumentSearchResultDTO result = documentSearchService.search(userId, q, page, size);
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
-            if (!Files.exists(path)) {
-                System.out.println("Fichier non trouvé: " + path.toAbsolutePath());
-                return ResponseEntity.notFound().build();
-            }
+    /**
+     * Conversions en PDF des pièces reçues par email : compteurs depuis le démarrage, file et durées
+     */
+    @GetMapping("/conversions/statistiques")
+    public ResponseEntity<Map<String, Long>> getConversionStatistiques() {
+        return ResponseEntity.ok(documentConversionService.getStatistiques());
+    }
 
-            Resource fileResource = new FileSystemResource(path.toFile());
-            System.out.println("Fichier trouvé et prêt pour téléchargement");
+    @DeleteMapping("/{documentId}")
+    public ResponseEntity<?> supprimerDocument(@PathVariable UUID documentId, @RequestParam("userId") UUID userId) {
+        try {
+            documentService.supprimerDocument(documentId, userId);
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
+    /**
+     * Téléchargement : Range / If-Range, ETag et Last-Modified (304), affichage en ligne avec ?inline=true
+     */
+    @GetMapping("/{documentId}/download")
+    public void downloadDocument(@PathVariable UUID documentId,
+                                 @RequestParam(defaultValue = "false") boolean inline,
+                                 HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException {
+        documentTelechargementService.envoyer(documentId, inline, request, response);
+    }
+
+    /**
+     * Aperçu PNG d'une page (1 par défaut), mis en cache par le navigateur ; 503 + Retry-After s'il est en préparation
+     */
+    @GetMapping("/{documentId}/apercu")
+    public ResponseEntity<?> getApercu(@PathVariable UUID documentId,
+                                       @RequestParam(defaultValue = "1") int page,
+                                       WebRequest webRequest) {
+        try {
+            Path apercu = documentApercuService.getApercu(documentId, page);
+            if (apercu == null) {
+                return ResponseEntity.notFound().build();
+            }
+            // Fichier dérivé immuable une fois écrit : sa date et sa taille suffisent à l'identifier
+            String etag = "\"" + Long.toHexString(Files.getLastModifiedTime(apercu).toMillis())
+                    + "-" + Long.toHexString(Files.size(apercu)) + "\"";
+            CacheControl cache = CacheControl.maxAge(1, TimeUnit.DAYS).cachePrivate();
+            if (webRequest.checkNotModified(etag)) {
+                return ResponseEntity.status(304).eTag(etag).cacheControl(cache).build();
+            }
             return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + document.getNomFichier() + "\"")
-                    .contentType(MediaType.APPLICATION_PDF)
-                    .body(fileResource);
-        } catch (Exception e) {
-            System.err.println("Erreur lors du téléchargement: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).body("Erreur lors du téléchargement: " + e.getMessage());
+                    .eTag(etag)
+                    .cacheControl(cache)
+                    .contentType(MediaType.IMAGE_PNG)
+                    .body(new FileSystemResource(apercu));
+        } catch (DocumentApercuService.ApercuIndisponibleException e) {
+            return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "5").body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body("Erreur lors de la génération de l'aperçu.");
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 }
@@ -1,14 +1,29 @@
 package myavocat.legit.controller;
 
+import myavocat.legit.dto.CreateDossierDTO;
 import myavocat.legit.dto.DossierDTO;
+import myavocat.legit.dto.DossierImportResultDTO;
+import myavocat.legit.dto.DossierPageDTO;
+import myavocat.legit.dto.DossierSearchResultDTO;
 import myavocat.legit.model.Dossier;
 import myavocat.legit.response.ApiResponse;
+import myavocat.legit.service.DossierArchiveService;
+import myavocat.legit.service.DossierImportService;
+import myavocat.legit.service.DossierSearchService;
 import myavocat.legit.service.DossierService;
 import myavocat.legit.service.AdversaireService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,6 +41,15 @@ public class DossierController {
     @Autowired
     private AdversaireService adversaireService;
 
+    @Autowired
+    private DossierImportService dossierImportService;
+
+    @Autowired
+    private DossierSearchService dossierSearchService;
+
+    @Autowired
+    private DossierArchiveService dossierArchiveService;
+
 
 
     /**
@@ -44,18 +68,8 @@ public class DossierController {
             dossier.setClientId(null);
             dossier.setAdversaireId(null);
 
-            // Créer le dossier
-            Dossier createdDossier = dossierService.createDossier(dossier, userId, officeId, null, null);
-
-            // ✅ Assigner le client au dossier s'il existe
-            if (clientId != null) {
-                createdDossier = dossierService.assignClientToDossier(userId, createdDossier.getId(), clientId);
-            }
-
-            // ✅ Assigner l'adversaire au dossier s'il existe
-            if (adversaireId != null) {
-                createdDossier = dossierService.assignAdversaireToDossier(userId, createdDossier.getId(), adversaireId);
-            }
+            // Créer le dossier et assigner client / adversaire dans la même transaction
+            Dossier createdDossier = dossierService.createDossier(dossier, userId, officeId, clientId, adversaireId);
 
             return new ApiResponse(true, "Dossier créé avec succès et assignations effectuées", createdDossier);
         } catch (RuntimeException e) {
@@ -67,8 +81,43 @@ public class DossierController {
 
 
     /**
-     * Récupérer tous les dossiers accessibles par un utilisateur
+     * Créer un dossier avec avocat, clients et adversaires en une seule transaction
      */
+    @PostMapping("/create-complet/{userId}/{officeId}")
+    public ApiResponse createDossierAvecParties(@PathVariable UUID userId,
+                                                @PathVariable UUID officeId,
+                                                @RequestBody CreateDossierDTO request) {
+        try {
+            Dossier createdDossier = dossierService.createDossierAvecParties(userId, officeId, request);
+            return new ApiResponse(true, "Dossier créé avec succès et assignations effectuées", convertToDTO(createdDossier));
+        } catch (RuntimeException e) {
+            return new ApiResponse(false, "Erreur lors de la création du dossier: " + e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Import en masse de dossiers : corps CSV (avec en-tête) ou NDJSON, lu en flux
+     * Le format est pris du paramètre `format`, sinon du Content-Type (application/x-ndjson).
+     */
+    @PostMapping("/import/{userId}/{officeId}")
+    public ApiResponse importDossiers(@PathVariable UUID userId,
+                                      @PathVariable UUID officeId,
+                                      @RequestParam(required = false) String format,
+                                      HttpServletRequest request) {
+        try {
+            String contentType = request.getContentType();
+            String formatEffectif = format != null ? format
+                    : (contentType != null && contentType.contains("ndjson")
+                    ? DossierImportService.FORMAT_NDJSON : DossierImportService.FORMAT_CSV);
+
+            DossierImportResultDTO result = dossierImportService.importer(userId, officeId, request.getInputStream(), formatEffectif);
+            return new ApiResponse(true, "Import terminé", result);
+        } catch (RuntimeException e) {
+            return new ApiResponse(false, "Erreur lors de l'import des dossiers: " + e.getMessage(), null);
+        } catch (Exception e) {
+            return new ApiResponse(false, "Erreur inconnue: " + e.getMessage(), null);
+        }
+    }
 
     /**
      * Récupérer tous les dossiers accessibles par un utilisateur
@@ -76,21 +125,8 @@ public class DossierController {
     @GetMapping("/{userId}")
     public ApiResponse getAllDossiers(@PathVariable UUID userId) {
         try {
-            List<Dossier> dossiers = dossierService.getAllDossiers(userId);
-
-            // Trier les dossiers par date de création (du plus récent au plus ancien)
-            dossiers.sort((dossier1, dossier2) -> {
-                // Si une des dates est null, la placer à la fin
-                if (dossier1.getCreatedAt() == null) return 1;
-                if (dossier2.getCreatedAt() == null) return -1;
-                // Sinon, trier par ordre décroissant (plus récent d'abord)
-                return dossier2.getCreatedAt().compareTo(dossier1.getCreatedAt());
-            });
-
-            // Convertir les dossiers en DTO
-            List<DossierDTO> dossierDTOs = dossiers.stream()
-                    .map(this::convertToDTO)
-                    .collect(Collectors.toList());
+            // Projection DTO triée en base (createdAt DESC, dates nulles en dernier)
+            List<DossierDTO> dossierDTOs = dossierService.getAllDossierDTOs(userId);
 
             return new ApiResponse(true, "Dossiers récupérés", dossierDTOs);
         } catch (Exception e) {
@@ -98,14 +134,74 @@ public class DossierController {
         }
     }
 
+    /**
+     * Récupérer une page de dossiers du cabinet (pagination par curseur, filtres optionnels)
+     */
+    @GetMapping("/{userId}/page")
+    public ApiResponse getDossiersPage(@PathVariable UUID userId,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(required = false) Integer size,
+                                       @RequestParam(required = false) String statut,
+                                       @RequestParam(required = false) String typeAffaire,
+                                       @RequestParam(required = false) UUID avocatId) {
+        try {
+            DossierPageDTO page = dossierService.getDossiersPage(userId, cursor, size, statut, typeAffaire, avocatId);
+            return new ApiResponse(true, "Dossiers récupérés", page);
+        } catch (RuntimeException e) {
+            return new ApiResponse(false, "Erreur lors de la récupération des dossiers: " + e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Recherche plein texte dans les dossiers du cabinet (résultats classés, paginés et surlignés)
+     */
+    @GetMapping("/{userId}/search")
+    public ApiResponse searchDossiers(@PathVariable UUID userId,
+                                      @RequestParam String q,
+                                      @RequestParam(required = false) Integer page,
+                                      @RequestParam(required = false) Integer size) {
+        try {
+            DossierSearchResultDTO result = dossierSearchService.search(userId, q, page, size);
+            return new ApiResponse(true, "Résultats de recherche", result);
+        } catch (RuntimeException e) {
+            return new ApiResponse(false, "Erreur lors de la recherche: " + e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Archive ZIP des documents du dossier (type et période de dépôt optionnels),
+     * écrite dans la réponse au fil de la lecture des fichiers
+     */
+    @GetMapping("/{userId}/{dossierId}/documents/archive")
+    public void archiveDocuments(@PathVariable UUID userId,
+                                 @PathVariable UUID dossierId,
+                                 @RequestParam(required = false) String typeFichier,
+                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateDebut,
+                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFin,
+                                 HttpServletResponse response) throws IOException {
+        DossierArchiveService.Selection selection;
+        try {
+            selection = dossierArchiveService.selectionner(userId, dossierId, typeFichier, dateDebut, dateFin);
+        } catch (RuntimeException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(selection.nomArchive(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        dossierArchiveService.ecrireZip(selection.documents(), response.getOutputStream());
+    }
+
     /**
      * Récupérer un dossier spécifique, si l'utilisateur y a accès
      */
     @GetMapping("/{userId}/{dossierId}")
     public ApiResponse getDossierById(@PathVariable UUID userId, @PathVariable UUID dossierId) {
         try {
-            Dossier dossier = dossierService.getDossierById(dossierId, userId);
-            DossierDTO dossierDTO = convertToDTO(dossier);
+            DossierDTO dossierDTO = dossierService.getDossierDTOById(dossierId, userId);
             return new ApiResponse(true, "Dossier trouvé", dossierDTO);
         } catch (RuntimeException e) {
             return new ApiResponse(false, e.getMessage(), null);
@@ -1,16 +1,25 @@
 package myavocat.legit.controller;
 
+import myavocat.legit.dto.BalanceAgeeDTO;
 import myavocat.legit.dto.FactureDTO;
+import myavocat.legit.dto.FacturePdfDTO;
 import myavocat.legit.model.StatutPaiement;
 import myavocat.legit.response.ApiResponse;
+import myavocat.legit.service.BalanceAgeeService;
 import myavocat.legit.service.FactureService;
 import myavocat.legit.service.FactureExportService;
+import myavocat.legit.service.FactureZipExportService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -21,10 +30,15 @@ public class FactureController {
 
     private final FactureService factureService;
     private final FactureExportService factureExportService;
+    private final FactureZipExportService factureZipExportService;
+    private final BalanceAgeeService balanceAgeeService;
 
-    public FactureController(FactureService factureService, FactureExportService factureExportService) {
+    public FactureController(FactureService factureService, FactureExportService factureExportService,
+                             FactureZipExportService factureZipExportService, BalanceAgeeService balanceAgeeService) {
         this.factureService = factureService;
         this.factureExportService = factureExportService;
+        this.factureZipExportService = factureZipExportService;
+        this.balanceAgeeService = balanceAgeeService;
     }
 
     /**
@@ -163,23 +177,100 @@ public class FactureController {
     @PostMapping("/relance")
     public ResponseEntity<String> relancerFacturesImpayees(@PathVariable UUID userId) {
         factureService.relancerFacturesImpayees(userId);
-        return ResponseEntity.ok("Relances envoyées aux clients avec factures impayées.");
+        return ResponseEntity.ok("Relances en cours d'envoi aux clients avec factures impayées.");
     }
 
     /**
-     * ✅ Exporter une facture en PDF
+     * ✅ Suivi des relances du cabinet (envoyées, en cours, en échec)
+     */
+    @GetMapping("/relances")
+    public ResponseEntity<Map<String, Long>> getStatistiquesRelances(@PathVariable UUID userId) {
+        return ResponseEntity.ok(factureService.getStatistiquesRelances(userId));
+    }
+
+    /**
+     * ✅ Exporter une facture en PDF (ETag + If-None-Match : 304 si le client a déjà cette version)
      */
     @GetMapping("/{id}/export-pdf")
-    public ResponseEntity<byte[]> exportFactureToPdf(@PathVariable UUID id) {
-        byte[] pdfBytes = factureExportService.generateFacturePdf(id);
+    public ResponseEntity<?> exportFactureToPdf(
+            @PathVariable UUID id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Une lecture légère des données suffit à connaître la version : pas de rendu si le client l'a déjà
+        FacturePdfDTO facture = factureExportService.getFacturePdfData(id);
+        String etag = factureExportService.getFacturePdfEtag(facture);
+
+        // no-cache : le navigateur garde le PDF mais revalide à chaque ouverture (304 si inchangé)
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+
+        if (etagCorrespond(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
 
         HttpHeaders headers = new HttpHeaders();
         headers.add("Content-Disposition", "attachment; filename=facture_" + id + ".pdf");
 
+        ResponseEntity.BodyBuilder reponse = ResponseEntity
+                .status(HttpStatus.OK)
+                .headers(headers)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_PDF);
+
+        byte[] pdf = factureExportService.getFacturePdfEnCache(facture, etag);
+        if (pdf != null) {
+            return reponse.contentLength(pdf.length).body(pdf);
+        }
+
+        // Pas encore en cache : le PDF est écrit dans la réponse au fil du rendu, et gardé pour les demandes suivantes
+        StreamingResponseBody body = out -> factureExportService.writeFacturePdfEtMettreEnCache(facture, etag, out);
+        return reponse.body(body);
+    }
+
+    /**
+     * Comparaison faible d'If-None-Match (RFC 9110) : liste d'ETags, préfixe W/ ignoré, "*" accepté
+     */
+    private static boolean etagCorrespond(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidat : ifNoneMatch.split(",")) {
+            String valeur = candidat.trim();
+            if (valeur.startsWith("W/")) {
+                valeur = valeur.substring(2);
+            }
+            if (valeur.equals("*") || valeur.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ✅ Exporter en masse les factures du cabinet dans une archive ZIP (filtres optionnels)
+     * Les PDF sont générés en parallèle et écrits directement dans la réponse.
+     */
+    @GetMapping("/export-zip")
+    public ResponseEntity<StreamingResponseBody> exportFacturesZip(
+            @PathVariable UUID userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateDebut,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFin,
+            @RequestParam(required = false) StatutPaiement statut,
+            @RequestParam(required = false) UUID dossierId) {
+
+        List<UUID> factureIds = factureZipExportService.selectionner(userId, dateDebut, dateFin, statut, dossierId);
+        StreamingResponseBody body = out -> factureZipExportService.ecrireZip(factureIds, out);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Disposition", "attachment; filename=factures_" + LocalDate.now() + ".zip");
+
         return ResponseEntity
                 .status(HttpStatus.OK)
                 .headers(headers)
-                .body(pdfBytes);
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
     }
 
     /**
@@ -196,6 +287,39 @@ public class FactureController {
         }
     }
 
+    /**
+     * ✅ Balance âgée : restant dû par client, en tranches 0-30 / 31-60 / 61-90 / +90 jours
+     */
+    @GetMapping("/balance-agee")
+    public ResponseEntity<BalanceAgeeDTO> getBalanceAgee(@PathVariable UUID userId) {
+        return ResponseEntity.ok(balanceAgeeService.getBalanceAgee(userId));
+    }
+
+    /**
+     * ✅ Export de la balance âgée en CSV ou XLSX (par client, ou par facture avec detail=true), écrit en flux
+     */
+    @GetMapping("/balance-agee/export")
+    public ResponseEntity<StreamingResponseBody> exportBalanceAgee(
+            @PathVariable UUID userId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean detail) {
+
+        UUID officeId = balanceAgeeService.resoudreCabinet(userId);
+        boolean xlsx = BalanceAgeeService.FORMAT_XLSX.equalsIgnoreCase(format);
+        StreamingResponseBody body = out -> balanceAgeeService.exporter(officeId, format, detail, out);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Disposition", "attachment; filename=balance_agee_" + LocalDate.now() + (xlsx ? ".xlsx" : ".csv"));
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .headers(headers)
+                .contentType(xlsx
+                        ? MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+                        : MediaType.parseMediaType("text/csv;charset=UTF-8"))
+                .body(body);
+    }
+
     @GetMapping("/kpi")
     public ResponseEntity<Map<String, Object>> getKpiFactures(@PathVariable UUID userId) {
         Map<String, Object> kpiData = factureService.getKpiFactures(userId);
@@ -207,4 +331,10 @@ public class FactureController {
         Map<String, Object> kpiData = factureService.getKpiFacturesMensuelles(userId);
         return ResponseEntity.ok(kpiData);
     }
+
+    @GetMapping("/kpi/historique")
+    public ResponseEntity<List<Map<String, Object>>> getHistoriqueMensuel(@PathVariable UUID userId,
+                                                                          @RequestParam(defaultValue = "12") int mois) {
+        return ResponseEntity.ok(factureService.getHistoriqueMensuel(userId, mois));
+    }
 }
@@ -1,15 +1,21 @@
 package myavocat.legit.controller;
 
 import myavocat.legit.dto.PaiementDTO;
+import myavocat.legit.dto.PaiementSerieDTO;
 import myavocat.legit.dto.CreatePaiementDTO;
+import myavocat.legit.dto.ReleveImportResultDTO;
 import myavocat.legit.response.ApiResponse;
+import myavocat.legit.service.PaiementSerieService;
 import myavocat.legit.service.PaiementService;
+import myavocat.legit.service.RapprochementBancaireService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +28,12 @@ public class PaiementController {
     @Autowired
     private PaiementService paiementService;
 
+    @Autowired
+    private RapprochementBancaireService rapprochementBancaireService;
+
+    @Autowired
+    private PaiementSerieService paiementSerieService;
+
     // 🔥 CRÉATION ET MODIFICATION DE PAIEMENTS
 
     /**
@@ -88,6 +100,43 @@ public class PaiementController {
         }
     }
 
+    /**
+     * Importer un relevé bancaire et créer les paiements rapprochés des factures ouvertes
+     * POST /api/paiements/{userId}/import-releve?format=csv|camt053|ofx (format déduit de l'extension sinon)
+     */
+    @PostMapping("/import-releve")
+    public ResponseEntity<ApiResponse> importerReleve(
+            @PathVariable UUID userId,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format) {
+        try {
+            String formatEffectif = format != null ? format : formatDepuisNom(file.getOriginalFilename());
+            ReleveImportResultDTO result;
+            try (InputStream input = file.getInputStream()) {
+                result = rapprochementBancaireService.importerReleve(userId, input, formatEffectif);
+            }
+            return ResponseEntity.ok(new ApiResponse(
+                    true,
+                    result.getPaiementsCrees() + " paiement(s) créé(s) à partir du relevé",
+                    result
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new ApiResponse(false, "Erreur lors de l'import du relevé : " + e.getMessage(), null));
+        }
+    }
+
+    private String formatDepuisNom(String nomFichier) {
+        String nom = nomFichier == null ? "" : nomFichier.toLowerCase();
+        if (nom.endsWith(".xml")) {
+            return "camt053";
+        }
+        if (nom.endsWith(".ofx") || nom.endsWith(".qfx")) {
+            return "ofx";
+        }
+        return "csv";
+    }
+
     // 🔥 CONSULTATION DES PAIEMENTS
 
     /**
@@ -147,6 +196,27 @@ public class PaiementController {
         }
     }
 
+    /**
+     * Série des encaissements par jour, semaine ou mois et par mode de paiement (12 derniers mois par défaut)
+     * GET /api/paiements/{userId}/serie?granularite=mois&dateDebut=2025-01-01&dateFin=2025-12-31
+     */
+    @GetMapping("/serie")
+    public ResponseEntity<ApiResponse> getSerieEncaissements(
+            @PathVariable UUID userId,
+            @RequestParam(defaultValue = "mois") String granularite,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateDebut,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFin) {
+        try {
+            LocalDate fin = dateFin != null ? dateFin : LocalDate.now();
+            LocalDate debut = dateDebut != null ? dateDebut : fin.minusMonths(11).withDayOfMonth(1);
+            PaiementSerieDTO serie = paiementSerieService.getSerieEncaissements(userId, granularite, debut, fin);
+            return ResponseEntity.ok(new ApiResponse(true, "Série des encaissements récupérée avec succès", serie));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(new ApiResponse(false, "Erreur lors du calcul de la série des encaissements : " + e.getMessage(), null));
+        }
+    }
+
     /**
      * Récupérer les paiements par période
      * GET /api/paiements/{userId}/periode?dateDebut=2025-01-01&dateFin=2025-01-31
@@ -0,0 +1,27 @@
+package myavocat.legit.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Restant dû d'un client réparti par ancienneté (jours écoulés depuis l'échéance, ou l'émission à défaut)
+ */
+@Data
+public class BalanceAgeeClientDTO {
+    private UUID clientId;
+    private String nom;
+    private String prenom;
+    private long nombreFactures;
+    private BigDecimal tranche0a30;
+    private BigDecimal tranche31a60;
+    private BigDecimal tranche61a90;
+    private BigDecimal trancheSup90;
+    private BigDecimal total;
+    private LocalDate plusAncienneEcheance;
+    private long rang;                 // 1 = client le plus endetté
+    private BigDecimal partDuTotal;    // en % du restant dû du cabinet
+    private BigDecimal cumul;          // cumul des totaux jusqu'à ce client (analyse de Pareto)
+}
@@ -0,0 +1,23 @@
+package myavocat.legit.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Balance âgée des créances clients d'un cabinet
+ */
+@Data
+public class BalanceAgeeDTO {
+    private LocalDate dateReference;
+    private BigDecimal tranche0a30 = BigDecimal.ZERO;
+    private BigDecimal tranche31a60 = BigDecimal.ZERO;
+    private BigDecimal tranche61a90 = BigDecimal.ZERO;
+    private BigDecimal trancheSup90 = BigDecimal.ZERO;
+    private BigDecimal total = BigDecimal.ZERO;
+    private long nombreFactures;
+    private List<BalanceAgeeClientDTO> clients = new ArrayList<>();
+}
@@ -0,0 +1,31 @@
+package myavocat.legit.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Création d'un dossier avec ses parties prenantes en un seul appel (une seule transaction).
+ * Le premier client / adversaire de chaque liste devient le client / adversaire principal.
+ */
+@Data
+public class CreateDossierDTO {
+    private String reference;
+    private String nomDossier;
+    private String typeAffaire;
+    private String statut;
+    private String qualiteProcedurale;
+    private String contentieux;
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate dateContentieux;
+
+    // Avocat responsable (par défaut : l'utilisateur qui crée le dossier)
+    private UUID avocatId;
+
+    private List<UUID> clientIds = new ArrayList<>();
+    private List<UUID> adversaireIds = new ArrayList<>();
+}
@@ -0,0 +1,24 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Document à placer dans l'archive d'un dossier (projection, sans entité JPA)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentArchiveDTO {
+    private UUID id;
+    private String nomFichier;
+    private String typeFichier;
+    private String typeMime;
+    private String blobSha256;
+    private String cheminFichier;
+    private LocalDateTime createdAt;
+}
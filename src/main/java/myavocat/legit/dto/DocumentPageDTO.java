@@ -0,0 +1,22 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page de documents (pagination par numéro de page, sans comptage du total)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentPageDTO {
+    private List<DocumentSummaryDTO> items;
+    private int page;
+    private int size;
+    private String sort;
+    private String direction;
+    private boolean hasMore;
+}
@@ -0,0 +1,23 @@
+package myavocat.legit.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Document dont le contenu correspond à la recherche, avec score et extrait surligné (balises <mark>)
+ */
+@Data
+public class DocumentSearchHitDTO {
+    private UUID id;
+    private String nomFichier;
+    private String typeFichier;
+    private Integer nbPages;
+    private LocalDateTime createdAt;
+    private UUID dossierId;
+    private String dossierReference;
+    private String nomDossier;
+    private double score;
+    private String highlight;
+}
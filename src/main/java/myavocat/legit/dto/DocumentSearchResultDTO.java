@@ -0,0 +1,19 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSearchResultDTO {
+    private String query;
+    private List<DocumentSearchHitDTO> hits;
+    private int page;
+    private int size;
+    private boolean hasMore;
+    private long tookMs;
+}
@@ -0,0 +1,28 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Document dans une liste : projection chargée en une requête, sans le dossier ni l'utilisateur complets
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSummaryDTO {
+    private UUID id;
+    private String nomFichier;
+    private String typeFichier;
+    private String typeMime;
+    private Long taille;
+    private String blobSha256;
+    private LocalDateTime createdAt;
+    private UUID dossierId;
+    private UUID uploadedById;
+    private String uploadedByNom;
+    private String uploadedByPrenom;
+}
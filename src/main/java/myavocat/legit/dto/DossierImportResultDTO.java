@@ -0,0 +1,19 @@
+package myavocat.legit.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bilan d'un import en masse de dossiers
+ */
+@Data
+public class DossierImportResultDTO {
+    private long lignesLues;
+    private long dossiersImportes;
+    private long lignesIgnorees;
+    private long dureeMs;
+    // Limité aux premières erreurs pour garder une réponse de taille raisonnable
+    private List<String> erreurs = new ArrayList<>();
+}
@@ -0,0 +1,20 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page de dossiers paginée par curseur (keyset sur createdAt, id).
+ * nextCursor est à renvoyer tel quel pour obtenir la page suivante, null s'il n'y en a plus.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DossierPageDTO {
+    private List<DossierSummaryDTO> items;
+    private String nextCursor;
+    private boolean hasMore;
+}
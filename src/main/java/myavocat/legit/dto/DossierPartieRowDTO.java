@@ -0,0 +1,24 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Client ou adversaire (relation Many-to-Many) d'un dossier, lu par lot de dossiers
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DossierPartieRowDTO {
+    private UUID dossierId;
+    private UUID id;
+    private String nom;
+    private String prenom;
+    private String email;
+    private String telephone;
+    private String type;
+    private String qualite;
+}
@@ -0,0 +1,47 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Ligne de dossier lue par DossierRepository.DOSSIER_ROW_SELECT : champs propres, cabinet, avocat,
+ * client et adversaire principaux. Sert à construire les DossierDTO sans charger d'entité.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DossierRowDTO {
+    private UUID id;
+    private String reference;
+    private String nomDossier;
+    private String typeAffaire;
+    private LocalDate dateContentieux;
+    private String statut;
+    private String qualiteProcedurale;
+    private String contentieux;
+    private LocalDateTime createdAt;
+    private UUID officeId;
+
+    // Avocat responsable
+    private UUID avocatId;
+    private String avocatNom;
+    private String avocatPrenom;
+    private String avocatEmail;
+
+    // Client principal (optionnel)
+    private UUID clientId;
+    private String clientNom;
+    private String clientPrenom;
+    private String clientEmail;
+
+    // Adversaire principal (optionnel)
+    private UUID adversaireId;
+    private String adversaireNom;
+    private String adversairePrenom;
+    private String adversaireEmail;
+}
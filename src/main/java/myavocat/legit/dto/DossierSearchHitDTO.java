@@ -0,0 +1,21 @@
+package myavocat.legit.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Résultat de recherche de dossier, avec score de pertinence et extrait surligné (balises <mark>)
+ */
+@Data
+public class DossierSearchHitDTO {
+    private UUID id;
+    private String reference;
+    private String nomDossier;
+    private String typeAffaire;
+    private String statut;
+    private LocalDateTime createdAt;
+    private double score;
+    private String highlight;
+}
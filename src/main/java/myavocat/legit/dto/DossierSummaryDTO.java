@@ -0,0 +1,40 @@
+package myavocat.legit.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Projection légère d'un dossier pour les listes paginées.
+ * Construite directement par la requête JPQL (pas d'entité Dossier chargée).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DossierSummaryDTO {
+    private UUID id;
+    private String reference;
+    private String nomDossier;
+    private String typeAffaire;
+    private String statut;
+    private String qualiteProcedurale;
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate dateContentieux;
+    private LocalDateTime createdAt;
+    private UUID officeId;
+
+    // Avocat responsable
+    private UUID avocatId;
+    private String avocatNom;
+    private String avocatPrenom;
+
+    // Client principal (optionnel)
+    private UUID clientId;
+    private String clientNom;
+    private String clientPrenom;
+}
@@ -0,0 +1,33 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import myavocat.legit.model.ModePaiement;
+import myavocat.legit.model.StatutPaiement;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Données nécessaires au rendu PDF d'une facture (projection, sans entité JPA),
+ * utilisables depuis les threads de rendu.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacturePdfDTO {
+    private UUID id;
+    private String numeroFacture;
+    private LocalDateTime dateEmission;
+    private String dossierReference;
+    private String clientNom;
+    private String clientPrenom;
+    private String intitule;
+    private BigDecimal montantHt;
+    private Boolean tvaApplicable;
+    private BigDecimal montantTtc;
+    private ModePaiement modePaiement;
+    private StatutPaiement statutPaiement;
+}
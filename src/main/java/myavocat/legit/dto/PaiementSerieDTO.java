@@ -0,0 +1,24 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Série temporelle des encaissements d'un cabinet (périodes vides incluses, à zéro)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaiementSerieDTO {
+    private String granularite; // jour, semaine, mois
+    private LocalDate dateDebut;
+    private LocalDate dateFin;
+    private long nombre;
+    private BigDecimal montant;
+    private List<PaiementSeriePointDTO> points;
+}
@@ -0,0 +1,24 @@
+package myavocat.legit.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encaissements d'une période (jour, semaine ou mois commençant à `periode`)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaiementSeriePointDTO {
+    private LocalDate periode;
+    private long nombre;
+    private BigDecimal montant = BigDecimal.ZERO;
+    // Montant par mode de paiement (VIREMENT, CHEQUE...), modes sans encaissement omis
+    private Map<String, BigDecimal> parMode = new LinkedHashMap<>();
+}
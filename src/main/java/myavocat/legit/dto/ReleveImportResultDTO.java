@@ -0,0 +1,26 @@
+package myavocat.legit.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bilan d'un import de relevé bancaire et du rapprochement avec les factures ouvertes
+ */
+@Data
+public class ReleveImportResultDTO {
+    private long lignesLues;
+    private long paiementsCrees;
+    private BigDecimal montantRapproche = BigDecimal.ZERO;
+    private long facturesMisesAJour;
+    private long lignesDebit;          // Sorties d'argent : ignorées
+    private long lignesDejaImportees;  // Opération bancaire déjà enregistrée sur la facture
+    private long lignesNonRapprochees;
+    private long lignesIgnorees;       // Lignes illisibles
+    private long dureeMs;
+    // Limités aux premières lignes pour garder une réponse de taille raisonnable
+    private List<String> nonRapprochees = new ArrayList<>();
+    private List<String> erreurs = new ArrayList<>();
+}
@@ -9,7 +9,9 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = {
+        @Index(name = "idx_documents_blob_sha256", columnList = "blob_sha256")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -28,6 +30,17 @@ public class Document {
     @Column(nullable = false)
     private String typeFichier;
 
+    // Contenu dédupliqué (BlobStore) ; null pour les fichiers déposés avant le stockage par empreinte
+    @Column(name = "blob_sha256", length = 64)
+    private String blobSha256;
+
+    @Column
+    private Long taille;
+
+    // Type réel reconnu au dépôt (octets magiques), ex : application/pdf
+    @Column(name = "type_mime", length = 100)
+    private String typeMime;
+
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
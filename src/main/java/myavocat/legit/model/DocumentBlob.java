@@ -0,0 +1,40 @@
+package myavocat.legit.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Contenu d'un fichier stocké une seule fois, identifié par son empreinte SHA-256 (voir BlobStore).
+ * nbReferences compte les documents qui pointent vers ce contenu : à zéro, le fichier est supprimé.
+ */
+@Entity
+@Table(name = "document_blobs")
+@Getter
+@Setter
+@NoArgsConstructor
+public class DocumentBlob {
+
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(nullable = false)
+    private long taille;
+
+    @Column(name = "nb_references", nullable = false)
+    private int nbReferences;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public DocumentBlob(String sha256, long taille) {
+        this.sha256 = sha256;
+        this.taille = taille;
+        this.nbReferences = 1;
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,54 @@
+package myavocat.legit.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Texte extrait d'un document pour la recherche plein texte (voir DocumentIndexationService).
+ * empreinte identifie la version du fichier indexée (SHA-256 du contenu, ou taille + date pour les anciens
+ * fichiers) : un document n'est réindexé que si elle change. Sur PostgreSQL, search_vector est calculé
+ * par trigger (voir PostgresSchemaInitializer).
+ */
+@Entity
+@Table(name = "documents_textes", indexes = {
+        @Index(name = "idx_documents_textes_empreinte", columnList = "empreinte")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class DocumentTexte {
+
+    public enum Statut {
+        INDEXE,
+        // Fichier illisible ou type sans texte : non retenté tant que le fichier ne change pas
+        ECHEC
+    }
+
+    @Id
+    @Column(name = "document_id")
+    private UUID documentId;
+
+    @Column(nullable = false, length = 80)
+    private String empreinte;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Statut statut;
+
+    @Column(columnDefinition = "TEXT")
+    private String contenu;
+
+    @Column(name = "nb_pages")
+    private Integer nbPages;
+
+    @Column(length = 500)
+    private String erreur;
+
+    @Column(name = "indexe_at", nullable = false)
+    private LocalDateTime indexeAt;
+}
@@ -17,7 +17,10 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "dossiers")
+@Table(name = "dossiers", indexes = {
+        // Liste paginée par cabinet, triée par date de création (keyset)
+        @Index(name = "idx_dossiers_office_created", columnList = "office_id, created_at, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
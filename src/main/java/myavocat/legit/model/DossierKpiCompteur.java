@@ -0,0 +1,40 @@
+package myavocat.legit.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Compteurs de dossiers par cabinet, maintenus à chaque création / suppression / changement de statut.
+ * Permet de servir les KPI du tableau de bord sans parcourir la table dossiers.
+ */
+@Entity
+@Table(name = "dossier_kpi_compteurs")
+@Getter
+@Setter
+@NoArgsConstructor
+public class DossierKpiCompteur {
+
+    @Id
+    @Column(name = "office_id")
+    private UUID officeId;
+
+    @Column(nullable = false)
+    private long total;
+
+    @Column(name = "en_cours", nullable = false)
+    private long enCours;
+
+    @Column(name = "en_attente", nullable = false)
+    private long enAttente;
+
+    @Column(nullable = false)
+    private long termines;
+
+    @Column(name = "recalcule_at")
+    private LocalDateTime recalculeAt;
+}
@@ -0,0 +1,41 @@
+package myavocat.legit.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Nombre de dossiers créés par jour et par cabinet.
+ * Les fenêtres jour / semaine / mois / année se calculent en sommant au plus ~370 lignes.
+ */
+@Entity
+@Table(name = "dossier_kpi_jours",
+        uniqueConstraints = @UniqueConstraint(name = "uk_dossier_kpi_jours_office_jour", columnNames = {"office_id", "jour"}))
+@Getter
+@Setter
+@NoArgsConstructor
+public class DossierKpiJour {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    @Column(name = "office_id", nullable = false)
+    private UUID officeId;
+
+    @Column(nullable = false)
+    private LocalDate jour;
+
+    @Column(nullable = false)
+    private long nombre;
+
+    public DossierKpiJour(UUID officeId, LocalDate jour, long nombre) {
+        this.officeId = officeId;
+        this.jour = jour;
+        this.nombre = nombre;
+    }
+}
@@ -3,6 +3,7 @@ package myavocat.legit.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -13,7 +14,11 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@Table(name = "factures")
+@Table(name = "factures", indexes = {
+        // KPI bornés par date d'émission et par statut
+        @Index(name = "idx_factures_date_emission", columnList = "date_emission"),
+        @Index(name = "idx_factures_statut_paiement", columnList = "statut_paiement")
+})
 public class Facture {
 
     @Id
@@ -50,6 +55,11 @@ public class Facture {
     @Column(nullable = false, precision = 10, scale = 2)
     private BigDecimal montantReclame; // Montant réclamé (= montantTtc par défaut)
 
+    // Somme des paiements, maintenue par PaiementService (et recalculée par FactureReparationService)
+    @ColumnDefault("0")
+    @Column(name = "montant_regle", nullable = false, precision = 10, scale = 2)
+    private BigDecimal montantRegle = BigDecimal.ZERO;
+
     // 🔥 RELATION AVEC LES PAIEMENTS (One-to-Many)
     @OneToMany(mappedBy = "facture", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Paiement> paiements = new ArrayList<>();
@@ -98,12 +108,18 @@ public class Facture {
     // 🔥 MÉTHODES CALCULÉES POUR LES PAIEMENTS
 
     /**
-     * Calcule le montant total réglé TTC à partir de tous les paiements
+     * Montant total réglé TTC (valeur persistée, sans parcourir les paiements)
      */
     public BigDecimal getMontantRegleTtc() {
-        return paiements.stream()
-                .map(Paiement::getMontant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return montantRegle != null ? montantRegle : BigDecimal.ZERO;
+    }
+
+    /**
+     * Applique la variation d'un paiement (ajout, modification ou suppression) et met à jour le statut
+     */
+    public void appliquerPaiement(BigDecimal delta) {
+        this.montantRegle = getMontantRegleTtc().add(delta);
+        updateStatutPaiement();
     }
 
     /**
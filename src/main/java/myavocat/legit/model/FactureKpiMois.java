@@ -0,0 +1,56 @@
+package myavocat.legit.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Agrégats mensuels des factures par cabinet (mois = date d'émission, premier jour du mois).
+ * Maintenus à chaque création de facture, changement de montant réclamé et paiement :
+ * les tableaux de bord lisent quelques lignes au lieu de parcourir tout l'historique.
+ */
+@Entity
+@Table(name = "facture_kpi_mois",
+        uniqueConstraints = @UniqueConstraint(name = "uk_facture_kpi_mois_office_mois", columnNames = {"office_id", "mois"}))
+@Getter
+@Setter
+@NoArgsConstructor
+public class FactureKpiMois {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    @Column(name = "office_id", nullable = false)
+    private UUID officeId;
+
+    @Column(nullable = false)
+    private LocalDate mois;
+
+    @Column(nullable = false)
+    private long nombre;
+
+    @Column(name = "nombre_payees", nullable = false)
+    private long nombrePayees;
+
+    @Column(name = "montant_reclame", nullable = false, precision = 14, scale = 2)
+    private BigDecimal montantReclame = BigDecimal.ZERO;
+
+    @Column(name = "montant_regle", nullable = false, precision = 14, scale = 2)
+    private BigDecimal montantRegle = BigDecimal.ZERO;
+
+    public FactureKpiMois(UUID officeId, LocalDate mois, long nombre, long nombrePayees,
+                          BigDecimal montantReclame, BigDecimal montantRegle) {
+        this.officeId = officeId;
+        this.mois = mois;
+        this.nombre = nombre;
+        this.nombrePayees = nombrePayees;
+        this.montantReclame = montantReclame;
+        this.montantRegle = montantRegle;
+    }
+}
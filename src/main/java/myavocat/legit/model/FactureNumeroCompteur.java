@@ -0,0 +1,44 @@
+package myavocat.legit.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Compteur de numérotation des factures par (préfixe, année), ex : "AI-2026".
+ * dernierNumero est le dernier numéro réservé (les blocs sont alloués par FactureNumeroService).
+ */
+@Entity
+@Table(name = "facture_numero_compteurs")
+@Getter
+@Setter
+@NoArgsConstructor
+public class FactureNumeroCompteur {
+
+    @Id
+    @Column(length = 30)
+    private String cle;
+
+    @Column(nullable = false, length = 20)
+    private String prefixe;
+
+    @Column(nullable = false)
+    private int annee;
+
+    @Column(name = "dernier_numero", nullable = false)
+    private long dernierNumero;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public FactureNumeroCompteur(String prefixe, int annee, long dernierNumero) {
+        this.cle = prefixe + "-" + annee;
+        this.prefixe = prefixe;
+        this.annee = annee;
+        this.dernierNumero = dernierNumero;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -12,7 +12,12 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@Table(name = "paiements")
+@Table(name = "paiements", indexes = {
+        // Opérations bancaires déjà importées (RapprochementBancaireService)
+        @Index(name = "idx_paiements_reference", columnList = "reference"),
+        // Séries d'encaissements d'un cabinet, sans joindre factures et dossiers
+        @Index(name = "idx_paiements_office_date", columnList = "office_id, date_paiement")
+})
 public class Paiement {
 
     @Id
@@ -23,6 +28,10 @@ public class Paiement {
     @JoinColumn(name = "facture_id", nullable = false)
     private Facture facture; // Relation Many-to-One vers Facture
 
+    // Cabinet de la facture, recopié à l'insertion (les dossiers ne changent pas de cabinet)
+    @Column(name = "office_id")
+    private UUID officeId;
+
     @Column(nullable = false, precision = 10, scale = 2)
     private BigDecimal montant; // Montant du paiement
 
@@ -66,6 +75,10 @@ public class Paiement {
     public void prePersist() {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
+
+        if (this.officeId == null && facture != null && facture.getDossier() != null) {
+            this.officeId = facture.getDossier().getOffice().getId();
+        }
     }
 
     @PreUpdate
@@ -0,0 +1,67 @@
+package myavocat.legit.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Journal des relances de factures impayées.
+ * La clé d'idempotence "factureId:niveau" est unique : une relance d'un niveau donné n'est réservée qu'une fois,
+ * avant l'envoi, et ne peut donc jamais partir deux fois.
+ */
+@Entity
+@Table(name = "relances_factures", indexes = {
+        @Index(name = "idx_relances_factures_facture", columnList = "facture_id"),
+        @Index(name = "idx_relances_factures_office_statut", columnList = "office_id, statut")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class RelanceFacture {
+
+    public static final String EN_COURS = "EN_COURS";
+    public static final String ENVOYEE = "ENVOYEE";
+    public static final String ECHEC = "ECHEC";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    @Column(name = "cle", nullable = false, unique = true, length = 60)
+    private String cle;
+
+    @Column(name = "facture_id", nullable = false)
+    private UUID factureId;
+
+    @Column(name = "office_id", nullable = false)
+    private UUID officeId;
+
+    @Column(nullable = false)
+    private int niveau; // 1 : à l'échéance, 2 : + 15 jours, 3 : + 30 jours
+
+    @Column(nullable = false, length = 255)
+    private String destinataire;
+
+    @Column(nullable = false, length = 20)
+    private String statut = EN_COURS;
+
+    @Column(nullable = false)
+    private int tentatives = 1;
+
+    @Column(length = 500)
+    private String erreur;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "envoyee_at")
+    private LocalDateTime envoyeeAt;
+
+    public static String cle(UUID factureId, int niveau) {
+        return factureId + ":" + niveau;
+    }
+}
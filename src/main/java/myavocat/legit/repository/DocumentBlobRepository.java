@@ -0,0 +1,34 @@
+package myavocat.legit.repository;
+
+import myavocat.legit.model.DocumentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface DocumentBlobRepository extends JpaRepository<DocumentBlob, String> {
+
+    /**
+     * Ajoute une référence à un contenu existant (0 si le contenu n'est pas encore enregistré)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DocumentBlob b SET b.nbReferences = b.nbReferences + 1 WHERE b.sha256 = :sha256")
+    int ajouterReference(@Param("sha256") String sha256);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE DocumentBlob b SET b.nbReferences = b.nbReferences - 1 WHERE b.sha256 = :sha256 AND b.nbReferences > 0")
+    int retirerReference(@Param("sha256") String sha256);
+
+    /**
+     * Supprime la ligne si plus aucun document ne pointe vers ce contenu (1 si supprimée)
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DocumentBlob b WHERE b.sha256 = :sha256 AND b.nbReferences = 0")
+    int supprimerSiOrphelin(@Param("sha256") String sha256);
+}
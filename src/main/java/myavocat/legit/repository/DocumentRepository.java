@@ -1,12 +1,17 @@
 package myavocat.legit.repository;
 
+import myavocat.legit.dto.DocumentArchiveDTO;
+import myavocat.legit.dto.DocumentSummaryDTO;
 import myavocat.legit.model.Document;
 import myavocat.legit.model.Dossier;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -15,4 +20,34 @@ public interface DocumentRepository extends JpaRepository<Document, UUID> {
     List<Document> findByDossierId(UUID dossierId);
     List<Document> findByUploadedById(UUID userId);
 
+    // 🔥 LISTES PAGINÉES : projection en une requête (tri appliqué par Spring Data sur l'alias d)
+
+    String SUMMARY_SELECT = "SELECT new myavocat.legit.dto.DocumentSummaryDTO(" +
+            "d.id, d.nomFichier, d.typeFichier, d.typeMime, d.taille, d.blobSha256, d.createdAt, " +
+            "d.dossier.id, u.id, u.nom, u.prenom) " +
+            "FROM Document d LEFT JOIN d.uploadedBy u ";
+
+    @Query(SUMMARY_SELECT + "WHERE d.dossier.id = :dossierId AND d.dossier.office.id = :officeId")
+    Slice<DocumentSummaryDTO> findSummariesByDossier(@Param("dossierId") UUID dossierId, @Param("officeId") UUID officeId,
+                                                     Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE u.id = :userId AND d.dossier.office.id = :officeId")
+    Slice<DocumentSummaryDTO> findSummariesByUploader(@Param("userId") UUID userId, @Param("officeId") UUID officeId,
+                                                      Pageable pageable);
+
+    /**
+     * Documents d'un dossier à archiver (type et période de dépôt optionnels ;
+     * sans période, les anciens documents sans date de dépôt sont inclus)
+     */
+    @Query("SELECT new myavocat.legit.dto.DocumentArchiveDTO(" +
+            "d.id, d.nomFichier, d.typeFichier, d.typeMime, d.blobSha256, d.cheminFichier, d.createdAt) " +
+            "FROM Document d WHERE d.dossier.id = :dossierId " +
+            "AND (:typeFichier IS NULL OR d.typeFichier = :typeFichier) " +
+            "AND ((d.createdAt >= :debut AND d.createdAt < :fin) OR (d.createdAt IS NULL AND :sansPeriode = true)) " +
+            "ORDER BY d.typeFichier, d.createdAt, d.id")
+    List<DocumentArchiveDTO> findPourArchive(@Param("dossierId") UUID dossierId,
+                                             @Param("typeFichier") String typeFichier,
+                                             @Param("debut") LocalDateTime debut,
+                                             @Param("fin") LocalDateTime fin,
+                                             @Param("sansPeriode") boolean sansPeriode);
 }
@@ -0,0 +1,26 @@
+package myavocat.legit.repository;
+
+import myavocat.legit.model.DocumentTexte;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface DocumentTexteRepository extends JpaRepository<DocumentTexte, UUID> {
+
+    /**
+     * Texte déjà extrait pour le même contenu (document dédupliqué) : réutilisé sans relire le fichier
+     */
+    Optional<DocumentTexte> findFirstByEmpreinteAndStatutAndDocumentIdNot(String empreinte, DocumentTexte.Statut statut, UUID documentId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DocumentTexte t WHERE t.documentId = :documentId")
+    int supprimerPourDocument(@Param("documentId") UUID documentId);
+}
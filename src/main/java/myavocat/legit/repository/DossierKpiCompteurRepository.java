@@ -0,0 +1,29 @@
+package myavocat.legit.repository;
+
+import myavocat.legit.model.DossierKpiCompteur;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface DossierKpiCompteurRepository extends JpaRepository<DossierKpiCompteur, UUID> {
+
+    /**
+     * Applique des deltas aux compteurs d'un cabinet en une seule mise à jour (verrou de ligne)
+     */
+    @Modifying
+    @Query("UPDATE DossierKpiCompteur c SET c.total = c.total + :dTotal, " +
+            "c.enCours = c.enCours + :dEnCours, " +
+            "c.enAttente = c.enAttente + :dEnAttente, " +
+            "c.termines = c.termines + :dTermines " +
+            "WHERE c.officeId = :officeId")
+    int appliquerDeltas(@Param("officeId") UUID officeId,
+                        @Param("dTotal") long dTotal,
+                        @Param("dEnCours") long dEnCours,
+                        @Param("dEnAttente") long dEnAttente,
+                        @Param("dTermines") long dTermines);
+}
@@ -0,0 +1,59 @@
+package myavocat.legit.repository;
+
+import myavocat.legit.model.DossierKpiJour;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface DossierKpiJourRepository extends JpaRepository<DossierKpiJour, UUID> {
+
+    @Modifying
+    @Query("UPDATE DossierKpiJour j SET j.nombre = j.nombre + :delta WHERE j.officeId = :officeId AND j.jour = :jour")
+    int incrementer(@Param("officeId") UUID officeId, @Param("jour") LocalDate jour, @Param("delta") long delta);
+
+    /**
+     * Ajoute delta au jour, en créant la ligne si besoin (une seule instruction : pas de doublon
+     * quand deux transactions créent en même temps le premier dossier du jour)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO dossier_kpi_jours (id, office_id, jour, nombre) VALUES (:id, :officeId, :jour, :delta) " +
+            "ON CONFLICT (office_id, jour) DO UPDATE SET nombre = dossier_kpi_jours.nombre + EXCLUDED.nombre",
+            nativeQuery = true)
+    int ajouterPostgres(@Param("id") UUID id, @Param("officeId") UUID officeId, @Param("jour") LocalDate jour, @Param("delta") long delta);
+
+    // Autres bases (H2 en test) : MERGE standard
+    @Modifying
+    @Query(value = "MERGE INTO dossier_kpi_jours j " +
+            "USING (SELECT CAST(:id AS UUID) AS id, CAST(:officeId AS UUID) AS office_id, CAST(:jour AS DATE) AS jour, CAST(:delta AS BIGINT) AS nombre) s " +
+            "ON j.office_id = s.office_id AND j.jour = s.jour " +
+            "WHEN MATCHED THEN UPDATE SET nombre = j.nombre + s.nombre " +
+            "WHEN NOT MATCHED THEN INSERT (id, office_id, jour, nombre) VALUES (s.id, s.office_id, s.jour, s.nombre)",
+            nativeQuery = true)
+    int ajouterMerge(@Param("id") UUID id, @Param("officeId") UUID officeId, @Param("jour") LocalDate jour, @Param("delta") long delta);
+
+    @Modifying
+    @Query("DELETE FROM DossierKpiJour j WHERE j.officeId = :officeId")
+    void deleteByOfficeId(@Param("officeId") UUID officeId);
+
+    /**
+     * Créations depuis le début du jour, de la semaine, du mois et de l'année (une seule lecture bornée)
+     */
+    @Query("SELECT COALESCE(SUM(j.nombre) FILTER (WHERE j.jour >= :debutJour), 0), " +
+            "COALESCE(SUM(j.nombre) FILTER (WHERE j.jour >= :debutSemaine), 0), " +
+            "COALESCE(SUM(j.nombre) FILTER (WHERE j.jour >= :debutMois), 0), " +
+            "COALESCE(SUM(j.nombre) FILTER (WHERE j.jour >= :debutAnnee), 0) " +
+            "FROM DossierKpiJour j WHERE j.officeId = :officeId AND j.jour >= :depuis")
+    List<Object[]> sommesParFenetre(@Param("officeId") UUID officeId,
+                                    @Param("debutJour") LocalDate debutJour,
+                                    @Param("debutSemaine") LocalDate debutSemaine,
+                                    @Param("debutMois") LocalDate debutMois,
+                                    @Param("debutAnnee") LocalDate debutAnnee,
+                                    @Param("depuis") LocalDate depuis);
+}
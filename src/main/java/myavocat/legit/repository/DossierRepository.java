@@ -1,13 +1,20 @@
 package myavocat.legit.repository;
 
+import myavocat.legit.dto.DossierPartieRowDTO;
+import myavocat.legit.dto.DossierRowDTO;
+import myavocat.legit.dto.DossierSummaryDTO;
 import myavocat.legit.model.Client;
 import myavocat.legit.model.Dossier;
 import myavocat.legit.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -22,8 +29,112 @@ public interface DossierRepository extends JpaRepository<Dossier, UUID> {
     List<Dossier> findByClientAndAvocat(Client client, User avocat);
     List<Dossier> findByClientsContainingAndAvocat(Client client, User avocat);
 
+    // 🔥 LISTE PAGINÉE PAR CURSEUR (keyset sur createdAt DESC, id DESC)
+    // S'appuie sur l'index idx_dossiers_office_created (office_id, created_at, id)
+    // Tri sur COALESCE(createdAt, 01/01/1970) : un dossier sans createdAt (ancienne donnée) arrive en fin de liste
+    // et donne quand même un curseur valide
 
+    LocalDateTime CREATED_AT_ABSENT = LocalDateTime.of(1970, 1, 1, 0, 0);
+    String CREATED_AT_TRI = "COALESCE(d.createdAt, {ts '1970-01-01 00:00:00'})";
 
+    String SUMMARY_SELECT = "SELECT new myavocat.legit.dto.DossierSummaryDTO(" +
+            "d.id, d.reference, d.nomDossier, d.typeAffaire, d.statut, d.qualiteProcedurale, " +
+            "d.dateContentieux, d.createdAt, d.office.id, a.id, a.nom, a.prenom, c.id, c.nom, c.prenom) " +
+            "FROM Dossier d JOIN d.avocat a LEFT JOIN d.client c " +
+            "WHERE d.office.id = :officeId " +
+            "AND (:statut IS NULL OR d.statut = :statut) " +
+            "AND (:typeAffaire IS NULL OR d.typeAffaire = :typeAffaire) " +
+            "AND (:avocatId IS NULL OR a.id = :avocatId) ";
 
+    /**
+     * Première page des dossiers d'un cabinet, du plus récent au plus ancien
+     */
+    @Query(SUMMARY_SELECT + "ORDER BY " + CREATED_AT_TRI + " DESC, d.id DESC")
+    List<DossierSummaryDTO> findSummariesByOffice(@Param("officeId") UUID officeId,
+                                                  @Param("statut") String statut,
+                                                  @Param("typeAffaire") String typeAffaire,
+                                                  @Param("avocatId") UUID avocatId,
+                                                  Pageable pageable);
 
+    /**
+     * Page suivante : dossiers strictement après le curseur (createdAt, id)
+     */
+    @Query(SUMMARY_SELECT +
+            "AND (" + CREATED_AT_TRI + " < :cursorCreatedAt " +
+            "OR (" + CREATED_AT_TRI + " = :cursorCreatedAt AND d.id < :cursorId)) " +
+            "ORDER BY " + CREATED_AT_TRI + " DESC, d.id DESC")
+    List<DossierSummaryDTO> findSummariesByOfficeAfter(@Param("officeId") UUID officeId,
+                                                       @Param("statut") String statut,
+                                                       @Param("typeAffaire") String typeAffaire,
+                                                       @Param("avocatId") UUID avocatId,
+                                                       @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                                       @Param("cursorId") UUID cursorId,
+                                                       Pageable pageable);
+
+    // 🔥 AGRÉGATS KPI (utilisés pour (re)construire les compteurs d'un cabinet)
+
+    /**
+     * Total et répartition par statut des dossiers d'un cabinet, en une seule requête
+     */
+    @Query("SELECT COUNT(d), " +
+            "COUNT(d) FILTER (WHERE d.statut = :enCours), " +
+            "COUNT(d) FILTER (WHERE d.statut = :enAttente), " +
+            "COUNT(d) FILTER (WHERE d.statut = :termine) " +
+            "FROM Dossier d WHERE d.office.id = :officeId")
+    List<Object[]> countKpiByOffice(@Param("officeId") UUID officeId,
+                                    @Param("enCours") String enCours,
+                                    @Param("enAttente") String enAttente,
+                                    @Param("termine") String termine);
+
+    /**
+     * Nombre de dossiers créés par jour depuis une date donnée
+     */
+    @Query("SELECT CAST(d.createdAt AS LocalDate), COUNT(d) FROM Dossier d " +
+            "WHERE d.office.id = :officeId AND d.createdAt >= :depuis " +
+            "GROUP BY CAST(d.createdAt AS LocalDate)")
+    List<Object[]> countCreationsParJour(@Param("officeId") UUID officeId,
+                                         @Param("depuis") LocalDateTime depuis);
+
+    // 🔥 PROJECTIONS DOSSIERDTO (nombre de requêtes constant, quel que soit le nombre de dossiers)
+
+    /**
+     * Ligne de dossier : champs propres, office, avocat, client et adversaire principaux (voir DossierRowDTO)
+     */
+    String DOSSIER_ROW_SELECT = "SELECT new myavocat.legit.dto.DossierRowDTO(" +
+            "d.id, d.reference, d.nomDossier, d.typeAffaire, d.dateContentieux, d.statut, " +
+            "d.qualiteProcedurale, d.contentieux, d.createdAt, d.office.id, " +
+            "a.id, a.nom, a.prenom, a.email, " +
+            "c.id, c.nom, c.prenom, c.email, " +
+            "adv.id, adv.nom, adv.prenom, adv.email) " +
+            "FROM Dossier d LEFT JOIN d.avocat a LEFT JOIN d.client c LEFT JOIN d.adversaire adv ";
+
+    /**
+     * Tous les dossiers d'un cabinet, du plus récent au plus ancien (dates nulles en dernier)
+     */
+    @Query(DOSSIER_ROW_SELECT + "WHERE d.office.id = :officeId ORDER BY d.createdAt DESC NULLS LAST, d.id DESC")
+    List<DossierRowDTO> findDossierRowsByOffice(@Param("officeId") UUID officeId);
+
+    @Query(DOSSIER_ROW_SELECT + "WHERE d.id = :dossierId")
+    List<DossierRowDTO> findDossierRowById(@Param("dossierId") UUID dossierId);
+
+    /**
+     * Clients (relation Many-to-Many) d'un lot de dossiers
+     */
+    @Query("SELECT new myavocat.legit.dto.DossierPartieRowDTO(d.id, c.id, c.nom, c.prenom, c.email, c.telephone, c.type, c.qualite) " +
+            "FROM Dossier d JOIN d.clients c WHERE d.id IN :dossierIds")
+    List<DossierPartieRowDTO> findClientRowsByDossierIds(@Param("dossierIds") Collection<UUID> dossierIds);
+
+    /**
+     * Adversaires (relation Many-to-Many) d'un lot de dossiers
+     */
+    @Query("SELECT new myavocat.legit.dto.DossierPartieRowDTO(d.id, adv.id, adv.nom, adv.prenom, adv.email, adv.telephone, adv.type, adv.qualite) " +
+            "FROM Dossier d JOIN d.adversaires adv WHERE d.id IN :dossierIds")
+    List<DossierPartieRowDTO> findAdversaireRowsByDossierIds(@Param("dossierIds") Collection<UUID> dossierIds);
+
+    /**
+     * Dossiers d'un cabinet avec leurs relations et la liste des clients chargées en une seule requête
+     */
+    @EntityGraph(attributePaths = {"avocat", "client", "adversaire", "office", "clients"})
+    @Query("SELECT DISTINCT d FROM Dossier d WHERE d.office.id = :officeId")
+    List<Dossier> findWithClientsByOfficeId(@Param("officeId") UUID officeId);
 }
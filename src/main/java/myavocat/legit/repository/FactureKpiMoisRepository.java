@@ -0,0 +1,76 @@
+package myavocat.legit.repository;
+
+import myavocat.legit.model.FactureKpiMois;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface FactureKpiMoisRepository extends JpaRepository<FactureKpiMois, UUID> {
+
+    boolean existsByOfficeId(UUID officeId);
+
+    Optional<FactureKpiMois> findByOfficeIdAndMois(UUID officeId, LocalDate mois);
+
+    List<FactureKpiMois> findByOfficeIdAndMoisGreaterThanEqualOrderByMoisAsc(UUID officeId, LocalDate depuis);
+
+    /**
+     * Applique des deltas au mois, en créant la ligne si besoin (une seule instruction : pas de doublon
+     * quand deux transactions enregistrent en même temps la première facture ou le premier paiement du mois).
+     * payeesInitial : nombre de factures payées d'une ligne créée (jamais négatif)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO facture_kpi_mois (id, office_id, mois, nombre, nombre_payees, montant_reclame, montant_regle) " +
+            "VALUES (:id, :officeId, :mois, :dNombre, :payeesInitial, :dReclame, :dRegle) " +
+            "ON CONFLICT (office_id, mois) DO UPDATE SET nombre = facture_kpi_mois.nombre + :dNombre, " +
+            "nombre_payees = facture_kpi_mois.nombre_payees + :dPayees, " +
+            "montant_reclame = facture_kpi_mois.montant_reclame + :dReclame, " +
+            "montant_regle = facture_kpi_mois.montant_regle + :dRegle",
+            nativeQuery = true)
+    int appliquerDeltasPostgres(@Param("id") UUID id,
+                                @Param("officeId") UUID officeId,
+                                @Param("mois") LocalDate mois,
+                                @Param("dNombre") long dNombre,
+                                @Param("dPayees") long dPayees,
+                                @Param("payeesInitial") long payeesInitial,
+                                @Param("dReclame") BigDecimal dReclame,
+                                @Param("dRegle") BigDecimal dRegle);
+
+    // Autres bases (H2 en test) : MERGE standard
+    @Modifying
+    @Query(value = "MERGE INTO facture_kpi_mois m " +
+            "USING (SELECT CAST(:id AS UUID) AS id, CAST(:officeId AS UUID) AS office_id, CAST(:mois AS DATE) AS mois) s " +
+            "ON m.office_id = s.office_id AND m.mois = s.mois " +
+            "WHEN MATCHED THEN UPDATE SET nombre = m.nombre + :dNombre, nombre_payees = m.nombre_payees + :dPayees, " +
+            "montant_reclame = m.montant_reclame + :dReclame, montant_regle = m.montant_regle + :dRegle " +
+            "WHEN NOT MATCHED THEN INSERT (id, office_id, mois, nombre, nombre_payees, montant_reclame, montant_regle) " +
+            "VALUES (s.id, s.office_id, s.mois, :dNombre, :payeesInitial, :dReclame, :dRegle)",
+            nativeQuery = true)
+    int appliquerDeltasMerge(@Param("id") UUID id,
+                             @Param("officeId") UUID officeId,
+                             @Param("mois") LocalDate mois,
+                             @Param("dNombre") long dNombre,
+                             @Param("dPayees") long dPayees,
+                             @Param("payeesInitial") long payeesInitial,
+                             @Param("dReclame") BigDecimal dReclame,
+                             @Param("dRegle") BigDecimal dRegle);
+
+    @Modifying
+    @Query("DELETE FROM FactureKpiMois m WHERE m.officeId = :officeId")
+    void deleteByOfficeId(@Param("officeId") UUID officeId);
+
+    /**
+     * Totaux d'un cabinet sur tout l'historique : nombre, montant réclamé, montant réglé
+     */
+    @Query("SELECT COALESCE(SUM(m.nombre), 0), COALESCE(SUM(m.montantReclame), 0), COALESCE(SUM(m.montantRegle), 0) " +
+            "FROM FactureKpiMois m WHERE m.officeId = :officeId")
+    List<Object[]> totauxByOffice(@Param("officeId") UUID officeId);
+}
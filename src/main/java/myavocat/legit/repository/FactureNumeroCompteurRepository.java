@@ -0,0 +1,25 @@
+package myavocat.legit.repository;
+
+import myavocat.legit.model.FactureNumeroCompteur;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface FactureNumeroCompteurRepository extends JpaRepository<FactureNumeroCompteur, String> {
+
+    /**
+     * Réserve un bloc de numéros : l'UPDATE pose un verrou de ligne jusqu'à la fin de la transaction
+     */
+    @Modifying
+    @Query("UPDATE FactureNumeroCompteur c SET c.dernierNumero = c.dernierNumero + :taille, c.updatedAt = :now " +
+            "WHERE c.cle = :cle")
+    int reserverBloc(@Param("cle") String cle, @Param("taille") long taille, @Param("now") LocalDateTime now);
+
+    @Query("SELECT c.dernierNumero FROM FactureNumeroCompteur c WHERE c.cle = :cle")
+    Long findDernierNumero(@Param("cle") String cle);
+}
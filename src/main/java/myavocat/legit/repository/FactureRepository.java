@@ -1,22 +1,30 @@
 package myavocat.legit.repository;
 
+import myavocat.legit.dto.FacturePdfDTO;
 import myavocat.legit.model.Facture;
+import myavocat.legit.model.StatutPaiement;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface FactureRepository extends JpaRepository<Facture, UUID> {
 
     /**
-     * Récupérer la dernière facture d'un client en fonction du modèle "AI001"
+     * Numéros de facture correspondant à un préfixe (ex : "AI-2026-%"), utilisé une seule fois
+     * pour initialiser le compteur de numérotation d'un préfixe
      */
-    @Query("SELECT f.numeroFacture FROM Facture f WHERE f.numeroFacture LIKE :pattern ORDER BY f.numeroFacture DESC LIMIT 1")
-    String findLastFactureByClient(@Param("pattern") String pattern);
-
+    @Query("SELECT f.numeroFacture FROM Facture f WHERE f.numeroFacture LIKE :pattern")
+    List<String> findNumerosByPattern(@Param("pattern") String pattern);
 
     List<Facture> findByDossierId(UUID dossierId);
 
@@ -56,5 +64,115 @@ public interface FactureRepository extends JpaRepository<Facture, UUID> {
     @Query("SELECT f FROM Facture f WHERE f.id = :id AND f.dossier.office.id = :officeId")
     Facture findByIdAndOffice(@Param("id") UUID id, @Param("officeId") UUID officeId);
 
+    /**
+     * Charger une facture en posant un verrou de ligne (mises à jour concurrentes du montant réglé)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM Facture f WHERE f.id = :id")
+    Optional<Facture> findByIdForUpdate(@Param("id") UUID id);
+
+    // 🔥 RÉPARATION DU MONTANT RÉGLÉ
+
+    /**
+     * Factures dont le montant réglé persisté ne correspond plus à la somme des paiements
+     */
+    @Query("SELECT f.id FROM Facture f WHERE f.montantRegle <> " +
+            "COALESCE((SELECT SUM(p.montant) FROM Paiement p WHERE p.facture = f), 0)")
+    List<UUID> findIdsMontantRegleIncoherent();
+
+    /**
+     * Recalcule en une requête le montant réglé d'un lot de factures
+     */
+    @Modifying
+    @Query("UPDATE Facture f SET f.montantRegle = " +
+            "COALESCE((SELECT SUM(p.montant) FROM Paiement p WHERE p.facture = f), 0) " +
+            "WHERE f.id IN :ids")
+    int recalculerMontantRegle(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Recalcule en une requête le statut d'un lot de factures à partir du montant réglé (les factures annulées restent annulées)
+     */
+    @Modifying
+    @Query("UPDATE Facture f SET f.statutPaiement = CASE " +
+            "WHEN f.montantRegle >= f.montantReclame THEN myavocat.legit.model.StatutPaiement.REGLEE " +
+            "WHEN f.montantRegle > 0 THEN myavocat.legit.model.StatutPaiement.PARTIELLEMENT_REGLEE " +
+            "ELSE myavocat.legit.model.StatutPaiement.ATTENTE_REGLEMENT END " +
+            "WHERE f.id IN :ids AND f.statutPaiement <> myavocat.legit.model.StatutPaiement.ANNULEE")
+    int recalculerStatutPaiement(@Param("ids") Collection<UUID> ids);
+
+    // 🔥 AGRÉGATS KPI (calculés en base, une requête par tableau de bord)
+
+    /**
+     * Totaux d'un cabinet sur tout l'historique : nombre, montant réclamé, montant réglé
+     */
+    @Query("SELECT COUNT(f), COALESCE(SUM(f.montantReclame), 0), COALESCE(SUM(f.montantRegle), 0) " +
+            "FROM Facture f WHERE f.dossier.office.id = :officeId")
+    List<Object[]> totauxByOffice(@Param("officeId") UUID officeId);
+
+    /**
+     * KPI du tableau de bord en une lecture :
+     * 0 réclamé du mois, 1 réclamé de la semaine, 2 restant dû des factures en attente,
+     * 3 nombre du mois, 4 nombre payées du mois, 5 réglé du mois
+     */
+    @Query("SELECT COALESCE(SUM(f.montantReclame) FILTER (WHERE f.dateEmission > :debutMois), 0), " +
+            "COALESCE(SUM(f.montantReclame) FILTER (WHERE f.dateEmission > :debutSemaine), 0), " +
+            "COALESCE(SUM(f.montantReclame - f.montantRegle) FILTER (WHERE f.statutPaiement = :attente), 0), " +
+            "COUNT(f) FILTER (WHERE f.dateEmission > :debutMois), " +
+            "COUNT(f) FILTER (WHERE f.dateEmission > :debutMois AND f.montantRegle >= f.montantReclame), " +
+            "COALESCE(SUM(f.montantRegle) FILTER (WHERE f.dateEmission > :debutMois), 0) " +
+            "FROM Facture f WHERE f.dossier.office.id = :officeId")
+    List<Object[]> kpiByOffice(@Param("officeId") UUID officeId,
+                               @Param("debutMois") LocalDateTime debutMois,
+                               @Param("debutSemaine") LocalDateTime debutSemaine,
+                               @Param("attente") StatutPaiement attente);
+
+    /**
+     * Partie du tableau de bord qui ne se déduit pas des agrégats mensuels :
+     * 0 réclamé de la semaine, 1 restant dû des factures en attente (lecture bornée par date et statut)
+     */
+    @Query("SELECT COALESCE(SUM(f.montantReclame) FILTER (WHERE f.dateEmission > :debutSemaine), 0), " +
+            "COALESCE(SUM(f.montantReclame - f.montantRegle) FILTER (WHERE f.statutPaiement = :attente), 0) " +
+            "FROM Facture f WHERE f.dossier.office.id = :officeId " +
+            "AND (f.dateEmission > :debutSemaine OR f.statutPaiement = :attente)")
+    List<Object[]> kpiSemaineEtAttenteByOffice(@Param("officeId") UUID officeId,
+                                               @Param("debutSemaine") LocalDateTime debutSemaine,
+                                               @Param("attente") StatutPaiement attente);
+
+    /**
+     * Agrégats par mois d'émission (reconstruction des agrégats mensuels d'un cabinet) :
+     * année, mois, nombre, nombre payées, réclamé, réglé
+     */
+    @Query("SELECT YEAR(f.dateEmission), MONTH(f.dateEmission), COUNT(f), " +
+            "COUNT(f) FILTER (WHERE f.montantRegle >= f.montantReclame), " +
+            "COALESCE(SUM(f.montantReclame), 0), COALESCE(SUM(f.montantRegle), 0) " +
+            "FROM Facture f WHERE f.dossier.office.id = :officeId " +
+            "GROUP BY YEAR(f.dateEmission), MONTH(f.dateEmission)")
+    List<Object[]> agregatsMensuelsByOffice(@Param("officeId") UUID officeId);
+
+    // 🔥 EXPORT PDF
+
+    String PDF_SELECT = "SELECT new myavocat.legit.dto.FacturePdfDTO(" +
+            "f.id, f.numeroFacture, f.dateEmission, d.reference, c.nom, c.prenom, f.intitule, " +
+            "f.montantHt, f.tvaApplicable, f.montantTtc, f.modePaiement, f.statutPaiement) " +
+            "FROM Facture f JOIN f.dossier d JOIN f.client c ";
 
+    @Query(PDF_SELECT + "WHERE f.id = :id")
+    Optional<FacturePdfDTO> findPdfDataById(@Param("id") UUID id);
+
+    @Query(PDF_SELECT + "WHERE f.id IN :ids")
+    List<FacturePdfDTO> findPdfDataByIds(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Factures d'un cabinet à exporter (période d'émission, statut et dossier optionnels)
+     */
+    @Query("SELECT f.id FROM Facture f WHERE f.dossier.office.id = :officeId " +
+            "AND f.dateEmission >= :debut AND f.dateEmission < :fin " +
+            "AND (:statut IS NULL OR f.statutPaiement = :statut) " +
+            "AND (:dossierId IS NULL OR f.dossier.id = :dossierId) " +
+            "ORDER BY f.dateEmission, f.numeroFacture")
+    List<UUID> findIdsPourExport(@Param("officeId") UUID officeId,
+                                 @Param("debut") LocalDateTime debut,
+                                 @Param("fin") LocalDateTime fin,
+                                 @Param("statut") StatutPaiement statut,
+                                 @Param("dossierId") UUID dossierId);
 }
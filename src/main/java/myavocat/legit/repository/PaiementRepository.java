@@ -3,6 +3,7 @@ package myavocat.legit.repository;
 import myavocat.legit.model.Paiement;
 import myavocat.legit.model.ModePaiement;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -10,6 +11,7 @@ import org.springframework.stereotype.Repository;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -33,6 +35,21 @@ public interface PaiementRepository extends JpaRepository<Paiement, UUID> {
     @Query("SELECT COALESCE(SUM(p.montant), 0) FROM Paiement p WHERE p.facture.id = :factureId")
     BigDecimal sumMontantByFactureId(@Param("factureId") UUID factureId);
 
+    /**
+     * Identifiant de la facture d'un paiement (sans charger les entités)
+     */
+    @Query("SELECT p.facture.id FROM Paiement p WHERE p.id = :paiementId")
+    Optional<UUID> findFactureIdById(@Param("paiementId") UUID paiementId);
+
+    /**
+     * Renseigne le cabinet des paiements enregistrés avant l'ajout de la colonne office_id
+     */
+    @Modifying
+    @Query("UPDATE Paiement p SET p.officeId = " +
+            "(SELECT d.office.id FROM Facture f JOIN f.dossier d WHERE f.id = p.facture.id) " +
+            "WHERE p.officeId IS NULL")
+    int renseignerOfficeIdManquants();
+
     /**
      * Compter le nombre de paiements pour une facture
      */
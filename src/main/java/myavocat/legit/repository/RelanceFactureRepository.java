@@ -0,0 +1,20 @@
+package myavocat.legit.repository;
+
+import myavocat.legit.model.RelanceFacture;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface RelanceFactureRepository extends JpaRepository<RelanceFacture, UUID> {
+
+    /**
+     * Nombre de relances par statut pour un cabinet
+     */
+    @Query("SELECT r.statut, COUNT(r) FROM RelanceFacture r WHERE r.officeId = :officeId GROUP BY r.statut")
+    List<Object[]> compterParStatut(@Param("officeId") UUID officeId);
+}
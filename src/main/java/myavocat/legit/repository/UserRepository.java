@@ -3,6 +3,8 @@ package myavocat.legit.repository;
 import myavocat.legit.model.User;
 import myavocat.legit.model.UserRole;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -23,4 +25,11 @@ public interface UserRepository extends JpaRepository<User, UUID> {
 
     // Rechercher des utilisateurs par rôle
     List<User> findByRole(UserRole role);
+
+    // Lectures ciblées (sans charger l'entité User et ses relations)
+    @Query("SELECT u.office.id FROM User u WHERE u.id = :userId")
+    Optional<UUID> findOfficeIdById(@Param("userId") UUID userId);
+
+    @Query("SELECT r.name FROM User u JOIN u.role r WHERE u.id = :userId")
+    Optional<String> findRoleNameById(@Param("userId") UUID userId);
 }
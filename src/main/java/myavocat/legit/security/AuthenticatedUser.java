@@ -0,0 +1,44 @@
+package myavocat.legit.security;
+
+import java.util.UUID;
+
+/**
+ * Principal de la requête courante, construit une seule fois par JwtRequestFilter
+ * à partir des claims vérifiés du token (pas de lecture en base).
+ */
+public class AuthenticatedUser {
+
+    private final UUID userId;
+    private final UUID officeId;
+    private final String email;
+    private final String role;
+
+    public AuthenticatedUser(UUID userId, UUID officeId, String email, String role) {
+        this.userId = userId;
+        this.officeId = officeId;
+        this.email = email;
+        this.role = role;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public UUID getOfficeId() {
+        return officeId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    @Override
+    public String toString() {
+        // Utilisé par Authentication.getName() : on garde l'email comme identifiant
+        return email;
+    }
+}
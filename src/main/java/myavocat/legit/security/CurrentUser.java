@@ -0,0 +1,56 @@
+package myavocat.legit.security;
+
+import myavocat.legit.repository.UserRepository;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Accès au principal authentifié de la requête courante.
+ * Les services l'utilisent pour connaître le cabinet de l'utilisateur sans recharger l'entité User ;
+ * on retombe sur une lecture en base si la requête n'est pas authentifiée ou concerne un autre utilisateur.
+ */
+@Component
+public class CurrentUser {
+
+    private final UserRepository userRepository;
+
+    public CurrentUser(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public Optional<AuthenticatedUser> get() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+            return Optional.of(principal);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Vrai si l'utilisateur donné est celui du token de la requête courante
+     */
+    public boolean is(UUID userId) {
+        return userId != null && get().map(p -> userId.equals(p.getUserId())).orElse(false);
+    }
+
+    /**
+     * Cabinet de l'utilisateur : depuis les claims du token si possible, sinon une seule lecture ciblée
+     */
+    public UUID resolveOfficeId(UUID userId) {
+        Optional<AuthenticatedUser> principal = get();
+        if (principal.isPresent() && userId != null && userId.equals(principal.get().getUserId())
+                && principal.get().getOfficeId() != null) {
+            return principal.get().getOfficeId();
+        }
+
+        if (userId == null) {
+            throw new RuntimeException("Utilisateur introuvable");
+        }
+        return userRepository.findOfficeIdById(userId)
+                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+    }
+}
@@ -0,0 +1,51 @@
+package myavocat.legit.security;
+
+import myavocat.legit.repository.UserRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Petit cache (userId -> nom du rôle) pour éviter une lecture en base à chaque requête authentifiée.
+ * Les entrées expirent après quelques minutes pour refléter les changements de rôle.
+ */
+@Component
+public class RoleCache {
+
+    private static final long TTL_MS = 5 * 60 * 1000;
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final UserRepository userRepository;
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    public RoleCache(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public String getRole(UUID userId) {
+        if (userId == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(userId);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.role;
+        }
+
+        String role = userRepository.findRoleNameById(userId).orElse(null);
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        entries.put(userId, new Entry(role, now + TTL_MS));
+        return role;
+    }
+
+    public void evict(UUID userId) {
+        entries.remove(userId);
+    }
+
+    private record Entry(String role, long expiresAt) {
+    }
+}
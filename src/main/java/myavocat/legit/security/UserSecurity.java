@@ -15,15 +15,23 @@ public class UserSecurity {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CurrentUser currentUser;
+
     public boolean isCurrentUser(UUID userId) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null) {
             return false;
         }
 
+        // Token récent : l'identifiant est dans les claims, pas besoin de la base
+        if (currentUser.get().map(p -> p.getUserId() != null).orElse(false)) {
+            return currentUser.is(userId);
+        }
+
         String currentUsername = authentication.getName();
         User user = userRepository.findById(userId).orElse(null);
 
         return user != null && user.getEmail().equals(currentUsername);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,262 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.BalanceAgeeClientDTO;
+import myavocat.legit.dto.BalanceAgeeDTO;
+import myavocat.legit.security.CurrentUser;
+import myavocat.legit.util.XlsxStreamWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Balance âgée : restant dû des factures ouvertes réparti par client en tranches 0–30 / 31–60 / 61–90 / +90 jours.
+ *
+ * L'ancienneté est comptée depuis l'échéance de la facture, ou depuis son émission si elle n'en a pas
+ * (une facture non échue tombe dans la tranche 0–30). Le calcul est fait en SQL (agrégats et fonctions de fenêtre
+ * pour le rang, la part et le cumul) ; les exports CSV / XLSX écrivent chaque ligne dès sa lecture,
+ * sans charger d'entité Facture.
+ */
+@Service
+public class BalanceAgeeService {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_XLSX = "xlsx";
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String FACTURES_OUVERTES = "WITH ouvertes AS ( " +
+            "SELECT f.id, f.client_id, f.numero_facture, f.date_emission, f.date_echeance, " +
+            "f.montant_reclame - f.montant_regle AS restant, " +
+            "COALESCE(f.date_echeance, f.date_emission) AS reference, " +
+            "CASE WHEN COALESCE(f.date_echeance, f.date_emission) >= :limite30 THEN 1 " +
+            "     WHEN COALESCE(f.date_echeance, f.date_emission) >= :limite60 THEN 2 " +
+            "     WHEN COALESCE(f.date_echeance, f.date_emission) >= :limite90 THEN 3 " +
+            "     ELSE 4 END AS tranche " +
+            "FROM factures f JOIN dossiers d ON d.id = f.dossier_id " +
+            "WHERE d.office_id = :officeId " +
+            "AND f.statut_paiement IN ('ATTENTE_REGLEMENT', 'PARTIELLEMENT_REGLEE') " +
+            "AND f.montant_reclame > f.montant_regle) ";
+
+    private static final String PAR_CLIENT = FACTURES_OUVERTES +
+            ", par_client AS ( " +
+            "SELECT client_id, COUNT(*) AS nombre, " +
+            "SUM(CASE WHEN tranche = 1 THEN restant ELSE 0 END) AS t1, " +
+            "SUM(CASE WHEN tranche = 2 THEN restant ELSE 0 END) AS t2, " +
+            "SUM(CASE WHEN tranche = 3 THEN restant ELSE 0 END) AS t3, " +
+            "SUM(CASE WHEN tranche = 4 THEN restant ELSE 0 END) AS t4, " +
+            "SUM(restant) AS total, MIN(reference) AS plus_ancienne " +
+            "FROM ouvertes GROUP BY client_id) " +
+            "SELECT c.id, c.nom, c.prenom, pc.nombre, pc.t1, pc.t2, pc.t3, pc.t4, pc.total, pc.plus_ancienne, " +
+            "RANK() OVER (ORDER BY pc.total DESC) AS rang, " +
+            "SUM(pc.total) OVER () AS total_cabinet, " +
+            "SUM(pc.total) OVER (ORDER BY pc.total DESC, c.id ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW) AS cumul " +
+            "FROM par_client pc JOIN clients c ON c.id = pc.client_id " +
+            "ORDER BY pc.total DESC, c.id";
+
+    private static final String PAR_FACTURE = FACTURES_OUVERTES +
+            "SELECT c.nom, c.prenom, o.numero_facture, o.date_emission, o.date_echeance, o.reference, o.tranche, o.restant, " +
+            "SUM(o.restant) OVER (PARTITION BY o.client_id) AS total_client " +
+            "FROM ouvertes o JOIN clients c ON c.id = o.client_id " +
+            "ORDER BY total_client DESC, o.client_id, o.reference";
+
+    private static final String[] LIBELLES_TRANCHES = {"0-30 jours", "31-60 jours", "61-90 jours", "+90 jours"};
+
+    private static final String[] ENTETE_CLIENTS = {"Rang", "Nom", "Prénom", "Factures", "0-30 jours", "31-60 jours",
+            "61-90 jours", "+90 jours", "Total", "Part (%)", "Cumul", "Plus ancienne échéance"};
+
+    private static final String[] ENTETE_FACTURES = {"Nom", "Prénom", "Facture", "Émission", "Échéance",
+            "Jours", "Tranche", "Restant dû", "Total client"};
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate lectureSeule;
+    private final CurrentUser currentUser;
+
+    public BalanceAgeeService(DataSource dataSource, PlatformTransactionManager transactionManager, CurrentUser currentUser) {
+        // Lecture par paquets : sur PostgreSQL, un curseur dans une transaction plutôt que tout le résultat en mémoire
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.setFetchSize(FETCH_SIZE);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbc);
+        this.lectureSeule = new TransactionTemplate(transactionManager);
+        this.lectureSeule.setReadOnly(true);
+        this.currentUser = currentUser;
+    }
+
+    /**
+     * Balance âgée du cabinet de l'utilisateur (une ligne par client, du plus endetté au moins endetté)
+     */
+    public BalanceAgeeDTO getBalanceAgee(UUID userId) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        LocalDate aujourdhui = LocalDate.now();
+
+        BalanceAgeeDTO balance = new BalanceAgeeDTO();
+        balance.setDateReference(aujourdhui);
+        lectureSeule.executeWithoutResult(status -> parcourirClients(officeId, aujourdhui, client -> {
+            balance.getClients().add(client);
+            balance.setTranche0a30(balance.getTranche0a30().add(client.getTranche0a30()));
+            balance.setTranche31a60(balance.getTranche31a60().add(client.getTranche31a60()));
+            balance.setTranche61a90(balance.getTranche61a90().add(client.getTranche61a90()));
+            balance.setTrancheSup90(balance.getTrancheSup90().add(client.getTrancheSup90()));
+            balance.setTotal(balance.getTotal().add(client.getTotal()));
+            balance.setNombreFactures(balance.getNombreFactures() + client.getNombreFactures());
+        }));
+        return balance;
+    }
+
+    /**
+     * Cabinet concerné par un export, résolu dans le thread de la requête (avant l'écriture de la réponse)
+     */
+    public UUID resoudreCabinet(UUID userId) {
+        return currentUser.resolveOfficeId(userId);
+    }
+
+    /**
+     * Écrit la balance âgée en CSV ou XLSX : par client, ou par facture si `detail`
+     */
+    public void exporter(UUID officeId, String format, boolean detail, OutputStream out) throws IOException {
+        LocalDate aujourdhui = LocalDate.now();
+        try {
+            if (FORMAT_XLSX.equalsIgnoreCase(format)) {
+                try (XlsxStreamWriter xlsx = new XlsxStreamWriter(out, "Balance âgée")) {
+                    xlsx.entete(detail ? ENTETE_FACTURES : ENTETE_CLIENTS);
+                    parcourir(officeId, aujourdhui, detail, valeurs -> {
+                        try {
+                            xlsx.ligne(valeurs);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            } else {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                // BOM : Excel reconnaît l'UTF-8 (accents des noms)
+                writer.write('\uFEFF');
+                ecrireLigneCsv(writer, (Object[]) (detail ? ENTETE_FACTURES : ENTETE_CLIENTS));
+                parcourir(officeId, aujourdhui, detail, valeurs -> {
+                    try {
+                        ecrireLigneCsv(writer, valeurs);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.flush();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void parcourir(UUID officeId, LocalDate aujourdhui, boolean detail, Consumer<Object[]> ligne) {
+        lectureSeule.executeWithoutResult(status -> {
+            if (detail) {
+                parcourirFactures(officeId, aujourdhui, ligne);
+            } else {
+                parcourirClients(officeId, aujourdhui, c -> ligne.accept(new Object[]{
+                        c.getRang(), c.getNom(), c.getPrenom(), c.getNombreFactures(),
+                        c.getTranche0a30(), c.getTranche31a60(), c.getTranche61a90(), c.getTrancheSup90(),
+                        c.getTotal(), c.getPartDuTotal(), c.getCumul(), c.getPlusAncienneEcheance()}));
+            }
+        });
+    }
+
+    private void parcourirClients(UUID officeId, LocalDate aujourdhui, Consumer<BalanceAgeeClientDTO> consumer) {
+        jdbcTemplate.query(PAR_CLIENT, parametres(officeId, aujourdhui), (RowCallbackHandler) rs -> {
+            BalanceAgeeClientDTO client = new BalanceAgeeClientDTO();
+            client.setClientId(rs.getObject("id", UUID.class));
+            client.setNom(rs.getString("nom"));
+            client.setPrenom(rs.getString("prenom"));
+            client.setNombreFactures(rs.getLong("nombre"));
+            client.setTranche0a30(rs.getBigDecimal("t1"));
+            client.setTranche31a60(rs.getBigDecimal("t2"));
+            client.setTranche61a90(rs.getBigDecimal("t3"));
+            client.setTrancheSup90(rs.getBigDecimal("t4"));
+            client.setTotal(rs.getBigDecimal("total"));
+            client.setPlusAncienneEcheance(toDate(rs.getTimestamp("plus_ancienne")));
+            client.setRang(rs.getLong("rang"));
+            client.setCumul(rs.getBigDecimal("cumul"));
+
+            BigDecimal totalCabinet = rs.getBigDecimal("total_cabinet");
+            client.setPartDuTotal(totalCabinet.signum() == 0 ? BigDecimal.ZERO
+                    : client.getTotal().multiply(BigDecimal.valueOf(100)).divide(totalCabinet, 1, RoundingMode.HALF_UP));
+            consumer.accept(client);
+        });
+    }
+
+    private void parcourirFactures(UUID officeId, LocalDate aujourdhui, Consumer<Object[]> ligne) {
+        jdbcTemplate.query(PAR_FACTURE, parametres(officeId, aujourdhui), (RowCallbackHandler) rs -> {
+            LocalDate reference = toDate(rs.getTimestamp("reference"));
+            ligne.accept(new Object[]{
+                    rs.getString("nom"),
+                    rs.getString("prenom"),
+                    rs.getString("numero_facture"),
+                    toDate(rs.getTimestamp("date_emission")),
+                    toDate(rs.getTimestamp("date_echeance")),
+                    Math.max(0, ChronoUnit.DAYS.between(reference, aujourdhui)),
+                    LIBELLES_TRANCHES[rs.getInt("tranche") - 1],
+                    rs.getBigDecimal("restant"),
+                    rs.getBigDecimal("total_client")
+            });
+        });
+    }
+
+    /**
+     * Bornes des tranches : une facture a au plus N jours d'ancienneté si sa date de référence est postérieure
+     * ou égale au début du jour J-N
+     */
+    private MapSqlParameterSource parametres(UUID officeId, LocalDate aujourdhui) {
+        return new MapSqlParameterSource("officeId", officeId)
+                .addValue("limite30", Timestamp.valueOf(aujourdhui.minusDays(30).atStartOfDay()))
+                .addValue("limite60", Timestamp.valueOf(aujourdhui.minusDays(60).atStartOfDay()))
+                .addValue("limite90", Timestamp.valueOf(aujourdhui.minusDays(90).atStartOfDay()));
+    }
+
+    /**
+     * Ligne CSV au format français : séparateur point-virgule, virgule décimale
+     */
+    private static void ecrireLigneCsv(Writer writer, Object... valeurs) throws IOException {
+        for (int i = 0; i < valeurs.length; i++) {
+            if (i > 0) {
+                writer.write(';');
+            }
+            Object valeur = valeurs[i];
+            if (valeur == null) {
+                continue;
+            }
+            if (valeur instanceof BigDecimal nombre) {
+                writer.write(nombre.toPlainString().replace('.', ','));
+            } else if (valeur instanceof Number || valeur instanceof LocalDate) {
+                writer.write(valeur.toString());
+            } else {
+                String texte = valeur.toString();
+                if (texte.indexOf(';') >= 0 || texte.indexOf('"') >= 0 || texte.indexOf('\n') >= 0 || texte.indexOf('\r') >= 0) {
+                    texte = "\"" + texte.replace("\"", "\"\"") + "\"";
+                }
+                writer.write(texte);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private static LocalDate toDate(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime().toLocalDate() : null;
+    }
+}
@@ -0,0 +1,264 @@
+package myavocat.legit.service;
+
+import myavocat.legit.model.DocumentBlob;
+import myavocat.legit.repository.DocumentBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Stockage des fichiers par contenu : chaque fichier est rangé sous son empreinte SHA-256,
+ * dans blobs/ab/cd/abcd... (deux niveaux de répertoires pour éviter les répertoires géants).
+ *
+ * Un même contenu déposé plusieurs fois (ex : pièce jointe renvoyée par le client) n'occupe le disque qu'une fois ;
+ * document_blobs.nb_references compte les documents qui le partagent. L'empreinte sert aussi de contrôle
+ * d'intégrité à la relecture.
+ *
+ * Les opérations sur un même contenu (référence + publication, libération + suppression) sont sérialisées
+ * par un verrou local : le stockage est propre à une instance.
+ */
+@Component
+public class BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobStore.class);
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+    private static final int NB_VERROUS = 64;
+
+    private final DocumentBlobRepository documentBlobRepository;
+    private final Path racine;
+    private final Path temporaire;
+    private final Object[] verrous = new Object[NB_VERROUS];
+    // Empreinte -> date de modification du fichier lors de sa dernière vérification
+    private final Map<String, Long> verifies = new ConcurrentHashMap<>();
+
+    public BlobStore(DocumentBlobRepository documentBlobRepository,
+                     @Value("${documents.upload-dir:/app/uploads/}") String repertoire) {
+        this.documentBlobRepository = documentBlobRepository;
+        this.racine = Paths.get(repertoire, "blobs");
+        // Dans la même arborescence que les blobs : le déplacement final reste atomique
+        this.temporaire = racine.resolve("tmp");
+        for (int i = 0; i < NB_VERROUS; i++) {
+            verrous[i] = new Object();
+        }
+    }
+
+    /**
+     * Contenu enregistré : empreinte, taille et indicateur de doublon (aucun octet écrit sur disque)
+     */
+    public record BlobStocke(String sha256, long taille, boolean doublon) {
+    }
+
+    /**
+     * Fichier temporaire vide dans l'arborescence du stockage, à remplir puis à publier
+     */
+    public Path nouveauFichierTemporaire() throws IOException {
+        Files.createDirectories(temporaire);
+        return Files.createTempFile(temporaire, "upload-", ".tmp");
+    }
+
+    /**
+     * Retire une référence ; le fichier est supprimé quand plus aucun document ne l'utilise
+     */
+    public void liberer(String sha256) {
+        synchronized (verrou(sha256)) {
+            documentBlobRepository.retirerReference(sha256);
+            if (documentBlobRepository.supprimerSiOrphelin(sha256) == 1) {
+                verifies.remove(sha256);
+                try {
+                    FileSystemUtils.deleteRecursively(repertoireDerives(sha256));
+                    Files.deleteIfExists(chemin(sha256));
+                } catch (IOException e) {
+                    logger.warn("Blob {} non supprimé : {}", sha256, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Emplacement du contenu sur disque
+     */
+    public Path chemin(String sha256) {
+        if (sha256 == null || !SHA256.matcher(sha256).matches()) {
+            throw new RuntimeException("Empreinte de fichier invalide : " + sha256);
+        }
+        return racine.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    /**
+     * Répertoire des fichiers dérivés du contenu (aperçus, ...), à côté du fichier et supprimé avec lui
+     */
+    public Path repertoireDerives(String sha256) {
+        return chemin(sha256).resolveSibling(sha256 + ".d");
+    }
+
+    /**
+     * Lecture avec contrôle d'intégrité : une IOException est levée en fin de lecture si le contenu
+     * ne correspond plus à son empreinte.
+     */
+    public InputStream ouvrir(String sha256) throws IOException {
+        return new LectureVerifiee(Files.newInputStream(chemin(sha256)), sha256);
+    }
+
+    /**
+     * Contrôle d'intégrité du fichier complet, pour les envois qui ne relisent pas le contenu (sendfile, plages).
+     * Le résultat est mémorisé tant que le fichier n'est pas modifié : un contenu n'est relu qu'une fois.
+     */
+    public boolean verifier(String sha256) throws IOException {
+        Path fichier = chemin(sha256);
+        long modification = Files.getLastModifiedTime(fichier).toMillis();
+        Long dejaVerifie = verifies.get(sha256);
+        if (dejaVerifie != null && dejaVerifie == modification) {
+            return true;
+        }
+
+        MessageDigest digest = sha256();
+        ByteBuffer bloc = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            while (canal.read(bloc) >= 0) {
+                bloc.flip();
+                digest.update(bloc);
+                bloc.clear();
+            }
+        }
+        String empreinte = HexFormat.of().formatHex(digest.digest());
+        if (!empreinte.equals(sha256)) {
+            logger.error("Contenu altéré : {} a pour empreinte {}", fichier, empreinte);
+            verifies.remove(sha256);
+            return false;
+        }
+        verifies.put(sha256, modification);
+        return true;
+    }
+
+    /**
+     * Ajoute une référence vers le contenu reçu (empreinte calculée par l'appelant, voir UploadPipeline).
+     * Si le contenu existe déjà, le temporaire est laissé à l'appelant ; sinon il est déplacé à sa place définitive.
+     */
+    public BlobStocke publier(Path fichierTemporaire, String empreinte, long taille) throws IOException {
+        Path cible = chemin(empreinte);
+        synchronized (verrou(empreinte)) {
+            boolean doublon = ajouterReference(empreinte, taille);
+            try {
+                if (doublon && Files.exists(cible)) {
+                    return new BlobStocke(empreinte, taille, true);
+                }
+                // Nouveau contenu, ou fichier manquant sur disque : on (re)place le fichier reçu
+                Files.createDirectories(cible.getParent());
+                try {
+                    Files.move(fichierTemporaire, cible, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(fichierTemporaire, cible, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return new BlobStocke(empreinte, taille, false);
+            } catch (IOException | RuntimeException e) {
+                documentBlobRepository.retirerReference(empreinte);
+                documentBlobRepository.supprimerSiOrphelin(empreinte);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Vrai si le contenu était déjà enregistré
+     */
+    private boolean ajouterReference(String empreinte, long taille) {
+        if (documentBlobRepository.ajouterReference(empreinte) == 1) {
+            return true;
+        }
+        try {
+            documentBlobRepository.saveAndFlush(new DocumentBlob(empreinte, taille));
+            return false;
+        } catch (DataIntegrityViolationException e) {
+            // Enregistré entre-temps par une autre instance
+            if (documentBlobRepository.ajouterReference(empreinte) == 1) {
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    private Object verrou(String sha256) {
+        return verrous[Math.floorMod(sha256.hashCode(), NB_VERROUS)];
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class LectureVerifiee extends FilterInputStream {
+
+        private final MessageDigest digest = sha256();
+        private final String attendu;
+        private boolean verifie;
+
+        LectureVerifiee(InputStream in, String attendu) {
+            super(in);
+            this.attendu = attendu;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int octet = super.read();
+            if (octet < 0) {
+                verifier();
+            } else {
+                digest.update((byte) octet);
+            }
+            return octet;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int lus = super.read(b, off, len);
+            if (lus < 0) {
+                verifier();
+            } else {
+                digest.update(b, off, lus);
+            }
+            return lus;
+        }
+
+        @Override
+        public long skip(long n) {
+            // Les octets sautés ne seraient pas comptés dans l'empreinte
+            return 0;
+        }
+
+        private void verifier() throws IOException {
+            if (verifie) {
+                return;
+            }
+            verifie = true;
+            String empreinte = HexFormat.of().formatHex(digest.digest());
+            if (!empreinte.equals(attendu)) {
+                throw new IOException("Contenu altéré : empreinte " + empreinte + " au lieu de " + attendu);
+            }
+        }
+    }
+}
@@ -4,11 +4,10 @@ import myavocat.legit.dto.ClientDTO;
 import myavocat.legit.model.Client;
 import myavocat.legit.model.Dossier;
 import myavocat.legit.model.Office;
-import myavocat.legit.model.User;
 import myavocat.legit.repository.ClientRepository;
 import myavocat.legit.repository.DossierRepository;
 import myavocat.legit.repository.OfficeRepository;
-import myavocat.legit.repository.UserRepository;
+import myavocat.legit.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -31,7 +30,7 @@ public class ClientService {
     private OfficeRepository officeRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private CurrentUser currentUser;
 
     @Transactional
     public ClientDTO createClient(ClientDTO clientDTO) {
@@ -59,10 +58,7 @@ public class ClientService {
 
     @Transactional(readOnly = true)
     public List<ClientDTO> getAllClients(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
         // Récupérer les clients ayant au moins un dossier dans le cabinet de l'utilisateur
         List<Dossier> dossiers = dossierRepository.findAll().stream()
@@ -86,15 +82,14 @@ public class ClientService {
 
     @Transactional(readOnly = true)
     public ClientDTO getClientById(UUID clientId, UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Client client = clientRepository.findById(clientId)
                 .orElseThrow(() -> new RuntimeException("Client non trouvé"));
 
         // Vérifier que ce client est lié à un dossier du même cabinet que l'utilisateur
         boolean clientAccessible = dossierRepository.findByClientId(clientId).stream()
-                .anyMatch(dossier -> dossier.getOffice().getId().equals(user.getOffice().getId()));
+                .anyMatch(dossier -> dossier.getOffice().getId().equals(userOfficeId));
 
         if (!clientAccessible) {
             throw new RuntimeException("Accès refusé : ce client appartient à un autre cabinet.");
@@ -105,15 +100,14 @@ public class ClientService {
 
     @Transactional
     public void deleteClient(UUID clientId, UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Client client = clientRepository.findById(clientId)
                 .orElseThrow(() -> new RuntimeException("Client non trouvé"));
 
         // Vérifier que ce client n'a plus aucun dossier actif dans le cabinet de l'utilisateur
         boolean isLinkedToDossier = dossierRepository.findByClientId(clientId).stream()
-                .anyMatch(dossier -> dossier.getOffice().getId().equals(user.getOffice().getId()));
+                .anyMatch(dossier -> dossier.getOffice().getId().equals(userOfficeId));
 
         if (isLinkedToDossier) {
             throw new RuntimeException("Impossible de supprimer ce client : il est encore lié à un dossier actif.");
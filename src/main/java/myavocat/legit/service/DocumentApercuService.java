@@ -0,0 +1,282 @@
+package myavocat.legit.service;
+
+import jakarta.annotation.PreDestroy;
+import myavocat.legit.model.Document;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aperçus PNG des documents (première page à l'enregistrement, autres pages à la demande).
+ *
+ * Le rendu (PDFBox pour les PDF, ImageIO sous-échantillonné pour les images) tourne sur un pool borné
+ * avec une file limitée : si elle est pleine, l'aperçu sera simplement calculé à la première demande.
+ * Les aperçus sont rangés dans le répertoire des dérivés du fichier, donc partagés par les documents
+ * de même contenu et supprimés avec lui.
+ */
+@Service
+public class DocumentApercuService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentApercuService.class);
+
+    private static final Set<String> TYPES_IMAGE = Set.of("image/png", "image/jpeg");
+    private static final long ATTENTE_MAX_SECONDES = 15;
+
+    private final DocumentService documentService;
+    private final ThreadPoolExecutor executor;
+    private final int largeur;
+    private final boolean toutesPages;
+    // Un même aperçu demandé plusieurs fois n'est rendu qu'une fois
+    private final Map<Path, CompletableFuture<Boolean>> enCours = new ConcurrentHashMap<>();
+
+    public DocumentApercuService(DocumentService documentService,
+                                 @Value("${documents.apercu.threads:2}") int threads,
+                                 @Value("${documents.apercu.file:200}") int capaciteFile,
+                                 @Value("${documents.apercu.largeur:240}") int largeur,
+                                 @Value("${documents.apercu.toutes-pages:false}") boolean toutesPages) {
+        this.documentService = documentService;
+        this.largeur = largeur;
+        this.toutesPages = toutesPages;
+
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capaciteFile), r -> {
+            Thread t = new Thread(r, "document-apercu-" + compteur.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * File saturée ou rendu trop long : l'aperçu sera prêt à une prochaine demande (réponse 503)
+     */
+    public static class ApercuIndisponibleException extends RuntimeException {
+        public ApercuIndisponibleException() {
+            super("Aperçu en cours de préparation, réessayez dans quelques instants");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Après l'enregistrement d'un document : première page (ou toutes) en arrière-plan
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentDepose(DocumentDeposeEvent event) {
+        if (!supporte(event.typeMime())) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (toutesPages && !TYPES_IMAGE.contains(event.typeMime())) {
+                        rendreToutesPages(event.fichier(), event.derives());
+                    } else {
+                        generer(event.fichier(), event.typeMime(), event.derives(), 1);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Aperçu du document {} non généré : {}", event.documentId(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.info("File des aperçus pleine : aperçu du document {} calculé à la demande", event.documentId());
+        }
+    }
+
+    /**
+     * Aperçu d'une page (1 = première). Null si le type de document n'a pas d'aperçu ou si la page n'existe pas.
+     * Calculé s'il manque, sur le pool, avec une attente bornée.
+     */
+    public Path getApercu(UUID documentId, int page) throws IOException {
+        Document document = documentService.getDocumentById(documentId);
+        String typeMime = document.getTypeMime() != null ? document.getTypeMime() : "application/pdf";
+        if (!supporte(typeMime) || page < 1 || (page > 1 && TYPES_IMAGE.contains(typeMime))) {
+            return null;
+        }
+
+        Path derives = documentService.repertoireDerives(document);
+        Path cible = cheminApercu(derives, page);
+        if (Files.isRegularFile(cible)) {
+            return cible;
+        }
+
+        Path fichier = documentService.resoudreFichier(document);
+        if (!Files.isRegularFile(fichier)) {
+            return null;
+        }
+
+        CompletableFuture<Boolean> rendu = new CompletableFuture<>();
+        CompletableFuture<Boolean> existant = enCours.putIfAbsent(cible, rendu);
+        if (existant != null) {
+            rendu = existant;
+        } else {
+            CompletableFuture<Boolean> resultat = rendu;
+            try {
+                executor.execute(() -> {
+                    try {
+                        resultat.complete(generer(fichier, typeMime, derives, page));
+                    } catch (Exception e) {
+                        resultat.completeExceptionally(e);
+                    } finally {
+                        enCours.remove(cible, resultat);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                enCours.remove(cible, resultat);
+                throw new ApercuIndisponibleException();
+            }
+        }
+
+        try {
+            return rendu.get(ATTENTE_MAX_SECONDES, TimeUnit.SECONDS) ? cible : null;
+        } catch (TimeoutException e) {
+            throw new ApercuIndisponibleException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Génération de l'aperçu interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Aperçu impossible : " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private boolean supporte(String typeMime) {
+        return "application/pdf".equals(typeMime) || TYPES_IMAGE.contains(typeMime);
+    }
+
+    private Path cheminApercu(Path derives, int page) {
+        return derives.resolve("apercu-" + largeur + "-p" + page + ".png");
+    }
+
+    /**
+     * Faux si la page n'existe pas
+     */
+    private boolean generer(Path fichier, String typeMime, Path derives, int page) throws IOException {
+        Path cible = cheminApercu(derives, page);
+        if (Files.isRegularFile(cible)) {
+            return true;
+        }
+
+        if (TYPES_IMAGE.contains(typeMime)) {
+            ecrire(reduireImage(fichier), cible);
+            return true;
+        }
+
+        // PDF : tampons de PDFBox sur fichier temporaire plutôt qu'en mémoire (documents volumineux)
+        try (PDDocument pdf = PDDocument.load(fichier.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            if (page > pdf.getNumberOfPages()) {
+                return false;
+            }
+            ecrire(rendrePage(pdf, page - 1), cible);
+            return true;
+        }
+    }
+
+    private void rendreToutesPages(Path fichier, Path derives) throws IOException {
+        try (PDDocument pdf = PDDocument.load(fichier.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            for (int i = 0; i < pdf.getNumberOfPages(); i++) {
+                Path cible = cheminApercu(derives, i + 1);
+                if (!Files.isRegularFile(cible)) {
+                    ecrire(rendrePage(pdf, i), cible);
+                }
+            }
+        }
+    }
+
+    private BufferedImage rendrePage(PDDocument pdf, int index) throws IOException {
+        PDPage page = pdf.getPage(index);
+        PDRectangle cadre = page.getCropBox();
+        boolean tournee = page.getRotation() % 180 != 0;
+        float largeurPoints = tournee ? cadre.getHeight() : cadre.getWidth();
+        float echelle = largeurPoints > 0 ? largeur / largeurPoints : 1f;
+        return new PDFRenderer(pdf).renderImage(index, echelle, ImageType.RGB);
+    }
+
+    /**
+     * Image lue sous-échantillonnée : une photo de 50 Mpx n'est jamais décodée en pleine résolution
+     */
+    private BufferedImage reduireImage(Path fichier) throws IOException {
+        try (ImageInputStream entree = ImageIO.createImageInputStream(fichier.toFile())) {
+            Iterator<ImageReader> lecteurs = ImageIO.getImageReaders(entree);
+            if (!lecteurs.hasNext()) {
+                throw new IOException("Format d'image non reconnu");
+            }
+            ImageReader lecteur = lecteurs.next();
+            try {
+                lecteur.setInput(entree, true, true);
+                int largeurSource = lecteur.getWidth(0);
+                ImageReadParam param = lecteur.getDefaultReadParam();
+                int pas = Math.max(1, largeurSource / (largeur * 2));
+                param.setSourceSubsampling(pas, pas, 0, 0);
+                BufferedImage source = lecteur.read(0, param);
+
+                int hauteur = Math.max(1, Math.round(source.getHeight() * (largeur / (float) source.getWidth())));
+                BufferedImage reduite = new BufferedImage(largeur, hauteur, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = reduite.createGraphics();
+                try {
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g.drawImage(source, 0, 0, largeur, hauteur, java.awt.Color.WHITE, null);
+                } finally {
+                    g.dispose();
+                }
+                return reduite;
+            } finally {
+                lecteur.dispose();
+            }
+        }
+    }
+
+    private void ecrire(BufferedImage image, Path cible) throws IOException {
+        Files.createDirectories(cible.getParent());
+        Path temporaire = Files.createTempFile(cible.getParent(), "apercu-", ".tmp");
+        try {
+            if (!ImageIO.write(image, "png", temporaire.toFile())) {
+                throw new IOException("Encodeur PNG indisponible");
+            }
+            try {
+                Files.move(temporaire, cible, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaire, cible, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaire);
+        }
+    }
+}
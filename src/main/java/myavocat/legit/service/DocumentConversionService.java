@@ -0,0 +1,243 @@
+package myavocat.legit.service;
+
+import jakarta.annotation.PreDestroy;
+import myavocat.legit.model.Document;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dépôt avec conversion en PDF des pièces reçues dans un autre format (images, texte, docx).
+ *
+ * Le fichier est reçu, vérifié et enregistré tel quel tout de suite, en un seul passage (UploadPipeline) ;
+ * sa version PDF est ensuite produite à partir du contenu stocké par un pool borné, et ajoutée au dossier comme
+ * document supplémentaire. L'appelant (réception des emails) n'attend jamais une conversion.
+ * Chaque conversion a un délai maximal.
+ * Rien n'est perdu : en cas d'échec, de délai dépassé ou de file pleine, seul l'original est conservé.
+ */
+@Service
+public class DocumentConversionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentConversionService.class);
+
+    public enum Depot {
+        // Enregistré tel quel (PDF, ou format sans conversion)
+        ENREGISTRE,
+        // Original enregistré ; sa version PDF sera ajoutée par le pool de conversion
+        CONVERSION_EN_COURS,
+        // File de conversion pleine : original enregistré, sans version PDF
+        ENREGISTRE_SANS_CONVERSION
+    }
+
+    private final DocumentService documentService;
+    private final UploadPipeline uploadPipeline;
+    private final BlobStore blobStore;
+    private final DocumentPdfConverter converter;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService minuteur;
+    private final long delaiMaxMillis;
+
+    // Compteurs exposés par getStatistiques()
+    private final AtomicLong soumises = new AtomicLong();
+    private final AtomicLong converties = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+    private final AtomicLong delaisDepasses = new AtomicLong();
+    private final AtomicLong refusees = new AtomicLong();
+    private final AtomicLong dureeTotaleMillis = new AtomicLong();
+    private final AtomicLong dureeMaxMillis = new AtomicLong();
+
+    public DocumentConversionService(DocumentService documentService,
+                                     UploadPipeline uploadPipeline,
+                                     BlobStore blobStore,
+                                     DocumentPdfConverter converter,
+                                     @Value("${documents.conversion.threads:2}") int threads,
+                                     @Value("${documents.conversion.file:100}") int capaciteFile,
+                                     @Value("${documents.conversion.delai-secondes:60}") long delaiSecondes) {
+        this.documentService = documentService;
+        this.uploadPipeline = uploadPipeline;
+        this.blobStore = blobStore;
+        this.converter = converter;
+        this.delaiMaxMillis = TimeUnit.SECONDS.toMillis(delaiSecondes);
+
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capaciteFile), r -> {
+            Thread t = new Thread(r, "document-conversion-" + compteur.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.minuteur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "document-conversion-delai");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        minuteur.shutdownNow();
+    }
+
+    /**
+     * Enregistre le fichier dans le dossier et, si son format le permet, y ajoute sa version PDF.
+     * Le flux est lu et l'original enregistré avant le retour ; seule la conversion est différée.
+     */
+    public Depot deposer(InputStream source, String nomFichier, UUID dossierId, UUID userId, String typeFichier,
+                         String description, Collection<String> extensionsAutorisees) throws IOException {
+        String extension = FilenameUtils.getExtension(nomFichier == null ? "" : nomFichier).toLowerCase(Locale.ROOT);
+        if ("pdf".equals(extension)) {
+            documentService.uploadDocument(source, nomFichier, dossierId, userId, typeFichier, description, extensionsAutorisees);
+            return Depot.ENREGISTRE;
+        }
+
+        // L'original est toujours enregistré, en un seul passage : la conversion n'ajoute qu'une version PDF
+        Document original;
+        String typeMime;
+        try (UploadPipeline.FichierRecu recu = uploadPipeline.recevoir(source, nomFichier, extensionsAutorisees)) {
+            original = documentService.enregistrerDocument(recu, nomFichier, dossierId, userId, typeFichier, description);
+            typeMime = recu.typeMime();
+        }
+        if (!converter.supporte(typeMime)) {
+            return Depot.ENREGISTRE;
+        }
+
+        // La conversion lit le contenu stocké (immuable, adressé par son empreinte)
+        Path stocke = blobStore.chemin(original.getBlobSha256());
+        try {
+            executor.execute(new Conversion(stocke, typeMime, nomFichier, dossierId, userId, typeFichier, description));
+            soumises.incrementAndGet();
+            return Depot.CONVERSION_EN_COURS;
+        } catch (RejectedExecutionException e) {
+            refusees.incrementAndGet();
+            logger.warn("File de conversion pleine : {} enregistré sans version PDF", nomFichier);
+            return Depot.ENREGISTRE_SANS_CONVERSION;
+        }
+    }
+
+    /**
+     * Compteurs depuis le démarrage et état du pool
+     */
+    public Map<String, Long> getStatistiques() {
+        Map<String, Long> statistiques = new LinkedHashMap<>();
+        statistiques.put("soumises", soumises.get());
+        statistiques.put("converties", converties.get());
+        statistiques.put("echecs", echecs.get());
+        statistiques.put("delaisDepasses", delaisDepasses.get());
+        statistiques.put("refusees", refusees.get());
+        statistiques.put("enAttente", (long) executor.getQueue().size());
+        statistiques.put("enCours", (long) executor.getActiveCount());
+        long terminees = converties.get() + echecs.get() + delaisDepasses.get();
+        statistiques.put("dureeMoyenneMs", terminees == 0 ? 0 : dureeTotaleMillis.get() / terminees);
+        statistiques.put("dureeMaxMs", dureeMaxMillis.get());
+        return statistiques;
+    }
+
+    private final class Conversion implements Runnable {
+
+        private final Path source;
+        private final String typeMime;
+        private final String nomFichier;
+        private final UUID dossierId;
+        private final UUID userId;
+        private final String typeFichier;
+        private final String description;
+
+        private Conversion(Path source, String typeMime, String nomFichier, UUID dossierId, UUID userId,
+                           String typeFichier, String description) {
+            this.source = source;
+            this.typeMime = typeMime;
+            this.nomFichier = nomFichier;
+            this.dossierId = dossierId;
+            this.userId = userId;
+            this.typeFichier = typeFichier;
+            this.description = description;
+        }
+
+        @Override
+        public void run() {
+            long debut = System.currentTimeMillis();
+            Path pdf = null;
+            try {
+                pdf = blobStore.nouveauFichierTemporaire();
+                MessageDigest empreinte = MessageDigest.getInstance("SHA-256");
+                boolean converti = convertir(pdf, empreinte);
+                long duree = System.currentTimeMillis() - debut;
+                dureeTotaleMillis.addAndGet(duree);
+                dureeMaxMillis.accumulateAndGet(duree, Math::max);
+
+                if (converti) {
+                    String nomPdf = FilenameUtils.getBaseName(nomFichier) + ".pdf";
+                    String descriptionPdf = (description == null ? "" : description + " ") + "(converti depuis " + nomFichier + ")";
+                    // Empreinte calculée pendant l'écriture : le PDF produit ne repasse pas par UploadPipeline
+                    UploadPipeline.FichierRecu recuPdf = new UploadPipeline.FichierRecu(pdf,
+                            HexFormat.of().formatHex(empreinte.digest()), Files.size(pdf), "application/pdf");
+                    documentService.enregistrerDocument(recuPdf, nomPdf, dossierId, userId, typeFichier, descriptionPdf);
+                    converties.incrementAndGet();
+                    logger.info("Pièce {} convertie en PDF en {} ms", nomFichier, duree);
+                }
+            } catch (Exception e) {
+                echecs.incrementAndGet();
+                logger.error("Version PDF de {} non enregistrée (original conservé) : {}", nomFichier, e.getMessage(), e);
+            } finally {
+                if (pdf != null) {
+                    try {
+                        Files.deleteIfExists(pdf);
+                    } catch (IOException e) {
+                        logger.warn("Fichier temporaire non supprimé : {}", pdf);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Faux si la conversion a échoué ou dépassé son délai (l'original reste seul)
+         */
+        private boolean convertir(Path pdf, MessageDigest empreinte) {
+            Thread worker = Thread.currentThread();
+            ScheduledFuture<?> alarme = minuteur.schedule(worker::interrupt, delaiMaxMillis, TimeUnit.MILLISECONDS);
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(pdf), empreinte)) {
+                converter.convertir(source, typeMime, out);
+                return true;
+            } catch (Exception e) {
+                if (worker.isInterrupted()) {
+                    delaisDepasses.incrementAndGet();
+                    logger.warn("Conversion de {} interrompue après {} s : original seul conservé", nomFichier, delaiMaxMillis / 1000);
+                } else {
+                    echecs.incrementAndGet();
+                    logger.warn("Conversion de {} impossible : {} ; original seul conservé", nomFichier, e.getMessage());
+                }
+                return false;
+            } finally {
+                alarme.cancel(false);
+                // L'alarme a pu se déclencher juste après la fin de la conversion : le thread reste utilisable
+                Thread.interrupted();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package myavocat.legit.service;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Publié après l'enregistrement d'un document (après validation de la transaction s'il y en a une).
+ * Les traitements dérivés (aperçus, ...) s'y abonnent sans ralentir le dépôt.
+ *
+ * @param fichier  fichier stocké
+ * @param derives  répertoire des fichiers dérivés du contenu (partagé par les documents de même contenu)
+ */
+public record DocumentDeposeEvent(UUID documentId, Path fichier, Path derives, String typeMime) {
+}
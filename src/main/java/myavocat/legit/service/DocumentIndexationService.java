@@ -0,0 +1,302 @@
+package myavocat.legit.service;
+
+import jakarta.annotation.PreDestroy;
+import myavocat.legit.model.Document;
+import myavocat.legit.model.DocumentTexte;
+import myavocat.legit.repository.DocumentRepository;
+import myavocat.legit.repository.DocumentTexteRepository;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indexation plein texte des documents : extraction du texte (PDFBox pour les PDF, lecture directe des .txt)
+ * vers documents_textes, interrogée par DocumentSearchService.
+ *
+ * L'extraction ne tourne jamais sur le thread de la requête de dépôt : elle est confiée à un pool borné.
+ * Si sa file est pleine, le document est simplement laissé de côté et rattrapé par le balayage périodique,
+ * qui ne soumet que les documents dont le fichier a changé depuis la dernière indexation (empreinte).
+ */
+@Service
+public class DocumentIndexationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIndexationService.class);
+
+    private static final Set<String> TYPES_INDEXES = Set.of("application/pdf", "text/plain");
+    private static final int LOT_BALAYAGE = 500;
+    // Plus petit UUID dans l'ordre de la base (comparaison octet par octet, non signée)
+    private static final UUID PREMIER_ID = new UUID(0L, 0L);
+
+    // Documents par empreinte : nouveaux, ou indexés avec un autre contenu
+    private static final String A_INDEXER =
+            "SELECT d.id FROM documents d " +
+            "LEFT JOIN documents_textes t ON t.document_id = d.id " +
+            "WHERE d.blob_sha256 IS NOT NULL AND d.id > :apres " +
+            "  AND (d.type_mime IS NULL OR d.type_mime IN ('application/pdf', 'text/plain')) " +
+            "  AND (t.document_id IS NULL OR t.empreinte <> d.blob_sha256) " +
+            "ORDER BY d.id LIMIT :limit";
+
+    // Anciens fichiers : l'empreinte (taille + date) se lit sur disque, comparée côté application
+    private static final String ANCIENS_FICHIERS =
+            "SELECT d.id, d.chemin_fichier, t.empreinte FROM documents d " +
+            "LEFT JOIN documents_textes t ON t.document_id = d.id " +
+            "WHERE d.blob_sha256 IS NULL AND d.id > :apres " +
+            "ORDER BY d.id LIMIT :limit";
+
+    private record AncienFichier(UUID id, String cheminFichier, String empreinte) {
+    }
+
+    private final DocumentRepository documentRepository;
+    private final DocumentTexteRepository documentTexteRepository;
+    private final DocumentService documentService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ThreadPoolExecutor executor;
+    private final int maxCaracteres;
+    // Documents soumis et pas encore traités : un même document n'occupe qu'une place dans la file
+    private final Set<UUID> enAttente = ConcurrentHashMap.newKeySet();
+
+    public DocumentIndexationService(DocumentRepository documentRepository,
+                                     DocumentTexteRepository documentTexteRepository,
+                                     DocumentService documentService,
+                                     NamedParameterJdbcTemplate jdbcTemplate,
+                                     @Value("${documents.indexation.threads:1}") int threads,
+                                     @Value("${documents.indexation.file:500}") int capaciteFile,
+                                     @Value("${documents.indexation.max-caracteres:2000000}") int maxCaracteres) {
+        this.documentRepository = documentRepository;
+        this.documentTexteRepository = documentTexteRepository;
+        this.documentService = documentService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxCaracteres = maxCaracteres;
+
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capaciteFile), r -> {
+            Thread t = new Thread(r, "document-indexation-" + compteur.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentDepose(DocumentDeposeEvent event) {
+        if (TYPES_INDEXES.contains(event.typeMime())) {
+            soumettre(event.documentId());
+        }
+    }
+
+    /**
+     * Rattrapage : documents jamais indexés (file pleine, redémarrage) ou dont le fichier a changé.
+     * S'arrête dès que la file est pleine ; la suite sera soumise au prochain passage.
+     */
+    @Scheduled(fixedDelayString = "${documents.indexation.balayage-ms:600000}", initialDelayString = "${documents.indexation.balayage-delai-ms:60000}")
+    public void balayer() {
+        int soumis = 0;
+        UUID apres = PREMIER_ID;
+        while (true) {
+            List<UUID> ids = jdbcTemplate.queryForList(A_INDEXER, parametresLot(apres), UUID.class);
+            for (UUID id : ids) {
+                if (!soumettre(id)) {
+                    logger.info("Indexation : {} documents soumis, file pleine, suite au prochain balayage", soumis);
+                    return;
+                }
+                soumis++;
+            }
+            if (ids.size() < LOT_BALAYAGE) {
+                break;
+            }
+            apres = ids.get(ids.size() - 1);
+        }
+
+        apres = PREMIER_ID;
+        while (true) {
+            List<AncienFichier> lot = jdbcTemplate.query(ANCIENS_FICHIERS, parametresLot(apres), (rs, i) ->
+                    new AncienFichier(rs.getObject("id", UUID.class), rs.getString("chemin_fichier"), rs.getString("empreinte")));
+            for (AncienFichier ancien : lot) {
+                String empreinte = empreinte(documentService.resoudreFichier(null, ancien.cheminFichier()));
+                if (empreinte != null && !empreinte.equals(ancien.empreinte())) {
+                    if (!soumettre(ancien.id())) {
+                        logger.info("Indexation : {} documents soumis, file pleine, suite au prochain balayage", soumis);
+                        return;
+                    }
+                    soumis++;
+                }
+            }
+            if (lot.size() < LOT_BALAYAGE) {
+                break;
+            }
+            apres = lot.get(lot.size() - 1).id();
+        }
+
+        if (soumis > 0) {
+            logger.info("Indexation : {} documents soumis par le balayage", soumis);
+        }
+    }
+
+    /**
+     * Faux si la file est pleine (le document sera repris par le balayage)
+     */
+    private boolean soumettre(UUID documentId) {
+        if (!enAttente.add(documentId)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    indexer(documentId);
+                } catch (Exception e) {
+                    logger.warn("Indexation du document {} impossible : {}", documentId, e.getMessage());
+                } finally {
+                    enAttente.remove(documentId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            enAttente.remove(documentId);
+            return false;
+        }
+    }
+
+    void indexer(UUID documentId) throws IOException {
+        Document document = documentRepository.findById(documentId).orElse(null);
+        if (document == null) {
+            return;
+        }
+        Path fichier = documentService.resoudreFichier(document);
+        String empreinte = document.getBlobSha256() != null ? document.getBlobSha256() : empreinte(fichier);
+        if (empreinte == null) {
+            return;
+        }
+
+        DocumentTexte texte = documentTexteRepository.findById(documentId).orElseGet(DocumentTexte::new);
+        if (empreinte.equals(texte.getEmpreinte())) {
+            return;
+        }
+        texte.setDocumentId(documentId);
+        texte.setEmpreinte(empreinte);
+        texte.setIndexeAt(LocalDateTime.now());
+
+        // Même contenu déjà indexé pour un autre document : texte repris tel quel
+        DocumentTexte existant = document.getBlobSha256() == null ? null : documentTexteRepository
+                .findFirstByEmpreinteAndStatutAndDocumentIdNot(empreinte, DocumentTexte.Statut.INDEXE, documentId)
+                .orElse(null);
+        if (existant != null) {
+            texte.setContenu(existant.getContenu());
+            texte.setNbPages(existant.getNbPages());
+            texte.setStatut(DocumentTexte.Statut.INDEXE);
+            texte.setErreur(null);
+            documentTexteRepository.save(texte);
+            return;
+        }
+
+        long debut = System.currentTimeMillis();
+        try {
+            if ("text/plain".equals(document.getTypeMime())) {
+                texte.setContenu(lireTexte(fichier));
+                texte.setNbPages(null);
+            } else {
+                extrairePdf(fichier, texte);
+            }
+            texte.setStatut(DocumentTexte.Statut.INDEXE);
+            texte.setErreur(null);
+        } catch (IOException | RuntimeException e) {
+            texte.setContenu(null);
+            texte.setStatut(DocumentTexte.Statut.ECHEC);
+            String message = String.valueOf(e.getMessage());
+            texte.setErreur(message.length() > 500 ? message.substring(0, 500) : message);
+        }
+        documentTexteRepository.save(texte);
+        logger.debug("Document {} indexé en {} ms ({})", documentId, System.currentTimeMillis() - debut, texte.getStatut());
+    }
+
+    /**
+     * Texte page par page, tampons PDFBox sur fichier temporaire ; arrêt à maxCaracteres
+     */
+    private void extrairePdf(Path fichier, DocumentTexte texte) throws IOException {
+        try (PDDocument pdf = PDDocument.load(fichier.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            int nbPages = pdf.getNumberOfPages();
+            PDFTextStripper stripper = new PDFTextStripper();
+            StringBuilder contenu = new StringBuilder();
+            for (int page = 1; page <= nbPages && contenu.length() < maxCaracteres; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                contenu.append(stripper.getText(pdf));
+            }
+            texte.setContenu(nettoyer(contenu));
+            texte.setNbPages(nbPages);
+        }
+    }
+
+    private String lireTexte(Path fichier) throws IOException {
+        StringBuilder contenu = new StringBuilder();
+        char[] tampon = new char[8192];
+        CharsetDecoder decodeur = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try (Reader lecteur = new InputStreamReader(Files.newInputStream(fichier), decodeur)) {
+            int lus;
+            while (contenu.length() < maxCaracteres && (lus = lecteur.read(tampon)) > 0) {
+                contenu.append(tampon, 0, lus);
+            }
+        }
+        return nettoyer(contenu);
+    }
+
+    /**
+     * Tronqué à maxCaracteres, sans caractère nul (refusé par PostgreSQL dans un text)
+     */
+    private String nettoyer(StringBuilder contenu) {
+        if (contenu.length() > maxCaracteres) {
+            contenu.setLength(maxCaracteres);
+        }
+        return contenu.toString().replace("\u0000", "");
+    }
+
+    private static String empreinte(Path fichier) {
+        try {
+            BasicFileAttributes attributs = Files.readAttributes(fichier, BasicFileAttributes.class);
+            return Long.toHexString(attributs.size()) + "-" + Long.toHexString(attributs.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static MapSqlParameterSource parametresLot(UUID apres) {
+        return new MapSqlParameterSource()
+                .addValue("apres", apres)
+                .addValue("limit", LOT_BALAYAGE);
+    }
+}
@@ -0,0 +1,211 @@
+package myavocat.legit.service;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.exceptions.PdfException;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Conversion en PDF des pièces déposées dans un autre format (images, texte, docx), avec iText comme pour
+ * les factures (voir FacturePdfRenderer).
+ *
+ * - images : une page A4 par image, mise à l'échelle ; un JPEG est recopié tel quel dans le PDF, sans décodage
+ * - texte : un paragraphe par ligne, lu en flux
+ * - docx : texte des paragraphes lu en flux (StAX) dans word/document.xml, titres en gras ; ni mise en forme
+ *   fine, ni tableaux, ni images (pas de convertisseur Office dans les dépendances)
+ *
+ * Les pages sont écrites au fur et à mesure dans le flux de sortie. Les boucles de lecture du texte et du docx
+ * s'arrêtent si le thread est interrompu (délai de conversion dépassé, voir DocumentConversionService).
+ * Une image, en revanche, est lue en entier en mémoire puis décodée par iText sans point d'interruption :
+ * le délai ne l'arrête pas. Sa taille est donc bornée avant lecture (documents.conversion.image-max-bytes) ;
+ * au-delà, la conversion échoue et seul l'original est conservé.
+ */
+@Component
+public class DocumentPdfConverter {
+
+    public static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    private static final Set<String> TYPES_CONVERTIBLES = Set.of("image/png", "image/jpeg", "text/plain", DOCX);
+
+    private static final float MARGE = 36f;
+    private static final float TAILLE_TEXTE = 10f;
+    private static final float TAILLE_TITRE = 13f;
+    private static final String NS_WORD = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private final FontProgram texteProgram;
+    private final FontProgram titreProgram;
+    private final XMLInputFactory xmlInputFactory;
+    private final long imageMaxOctets;
+
+    public DocumentPdfConverter(@Value("${documents.conversion.image-max-bytes:20971520}") long imageMaxOctets) {
+        this.imageMaxOctets = imageMaxOctets;
+        try {
+            this.texteProgram = FontProgramFactory.createFont(StandardFonts.HELVETICA);
+            this.titreProgram = FontProgramFactory.createFont(StandardFonts.HELVETICA_BOLD);
+        } catch (IOException e) {
+            throw new IllegalStateException("Polices PDF indisponibles", e);
+        }
+        // Pas de DTD ni d'entité externe dans un fichier reçu de l'extérieur
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public boolean supporte(String typeMime) {
+        return TYPES_CONVERTIBLES.contains(typeMime);
+    }
+
+    /**
+     * Écrit le PDF dans le flux (le flux est fermé par iText en fin de document)
+     */
+    public void convertir(Path source, String typeMime, OutputStream out) throws IOException {
+        if (!supporte(typeMime)) {
+            throw new RuntimeException("Conversion en PDF non supportée : " + typeMime);
+        }
+        PdfDocument pdf = new PdfDocument(new PdfWriter(out));
+        try (Document document = new Document(pdf, PageSize.A4)) {
+            document.setMargins(MARGE, MARGE, MARGE, MARGE);
+            PdfFont texte = PdfFontFactory.createFont(texteProgram);
+            PdfFont titre = PdfFontFactory.createFont(titreProgram);
+
+            switch (typeMime) {
+                case "image/png", "image/jpeg" -> image(source, document);
+                case "text/plain" -> texte(source, document, texte);
+                default -> docx(source, document, texte, titre);
+            }
+        } catch (PdfException e) {
+            throw new IOException("Conversion PDF impossible : " + e.getMessage(), e);
+        }
+    }
+
+    private void image(Path source, Document document) throws IOException {
+        long taille = Files.size(source);
+        if (taille > imageMaxOctets) {
+            throw new IOException("Image trop volumineuse pour la conversion (" + taille / (1024 * 1024)
+                    + " Mo, maximum " + imageMaxOctets / (1024 * 1024) + " Mo)");
+        }
+        verifierInterruption();
+        Image image = new Image(ImageDataFactory.create(Files.readAllBytes(source)));
+        PageSize page = PageSize.A4;
+        image.scaleToFit(page.getWidth() - 2 * MARGE, page.getHeight() - 2 * MARGE);
+        document.add(image);
+    }
+
+    private void texte(Path source, Document document, PdfFont police) throws IOException {
+        CharsetDecoder decodeur = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try (BufferedReader lecteur = new BufferedReader(new InputStreamReader(Files.newInputStream(source), decodeur))) {
+            String ligne;
+            while ((ligne = lecteur.readLine()) != null) {
+                verifierInterruption();
+                if (ligne.indexOf('\f') >= 0) {
+                    document.add(new AreaBreak());
+                    ligne = ligne.replace("\f", "");
+                }
+                document.add(paragraphe(ligne, police, TAILLE_TEXTE));
+            }
+        }
+    }
+
+    /**
+     * Paragraphes de word/document.xml : w:t (texte), w:tab, w:br ; style de paragraphe Heading / Titre en gras
+     */
+    private void docx(Path source, Document document, PdfFont texte, PdfFont titre) throws IOException {
+        try (ZipFile zip = new ZipFile(source.toFile())) {
+            ZipEntry entree = zip.getEntry("word/document.xml");
+            if (entree == null) {
+                throw new IOException("Document Word sans contenu (word/document.xml absent)");
+            }
+            try (InputStream xml = zip.getInputStream(entree)) {
+                XMLStreamReader lecteur = xmlInputFactory.createXMLStreamReader(xml);
+                try {
+                    StringBuilder paragraphe = new StringBuilder();
+                    boolean estTitre = false;
+                    boolean dansTexte = false;
+                    while (lecteur.hasNext()) {
+                        int evenement = lecteur.next();
+                        if (evenement == XMLStreamConstants.START_ELEMENT && NS_WORD.equals(lecteur.getNamespaceURI())) {
+                            switch (lecteur.getLocalName()) {
+                                case "p" -> {
+                                    paragraphe.setLength(0);
+                                    estTitre = false;
+                                }
+                                case "t" -> dansTexte = true;
+                                case "tab" -> paragraphe.append('\t');
+                                case "br", "cr" -> paragraphe.append('\n');
+                                case "pStyle" -> {
+                                    String style = lecteur.getAttributeValue(NS_WORD, "val");
+                                    estTitre = style != null && (style.startsWith("Heading") || style.startsWith("Titre") || style.equals("Title"));
+                                }
+                                default -> {
+                                }
+                            }
+                        } else if (evenement == XMLStreamConstants.CHARACTERS && dansTexte) {
+                            paragraphe.append(lecteur.getText());
+                        } else if (evenement == XMLStreamConstants.END_ELEMENT && NS_WORD.equals(lecteur.getNamespaceURI())) {
+                            if ("t".equals(lecteur.getLocalName())) {
+                                dansTexte = false;
+                            } else if ("p".equals(lecteur.getLocalName())) {
+                                verifierInterruption();
+                                document.add(estTitre
+                                        ? paragraphe(paragraphe.toString(), titre, TAILLE_TITRE)
+                                        : paragraphe(paragraphe.toString(), texte, TAILLE_TEXTE));
+                            }
+                        }
+                    }
+                } finally {
+                    lecteur.close();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Document Word illisible : " + e.getMessage(), e);
+        }
+    }
+
+    private static Paragraph paragraphe(String texte, PdfFont police, float taille) {
+        // Ligne vide : paragraphe d'un espace pour conserver l'interligne
+        return new Paragraph(texte.isEmpty() ? " " : texte)
+                .setFont(police)
+                .setFontSize(taille)
+                .setMargin(0)
+                .setMarginBottom(taille * 0.3f);
+    }
+
+    private static void verifierInterruption() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Conversion interrompue");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.DocumentSearchHitDTO;
+import myavocat.legit.dto.DocumentSearchResultDTO;
+import myavocat.legit.config.BaseDeDonnees;
+import myavocat.legit.security.CurrentUser;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Recherche plein texte dans le contenu des documents des dossiers d'un cabinet
+ * (texte extrait par DocumentIndexationService).
+ *
+ * Sur PostgreSQL : tsvector du texte (trigger + index GIN, voir PostgresSchemaInitializer) ;
+ * l'extrait (ts_headline) n'est calculé que pour les lignes de la page retournée.
+ * Sur les autres bases (H2 en test) : recherche LIKE et extrait autour de la première occurrence.
+ */
+@Service
+public class DocumentSearchService {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 50;
+
+    private static final String HEADLINE_OPTIONS = "StartSel=<mark>, StopSel=</mark>, MaxWords=30, MinWords=10, MaxFragments=2";
+
+    private static final String SEARCH_POSTGRES =
+            "WITH q AS (SELECT websearch_to_tsquery('french', :q) AS tsq) " +
+            "SELECT r.id, r.nom_fichier, r.type_fichier, r.nb_pages, r.created_at, r.dossier_id, r.reference, r.nom_dossier, r.score, " +
+            "       ts_headline('french', t.contenu, q.tsq, '" + HEADLINE_OPTIONS + "') AS highlight " +
+            "FROM ( " +
+            "  SELECT d.id, d.nom_fichier, d.type_fichier, t.nb_pages, d.created_at, dos.id AS dossier_id, dos.reference, dos.nom_dossier, " +
+            "         ts_rank_cd(t.search_vector, q.tsq) AS score " +
+            "  FROM documents_textes t " +
+            "  JOIN documents d ON d.id = t.document_id " +
+            "  JOIN dossiers dos ON dos.id = d.dossier_id, q " +
+            "  WHERE dos.office_id = :officeId AND t.search_vector @@ q.tsq " +
+            "  ORDER BY score DESC, d.created_at DESC, d.id " +
+            "  LIMIT :limit OFFSET :offset " +
+            ") r " +
+            "JOIN documents_textes t ON t.document_id = r.id, q " +
+            "ORDER BY r.score DESC, r.created_at DESC, r.id";
+
+    private static final String SEARCH_FALLBACK =
+            "SELECT d.id, d.nom_fichier, d.type_fichier, t.nb_pages, d.created_at, dos.id AS dossier_id, dos.reference, dos.nom_dossier, " +
+            "       0 AS score, SUBSTRING(t.contenu, GREATEST(LOCATE(:qlower, LOWER(t.contenu)) - 80, 1), 240) AS highlight " +
+            "FROM documents_textes t " +
+            "JOIN documents d ON d.id = t.document_id " +
+            "JOIN dossiers dos ON dos.id = d.dossier_id " +
+            "WHERE dos.office_id = :officeId AND LOWER(t.contenu) LIKE :like ESCAPE '\\' " +
+            "ORDER BY d.created_at DESC, d.id " +
+            "LIMIT :limit OFFSET :offset";
+
+    private static final RowMapper<DocumentSearchHitDTO> HIT_MAPPER = (rs, rowNum) -> {
+        DocumentSearchHitDTO hit = new DocumentSearchHitDTO();
+        hit.setId(rs.getObject("id", UUID.class));
+        hit.setNomFichier(rs.getString("nom_fichier"));
+        hit.setTypeFichier(rs.getString("type_fichier"));
+        hit.setNbPages(rs.getObject("nb_pages", Integer.class));
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        hit.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+        hit.setDossierId(rs.getObject("dossier_id", UUID.class));
+        hit.setDossierReference(rs.getString("reference"));
+        hit.setNomDossier(rs.getString("nom_dossier"));
+        hit.setScore(rs.getDouble("score"));
+        hit.setHighlight(rs.getString("highlight"));
+        return hit;
+    };
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CurrentUser currentUser;
+    private final boolean postgres;
+
+    public DocumentSearchService(NamedParameterJdbcTemplate jdbcTemplate, CurrentUser currentUser, BaseDeDonnees baseDeDonnees) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.currentUser = currentUser;
+        this.postgres = baseDeDonnees.isPostgres();
+    }
+
+    @Transactional(readOnly = true)
+    public DocumentSearchResultDTO search(UUID userId, String query, Integer page, Integer size) {
+        if (query == null || query.isBlank()) {
+            throw new RuntimeException("Le terme de recherche est requis");
+        }
+        long debut = System.currentTimeMillis();
+
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        int pageSize = (size == null || size <= 0) ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        int pageIndex = (page == null || page < 0) ? 0 : page;
+
+        String terme = query.trim();
+        String termeMinuscule = terme.toLowerCase(Locale.ROOT);
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("officeId", officeId)
+                .addValue("q", terme)
+                .addValue("qlower", termeMinuscule)
+                .addValue("like", "%" + escapeLike(termeMinuscule) + "%")
+                // Une ligne de plus pour savoir s'il existe une page suivante
+                .addValue("limit", pageSize + 1)
+                .addValue("offset", pageIndex * pageSize);
+
+        List<DocumentSearchHitDTO> hits = jdbcTemplate.query(postgres ? SEARCH_POSTGRES : SEARCH_FALLBACK, params, HIT_MAPPER);
+
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits = hits.subList(0, pageSize);
+        }
+
+        return new DocumentSearchResultDTO(terme, hits, pageIndex, pageSize, hasMore, System.currentTimeMillis() - debut);
+    }
+
+    private String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
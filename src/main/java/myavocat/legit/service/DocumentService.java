@@ -1,57 +1,103 @@
 package myavocat.legit.service;
 
+import myavocat.legit.dto.DocumentPageDTO;
+import myavocat.legit.dto.DocumentSummaryDTO;
 import myavocat.legit.model.Document;
 import myavocat.legit.model.Dossier;
 import myavocat.legit.model.User;
 import myavocat.legit.repository.DocumentRepository;
+import myavocat.legit.repository.DocumentTexteRepository;
 import myavocat.legit.repository.DossierRepository;
 import myavocat.legit.repository.UserRepository;
-import org.apache.commons.io.FilenameUtils;
+import myavocat.legit.security.CurrentUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 
 @Service
 public class DocumentService {
 
+    private static final Logger logger = LoggerFactory.getLogger(DocumentService.class);
+
+    // Dépôt depuis l'application : PDF uniquement
+    public static final Set<String> EXTENSIONS_DEPOT = Set.of("pdf");
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    // Propriétés de Document autorisées pour le tri des listes
+    private static final List<String> TRIS = List.of("createdAt", "nomFichier", "typeFichier", "taille");
+
     private final DocumentRepository documentRepository;
+    private final DocumentTexteRepository documentTexteRepository;
     private final DossierRepository dossierRepository;
     private final UserRepository userRepository;
+    private final BlobStore blobStore;
+    private final UploadPipeline uploadPipeline;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CurrentUser currentUser;
 
     // Utiliser un chemin absolu qui correspond au volume Docker
-    private final String uploadDir = "/app/uploads/";
+    private final String uploadDir;
 
     @Autowired
-    public DocumentService(DocumentRepository documentRepository, DossierRepository dossierRepository, UserRepository userRepository) {
+    public DocumentService(DocumentRepository documentRepository, DocumentTexteRepository documentTexteRepository,
+                           DossierRepository dossierRepository, UserRepository userRepository,
+                           BlobStore blobStore, UploadPipeline uploadPipeline, ApplicationEventPublisher eventPublisher,
+                           CurrentUser currentUser,
+                           @Value("${documents.upload-dir:/app/uploads/}") String uploadDir) {
         this.documentRepository = documentRepository;
+        this.documentTexteRepository = documentTexteRepository;
         this.dossierRepository = dossierRepository;
         this.userRepository = userRepository;
+        this.blobStore = blobStore;
+        this.uploadPipeline = uploadPipeline;
+        this.eventPublisher = eventPublisher;
+        this.currentUser = currentUser;
+        this.uploadDir = uploadDir;
 
         // Créer le répertoire de base s'il n'existe pas
         try {
             Files.createDirectories(Paths.get(uploadDir));
-            System.out.println("✅ Répertoire d'upload initialisé: " + uploadDir);
+            logger.info("Répertoire d'upload initialisé : {}", uploadDir);
         } catch (IOException e) {
-            System.err.println("⚠️ Impossible de créer le répertoire d'upload: " + e.getMessage());
+            logger.warn("Impossible de créer le répertoire d'upload {} : {}", uploadDir, e.getMessage());
         }
     }
 
     public Document uploadDocument(MultipartFile file, UUID dossierId, UUID userId, String typeFichier, String description) throws IOException {
-        // Vérification MIME et extension
-        System.out.println("📥 Upload demandé - dossierId: " + dossierId + ", userId: " + userId);
-        String mimeType = file.getContentType();
-        String extension = FilenameUtils.getExtension(file.getOriginalFilename()).toLowerCase();
-
-        if (!"application/pdf".equals(mimeType) || !"pdf".equals(extension)) {
-            throw new RuntimeException("Seuls les fichiers PDF sont autorisés.");
+        try (InputStream in = file.getInputStream()) {
+            return uploadDocument(in, file.getOriginalFilename(), dossierId, userId, typeFichier, description, EXTENSIONS_DEPOT);
         }
+    }
+
+    /**
+     * 🔥 Dépôt en flux : type vérifié par les octets magiques, empreinte, taille maximale et écriture
+     * en un seul passage, sans charger le fichier en mémoire (voir UploadPipeline)
+     */
+    public Document uploadDocument(InputStream source, String originalFilename, UUID dossierId, UUID userId,
+                                   String typeFichier, String description, Collection<String> extensionsAutorisees) throws IOException {
+        logger.debug("Upload demandé - dossierId: {}, userId: {}", dossierId, userId);
 
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier non trouvé"));
@@ -59,29 +105,91 @@ public class DocumentService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
 
-        String originalFilename = file.getOriginalFilename();
-        String uniqueFilename = UUID.randomUUID() + "_" + originalFilename;
+        try (UploadPipeline.FichierRecu fichier = uploadPipeline.recevoir(source, originalFilename, extensionsAutorisees)) {
+            return enregistrer(fichier, originalFilename, dossier, user, typeFichier, description);
+        }
+    }
 
-        // Chemin absolu pour stocker les fichiers
-        Path filePath = Paths.get(uploadDir, dossierId.toString(), uniqueFilename);
-        System.out.println("📂 Chemin de fichier: " + filePath.toAbsolutePath());
+    /**
+     * Dépôt d'un fichier déjà reçu et vérifié par UploadPipeline (ou produit par l'application, comme une
+     * conversion en PDF) : il n'est ni relu ni recopié. Le temporaire reste à fermer par l'appelant.
+     */
+    public Document enregistrerDocument(UploadPipeline.FichierRecu fichier, String nomFichier, UUID dossierId, UUID userId,
+                                        String typeFichier, String description) throws IOException {
+        Dossier dossier = dossierRepository.findById(dossierId)
+                .orElseThrow(() -> new RuntimeException("Dossier non trouvé"));
 
-        // Création des répertoires nécessaires
-        Files.createDirectories(filePath.getParent());
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
 
-        // Copie du fichier
-        Files.copy(file.getInputStream(), filePath);
-        System.out.println("✅ Fichier enregistré: " + filePath);
+        return enregistrer(fichier, nomFichier, dossier, user, typeFichier, description);
+    }
+
+    private Document enregistrer(UploadPipeline.FichierRecu fichier, String originalFilename, Dossier dossier, User user,
+                                 String typeFichier, String description) throws IOException {
+        // Stockage par empreinte : un contenu déjà connu n'est pas réécrit sur disque
+        BlobStore.BlobStocke blob = blobStore.publier(fichier.fichierTemporaire(), fichier.sha256(), fichier.taille());
+        String typeMime = fichier.typeMime();
+        Path filePath = blobStore.chemin(blob.sha256());
+        if (blob.doublon()) {
+            logger.debug("Contenu déjà stocké, aucun fichier écrit : {}", filePath);
+        } else {
+            logger.debug("Fichier enregistré : {}", filePath);
+        }
 
         Document document = new Document();
         document.setNomFichier(originalFilename);
         document.setCheminFichier(filePath.toString());
+        document.setBlobSha256(blob.sha256());
+        document.setTaille(blob.taille());
+        document.setTypeMime(typeMime);
         document.setTypeFichier(typeFichier);
         document.setDescription(description);
         document.setUploadedBy(user);
         document.setDossier(dossier);
 
-        return documentRepository.save(document);
+        Document saved;
+        try {
+            saved = documentRepository.save(document);
+        } catch (RuntimeException e) {
+            blobStore.liberer(blob.sha256());
+            throw e;
+        }
+
+        // Aperçus, indexation plein texte : traités en arrière-plan par les abonnés
+        eventPublisher.publishEvent(new DocumentDeposeEvent(saved.getId(), filePath,
+                blobStore.repertoireDerives(blob.sha256()), typeMime));
+        return saved;
+    }
+
+    /**
+     * Supprime un document d'un dossier du cabinet de l'utilisateur ; son contenu n'est effacé du disque
+     * que si aucun autre document ne le partage
+     */
+    public void supprimerDocument(UUID documentId, UUID userId) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new RuntimeException("Document non trouvé"));
+
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
+
+        if (document.getDossier() == null || !userOfficeId.equals(document.getDossier().getOffice().getId())) {
+            throw new RuntimeException("Accès refusé : vous ne pouvez pas supprimer ce document.");
+        }
+
+        documentTexteRepository.supprimerPourDocument(documentId);
+        documentRepository.delete(document);
+
+        if (document.getBlobSha256() != null) {
+            blobStore.liberer(document.getBlobSha256());
+        } else {
+            // Fichier déposé avant le stockage par empreinte : propre à ce document
+            try {
+                FileSystemUtils.deleteRecursively(repertoireDerives(document));
+                Files.deleteIfExists(resoudreFichier(document));
+            } catch (IOException e) {
+                logger.warn("Fichier du document {} non supprimé : {}", documentId, e.getMessage());
+            }
+        }
     }
 
     public List<Document> getDocumentsByDossier(UUID dossierId) {
@@ -92,17 +200,90 @@ public class DocumentService {
         return documentRepository.findByUploadedById(userId);
     }
 
+    /**
+     * Page de documents d'un dossier du cabinet de l'utilisateur : projection légère, sans charger les entités liées
+     * (page vide pour un dossier d'un autre cabinet)
+     */
+    public DocumentPageDTO getDocumentsPageByDossier(UUID dossierId, UUID userId, Integer page, Integer size,
+                                                     String sort, String direction) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        return page(page, size, sort, direction,
+                pageable -> documentRepository.findSummariesByDossier(dossierId, officeId, pageable));
+    }
+
+    /**
+     * Page des documents déposés par l'utilisateur dans les dossiers de son cabinet
+     */
+    public DocumentPageDTO getDocumentsPageByUser(UUID userId, Integer page, Integer size, String sort, String direction) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        return page(page, size, sort, direction,
+                pageable -> documentRepository.findSummariesByUploader(userId, officeId, pageable));
+    }
+
+    private DocumentPageDTO page(Integer page, Integer size, String sort, String direction,
+                                 Function<Pageable, Slice<DocumentSummaryDTO>> requete) {
+        int pageSize = (size == null || size <= 0) ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        int pageIndex = (page == null || page < 0) ? 0 : page;
+
+        String propriete = sort == null || sort.isBlank() ? "createdAt" : sort.trim();
+        if (!TRIS.contains(propriete)) {
+            throw new RuntimeException("Tri non supporté : " + propriete + " (valeurs possibles : " + String.join(", ", TRIS) + ")");
+        }
+        Sort.Direction sens = "asc".equalsIgnoreCase(direction) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        // id en second critère : ordre stable d'une page à l'autre
+        Sort tri = Sort.by(sens, propriete).and(Sort.by(sens, "id"));
+
+        // Slice : une ligne de plus est lue pour savoir s'il existe une page suivante, sans requête de comptage
+        Slice<DocumentSummaryDTO> slice = requete.apply(PageRequest.of(pageIndex, pageSize, tri));
+        return new DocumentPageDTO(slice.getContent(), pageIndex, pageSize, propriete,
+                sens.name().toLowerCase(Locale.ROOT), slice.hasNext());
+    }
+
     public Document getDocumentById(UUID id) {
-        Document document = documentRepository.findById(id)
+        return documentRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Document non trouvé"));
+    }
 
-        // Vérifier si le fichier existe
-        Path filePath = Paths.get(document.getCheminFichier());
-        if (!Files.exists(filePath)) {
-            System.out.println("⚠️ Le fichier n'existe pas: " + filePath);
-            // Vous pourriez décider de gérer cette situation différemment
+    /**
+     * Emplacement du fichier d'un document. Les anciens documents peuvent avoir un chemin relatif
+     * ("uploads/...") : il est résolu depuis le répertoire parent du stockage.
+     */
+    public Path resoudreFichier(Document document) {
+        return resoudreFichier(document.getBlobSha256(), document.getCheminFichier());
+    }
+
+    public Path resoudreFichier(String blobSha256, String cheminFichier) {
+        if (blobSha256 != null) {
+            return blobStore.chemin(blobSha256);
+        }
+        Path chemin = Paths.get(cheminFichier);
+        if (chemin.isAbsolute()) {
+            return chemin;
         }
+        Path racine = Paths.get(uploadDir).toAbsolutePath();
+        return chemin.startsWith(racine.getFileName()) && racine.getParent() != null
+                ? racine.getParent().resolve(chemin)
+                : racine.resolve(chemin);
+    }
 
-        return document;
+    /**
+     * Répertoire des fichiers dérivés (aperçus, ...) : partagé par contenu, ou à côté d'un ancien fichier
+     */
+    public Path repertoireDerives(Document document) {
+        if (document.getBlobSha256() != null) {
+            return blobStore.repertoireDerives(document.getBlobSha256());
+        }
+        Path fichier = resoudreFichier(document);
+        return fichier.resolveSibling(fichier.getFileName() + ".d");
+    }
+
+    /**
+     * Contenu d'un document (vérifié à la lecture s'il est stocké par empreinte)
+     */
+    public InputStream ouvrirContenu(Document document) throws IOException {
+        if (document.getBlobSha256() != null) {
+            return blobStore.ouvrir(document.getBlobSha256());
+        }
+        return Files.newInputStream(resoudreFichier(document));
     }
-}
\ No newline at end of file
+}
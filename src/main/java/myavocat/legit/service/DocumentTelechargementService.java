@@ -0,0 +1,234 @@
+package myavocat.legit.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import myavocat.legit.model.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+
+/**
+ * Téléchargement des documents : requêtes conditionnelles (ETag, Last-Modified), plages d'octets
+ * (Range / If-Range, pour le chargement progressif des PDF) et affichage en ligne ou en pièce jointe.
+ *
+ * Le fichier n'est jamais recopié dans un tampon de l'application : sous Tomcat, l'envoi est confié au
+ * connecteur (sendfile) ; sinon FileChannel.transferTo écrit directement vers la sortie.
+ */
+@Service
+public class DocumentTelechargementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentTelechargementService.class);
+
+    // Attributs de requête de Tomcat pour l'envoi par sendfile (fin exclusive)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final long[] PLAGE_IGNOREE = {};
+
+    private final DocumentService documentService;
+    private final BlobStore blobStore;
+
+    public DocumentTelechargementService(DocumentService documentService, BlobStore blobStore) {
+        this.documentService = documentService;
+        this.blobStore = blobStore;
+    }
+
+    public void envoyer(UUID documentId, boolean inline, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Document document;
+        try {
+            document = documentService.getDocumentById(documentId);
+        } catch (RuntimeException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+            return;
+        }
+
+        Path fichier = documentService.resoudreFichier(document);
+        if (!Files.isRegularFile(fichier)) {
+            logger.warn("Fichier du document {} introuvable : {}", documentId, fichier);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Fichier introuvable");
+            return;
+        }
+
+        BasicFileAttributes attributs = Files.readAttributes(fichier, BasicFileAttributes.class);
+        long taille = attributs.size();
+        // Précision HTTP : la seconde
+        long derniereModification = attributs.lastModifiedTime().toMillis() / 1000 * 1000;
+
+        // Contenu stocké par empreinte : l'empreinte est un ETag fort ; sinon ETag faible (taille + date)
+        boolean etagFort = document.getBlobSha256() != null;
+        String etag = etagFort
+                ? "\"" + document.getBlobSha256() + "\""
+                : "W/\"" + Long.toHexString(taille) + "-" + Long.toHexString(derniereModification) + "\"";
+
+        if (etagFort && !blobStore.verifier(document.getBlobSha256())) {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Contenu du document altéré");
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, derniereModification);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Documents confidentiels : conservés par le navigateur seulement, revalidés à chaque ouverture (304)
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        if (nonModifie(request, etag, derniereModification)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long debut = 0;
+        long longueur = taille;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && plageApplicable(request, etag, etagFort, derniereModification)) {
+            long[] plage = parserPlage(range, taille);
+            if (plage == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + taille);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (plage != PLAGE_IGNOREE) {
+                debut = plage[0];
+                longueur = plage[1] - plage[0] + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + plage[0] + "-" + plage[1] + "/" + taille);
+            }
+        }
+
+        String typeMime = document.getTypeMime() != null ? document.getTypeMime() : MediaType.APPLICATION_PDF_VALUE;
+        response.setContentType(typeMime);
+        ContentDisposition disposition = (inline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                .filename(document.getNomFichier(), StandardCharsets.UTF_8)
+                .build();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.toString());
+        response.setContentLengthLong(longueur);
+
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || longueur == 0) {
+            return;
+        }
+        ecrire(fichier, debut, longueur, request, response);
+    }
+
+    private void ecrire(Path fichier, long debut, long longueur, HttpServletRequest request,
+                        HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, fichier.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, debut);
+            request.setAttribute(SENDFILE_END, debut + longueur);
+            return;
+        }
+
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            WritableByteChannel sortie = Channels.newChannel(response.getOutputStream());
+            long position = debut;
+            long restant = longueur;
+            while (restant > 0) {
+                long transferes = canal.transferTo(position, restant, sortie);
+                if (transferes <= 0) {
+                    throw new IOException("Fichier tronqué pendant l'envoi : " + fichier);
+                }
+                position += transferes;
+                restant -= transferes;
+            }
+        }
+    }
+
+    /**
+     * If-None-Match (comparaison faible) prioritaire ; If-Modified-Since seulement en son absence
+     */
+    private static boolean nonModifie(HttpServletRequest request, String etag, long derniereModification) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            String valeur = sansPrefixeFaible(etag);
+            for (String candidat : ifNoneMatch.split(",")) {
+                String c = sansPrefixeFaible(candidat.trim());
+                if (c.equals("*") || c.equals(valeur)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateEnTete(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && derniereModification <= ifModifiedSince;
+    }
+
+    /**
+     * If-Range : la plage n'est servie que si la version du client est toujours la bonne (ETag fort ou date exacte)
+     */
+    private static boolean plageApplicable(HttpServletRequest request, String etag, boolean etagFort, long derniereModification) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etagFort && ifRange.equals(etag);
+        }
+        return dateEnTete(request, HttpHeaders.IF_RANGE) == derniereModification;
+    }
+
+    /**
+     * Une seule plage "bytes=debut-fin", "bytes=debut-" ou "bytes=-suffixe".
+     * PLAGE_IGNOREE si l'en-tête est mal formé ou demande plusieurs plages (réponse complète),
+     * null si la plage est hors du fichier (416).
+     */
+    private static long[] parserPlage(String range, long taille) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return PLAGE_IGNOREE;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int tiret = spec.indexOf('-');
+        if (tiret < 0) {
+            return PLAGE_IGNOREE;
+        }
+        try {
+            String avant = spec.substring(0, tiret).trim();
+            String apres = spec.substring(tiret + 1).trim();
+            if (avant.isEmpty()) {
+                long suffixe = Long.parseLong(apres);
+                if (suffixe <= 0 || taille == 0) {
+                    return null;
+                }
+                return new long[]{Math.max(0, taille - suffixe), taille - 1};
+            }
+            long debut = Long.parseLong(avant);
+            long fin = apres.isEmpty() ? taille - 1 : Math.min(Long.parseLong(apres), taille - 1);
+            if (debut >= taille) {
+                return null;
+            }
+            if (fin < debut) {
+                return PLAGE_IGNOREE;
+            }
+            return new long[]{debut, fin};
+        } catch (NumberFormatException e) {
+            return PLAGE_IGNOREE;
+        }
+    }
+
+    private static long dateEnTete(HttpServletRequest request, String nom) {
+        try {
+            return request.getDateHeader(nom);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static String sansPrefixeFaible(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -0,0 +1,203 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.DocumentArchiveDTO;
+import myavocat.legit.model.Dossier;
+import myavocat.legit.repository.DocumentRepository;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Archive ZIP des documents d'un dossier, écrite directement dans la réponse au fil de la lecture des fichiers.
+ *
+ * Aucun fichier temporaire ni tampon de l'archive complète : un seul tampon de lecture, quelle que soit la
+ * taille du dossier (ZIP64 automatique au-delà de 4 Go). Les formats déjà compressés (PDF, images, docx)
+ * sont stockés sans recompression (STORED) ; leur CRC est calculé par une première lecture du fichier,
+ * la seconde étant servie par le cache disque du système.
+ */
+@Service
+public class DossierArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DossierArchiveService.class);
+
+    private static final int TAILLE_BLOC = 64 * 1024;
+    private static final LocalDateTime DEBUT_MIN = LocalDate.of(1970, 1, 1).atStartOfDay();
+    private static final LocalDateTime FIN_MAX = LocalDate.of(9999, 1, 1).atStartOfDay();
+
+    private static final Set<String> TYPES_COMPRESSES = Set.of(
+            "application/pdf",
+            "image/png",
+            "image/jpeg",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document"
+    );
+
+    private final DossierService dossierService;
+    private final DocumentRepository documentRepository;
+    private final DocumentService documentService;
+    private final BlobStore blobStore;
+
+    public DossierArchiveService(DossierService dossierService, DocumentRepository documentRepository,
+                                 DocumentService documentService, BlobStore blobStore) {
+        this.dossierService = dossierService;
+        this.documentRepository = documentRepository;
+        this.documentService = documentService;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Contenu de l'archive : nom proposé au téléchargement et documents retenus
+     */
+    public record Selection(String nomArchive, List<DocumentArchiveDTO> documents) {
+    }
+
+    /**
+     * Sélectionne les documents à archiver (à appeler avant d'écrire la réponse : contrôle d'accès)
+     */
+    public Selection selectionner(UUID userId, UUID dossierId, String typeFichier, LocalDate dateDebut, LocalDate dateFin) {
+        Dossier dossier = dossierService.getDossierById(dossierId, userId);
+
+        LocalDateTime debut = dateDebut != null ? dateDebut.atStartOfDay() : DEBUT_MIN;
+        LocalDateTime fin = dateFin != null ? dateFin.plusDays(1).atStartOfDay() : FIN_MAX;
+        if (!fin.isAfter(debut)) {
+            throw new RuntimeException("La date de fin doit être postérieure à la date de début");
+        }
+
+        String type = typeFichier == null || typeFichier.isBlank() ? null : typeFichier.trim();
+        List<DocumentArchiveDTO> documents = documentRepository.findPourArchive(dossierId, type, debut, fin,
+                dateDebut == null && dateFin == null);
+
+        String reference = dossier.getReference() != null ? dossier.getReference() : dossier.getId().toString();
+        return new Selection("dossier_" + nettoyer(reference) + ".zip", documents);
+    }
+
+    /**
+     * Écrit l'archive dans le flux (le flux n'est pas fermé). Les documents illisibles ou altérés
+     * sont listés dans une entrée ERREURS.txt en fin d'archive.
+     */
+    public void ecrireZip(List<DocumentArchiveDTO> documents, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        zip.setLevel(Deflater.BEST_SPEED);
+
+        ByteBuffer bloc = ByteBuffer.allocate(TAILLE_BLOC);
+        Set<String> noms = new HashSet<>();
+        List<String> erreurs = new ArrayList<>();
+
+        for (DocumentArchiveDTO document : documents) {
+            Path fichier = documentService.resoudreFichier(document.getBlobSha256(), document.getCheminFichier());
+            if (!Files.isRegularFile(fichier)) {
+                erreurs.add(document.getNomFichier() + " : fichier introuvable");
+                continue;
+            }
+            if (document.getBlobSha256() != null && !blobStore.verifier(document.getBlobSha256())) {
+                erreurs.add(document.getNomFichier() + " : contenu altéré");
+                continue;
+            }
+
+            ZipEntry entree = new ZipEntry(nomUnique(document, noms));
+            if (document.getCreatedAt() != null) {
+                entree.setLastModifiedTime(FileTime.from(document.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant()));
+            }
+
+            try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+                if (TYPES_COMPRESSES.contains(typeMime(document))) {
+                    entree.setMethod(ZipEntry.STORED);
+                    entree.setSize(canal.size());
+                    entree.setCompressedSize(canal.size());
+                    entree.setCrc(crc(canal, bloc));
+                }
+                zip.putNextEntry(entree);
+                copier(canal, zip, bloc);
+                // Entrée STORED : ZipException si le fichier a changé depuis le calcul du CRC
+                zip.closeEntry();
+            }
+        }
+
+        if (!erreurs.isEmpty()) {
+            logger.warn("Archive de dossier : {} document(s) non inclus", erreurs.size());
+            zip.putNextEntry(new ZipEntry("ERREURS.txt"));
+            zip.write(String.join("\n", erreurs).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private static long crc(FileChannel canal, ByteBuffer bloc) throws IOException {
+        CRC32 crc = new CRC32();
+        canal.position(0);
+        bloc.clear();
+        while (canal.read(bloc) >= 0) {
+            bloc.flip();
+            crc.update(bloc);
+            bloc.clear();
+        }
+        canal.position(0);
+        return crc.getValue();
+    }
+
+    private static void copier(FileChannel canal, OutputStream sortie, ByteBuffer bloc) throws IOException {
+        bloc.clear();
+        int lus;
+        while ((lus = canal.read(bloc)) >= 0) {
+            sortie.write(bloc.array(), 0, lus);
+            bloc.clear();
+        }
+    }
+
+    private static String typeMime(DocumentArchiveDTO document) {
+        if (document.getTypeMime() != null) {
+            return document.getTypeMime();
+        }
+        // Anciens documents : PDF uniquement
+        return "application/pdf";
+    }
+
+    /**
+     * typeFichier/nomFichier, suffixé (_2, _3, ...) si le nom est déjà pris
+     */
+    private static String nomUnique(DocumentArchiveDTO document, Set<String> noms) {
+        String dossier = document.getTypeFichier() != null ? nettoyer(document.getTypeFichier()) + "/" : "";
+        String nomFichier = document.getNomFichier() != null ? document.getNomFichier() : document.getId().toString();
+        String base = nettoyer(FilenameUtils.getBaseName(nomFichier));
+        String extension = FilenameUtils.getExtension(nomFichier).toLowerCase(Locale.ROOT);
+        String suffixe = extension.isEmpty() ? "" : "." + nettoyer(extension);
+
+        String nom = dossier + base + suffixe;
+        for (int i = 2; !noms.add(nom); i++) {
+            nom = dossier + base + "_" + i + suffixe;
+        }
+        return nom;
+    }
+
+    /**
+     * Pas de séparateur de chemin ni de caractère de contrôle dans les noms d'entrée
+     */
+    private static String nettoyer(String valeur) {
+        String nettoye = valeur.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        return nettoye.isEmpty() || nettoye.equals(".") || nettoye.equals("..") ? "_" : nettoye;
+    }
+}
@@ -0,0 +1,341 @@
+package myavocat.legit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import myavocat.legit.dto.DossierImportResultDTO;
+import myavocat.legit.model.User;
+import myavocat.legit.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Import en masse de dossiers (reprise de l'historique d'un cabinet).
+ * Le flux CSV ou NDJSON est lu ligne par ligne et inséré par lots JDBC, une transaction par lot :
+ * la mémoire reste constante quelle que soit la taille du fichier.
+ *
+ * Colonnes / champs reconnus : reference, nomDossier, typeAffaire, statut, qualiteProcedurale,
+ * contentieux, dateContentieux (yyyy-MM-dd), createdAt (ISO), clientEmail, avocatEmail.
+ */
+@Service
+public class DossierImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DossierImportService.class);
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_ERREURS = 100;
+
+    private static final String INSERT_DOSSIER = "INSERT INTO dossiers (id, reference, nom_dossier, type_affaire, statut, " +
+            "qualite_procedurale, contentieux, contentieux_date, avocat_id, office_id, client_id, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_DOSSIER_CLIENT = "INSERT INTO dossier_clients (dossier_id, client_id) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserRepository userRepository;
+    private final DossierKpiService dossierKpiService;
+    private final ObjectMapper objectMapper;
+
+    public DossierImportService(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                UserRepository userRepository,
+                                DossierKpiService dossierKpiService,
+                                ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userRepository = userRepository;
+        this.dossierKpiService = dossierKpiService;
+        this.objectMapper = objectMapper;
+    }
+
+    public DossierImportResultDTO importer(UUID userId, UUID officeId, InputStream input, String format) throws IOException {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+
+        if (user.getOffice() == null || !user.getOffice().getId().equals(officeId)) {
+            throw new RuntimeException("Accès refusé : vous ne faites pas partie de ce cabinet.");
+        }
+
+        long debut = System.currentTimeMillis();
+        DossierImportResultDTO result = new DossierImportResultDTO();
+
+        // Correspondances email -> id chargées une fois (une requête chacune)
+        Map<String, UUID> clientsParEmail = chargerEmails("SELECT email, id FROM clients WHERE office_id = ?", officeId);
+        Map<String, UUID> avocatsParEmail = chargerEmails("SELECT email, id FROM users WHERE office_id = ?", officeId);
+
+        Set<String> referencesVues = new HashSet<>();
+        List<Object[]> lot = new ArrayList<>(BATCH_SIZE);
+        List<Long> lignesDuLot = new ArrayList<>(BATCH_SIZE);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            boolean csv = FORMAT_CSV.equalsIgnoreCase(format);
+            List<String> entetes = null;
+            char separateur = ',';
+            String line;
+            long numero = 0;
+
+            while ((line = reader.readLine()) != null) {
+                numero++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (csv && entetes == null) {
+                    String entete = stripBom(line);
+                    // Séparateur déterminé une fois sur l'en-tête : une valeur peut contenir l'autre caractère
+                    separateur = entete.indexOf(';') >= 0 ? ';' : ',';
+                    entetes = parseCsvLine(entete, separateur);
+                    continue;
+                }
+                result.setLignesLues(result.getLignesLues() + 1);
+
+                try {
+                    Map<String, String> champs = csv ? toMap(entetes, parseCsvLine(line, separateur)) : parseJsonLine(line);
+                    Object[] ligne = toRow(champs, officeId, user.getId(), clientsParEmail, avocatsParEmail);
+
+                    String reference = (String) ligne[1];
+                    if (!referencesVues.add(reference)) {
+                        throw new IllegalArgumentException("référence en double dans le fichier : " + reference);
+                    }
+                    lot.add(ligne);
+                    lignesDuLot.add(numero);
+                } catch (RuntimeException e) {
+                    ajouterErreur(result, numero, e.getMessage());
+                }
+
+                if (lot.size() >= BATCH_SIZE) {
+                    flush(lot, lignesDuLot, result);
+                }
+            }
+        }
+        flush(lot, lignesDuLot, result);
+
+        // Les compteurs KPI du cabinet sont reconstruits une fois pour tout l'import
+        if (result.getDossiersImportes() > 0) {
+            transactionTemplate.executeWithoutResult(status -> dossierKpiService.recalculer(officeId));
+        }
+
+        result.setDureeMs(System.currentTimeMillis() - debut);
+        logger.info("Import de dossiers pour le cabinet {} : {} importés, {} ignorés en {} ms",
+                officeId, result.getDossiersImportes(), result.getLignesIgnorees(), result.getDureeMs());
+        return result;
+    }
+
+    /**
+     * Insère un lot dans sa propre transaction, après avoir écarté les références déjà présentes en base
+     */
+    private void flush(List<Object[]> lot, List<Long> lignesDuLot, DossierImportResultDTO result) {
+        if (lot.isEmpty()) {
+            return;
+        }
+
+        List<String> references = lot.stream().map(r -> (String) r[1]).toList();
+        Set<String> existantes = new HashSet<>(namedJdbcTemplate.queryForList(
+                "SELECT reference FROM dossiers WHERE reference IN (:refs)",
+                new MapSqlParameterSource("refs", references), String.class));
+
+        List<Object[]> aInserer = new ArrayList<>(lot.size());
+        List<Object[]> liensClients = new ArrayList<>();
+        for (int i = 0; i < lot.size(); i++) {
+            Object[] ligne = lot.get(i);
+            if (existantes.contains((String) ligne[1])) {
+                ajouterErreur(result, lignesDuLot.get(i), "référence déjà existante : " + ligne[1]);
+                continue;
+            }
+            aInserer.add(ligne);
+            if (ligne[10] != null) {
+                liensClients.add(new Object[]{ligne[0], ligne[10]});
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_DOSSIER, aInserer);
+                if (!liensClients.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_DOSSIER_CLIENT, liensClients);
+                }
+            });
+            result.setDossiersImportes(result.getDossiersImportes() + aInserer.size());
+        } catch (DataAccessException e) {
+            // Le lot entier est annulé : on le signale sans interrompre le reste de l'import
+            logger.warn("Lot d'import rejeté ({} lignes) : {}", aInserer.size(), e.getMostSpecificCause().getMessage());
+            result.setLignesIgnorees(result.getLignesIgnorees() + aInserer.size());
+            if (result.getErreurs().size() < MAX_ERREURS) {
+                result.getErreurs().add("Lignes " + lignesDuLot.get(0) + " à " + lignesDuLot.get(lignesDuLot.size() - 1)
+                        + " : lot rejeté (" + e.getMostSpecificCause().getMessage() + ")");
+            }
+        }
+
+        lot.clear();
+        lignesDuLot.clear();
+    }
+
+    private Object[] toRow(Map<String, String> champs, UUID officeId, UUID defaultAvocatId,
+                           Map<String, UUID> clientsParEmail, Map<String, UUID> avocatsParEmail) {
+        String reference = requis(champs, "reference");
+        String nomDossier = requis(champs, "nomDossier");
+        String typeAffaire = requis(champs, "typeAffaire");
+        String qualiteProcedurale = requis(champs, "qualiteProcedurale");
+        String statut = valeur(champs, "statut");
+        String contentieux = valeur(champs, "contentieux");
+        String dateContentieux = valeur(champs, "dateContentieux");
+        String createdAt = valeur(champs, "createdAt");
+
+        UUID clientId = null;
+        String clientEmail = valeur(champs, "clientEmail");
+        if (clientEmail != null) {
+            clientId = clientsParEmail.get(clientEmail.toLowerCase(Locale.ROOT));
+            if (clientId == null) {
+                throw new IllegalArgumentException("client introuvable dans le cabinet : " + clientEmail);
+            }
+        }
+
+        UUID avocatId = defaultAvocatId;
+        String avocatEmail = valeur(champs, "avocatEmail");
+        if (avocatEmail != null) {
+            avocatId = avocatsParEmail.get(avocatEmail.toLowerCase(Locale.ROOT));
+            if (avocatId == null) {
+                throw new IllegalArgumentException("avocat introuvable dans le cabinet : " + avocatEmail);
+            }
+        }
+
+        LocalDateTime creation = createdAt != null ? LocalDateTime.parse(createdAt) : LocalDateTime.now();
+        Timestamp horodatage = Timestamp.valueOf(creation);
+
+        return new Object[]{
+                UUID.randomUUID(),
+                reference,
+                nomDossier,
+                typeAffaire,
+                statut != null ? statut : DossierKpiService.STATUT_EN_COURS,
+                qualiteProcedurale,
+                contentieux,
+                dateContentieux != null ? Date.valueOf(LocalDate.parse(dateContentieux)) : null,
+                avocatId,
+                officeId,
+                clientId,
+                horodatage,
+                horodatage
+        };
+    }
+
+    private Map<String, UUID> chargerEmails(String sql, UUID officeId) {
+        Map<String, UUID> result = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            String email = rs.getString(1);
+            if (email != null) {
+                result.put(email.toLowerCase(Locale.ROOT), rs.getObject(2, UUID.class));
+            }
+        }, officeId);
+        return result;
+    }
+
+    private Map<String, String> parseJsonLine(String line) {
+        try {
+            Map<?, ?> raw = objectMapper.readValue(line, Map.class);
+            Map<String, String> champs = new HashMap<>();
+            raw.forEach((k, v) -> champs.put(String.valueOf(k), v != null ? String.valueOf(v) : null));
+            return champs;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON invalide");
+        }
+    }
+
+    private Map<String, String> toMap(List<String> entetes, List<String> valeurs) {
+        if (valeurs.size() > entetes.size()) {
+            throw new IllegalArgumentException("trop de colonnes");
+        }
+        Map<String, String> champs = new HashMap<>();
+        for (int i = 0; i < valeurs.size(); i++) {
+            champs.put(entetes.get(i).trim(), valeurs.get(i));
+        }
+        return champs;
+    }
+
+    /**
+     * Découpe une ligne CSV (guillemets doublés pour les échapper).
+     * Les champs sur plusieurs lignes ne sont pas pris en charge.
+     */
+    static List<String> parseCsvLine(String line, char separateur) {
+        List<String> valeurs = new ArrayList<>();
+        StringBuilder courant = new StringBuilder();
+        boolean entreGuillemets = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (entreGuillemets) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        courant.append('"');
+                        i++;
+                    } else {
+                        entreGuillemets = false;
+                    }
+                } else {
+                    courant.append(c);
+                }
+            } else if (c == '"') {
+                entreGuillemets = true;
+            } else if (c == separateur) {
+                valeurs.add(courant.toString());
+                courant.setLength(0);
+            } else {
+                courant.append(c);
+            }
+        }
+        valeurs.add(courant.toString());
+        return valeurs;
+    }
+
+    private String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+
+    private String requis(Map<String, String> champs, String nom) {
+        String v = valeur(champs, nom);
+        if (v == null) {
+            throw new IllegalArgumentException("champ obligatoire manquant : " + nom);
+        }
+        return v;
+    }
+
+    private String valeur(Map<String, String> champs, String nom) {
+        String v = champs.get(nom);
+        return (v == null || v.isBlank()) ? null : v.trim();
+    }
+
+    private void ajouterErreur(DossierImportResultDTO result, long ligne, String message) {
+        result.setLignesIgnorees(result.getLignesIgnorees() + 1);
+        if (result.getErreurs().size() < MAX_ERREURS) {
+            result.getErreurs().add("Ligne " + ligne + " : " + message);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package myavocat.legit.service;
+
+import myavocat.legit.config.BaseDeDonnees;
+import myavocat.legit.dto.DossierSummaryDTO;
+import myavocat.legit.model.DossierKpiCompteur;
+import myavocat.legit.model.DossierKpiJour;
+import myavocat.legit.repository.DossierKpiCompteurRepository;
+import myavocat.legit.repository.DossierKpiJourRepository;
+import myavocat.legit.repository.DossierRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * KPI des dossiers par cabinet.
+ * Les compteurs sont maintenus de façon incrémentale par DossierService ; ils sont construits à partir
+ * d'une requête d'agrégat à la première écriture d'un cabinet. Cette construction est sérialisée par cabinet
+ * (verrou de transaction) et les lignes par jour sont incrémentées par upsert : deux premiers dossiers
+ * simultanés ne se gênent pas. La lecture n'écrit jamais.
+ */
+@Service
+public class DossierKpiService {
+
+    public static final String STATUT_EN_COURS = "En cours";
+    public static final String STATUT_EN_ATTENTE = "En attente";
+    public static final String STATUT_TERMINE = "Fini";
+
+    private static final int VERROU_INITIALISATION = 1;
+
+    private final DossierRepository dossierRepository;
+    private final DossierKpiCompteurRepository compteurRepository;
+    private final DossierKpiJourRepository jourRepository;
+    private final BaseDeDonnees baseDeDonnees;
+
+    public DossierKpiService(DossierRepository dossierRepository,
+                             DossierKpiCompteurRepository compteurRepository,
+                             DossierKpiJourRepository jourRepository,
+                             BaseDeDonnees baseDeDonnees) {
+        this.dossierRepository = dossierRepository;
+        this.compteurRepository = compteurRepository;
+        this.jourRepository = jourRepository;
+        this.baseDeDonnees = baseDeDonnees;
+    }
+
+    /**
+     * À appeler après l'enregistrement d'un nouveau dossier (même transaction)
+     */
+    @Transactional
+    public void onDossierCree(UUID officeId, String statut, LocalDateTime createdAt) {
+        if (initialiserSiAbsent(officeId)) {
+            return; // le dossier vient d'être flushé : il est compté
+        }
+        appliquerStatut(officeId, statut, 1, 1);
+        incrementerJour(officeId, createdAt, 1);
+    }
+
+    /**
+     * À appeler après la suppression d'un dossier (même transaction)
+     */
+    @Transactional
+    public void onDossierSupprime(UUID officeId, String statut, LocalDateTime createdAt) {
+        if (initialiserSiAbsent(officeId)) {
+            return;
+        }
+        appliquerStatut(officeId, statut, -1, -1);
+        incrementerJour(officeId, createdAt, -1);
+    }
+
+    /**
+     * À appeler quand le statut d'un dossier change
+     */
+    @Transactional
+    public void onStatutModifie(UUID officeId, String ancienStatut, String nouveauStatut) {
+        if (ancienStatut != null && ancienStatut.equals(nouveauStatut)) {
+            return;
+        }
+        if (initialiserSiAbsent(officeId)) {
+            return;
+        }
+        appliquerStatut(officeId, ancienStatut, -1, 0);
+        appliquerStatut(officeId, nouveauStatut, 1, 0);
+    }
+
+    /**
+     * Reconstruit les compteurs d'un cabinet à partir de la table dossiers (deux requêtes d'agrégat)
+     */
+    @Transactional
+    public DossierKpiCompteur recalculer(UUID officeId) {
+        baseDeDonnees.verrouillerJusquaFinTransaction(VERROU_INITIALISATION, officeId);
+
+        DossierKpiCompteur compteur = compteurRepository.findById(officeId).orElseGet(DossierKpiCompteur::new);
+        compterDossiers(officeId, compteur);
+        compteur.setRecalculeAt(LocalDateTime.now());
+        compteurRepository.save(compteur);
+
+        // Créations par jour : seules les fenêtres glissantes de l'année en cours sont nécessaires
+        jourRepository.deleteByOfficeId(officeId);
+        List<DossierKpiJour> jours = compterCreationsParJour(officeId, LocalDate.now());
+        jourRepository.saveAll(jours);
+
+        return compteur;
+    }
+
+    /**
+     * KPI du tableau de bord : lecture des compteurs + sommes sur les jours de l'année en cours
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getKpi(UUID officeId) {
+        LocalDate today = LocalDate.now();
+        LocalDate debutSemaine = today.with(DayOfWeek.MONDAY);
+        LocalDate debutMois = today.with(TemporalAdjusters.firstDayOfMonth());
+        LocalDate debutAnnee = today.with(TemporalAdjusters.firstDayOfYear());
+
+        DossierKpiCompteur compteur = compteurRepository.findById(officeId).orElse(null);
+        Object[] fenetres;
+        if (compteur != null) {
+            fenetres = jourRepository.sommesParFenetre(officeId, today, debutSemaine, debutMois, debutAnnee,
+                    debutFenetres(today)).get(0);
+        } else {
+            // Cabinet sans compteurs (aucune écriture depuis leur mise en place) : mêmes agrégats, calculés sans les enregistrer
+            compteur = new DossierKpiCompteur();
+            compterDossiers(officeId, compteur);
+            LocalDate[] debuts = {today, debutSemaine, debutMois, debutAnnee};
+            long[] sommes = new long[debuts.length];
+            for (DossierKpiJour jour : compterCreationsParJour(officeId, today)) {
+                for (int i = 0; i < debuts.length; i++) {
+                    if (!jour.getJour().isBefore(debuts[i])) {
+                        sommes[i] += jour.getNombre();
+                    }
+                }
+            }
+            fenetres = new Object[]{sommes[0], sommes[1], sommes[2], sommes[3]};
+        }
+
+        // 5 derniers dossiers : lecture directe de l'index (office_id, created_at, id)
+        List<Map<String, Object>> derniersDossiers = dossierRepository
+                .findSummariesByOffice(officeId, null, null, null, PageRequest.of(0, 5)).stream()
+                .map(this::toDernierDossier)
+                .collect(Collectors.toList());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("totalDossiers", compteur.getTotal());
+        result.put("dossiersEnCours", compteur.getEnCours());
+        result.put("dossiersEnAttente", compteur.getEnAttente());
+        result.put("dossiersTermines", compteur.getTermines());
+        result.put("dossiersAujourdHui", ((Number) fenetres[0]).longValue());
+        result.put("dossiersCetteSemaine", ((Number) fenetres[1]).longValue());
+        result.put("dossiersCeMois", ((Number) fenetres[2]).longValue());
+        result.put("dossiersCetteAnnee", ((Number) fenetres[3]).longValue());
+        result.put("derniersDossiers", derniersDossiers);
+
+        return result;
+    }
+
+    /**
+     * Construit les compteurs du cabinet s'ils n'existent pas encore. Vrai si c'est le cas : l'écriture en cours
+     * est alors déjà comptée. Le verrou garantit une seule construction quand deux transactions arrivent ensemble ;
+     * la seconde voit ensuite les compteurs validés par la première et applique ses deltas.
+     */
+    private boolean initialiserSiAbsent(UUID officeId) {
+        if (compteurRepository.existsById(officeId)) {
+            return false;
+        }
+        baseDeDonnees.verrouillerJusquaFinTransaction(VERROU_INITIALISATION, officeId);
+        if (compteurRepository.existsById(officeId)) {
+            return false;
+        }
+        recalculer(officeId);
+        return true;
+    }
+
+    private void compterDossiers(UUID officeId, DossierKpiCompteur compteur) {
+        Object[] row = dossierRepository.countKpiByOffice(officeId, STATUT_EN_COURS, STATUT_EN_ATTENTE, STATUT_TERMINE).get(0);
+        compteur.setOfficeId(officeId);
+        compteur.setTotal(((Number) row[0]).longValue());
+        compteur.setEnCours(((Number) row[1]).longValue());
+        compteur.setEnAttente(((Number) row[2]).longValue());
+        compteur.setTermines(((Number) row[3]).longValue());
+    }
+
+    private List<DossierKpiJour> compterCreationsParJour(UUID officeId, LocalDate today) {
+        LocalDateTime depuis = debutFenetres(today).atStartOfDay();
+        return dossierRepository.countCreationsParJour(officeId, depuis).stream()
+                .map(r -> new DossierKpiJour(officeId, (LocalDate) r[0], ((Number) r[1]).longValue()))
+                .collect(Collectors.toList());
+    }
+
+    private void appliquerStatut(UUID officeId, String statut, long delta, long deltaTotal) {
+        compteurRepository.appliquerDeltas(officeId, deltaTotal,
+                STATUT_EN_COURS.equals(statut) ? delta : 0,
+                STATUT_EN_ATTENTE.equals(statut) ? delta : 0,
+                STATUT_TERMINE.equals(statut) ? delta : 0);
+    }
+
+    private void incrementerJour(UUID officeId, LocalDateTime createdAt, long delta) {
+        if (createdAt == null) {
+            return;
+        }
+        LocalDate jour = createdAt.toLocalDate();
+        if (delta < 0) {
+            jourRepository.incrementer(officeId, jour, delta);
+        } else if (baseDeDonnees.isPostgres()) {
+            jourRepository.ajouterPostgres(UUID.randomUUID(), officeId, jour, delta);
+        } else {
+            jourRepository.ajouterMerge(UUID.randomUUID(), officeId, jour, delta);
+        }
+    }
+
+    // La semaine en cours peut commencer l'année précédente
+    private LocalDate debutFenetres(LocalDate today) {
+        LocalDate debutSemaine = today.with(DayOfWeek.MONDAY);
+        LocalDate debutAnnee = today.with(TemporalAdjusters.firstDayOfYear());
+        return debutSemaine.isBefore(debutAnnee) ? debutSemaine : debutAnnee;
+    }
+
+    private Map<String, Object> toDernierDossier(DossierSummaryDTO dossier) {
+        Map<String, Object> dossierMap = new HashMap<>();
+        dossierMap.put("id", dossier.getId());
+        dossierMap.put("reference", dossier.getReference());
+        dossierMap.put("nomDossier", dossier.getNomDossier());
+        dossierMap.put("typeAffaire", dossier.getTypeAffaire());
+        dossierMap.put("statut", dossier.getStatut());
+        dossierMap.put("createdAt", dossier.getCreatedAt());
+        return dossierMap;
+    }
+}
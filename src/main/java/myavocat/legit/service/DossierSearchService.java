@@ -0,0 +1,135 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.DossierSearchHitDTO;
+import myavocat.legit.dto.DossierSearchResultDTO;
+import myavocat.legit.config.BaseDeDonnees;
+import myavocat.legit.security.CurrentUser;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Recherche plein texte sur les dossiers d'un cabinet (référence, nom, type d'affaire, contentieux,
+ * noms des clients et adversaires liés).
+ *
+ * Sur PostgreSQL : tsvector pondéré + trigrammes, tenus à jour par trigger (voir PostgresSchemaInitializer) ;
+ * sans l'extension pg_trgm, classement sur le seul tsvector.
+ * Le surlignage (ts_headline) n'est calculé que pour les lignes de la page retournée.
+ * Sur les autres bases (H2 en test) : simple recherche LIKE sur la référence et le nom.
+ */
+@Service
+public class DossierSearchService {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final String HEADLINE_OPTIONS = "StartSel=<mark>, StopSel=</mark>, MaxWords=20, MinWords=5, MaxFragments=2";
+
+    private static final String SEARCH_POSTGRES_TEMPLATE =
+            "WITH q AS (SELECT websearch_to_tsquery('french', :q) AS tsq) " +
+            "SELECT r.id, r.reference, r.nom_dossier, r.type_affaire, r.statut, r.created_at, r.score, " +
+            "       ts_headline('french', concat_ws(' — ', r.reference, r.nom_dossier, r.contentieux), q.tsq, '" + HEADLINE_OPTIONS + "') AS highlight " +
+            "FROM ( " +
+            "  SELECT d.id, d.reference, d.nom_dossier, d.type_affaire, d.statut, d.created_at, d.contentieux, " +
+            "         %s AS score " +
+            "  FROM dossiers d, q " +
+            "  WHERE d.office_id = :officeId " +
+            "    AND %s " +
+            "  ORDER BY score DESC, d.created_at DESC, d.id " +
+            "  LIMIT :limit OFFSET :offset " +
+            ") r, q " +
+            "ORDER BY r.score DESC, r.created_at DESC, r.id";
+
+    // Avec pg_trgm : correspondances partielles (fautes de frappe, début de mot) en plus du plein texte
+    private static final String SEARCH_POSTGRES = SEARCH_POSTGRES_TEMPLATE.formatted(
+            "ts_rank_cd(d.search_vector, q.tsq) + word_similarity(:qlower, d.search_text)",
+            "(d.search_vector @@ q.tsq OR d.search_text LIKE :like ESCAPE '\\')");
+
+    // Sans pg_trgm (extension non installée, droits insuffisants) : plein texte seul
+    private static final String SEARCH_POSTGRES_SANS_TRGM = SEARCH_POSTGRES_TEMPLATE.formatted(
+            "ts_rank_cd(d.search_vector, q.tsq)",
+            "d.search_vector @@ q.tsq");
+
+    private static final String SEARCH_FALLBACK =
+            "SELECT d.id, d.reference, d.nom_dossier, d.type_affaire, d.statut, d.created_at, 0 AS score, d.nom_dossier AS highlight " +
+            "FROM dossiers d " +
+            "WHERE d.office_id = :officeId " +
+            "  AND (LOWER(d.reference) LIKE :like ESCAPE '\\' OR LOWER(d.nom_dossier) LIKE :like ESCAPE '\\') " +
+            "ORDER BY d.created_at DESC, d.id " +
+            "LIMIT :limit OFFSET :offset";
+
+    private static final RowMapper<DossierSearchHitDTO> HIT_MAPPER = (rs, rowNum) -> {
+        DossierSearchHitDTO hit = new DossierSearchHitDTO();
+        hit.setId(rs.getObject("id", UUID.class));
+        hit.setReference(rs.getString("reference"));
+        hit.setNomDossier(rs.getString("nom_dossier"));
+        hit.setTypeAffaire(rs.getString("type_affaire"));
+        hit.setStatut(rs.getString("statut"));
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        hit.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+        hit.setScore(rs.getDouble("score"));
+        hit.setHighlight(rs.getString("highlight"));
+        return hit;
+    };
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CurrentUser currentUser;
+    private final BaseDeDonnees baseDeDonnees;
+
+    public DossierSearchService(NamedParameterJdbcTemplate jdbcTemplate, CurrentUser currentUser, BaseDeDonnees baseDeDonnees) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.currentUser = currentUser;
+        this.baseDeDonnees = baseDeDonnees;
+    }
+
+    @Transactional(readOnly = true)
+    public DossierSearchResultDTO search(UUID userId, String query, Integer page, Integer size) {
+        if (query == null || query.isBlank()) {
+            throw new RuntimeException("Le terme de recherche est requis");
+        }
+        long debut = System.currentTimeMillis();
+
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        int pageSize = (size == null || size <= 0) ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        int pageIndex = (page == null || page < 0) ? 0 : page;
+
+        String terme = query.trim();
+        String termeMinuscule = terme.toLowerCase(Locale.ROOT);
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("officeId", officeId)
+                .addValue("q", terme)
+                .addValue("qlower", termeMinuscule)
+                .addValue("like", "%" + escapeLike(termeMinuscule) + "%")
+                // Une ligne de plus pour savoir s'il existe une page suivante
+                .addValue("limit", pageSize + 1)
+                .addValue("offset", pageIndex * pageSize);
+
+        List<DossierSearchHitDTO> hits = jdbcTemplate.query(requete(), params, HIT_MAPPER);
+
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits = hits.subList(0, pageSize);
+        }
+
+        return new DossierSearchResultDTO(terme, hits, pageIndex, pageSize, hasMore, System.currentTimeMillis() - debut);
+    }
+
+    private String requete() {
+        if (!baseDeDonnees.isPostgres()) {
+            return SEARCH_FALLBACK;
+        }
+        return baseDeDonnees.extensionInstallee("pg_trgm") ? SEARCH_POSTGRES : SEARCH_POSTGRES_SANS_TRGM;
+    }
+
+    private String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -1,5 +1,11 @@
 package myavocat.legit.service;
 
+import myavocat.legit.dto.CreateDossierDTO;
+import myavocat.legit.dto.DossierDTO;
+import myavocat.legit.dto.DossierPageDTO;
+import myavocat.legit.dto.DossierPartieRowDTO;
+import myavocat.legit.dto.DossierRowDTO;
+import myavocat.legit.dto.DossierSummaryDTO;
 import myavocat.legit.model.Dossier;
 import myavocat.legit.model.Office;
 import myavocat.legit.model.User;
@@ -8,16 +14,21 @@ import myavocat.legit.model.Adversaire;
 import myavocat.legit.repository.DossierRepository;
 import myavocat.legit.repository.OfficeRepository;
 import myavocat.legit.repository.UserRepository;
+import myavocat.legit.security.CurrentUser;
 import myavocat.legit.repository.ClientRepository;
 import myavocat.legit.repository.AdversaireRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -26,12 +37,20 @@ import java.util.stream.Collectors;
 @Service
 public class DossierService {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    // Taille maximale d'une clause IN lors du chargement des parties prenantes
+    private static final int PARTIES_BATCH_SIZE = 1000;
+
     @Autowired
     private DossierRepository dossierRepository;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CurrentUser currentUser;
+
     @Autowired
     private OfficeRepository officeRepository;
 
@@ -41,6 +60,9 @@ public class DossierService {
     @Autowired
     private AdversaireRepository adversaireRepository;
 
+    @Autowired
+    private DossierKpiService dossierKpiService;
+
     @Transactional
     public Dossier createDossier(Dossier dossier, UUID userId, UUID officeId, UUID clientId, UUID adversaireId) {
         User user = userRepository.findById(userId)
@@ -65,19 +87,181 @@ public class DossierService {
         dossier.setClient(client);
         dossier.setAdversaire(adversaire);
 
-        return dossierRepository.save(dossier);
+        Dossier saved = dossierRepository.save(dossier);
+        dossierKpiService.onDossierCree(officeId, saved.getStatut(), saved.getCreatedAt());
+        return saved;
     }
 
-    @Transactional(readOnly = true)
-    public List<Dossier> getAllDossiers(UUID userId) {
+    /**
+     * Créer un dossier et rattacher cabinet, avocat, clients et adversaires dans une seule transaction.
+     * Les parties sont chargées en une requête par type (findAllById) au lieu d'une par partie.
+     */
+    @Transactional
+    public Dossier createDossierAvecParties(UUID userId, UUID officeId, CreateDossierDTO request) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
 
-        UUID officeId = user.getOffice().getId(); // Un utilisateur appartient à **un seul** cabinet
+        // Vérification : l'utilisateur doit appartenir au cabinet
+        if (user.getOffice() == null || !user.getOffice().getId().equals(officeId)) {
+            throw new RuntimeException("Accès refusé : vous ne faites pas partie de ce cabinet.");
+        }
 
-        return dossierRepository.findAll().stream()
-                .filter(dossier -> dossier.getOffice().getId().equals(officeId))
-                .collect(Collectors.toList());
+        User avocat = user;
+        if (request.getAvocatId() != null && !request.getAvocatId().equals(userId)) {
+            avocat = userRepository.findById(request.getAvocatId())
+                    .orElseThrow(() -> new RuntimeException("Avocat introuvable"));
+            if (avocat.getOffice() == null || !avocat.getOffice().getId().equals(officeId)) {
+                throw new RuntimeException("Accès refusé : cet avocat appartient à un autre cabinet.");
+            }
+        }
+
+        List<UUID> clientIds = distinct(request.getClientIds());
+        List<Client> clients = clientRepository.findAllById(clientIds);
+        if (clients.size() != clientIds.size()) {
+            throw new RuntimeException("Client introuvable");
+        }
+        for (Client client : clients) {
+            if (client.getOffice() == null || !client.getOffice().getId().equals(officeId)) {
+                throw new RuntimeException("Accès refusé : ce client appartient à un autre cabinet.");
+            }
+        }
+
+        List<UUID> adversaireIds = distinct(request.getAdversaireIds());
+        List<Adversaire> adversaires = adversaireRepository.findAllById(adversaireIds);
+        if (adversaires.size() != adversaireIds.size()) {
+            throw new RuntimeException("Adversaire introuvable");
+        }
+        for (Adversaire adversaire : adversaires) {
+            // Le cabinet est facultatif sur un adversaire : seuls ceux d'un autre cabinet sont refusés
+            if (adversaire.getOffice() != null && !adversaire.getOffice().getId().equals(officeId)) {
+                throw new RuntimeException("Accès refusé : cet adversaire appartient à un autre cabinet.");
+            }
+        }
+
+        Dossier dossier = new Dossier();
+        dossier.setReference(request.getReference());
+        dossier.setNomDossier(request.getNomDossier());
+        dossier.setTypeAffaire(request.getTypeAffaire());
+        dossier.setStatut(request.getStatut() != null ? request.getStatut() : DossierKpiService.STATUT_EN_COURS);
+        dossier.setQualiteProcedurale(request.getQualiteProcedurale());
+        dossier.setContentieux(request.getContentieux());
+        dossier.setDateContentieux(request.getDateContentieux());
+        dossier.setOffice(user.getOffice());
+        dossier.setAvocat(avocat);
+
+        // findAllById ne garantit pas l'ordre : on respecte celui de la requête pour les parties principales
+        Map<UUID, Client> clientsById = clients.stream().collect(Collectors.toMap(Client::getId, c -> c));
+        for (UUID clientId : clientIds) {
+            dossier.addClient(clientsById.get(clientId));
+        }
+        Map<UUID, Adversaire> adversairesById = adversaires.stream().collect(Collectors.toMap(Adversaire::getId, a -> a));
+        for (UUID adversaireId : adversaireIds) {
+            dossier.addAdversaire(adversairesById.get(adversaireId));
+        }
+        dossier.setClient(clientIds.isEmpty() ? null : clientsById.get(clientIds.get(0)));
+        dossier.setAdversaire(adversaireIds.isEmpty() ? null : adversairesById.get(adversaireIds.get(0)));
+
+        Dossier saved = dossierRepository.save(dossier);
+        dossierKpiService.onDossierCree(officeId, saved.getStatut(), saved.getCreatedAt());
+        return saved;
+    }
+
+    private List<UUID> distinct(List<UUID> ids) {
+        return ids == null ? List.of() : List.copyOf(new LinkedHashSet<>(ids));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Dossier> getAllDossiers(UUID userId) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+
+        // Filtrage en base et relations chargées en une requête (plus de findAll() filtré en mémoire)
+        return dossierRepository.findWithClientsByOfficeId(officeId);
+    }
+
+    /**
+     * Tous les dossiers du cabinet sous forme de DossierDTO, triés du plus récent au plus ancien.
+     * Une requête pour les dossiers, puis une requête par lot pour les clients et pour les adversaires.
+     */
+    @Transactional(readOnly = true)
+    public List<DossierDTO> getAllDossierDTOs(UUID userId) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        return toDossierDTOs(dossierRepository.findDossierRowsByOffice(officeId));
+    }
+
+    /**
+     * Un dossier sous forme de DossierDTO, si l'utilisateur fait partie du même cabinet
+     */
+    @Transactional(readOnly = true)
+    public DossierDTO getDossierDTOById(UUID dossierId, UUID userId) {
+        DossierRowDTO row = findDossierRow(dossierId);
+
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
+        if (!userOfficeId.equals(row.getOfficeId())) {
+            throw new RuntimeException("Accès refusé : vous ne faites pas partie de ce cabinet.");
+        }
+
+        return toDossierDTOs(List.of(row)).get(0);
+    }
+
+    /**
+     * Liste paginée des dossiers du cabinet de l'utilisateur (tri createdAt DESC, id DESC).
+     * Filtrage, tri et pagination sont faits en base ; seule une projection DTO est chargée.
+     */
+    @Transactional(readOnly = true)
+    public DossierPageDTO getDossiersPage(UUID userId, String cursor, Integer size,
+                                          String statut, String typeAffaire, UUID avocatId) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+
+        int pageSize = (size == null || size <= 0) ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        // On demande un élément de plus pour savoir s'il existe une page suivante
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+
+        List<DossierSummaryDTO> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = dossierRepository.findSummariesByOffice(officeId, statut, typeAffaire, avocatId, limit);
+        } else {
+            String[] parts = decodeCursor(cursor);
+            LocalDateTime cursorCreatedAt;
+            UUID cursorId;
+            try {
+                cursorCreatedAt = LocalDateTime.parse(parts[0]);
+                cursorId = UUID.fromString(parts[1]);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Curseur de pagination invalide");
+            }
+            rows = dossierRepository.findSummariesByOfficeAfter(officeId, statut, typeAffaire, avocatId,
+                    cursorCreatedAt, cursorId, limit);
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<DossierSummaryDTO> items = hasMore ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = null;
+        if (hasMore) {
+            DossierSummaryDTO last = items.get(items.size() - 1);
+            LocalDateTime createdAt = last.getCreatedAt() != null ? last.getCreatedAt() : DossierRepository.CREATED_AT_ABSENT;
+            nextCursor = encodeCursor(createdAt, last.getId());
+        }
+
+        return new DossierPageDTO(items, nextCursor, hasMore);
+    }
+
+    private String encodeCursor(LocalDateTime createdAt, UUID id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Curseur de pagination invalide");
+        }
     }
 
     @Transactional(readOnly = true)
@@ -85,10 +269,9 @@ public class DossierService {
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier non trouvé"));
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne faites pas partie de ce cabinet.");
         }
 
@@ -100,20 +283,23 @@ public class DossierService {
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier non trouvé"));
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas supprimer ce dossier.");
         }
 
+        UUID officeId = dossier.getOffice().getId();
+        String statut = dossier.getStatut();
+        LocalDateTime createdAt = dossier.getCreatedAt();
+
         dossierRepository.deleteById(dossierId);
+        dossierKpiService.onDossierSupprime(officeId, statut, createdAt);
     }
 
     @Transactional
     public Dossier assignClientToDossier(UUID userId, UUID dossierId, UUID clientId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier introuvable"));
@@ -122,7 +308,7 @@ public class DossierService {
                 .orElseThrow(() -> new RuntimeException("Client introuvable"));
 
         // Vérification : l'utilisateur doit faire partie du même cabinet que le dossier
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas modifier ce dossier.");
         }
 
@@ -132,8 +318,7 @@ public class DossierService {
 
     @Transactional
     public Dossier assignAdversaireToDossier(UUID userId, UUID dossierId, UUID adversaireId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier introuvable"));
@@ -142,7 +327,7 @@ public class DossierService {
                 .orElseThrow(() -> new RuntimeException("Adversaire introuvable"));
 
         // Vérification : l'utilisateur doit faire partie du même cabinet que le dossier
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas modifier ce dossier.");
         }
 
@@ -161,8 +346,11 @@ public class DossierService {
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier non trouvé avec l'ID: " + dossierId));
 
+        String ancienStatut = dossier.getStatut();
         dossier.setStatut(statut);
-        return dossierRepository.save(dossier);
+        Dossier saved = dossierRepository.save(dossier);
+        dossierKpiService.onStatutModifie(saved.getOffice().getId(), ancienStatut, statut);
+        return saved;
     }
     @Transactional
     public Dossier assignAvocatToDossier(UUID dossierId, UUID userId) {
@@ -196,59 +384,10 @@ public class DossierService {
 
     @Transactional(readOnly = true)
     public Map<String, Object> getKpiDossiers(UUID userId) {
-        UUID officeId = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"))
-                .getOffice().getId();
-
-        List<Dossier> allDossiers = dossierRepository.findAll().stream()
-                .filter(dossier -> dossier.getOffice().getId().equals(officeId))
-                .collect(Collectors.toList());
-
-        long totalDossiers = allDossiers.size();
-        long dossiersEnCours = allDossiers.stream().filter(d -> "En cours".equals(d.getStatut())).count();
-        long dossiersEnAttente = allDossiers.stream().filter(d -> "En attente".equals(d.getStatut())).count();
-        long dossiersTermines = allDossiers.stream().filter(d -> "Fini".equals(d.getStatut())).count();
-
-        // **Filtres temporels**
-        LocalDateTime debutJour = LocalDate.now().atStartOfDay();
-        LocalDateTime debutSemaine = LocalDate.now().with(java.time.DayOfWeek.MONDAY).atStartOfDay();
-        LocalDateTime debutMois = LocalDate.now().with(TemporalAdjusters.firstDayOfMonth()).atStartOfDay();
-        LocalDateTime debutAnnee = LocalDate.now().with(TemporalAdjusters.firstDayOfYear()).atStartOfDay();
-
-        long dossiersAujourdHui = allDossiers.stream().filter(d -> d.getCreatedAt().isAfter(debutJour)).count();
-        long dossiersCetteSemaine = allDossiers.stream().filter(d -> d.getCreatedAt().isAfter(debutSemaine)).count();
-        long dossiersCeMois = allDossiers.stream().filter(d -> d.getCreatedAt().isAfter(debutMois)).count();
-        long dossiersCetteAnnee = allDossiers.stream().filter(d -> d.getCreatedAt().isAfter(debutAnnee)).count();
-
-        // **5 derniers dossiers créés**
-        List<Map<String, Object>> derniersDossiers = allDossiers.stream()
-                .sorted((d1, d2) -> d2.getCreatedAt().compareTo(d1.getCreatedAt()))
-                .limit(5)
-                .map(dossier -> {
-                    Map<String, Object> dossierMap = new HashMap<>();
-                    dossierMap.put("id", dossier.getId());
-                    dossierMap.put("reference", dossier.getReference());
-                    dossierMap.put("nomDossier", dossier.getNomDossier());
-                    dossierMap.put("typeAffaire", dossier.getTypeAffaire());
-                    dossierMap.put("statut", dossier.getStatut());
-                    dossierMap.put("createdAt", dossier.getCreatedAt());
-                    return dossierMap;
-                })
-                .collect(Collectors.toList());
-
-        // **Construction de la réponse**
-        Map<String, Object> result = new HashMap<>();
-        result.put("totalDossiers", totalDossiers);
-        result.put("dossiersEnCours", dossiersEnCours);
-        result.put("dossiersEnAttente", dossiersEnAttente);
-        result.put("dossiersTermines", dossiersTermines);
-        result.put("dossiersAujourdHui", dossiersAujourdHui);
-        result.put("dossiersCetteSemaine", dossiersCetteSemaine);
-        result.put("dossiersCeMois", dossiersCeMois);
-        result.put("dossiersCetteAnnee", dossiersCetteAnnee);
-        result.put("derniersDossiers", derniersDossiers);
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
-        return result;
+        // Compteurs maintenus à l'écriture : coût constant quel que soit le nombre de dossiers
+        return dossierKpiService.getKpi(officeId);
     }
 
 // ================================
@@ -260,8 +399,7 @@ public class DossierService {
      */
     @Transactional
     public Dossier addClientToDossier(UUID userId, UUID dossierId, UUID clientId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier introuvable"));
@@ -270,7 +408,7 @@ public class DossierService {
                 .orElseThrow(() -> new RuntimeException("Client introuvable"));
 
         // Vérification : l'utilisateur doit faire partie du même cabinet que le dossier
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas modifier ce dossier.");
         }
 
@@ -298,8 +436,7 @@ public class DossierService {
      */
     @Transactional
     public Dossier removeClientFromDossier(UUID userId, UUID dossierId, UUID clientId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier introuvable"));
@@ -308,7 +445,7 @@ public class DossierService {
                 .orElseThrow(() -> new RuntimeException("Client introuvable"));
 
         // Vérification : l'utilisateur doit faire partie du même cabinet que le dossier
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas modifier ce dossier.");
         }
 
@@ -323,8 +460,7 @@ public class DossierService {
      */
     @Transactional
     public Dossier addAdversaireToDossier(UUID userId, UUID dossierId, UUID adversaireId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier introuvable"));
@@ -333,7 +469,7 @@ public class DossierService {
                 .orElseThrow(() -> new RuntimeException("Adversaire introuvable"));
 
         // Vérification : l'utilisateur doit faire partie du même cabinet que le dossier
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas modifier ce dossier.");
         }
 
@@ -348,8 +484,7 @@ public class DossierService {
      */
     @Transactional
     public Dossier removeAdversaireFromDossier(UUID userId, UUID dossierId, UUID adversaireId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Dossier dossier = dossierRepository.findById(dossierId)
                 .orElseThrow(() -> new RuntimeException("Dossier introuvable"));
@@ -358,7 +493,7 @@ public class DossierService {
                 .orElseThrow(() -> new RuntimeException("Adversaire introuvable"));
 
         // Vérification : l'utilisateur doit faire partie du même cabinet que le dossier
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(dossier.getOffice().getId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas modifier ce dossier.");
         }
 
@@ -373,52 +508,35 @@ public class DossierService {
      */
     @Transactional(readOnly = true)
     public Map<String, Object> getPartiesPrenantes(UUID userId, UUID dossierId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
-        Dossier dossier = dossierRepository.findById(dossierId)
-                .orElseThrow(() -> new RuntimeException("Dossier introuvable"));
+        DossierRowDTO row = findDossierRow(dossierId);
 
         // Vérification : l'utilisateur doit faire partie du même cabinet que le dossier
-        if (!user.getOffice().getId().equals(dossier.getOffice().getId())) {
+        if (!userOfficeId.equals(row.getOfficeId())) {
             throw new RuntimeException("Accès refusé : vous ne pouvez pas consulter ce dossier.");
         }
 
         Map<String, Object> result = new HashMap<>();
+        List<UUID> ids = List.of(dossierId);
 
         // Liste des clients
-        List<Map<String, Object>> clients = dossier.getClients().stream().map(client -> {
-            Map<String, Object> clientMap = new HashMap<>();
-            clientMap.put("id", client.getId());
-            clientMap.put("nom", client.getNom());
-            clientMap.put("prenom", client.getPrenom());
-            clientMap.put("email", client.getEmail());
-            clientMap.put("telephone", client.getTelephone());
-            clientMap.put("type", client.getType());
-            clientMap.put("qualite", client.getQualite());
-            return clientMap;
-        }).collect(Collectors.toList());
+        List<Map<String, Object>> clients = dossierRepository.findClientRowsByDossierIds(ids).stream()
+                .map(this::toPartieMap)
+                .collect(Collectors.toList());
 
         // Liste des adversaires
-        List<Map<String, Object>> adversaires = dossier.getAdversaires().stream().map(adversaire -> {
-            Map<String, Object> adversaireMap = new HashMap<>();
-            adversaireMap.put("id", adversaire.getId());
-            adversaireMap.put("nom", adversaire.getNom());
-            adversaireMap.put("prenom", adversaire.getPrenom());
-            adversaireMap.put("email", adversaire.getEmail());
-            adversaireMap.put("telephone", adversaire.getTelephone());
-            adversaireMap.put("type", adversaire.getType());
-            adversaireMap.put("qualite", adversaire.getQualite());
-            return adversaireMap;
-        }).collect(Collectors.toList());
+        List<Map<String, Object>> adversaires = dossierRepository.findAdversaireRowsByDossierIds(ids).stream()
+                .map(this::toPartieMap)
+                .collect(Collectors.toList());
 
         // Avocat responsable
         Map<String, Object> avocat = new HashMap<>();
-        if (dossier.getAvocat() != null) {
-            avocat.put("id", dossier.getAvocat().getId());
-            avocat.put("nom", dossier.getAvocat().getNom());
-            avocat.put("prenom", dossier.getAvocat().getPrenom());
-            avocat.put("email", dossier.getAvocat().getEmail());
+        if (row.getAvocatId() != null) {
+            avocat.put("id", row.getAvocatId());
+            avocat.put("nom", row.getAvocatNom());
+            avocat.put("prenom", row.getAvocatPrenom());
+            avocat.put("email", row.getAvocatEmail());
         }
 
         result.put("clients", clients);
@@ -429,6 +547,91 @@ public class DossierService {
 
         return result;
     }
-}
 
+    // 🔥 ASSEMBLAGE DES DOSSIERDTO À PARTIR DES PROJECTIONS
 
+    private DossierRowDTO findDossierRow(UUID dossierId) {
+        List<DossierRowDTO> rows = dossierRepository.findDossierRowById(dossierId);
+        if (rows.isEmpty()) {
+            throw new RuntimeException("Dossier non trouvé");
+        }
+        return rows.get(0);
+    }
+
+    /**
+     * Construit les DTO d'une liste de lignes (voir DossierRepository.DOSSIER_ROW_SELECT) en conservant l'ordre,
+     * les clients et adversaires étant chargés par lots de PARTIES_BATCH_SIZE dossiers.
+     */
+    private List<DossierDTO> toDossierDTOs(List<DossierRowDTO> rows) {
+        List<UUID> ids = rows.stream().map(DossierRowDTO::getId).collect(Collectors.toList());
+
+        Map<UUID, List<DossierDTO.PersonneSimpleDTO>> clientsParDossier = new HashMap<>();
+        Map<UUID, List<DossierDTO.PersonneSimpleDTO>> adversairesParDossier = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += PARTIES_BATCH_SIZE) {
+            List<UUID> lot = ids.subList(i, Math.min(i + PARTIES_BATCH_SIZE, ids.size()));
+            for (DossierPartieRowDTO partie : dossierRepository.findClientRowsByDossierIds(lot)) {
+                clientsParDossier.computeIfAbsent(partie.getDossierId(), k -> new ArrayList<>())
+                        .add(toPersonne(partie.getId(), partie.getNom(), partie.getPrenom(), partie.getEmail()));
+            }
+            for (DossierPartieRowDTO partie : dossierRepository.findAdversaireRowsByDossierIds(lot)) {
+                adversairesParDossier.computeIfAbsent(partie.getDossierId(), k -> new ArrayList<>())
+                        .add(toPersonne(partie.getId(), partie.getNom(), partie.getPrenom(), partie.getEmail()));
+            }
+        }
+
+        List<DossierDTO> dtos = new ArrayList<>(rows.size());
+        for (DossierRowDTO row : rows) {
+            DossierDTO dto = new DossierDTO();
+            dto.setId(row.getId());
+            dto.setReference(row.getReference());
+            dto.setNomDossier(row.getNomDossier());
+            dto.setTypeAffaire(row.getTypeAffaire());
+            dto.setDateContentieux(row.getDateContentieux());
+            dto.setStatut(row.getStatut());
+            dto.setQualiteProcedurale(row.getQualiteProcedurale());
+            dto.setContentieux(row.getContentieux());
+            dto.setCreatedAt(row.getCreatedAt());
+            dto.setOfficeId(row.getOfficeId());
+
+            if (row.getAvocatId() != null) {
+                dto.setAvocat(toPersonne(row.getAvocatId(), row.getAvocatNom(), row.getAvocatPrenom(), row.getAvocatEmail()));
+                dto.setAvocatId(row.getAvocatId());
+            }
+            if (row.getClientId() != null) {
+                dto.setClient(toPersonne(row.getClientId(), row.getClientNom(), row.getClientPrenom(), row.getClientEmail()));
+                dto.setClientId(row.getClientId());
+            }
+            if (row.getAdversaireId() != null) {
+                dto.setAdversaire(toPersonne(row.getAdversaireId(), row.getAdversaireNom(), row.getAdversairePrenom(), row.getAdversaireEmail()));
+                dto.setAdversaireId(row.getAdversaireId());
+            }
+
+            // Listes laissées à null quand elles sont vides, comme pour la conversion depuis l'entité
+            dto.setClients(clientsParDossier.get(dto.getId()));
+            dto.setAdversaires(adversairesParDossier.get(dto.getId()));
+            dtos.add(dto);
+        }
+        return dtos;
+    }
+
+    private DossierDTO.PersonneSimpleDTO toPersonne(UUID id, String nom, String prenom, String email) {
+        DossierDTO.PersonneSimpleDTO personne = new DossierDTO.PersonneSimpleDTO();
+        personne.setId(id);
+        personne.setNom(nom);
+        personne.setPrenom(prenom);
+        personne.setEmail(email);
+        return personne;
+    }
+
+    private Map<String, Object> toPartieMap(DossierPartieRowDTO partie) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", partie.getId());
+        map.put("nom", partie.getNom());
+        map.put("prenom", partie.getPrenom());
+        map.put("email", partie.getEmail());
+        map.put("telephone", partie.getTelephone());
+        map.put("type", partie.getType());
+        map.put("qualite", partie.getQualite());
+        return map;
+    }
+}
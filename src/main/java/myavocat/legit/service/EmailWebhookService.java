@@ -2,16 +2,17 @@ package myavocat.legit.service;
 
 import myavocat.legit.model.*;
 import myavocat.legit.repository.*;
+import org.apache.commons.io.input.CharSequenceInputStream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -35,7 +36,7 @@ public class EmailWebhookService {
     private DossierRepository dossierRepository;
 
     @Autowired
-    private DocumentService documentService;
+    private DocumentConversionService documentConversionService;
 
     // Extensions de fichiers autorisées
     private static final List<String> ALLOWED_EXTENSIONS = Arrays.asList(
@@ -228,21 +229,20 @@ public class EmailWebhookService {
      * Traiter une pièce jointe individuelle
      */
     private void processAttachment(AttachmentData attachment, Dossier dossier, User lawyer) throws IOException {
-        // Créer un MultipartFile à partir des données
-        MultipartFile multipartFile = new AttachmentMultipartFile(
-                attachment.getFilename(),
-                attachment.getContentType(),
-                attachment.getData()
-        );
-
-        // Utiliser le DocumentService existant
-        documentService.uploadDocument(
-                multipartFile,
-                dossier.getId(),
-                lawyer.getId(),
-                "EMAIL_ATTACHMENT",
-                "Pièce jointe reçue par email le " + LocalDateTime.now()
-        );
+        // 🔥 Contenu décodé en flux directement vers le stockage (pas de copie intermédiaire en mémoire) ;
+        // la conversion en PDF des images, textes et docx se fait en arrière-plan
+        try (InputStream in = attachment.openStream()) {
+            DocumentConversionService.Depot depot = documentConversionService.deposer(
+                    in,
+                    attachment.getFilename(),
+                    dossier.getId(),
+                    lawyer.getId(),
+                    "EMAIL_ATTACHMENT",
+                    "Pièce jointe reçue par email le " + LocalDateTime.now(),
+                    ALLOWED_EXTENSIONS
+            );
+            logger.debug("Pièce jointe {} : {}", attachment.getFilename(), depot);
+        }
     }
 
     /**
@@ -285,65 +285,54 @@ public class EmailWebhookService {
     // Classes utilitaires
 
     /**
-     * Classe pour représenter les données d'une pièce jointe
+     * Classe pour représenter les données d'une pièce jointe.
+     * Le contenu reçu des API mail (base64) reste encodé : il n'est décodé qu'à la lecture, en flux.
      */
     public static class AttachmentData {
-        private String filename;
-        private String contentType;
-        private byte[] data;
-
-        public AttachmentData(String filename, String contentType, byte[] data) {
-            this.filename = filename;
-            this.contentType = contentType;
-            this.data = data;
-        }
-
-        // Getters
-        public String getFilename() { return filename; }
-        public String getContentType() { return contentType; }
-        public byte[] getData() { return data; }
-    }
-
-    /**
-     * Implémentation MultipartFile pour les pièces jointes
-     */
-    private static class AttachmentMultipartFile implements MultipartFile {
         private final String filename;
         private final String contentType;
         private final byte[] data;
+        private final String base64;
+        private final Base64.Decoder decoder;
 
-        public AttachmentMultipartFile(String filename, String contentType, byte[] data) {
+        public AttachmentData(String filename, String contentType, byte[] data) {
+            this(filename, contentType, data, null, null);
+        }
+
+        private AttachmentData(String filename, String contentType, byte[] data, String base64, Base64.Decoder decoder) {
             this.filename = filename;
             this.contentType = contentType;
             this.data = data;
+            this.base64 = base64;
+            this.decoder = decoder;
         }
 
-        @Override
-        public String getName() { return filename; }
-
-        @Override
-        public String getOriginalFilename() { return filename; }
+        /**
+         * Pièce jointe encodée en base64 (Gmail : variante URL, Outlook : standard)
+         */
+        public static AttachmentData base64(String filename, String contentType, String base64, Base64.Decoder decoder) {
+            return new AttachmentData(filename, contentType, null, base64, decoder);
+        }
 
-        @Override
+        // Getters
+        public String getFilename() { return filename; }
         public String getContentType() { return contentType; }
 
-        @Override
-        public boolean isEmpty() { return data.length == 0; }
-
-        @Override
-        public long getSize() { return data.length; }
-
-        @Override
-        public byte[] getBytes() { return data; }
-
-        @Override
-        public InputStream getInputStream() { return new ByteArrayInputStream(data); }
+        /**
+         * Taille décodée (estimée à 2 octets près pour le base64)
+         */
+        public long getSize() {
+            return data != null ? data.length : base64.length() * 3L / 4;
+        }
 
-        @Override
-        public void transferTo(java.io.File dest) throws IOException {
-            try (java.io.FileOutputStream fos = new java.io.FileOutputStream(dest)) {
-                fos.write(data);
+        public InputStream openStream() throws IOException {
+            if (data != null) {
+                return new ByteArrayInputStream(data);
             }
+            return decoder.wrap(CharSequenceInputStream.builder()
+                    .setCharSequence(base64)
+                    .setCharset(StandardCharsets.US_ASCII)
+                    .get());
         }
     }
 }
@@ -7,6 +7,7 @@ import myavocat.legit.model.Dossier;
 import myavocat.legit.repository.EventRepository;
 import myavocat.legit.repository.UserRepository;
 import myavocat.legit.repository.DossierRepository;
+import myavocat.legit.security.CurrentUser;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -23,12 +24,15 @@ public class EventService {
     private final EventRepository eventRepository;
     private final UserRepository userRepository;
     private final DossierRepository dossierRepository;
+    private final CurrentUser currentUser;
 
     @Autowired
-    public EventService(EventRepository eventRepository, UserRepository userRepository, DossierRepository dossierRepository) {
+    public EventService(EventRepository eventRepository, UserRepository userRepository, DossierRepository dossierRepository,
+                        CurrentUser currentUser) {
         this.eventRepository = eventRepository;
         this.userRepository = userRepository;
         this.dossierRepository = dossierRepository;
+        this.currentUser = currentUser;
     }
 
     // ✅ CRÉATION D'UN ÉVÉNEMENT - Retourne DTO
@@ -138,10 +142,7 @@ public class EventService {
     }
 
     public List<EventDTO> getCabinetEventsByType(UUID userId, Event.EventType type) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
+        UUID officeId = currentUser.resolveOfficeId(userId);
         List<Event> typeEvents = eventRepository.findByCreatedByOfficeIdAndType(officeId, type);
 
         // Filtrer les événements publics + télétravails
@@ -267,14 +268,7 @@ public class EventService {
 
     // ✅ MÉTHODE INTERNE - "AGENDA CABINET" (entités)
     private List<Event> getCabinetEventsInternal(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        if (user.getOffice() == null) {
-            throw new RuntimeException("Utilisateur non rattaché à un cabinet");
-        }
-
-        UUID officeId = user.getOffice().getId();
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
         // Récupérer tous les événements du cabinet
         List<Event> allOfficeEvents = eventRepository.findByCreatedByOfficeId(officeId);
@@ -0,0 +1,265 @@
+package myavocat.legit.service;
+
+import myavocat.legit.config.BaseDeDonnees;
+import myavocat.legit.model.Facture;
+import myavocat.legit.model.FactureKpiMois;
+import myavocat.legit.model.StatutPaiement;
+import myavocat.legit.repository.FactureKpiMoisRepository;
+import myavocat.legit.repository.FactureRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * KPI et statistiques des factures par cabinet, calculés en base.
+ *
+ * Avec facture.kpi.rollup.enabled (par défaut), les totaux et les chiffres du mois sont lus dans facture_kpi_mois,
+ * maintenue de façon incrémentale par FactureService et PaiementService (upsert par mois), et construite à partir
+ * d'une requête d'agrégat à la première écriture d'un cabinet (sérialisée par un verrou de transaction).
+ * Sinon, ou tant qu'un cabinet n'a pas d'agrégats, une requête d'agrégat par tableau de bord. La lecture n'écrit jamais.
+ */
+@Service
+public class FactureKpiService {
+
+    private static final int VERROU_INITIALISATION = 2;
+
+    private final FactureRepository factureRepository;
+    private final FactureKpiMoisRepository moisRepository;
+    private final BaseDeDonnees baseDeDonnees;
+    private final boolean rollupActif;
+
+    public FactureKpiService(FactureRepository factureRepository,
+                             FactureKpiMoisRepository moisRepository,
+                             BaseDeDonnees baseDeDonnees,
+                             @Value("${facture.kpi.rollup.enabled:true}") boolean rollupActif) {
+        this.factureRepository = factureRepository;
+        this.moisRepository = moisRepository;
+        this.baseDeDonnees = baseDeDonnees;
+        this.rollupActif = rollupActif;
+    }
+
+    // 🔥 MAINTENANCE DES AGRÉGATS MENSUELS
+
+    /**
+     * À appeler après l'enregistrement d'une nouvelle facture (même transaction)
+     */
+    @Transactional
+    public void onFactureCreee(Facture facture) {
+        appliquer(facture, 1, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    /**
+     * À appeler après un changement de montant réclamé ou de montant réglé (même transaction)
+     */
+    @Transactional
+    public void onMontantsModifies(Facture facture, BigDecimal ancienReclame, BigDecimal ancienRegle) {
+        appliquer(facture, 0, ancienReclame, ancienRegle);
+    }
+
+    /**
+     * Reconstruit les agrégats mensuels d'un cabinet à partir de la table factures (une requête d'agrégat)
+     */
+    @Transactional
+    public void recalculer(UUID officeId) {
+        baseDeDonnees.verrouillerJusquaFinTransaction(VERROU_INITIALISATION, officeId);
+        moisRepository.deleteByOfficeId(officeId);
+        List<FactureKpiMois> mois = factureRepository.agregatsMensuelsByOffice(officeId).stream()
+                .map(r -> new FactureKpiMois(officeId,
+                        LocalDate.of(((Number) r[0]).intValue(), ((Number) r[1]).intValue(), 1),
+                        ((Number) r[2]).longValue(),
+                        ((Number) r[3]).longValue(),
+                        (BigDecimal) r[4],
+                        (BigDecimal) r[5]))
+                .collect(Collectors.toList());
+        moisRepository.saveAll(mois);
+    }
+
+    // 🔥 TABLEAUX DE BORD
+
+    @Transactional(readOnly = true)
+    public Map<String, BigDecimal> getStatistiques(UUID officeId) {
+        Object[] totaux;
+        if (agregatsDisponibles(officeId)) {
+            totaux = moisRepository.totauxByOffice(officeId).get(0);
+        } else {
+            totaux = factureRepository.totauxByOffice(officeId).get(0);
+        }
+        BigDecimal totalEmis = (BigDecimal) totaux[1];
+        BigDecimal totalRegle = (BigDecimal) totaux[2];
+
+        return Map.of(
+                "Total Facturé", totalEmis,
+                "Total Réglé", totalRegle,
+                "Total en Attente", totalEmis.subtract(totalRegle)
+        );
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> getKpi(UUID officeId) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime startOfMonth = now.with(TemporalAdjusters.firstDayOfMonth()).toLocalDate().atStartOfDay();
+        LocalDateTime startOfWeek = now.minusDays(now.getDayOfWeek().getValue() - 1).toLocalDate().atStartOfDay();
+
+        BigDecimal totalFacturesMois;
+        BigDecimal totalFacturesSemaine;
+        BigDecimal totalPaiementsEnAttente;
+        long nombreFacturesMois;
+        long nombreFacturesPayeesMois;
+
+        if (agregatsDisponibles(officeId)) {
+            FactureKpiMois mois = moisCourant(officeId);
+            Object[] row = factureRepository.kpiSemaineEtAttenteByOffice(officeId, startOfWeek,
+                    StatutPaiement.ATTENTE_REGLEMENT).get(0);
+            totalFacturesMois = mois.getMontantReclame();
+            totalFacturesSemaine = (BigDecimal) row[0];
+            totalPaiementsEnAttente = (BigDecimal) row[1];
+            nombreFacturesMois = mois.getNombre();
+            nombreFacturesPayeesMois = mois.getNombrePayees();
+        } else {
+            Object[] row = factureRepository.kpiByOffice(officeId, startOfMonth, startOfWeek,
+                    StatutPaiement.ATTENTE_REGLEMENT).get(0);
+            totalFacturesMois = (BigDecimal) row[0];
+            totalFacturesSemaine = (BigDecimal) row[1];
+            totalPaiementsEnAttente = (BigDecimal) row[2];
+            nombreFacturesMois = ((Number) row[3]).longValue();
+            nombreFacturesPayeesMois = ((Number) row[4]).longValue();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("totalFacturesMois", totalFacturesMois);
+        result.put("totalFacturesSemaine", totalFacturesSemaine);
+        result.put("totalPaiementsEnAttente", totalPaiementsEnAttente);
+        result.put("nombreFacturesMois", nombreFacturesMois);
+        result.put("nombreFacturesPayeesMois", nombreFacturesPayeesMois);
+        // Une facture du mois est soit payée (restant dû <= 0), soit en attente
+        result.put("nombreFacturesEnAttenteMois", nombreFacturesMois - nombreFacturesPayeesMois);
+
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> getKpiMensuelles(UUID officeId) {
+        BigDecimal totalFacturesMois;
+        BigDecimal totalFacturesRegleesMois;
+
+        if (agregatsDisponibles(officeId)) {
+            FactureKpiMois mois = moisCourant(officeId);
+            totalFacturesMois = mois.getMontantReclame();
+            totalFacturesRegleesMois = mois.getMontantRegle();
+        } else {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime startOfMonth = now.with(TemporalAdjusters.firstDayOfMonth()).toLocalDate().atStartOfDay();
+            Object[] row = factureRepository.kpiByOffice(officeId, startOfMonth, startOfMonth,
+                    StatutPaiement.ATTENTE_REGLEMENT).get(0);
+            totalFacturesMois = (BigDecimal) row[0];
+            totalFacturesRegleesMois = (BigDecimal) row[5];
+        }
+
+        return Map.of(
+                "totalFacturesMois", totalFacturesMois,
+                "totalFacturesRegleesMois", totalFacturesRegleesMois,
+                "totalFacturesImpayeesMois", totalFacturesMois.subtract(totalFacturesRegleesMois)
+        );
+    }
+
+    /**
+     * Historique mensuel (réclamé, réglé, nombre) sur les derniers mois, mois sans facture inclus
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getHistoriqueMensuel(UUID officeId, int nombreMois) {
+        LocalDate debut = LocalDate.now().withDayOfMonth(1).minusMonths(Math.max(1, nombreMois) - 1L);
+
+        Map<LocalDate, FactureKpiMois> parMois = new HashMap<>();
+        if (agregatsDisponibles(officeId)) {
+            moisRepository.findByOfficeIdAndMoisGreaterThanEqualOrderByMoisAsc(officeId, debut)
+                    .forEach(m -> parMois.put(m.getMois(), m));
+        } else {
+            factureRepository.agregatsMensuelsByOffice(officeId).forEach(r -> {
+                LocalDate mois = LocalDate.of(((Number) r[0]).intValue(), ((Number) r[1]).intValue(), 1);
+                parMois.put(mois, new FactureKpiMois(officeId, mois, ((Number) r[2]).longValue(),
+                        ((Number) r[3]).longValue(), (BigDecimal) r[4], (BigDecimal) r[5]));
+            });
+        }
+
+        List<Map<String, Object>> historique = new ArrayList<>();
+        for (LocalDate mois = debut; !mois.isAfter(LocalDate.now()); mois = mois.plusMonths(1)) {
+            FactureKpiMois m = parMois.getOrDefault(mois, new FactureKpiMois(officeId, mois, 0, 0, BigDecimal.ZERO, BigDecimal.ZERO));
+            Map<String, Object> ligne = new LinkedHashMap<>();
+            ligne.put("mois", mois);
+            ligne.put("nombreFactures", m.getNombre());
+            ligne.put("nombreFacturesPayees", m.getNombrePayees());
+            ligne.put("totalFacture", m.getMontantReclame());
+            ligne.put("totalRegle", m.getMontantRegle());
+            ligne.put("totalImpaye", m.getMontantReclame().subtract(m.getMontantRegle()));
+            historique.add(ligne);
+        }
+        return historique;
+    }
+
+    private void appliquer(Facture facture, long deltaNombre, BigDecimal ancienReclame, BigDecimal ancienRegle) {
+        if (!rollupActif || facture.getDateEmission() == null) {
+            return;
+        }
+        UUID officeId = facture.getDossier().getOffice().getId();
+        if (initialiserSiAbsent(officeId)) {
+            return; // la facture est flushée avant la requête d'agrégat : elle est comptée
+        }
+
+        BigDecimal reclame = facture.getMontantReclame();
+        BigDecimal regle = facture.getMontantRegleTtc();
+        boolean etaitPayee = deltaNombre == 0 && ancienRegle.compareTo(ancienReclame) >= 0;
+        boolean estPayee = regle.compareTo(reclame) >= 0;
+        long deltaPayees = (estPayee ? 1 : 0) - (etaitPayee ? 1 : 0);
+
+        LocalDate mois = facture.getDateEmission().toLocalDate().withDayOfMonth(1);
+        BigDecimal deltaReclame = reclame.subtract(ancienReclame);
+        BigDecimal deltaRegle = regle.subtract(ancienRegle);
+        if (baseDeDonnees.isPostgres()) {
+            moisRepository.appliquerDeltasPostgres(UUID.randomUUID(), officeId, mois, deltaNombre, deltaPayees,
+                    Math.max(0, deltaPayees), deltaReclame, deltaRegle);
+        } else {
+            moisRepository.appliquerDeltasMerge(UUID.randomUUID(), officeId, mois, deltaNombre, deltaPayees,
+                    Math.max(0, deltaPayees), deltaReclame, deltaRegle);
+        }
+    }
+
+    /**
+     * Construit les agrégats du cabinet s'ils n'existent pas encore. Vrai si c'est le cas : l'écriture en cours
+     * est alors déjà comptée. Le verrou garantit une seule construction quand deux transactions arrivent ensemble ;
+     * la seconde voit ensuite les lignes validées par la première et applique ses deltas.
+     */
+    private boolean initialiserSiAbsent(UUID officeId) {
+        if (moisRepository.existsByOfficeId(officeId)) {
+            return false;
+        }
+        baseDeDonnees.verrouillerJusquaFinTransaction(VERROU_INITIALISATION, officeId);
+        if (moisRepository.existsByOfficeId(officeId)) {
+            return false;
+        }
+        recalculer(officeId);
+        return true;
+    }
+
+    // Cabinet sans agrégats (aucune écriture depuis leur mise en place) : requêtes d'agrégat, sans rien enregistrer
+    private boolean agregatsDisponibles(UUID officeId) {
+        return rollupActif && moisRepository.existsByOfficeId(officeId);
+    }
+
+    private FactureKpiMois moisCourant(UUID officeId) {
+        LocalDate mois = LocalDate.now().withDayOfMonth(1);
+        return moisRepository.findByOfficeIdAndMois(officeId, mois)
+                .orElseGet(() -> new FactureKpiMois(officeId, mois, 0, 0, BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+}
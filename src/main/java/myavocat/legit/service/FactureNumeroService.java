@@ -0,0 +1,145 @@
+package myavocat.legit.service;
+
+import myavocat.legit.model.Client;
+import myavocat.legit.model.FactureNumeroCompteur;
+import myavocat.legit.repository.FactureNumeroCompteurRepository;
+import myavocat.legit.repository.FactureRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numérotation des factures : INITIALES-ANNEE-NNN.
+ *
+ * Chaque (préfixe, année) a une ligne dans facture_numero_compteurs. Les numéros sont réservés par blocs
+ * (UPDATE avec verrou de ligne, dans une transaction courte et indépendante), puis distribués depuis la mémoire :
+ * la création d'une facture ne parcourt jamais la table factures et deux créations concurrentes
+ * ne peuvent pas obtenir le même numéro, y compris sur plusieurs instances.
+ *
+ * La réservation se fait sans verrou Java : un appelant peut déjà tenir une connexion (transaction englobante),
+ * il ne doit jamais attendre un autre appelant qui attend lui-même une connexion du pool. Deux appelants qui
+ * trouvent le bloc épuisé en même temps réservent donc chacun le leur.
+ *
+ * Conséquence : les numéros non utilisés d'un bloc (redémarrage, facture annulée) laissent des trous.
+ */
+@Service
+public class FactureNumeroService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FactureNumeroService.class);
+
+    private final FactureNumeroCompteurRepository compteurRepository;
+    private final FactureRepository factureRepository;
+    private final TransactionTemplate requiresNew;
+    private final int tailleBloc;
+
+    // Blocs réservés en mémoire, par clé "PREFIXE-ANNEE"
+    private final Map<String, Bloc> blocs = new ConcurrentHashMap<>();
+
+    public FactureNumeroService(FactureNumeroCompteurRepository compteurRepository,
+                                FactureRepository factureRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${facture.numero.bloc:20}") int tailleBloc) {
+        this.compteurRepository = compteurRepository;
+        this.factureRepository = factureRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.tailleBloc = Math.max(1, tailleBloc);
+    }
+
+    /**
+     * Prochain numéro de facture pour un client (préfixe = initiales nom + prénom, année courante)
+     */
+    public String prochainNumero(Client client) {
+        String prefixe = (client.getNom().substring(0, 1) + client.getPrenom().substring(0, 1)).toUpperCase();
+        int annee = LocalDateTime.now().getYear();
+        String cle = prefixe + "-" + annee;
+
+        Bloc bloc = blocs.computeIfAbsent(cle, k -> new Bloc());
+        long numero = bloc.prendre();
+        if (numero == 0) {
+            // Bloc épuisé : réservation hors verrou, le premier numéro revient à cet appelant, le reste aux suivants
+            long fin = reserverBloc(cle, prefixe, annee);
+            numero = fin - tailleBloc + 1;
+            if (numero < fin) {
+                bloc.ajouter(numero + 1, fin);
+            }
+        }
+
+        return cle + "-" + String.format("%03d", numero);
+    }
+
+    /**
+     * Réserve tailleBloc numéros et retourne le dernier numéro du bloc
+     */
+    private long reserverBloc(String cle, String prefixe, int annee) {
+        for (int tentative = 0; tentative < 3; tentative++) {
+            try {
+                Long fin = requiresNew.execute(status -> {
+                    if (compteurRepository.reserverBloc(cle, tailleBloc, LocalDateTime.now()) > 0) {
+                        return compteurRepository.findDernierNumero(cle);
+                    }
+                    // Premier numéro de la clé : on reprend la suite des factures déjà émises
+                    long depart = dernierNumeroExistant(cle);
+                    compteurRepository.saveAndFlush(new FactureNumeroCompteur(prefixe, annee, depart + tailleBloc));
+                    return depart + tailleBloc;
+                });
+                return fin;
+            } catch (DataIntegrityViolationException e) {
+                // Une autre instance vient de créer le compteur : on réessaie avec l'UPDATE
+                logger.debug("Compteur {} créé en concurrence, nouvelle tentative", cle);
+            }
+        }
+        throw new RuntimeException("Impossible de réserver un numéro de facture pour " + cle);
+    }
+
+    /**
+     * Plus grand numéro déjà utilisé pour une clé (lecture unique, à la création du compteur)
+     */
+    private long dernierNumeroExistant(String cle) {
+        long max = 0;
+        for (String numero : factureRepository.findNumerosByPattern(cle + "-%")) {
+            try {
+                max = Math.max(max, Long.parseLong(numero.substring(numero.lastIndexOf('-') + 1)));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Plages réservées et pas encore distribuées, par premier numéro croissant
+     */
+    private static final class Bloc {
+        private final PriorityQueue<long[]> plages = new PriorityQueue<>(Comparator.comparingLong(p -> p[0]));
+
+        /**
+         * Prochain numéro disponible, 0 si toutes les plages sont épuisées
+         */
+        synchronized long prendre() {
+            long[] plage = plages.peek();
+            if (plage == null) {
+                return 0;
+            }
+            long numero = plage[0]++;
+            if (plage[0] > plage[1]) {
+                plages.poll();
+            }
+            return numero;
+        }
+
+        synchronized void ajouter(long debut, long fin) {
+            plages.add(new long[]{debut, fin});
+        }
+    }
+}
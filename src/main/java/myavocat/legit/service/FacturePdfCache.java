@@ -0,0 +1,378 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.FacturePdfDTO;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Cache des PDF de factures déjà rendus.
+ *
+ * La version d'un PDF est une empreinte SHA-256 de toutes les données affichées (FacturePdfDTO) et de la version
+ * du gabarit : toute modification de la facture, de son statut, du client ou du dossier produit une nouvelle version.
+ * Cette empreinte sert aussi d'ETag fort pour les requêtes conditionnelles.
+ *
+ * Mémoire bornée en octets (LRU, facture.pdf.cache.max-bytes). Si facture.pdf.cache.disk-dir est renseigné,
+ * les entrées évincées sont déversées sur disque (également borné, facture.pdf.cache.disk-max-bytes).
+ * Seuls les index sont modifiés sous verrou ; les lectures et écritures de fichiers se font hors verrou.
+ */
+@Component
+public class FacturePdfCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacturePdfCache.class);
+
+    // À incrémenter à chaque changement de mise en page de FacturePdfRenderer
+    private static final String VERSION_GABARIT = "1";
+
+    private final FacturePdfRenderer renderer;
+    private final long maxOctets;
+    private final Path repertoireDisque;
+    private final long maxOctetsDisque;
+
+    // Ordre d'accès (LRU) ; une seule version par facture
+    private final LinkedHashMap<UUID, Entree> memoire = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<UUID, Entree> disque = new LinkedHashMap<>(16, 0.75f, true);
+    private long octetsMemoire;
+    private long octetsDisque;
+    private long numeroFichier;
+
+    public FacturePdfCache(FacturePdfRenderer renderer,
+                           @Value("${facture.pdf.cache.max-bytes:67108864}") long maxOctets,
+                           @Value("${facture.pdf.cache.disk-dir:}") String repertoireDisque,
+                           @Value("${facture.pdf.cache.disk-max-bytes:1073741824}") long maxOctetsDisque) {
+        this.renderer = renderer;
+        this.maxOctets = maxOctets;
+        this.maxOctetsDisque = maxOctetsDisque;
+        this.repertoireDisque = preparerRepertoire(repertoireDisque);
+    }
+
+    /**
+     * ETag fort (entre guillemets) de la version courante du PDF d'une facture
+     */
+    public String etag(FacturePdfDTO facture) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String donnees = String.join("\u001F",
+                    VERSION_GABARIT,
+                    String.valueOf(facture.getId()),
+                    Objects.toString(facture.getNumeroFacture(), ""),
+                    Objects.toString(facture.getDateEmission(), ""),
+                    Objects.toString(facture.getDossierReference(), ""),
+                    Objects.toString(facture.getClientNom(), ""),
+                    Objects.toString(facture.getClientPrenom(), ""),
+                    Objects.toString(facture.getIntitule(), ""),
+                    Objects.toString(facture.getMontantHt(), ""),
+                    Objects.toString(facture.getTvaApplicable(), ""),
+                    Objects.toString(facture.getMontantTtc(), ""),
+                    Objects.toString(facture.getModePaiement(), ""),
+                    Objects.toString(facture.getStatutPaiement(), ""));
+            byte[] hash = digest.digest(donnees.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * PDF de la facture pour la version donnée : mémoire, puis disque, sinon rendu et mise en cache
+     */
+    public byte[] getOrRender(FacturePdfDTO facture, String etag) {
+        UUID id = facture.getId();
+
+        byte[] pdf = lire(id, etag);
+        if (pdf != null) {
+            return pdf;
+        }
+
+        // Rendu hors verrou : deux rendus concurrents de la même facture produisent le même contenu
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16 * 1024);
+        renderer.render(facture, baos);
+        pdf = baos.toByteArray();
+
+        mettreEnCache(id, etag, pdf);
+        return pdf;
+    }
+
+    /**
+     * PDF de cette version s'il est en cache (mémoire ou disque), sinon null
+     */
+    public byte[] get(UUID factureId, String etag) {
+        return lire(factureId, etag);
+    }
+
+    /**
+     * Rend le PDF directement dans le flux (réponse HTTP) et en garde une copie pour le cache, tant qu'elle ne
+     * dépasse pas la taille maximale. Rien n'est mis en cache si le rendu ou l'écriture dans le flux échoue.
+     */
+    public void renderEtMettreEnCache(FacturePdfDTO facture, String etag, OutputStream out) {
+        CopieBornee copie = new CopieBornee(maxOctets);
+        renderer.render(facture, new TeeOutputStream(out, copie));
+        byte[] pdf = copie.contenu();
+        if (pdf != null) {
+            mettreEnCache(facture.getId(), etag, pdf);
+        }
+    }
+
+    private void mettreEnCache(UUID id, String etag, byte[] pdf) {
+        OperationsDisque operations = new OperationsDisque();
+        synchronized (this) {
+            stocker(id, new Entree(etag, pdf.length).avecContenu(pdf), operations);
+        }
+        executer(operations);
+    }
+
+    public void invalider(UUID factureId) {
+        OperationsDisque operations = new OperationsDisque();
+        synchronized (this) {
+            retirer(factureId, operations);
+        }
+        executer(operations);
+    }
+
+    private byte[] lire(UUID id, String etag) {
+        Entree surDisque;
+        byte[] pdf;
+        synchronized (this) {
+            Entree entree = memoire.get(id);
+            if (entree != null && entree.etag.equals(etag)) {
+                return entree.contenu;
+            }
+            surDisque = disque.get(id);
+            if (surDisque == null || !surDisque.etag.equals(etag)) {
+                return null;
+            }
+            // Non nul tant que le fichier n'est pas encore écrit
+            pdf = surDisque.contenu;
+        }
+
+        OperationsDisque operations = new OperationsDisque();
+        if (pdf == null) {
+            try {
+                pdf = Files.readAllBytes(surDisque.fichier);
+            } catch (IOException e) {
+                logger.warn("Lecture du cache disque impossible pour la facture {}", id, e);
+                synchronized (this) {
+                    if (disque.get(id) == surDisque) {
+                        retirerDuDisque(id, operations);
+                    }
+                }
+                executer(operations);
+                return null;
+            }
+        }
+
+        // Remonté en mémoire, sauf si l'entrée a changé pendant la lecture
+        synchronized (this) {
+            if (disque.get(id) == surDisque) {
+                retirerDuDisque(id, operations);
+                stockerEnMemoire(id, new Entree(etag, pdf.length).avecContenu(pdf), operations);
+            }
+        }
+        executer(operations);
+        return pdf;
+    }
+
+    // Les méthodes suivantes ne modifient que les index et s'appellent sous verrou ;
+    // les écritures et suppressions de fichiers sont collectées pour executer()
+
+    private void stocker(UUID id, Entree entree, OperationsDisque operations) {
+        retirer(id, operations); // ancienne version éventuelle
+        if (entree.taille > maxOctets) {
+            return;
+        }
+        stockerEnMemoire(id, entree, operations);
+    }
+
+    private void retirer(UUID id, OperationsDisque operations) {
+        Entree entree = memoire.remove(id);
+        if (entree != null) {
+            octetsMemoire -= entree.taille;
+        }
+        retirerDuDisque(id, operations);
+    }
+
+    private void stockerEnMemoire(UUID id, Entree entree, OperationsDisque operations) {
+        memoire.put(id, entree);
+        octetsMemoire += entree.taille;
+
+        Iterator<Map.Entry<UUID, Entree>> it = memoire.entrySet().iterator();
+        while (octetsMemoire > maxOctets && it.hasNext()) {
+            Map.Entry<UUID, Entree> plusAncienne = it.next();
+            it.remove();
+            octetsMemoire -= plusAncienne.getValue().taille;
+            deverserSurDisque(plusAncienne.getKey(), plusAncienne.getValue(), operations);
+        }
+    }
+
+    private void deverserSurDisque(UUID id, Entree entree, OperationsDisque operations) {
+        if (repertoireDisque == null || entree.taille > maxOctetsDisque) {
+            return;
+        }
+        retirerDuDisque(id, operations);
+
+        // Un fichier par entrée : une écriture en cours ne peut pas écraser une autre version
+        Entree surDisque = new Entree(entree.etag, entree.taille).avecContenu(entree.contenu);
+        surDisque.fichier = repertoireDisque.resolve(id + "-" + (++numeroFichier) + ".pdf");
+        disque.put(id, surDisque);
+        octetsDisque += surDisque.taille;
+        operations.aEcrire.add(Map.entry(id, surDisque));
+
+        Iterator<Map.Entry<UUID, Entree>> it = disque.entrySet().iterator();
+        while (octetsDisque > maxOctetsDisque && it.hasNext()) {
+            Map.Entry<UUID, Entree> plusAncienne = it.next();
+            it.remove();
+            octetsDisque -= plusAncienne.getValue().taille;
+            operations.aSupprimer.add(plusAncienne.getValue().fichier);
+        }
+    }
+
+    private void retirerDuDisque(UUID id, OperationsDisque operations) {
+        Entree entree = disque.remove(id);
+        if (entree == null) {
+            return;
+        }
+        octetsDisque -= entree.taille;
+        operations.aSupprimer.add(entree.fichier);
+    }
+
+    /**
+     * Entrées/sorties disque collectées sous verrou, exécutées hors verrou
+     */
+    private void executer(OperationsDisque operations) {
+        for (Map.Entry<UUID, Entree> ecriture : operations.aEcrire) {
+            UUID id = ecriture.getKey();
+            Entree entree = ecriture.getValue();
+            boolean ecrit;
+            try {
+                Files.write(entree.fichier, entree.contenu);
+                ecrit = true;
+            } catch (IOException e) {
+                logger.warn("Écriture du cache disque impossible pour la facture {}", id, e);
+                ecrit = false;
+            }
+
+            boolean aSupprimer;
+            synchronized (this) {
+                boolean indexee = disque.get(id) == entree;
+                if (indexee && ecrit) {
+                    // Le fichier fait foi : le contenu n'est plus gardé en mémoire
+                    entree.contenu = null;
+                } else if (indexee) {
+                    disque.remove(id);
+                    octetsDisque -= entree.taille;
+                }
+                // Évincée ou invalidée pendant l'écriture : le fichier ne doit pas rester orphelin
+                aSupprimer = !indexee || !ecrit;
+            }
+            if (aSupprimer) {
+                supprimerFichier(entree.fichier);
+            }
+        }
+        for (Path fichier : operations.aSupprimer) {
+            supprimerFichier(fichier);
+        }
+    }
+
+    private static void supprimerFichier(Path fichier) {
+        try {
+            Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            logger.warn("Suppression du cache disque impossible : {}", fichier, e);
+        }
+    }
+
+    private static Path preparerRepertoire(String repertoire) {
+        if (repertoire == null || repertoire.isBlank()) {
+            return null;
+        }
+        try {
+            Path path = Path.of(repertoire);
+            Files.createDirectories(path);
+            // Les fichiers d'une exécution précédente ne sont pas indexés : on repart d'un répertoire vide
+            try (var fichiers = Files.list(path)) {
+                for (Path f : (Iterable<Path>) fichiers.filter(p -> p.toString().endsWith(".pdf"))::iterator) {
+                    Files.deleteIfExists(f);
+                }
+            }
+            return path;
+        } catch (IOException e) {
+            logger.warn("Cache disque des PDF désactivé : répertoire {} inutilisable", repertoire, e);
+            return null;
+        }
+    }
+
+    private static final class Entree {
+        private final String etag;
+        private final long taille;
+        // En mémoire ; pour une entrée sur disque, seulement tant que son fichier n'est pas écrit
+        private byte[] contenu;
+        private Path fichier;
+
+        private Entree(String etag, long taille) {
+            this.etag = etag;
+            this.taille = taille;
+        }
+
+        private Entree avecContenu(byte[] contenu) {
+            this.contenu = contenu;
+            return this;
+        }
+    }
+
+    /**
+     * Copie du PDF en cours d'envoi, abandonnée dès qu'elle dépasse la taille maximale du cache
+     */
+    private static final class CopieBornee extends OutputStream {
+        private final long max;
+        private ByteArrayOutputStream copie = new ByteArrayOutputStream(16 * 1024);
+
+        private CopieBornee(long max) {
+            this.max = max;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (copie == null) {
+                return;
+            }
+            if (copie.size() + (long) len > max) {
+                copie = null;
+                return;
+            }
+            copie.write(b, off, len);
+        }
+
+        private byte[] contenu() {
+            return copie == null ? null : copie.toByteArray();
+        }
+    }
+
+    private static final class OperationsDisque {
+        private final List<Map.Entry<UUID, Entree>> aEcrire = new ArrayList<>();
+        private final List<Path> aSupprimer = new ArrayList<>();
+    }
+}
@@ -0,0 +1,170 @@
+package myavocat.legit.service;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.borders.Border;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.TextAlignment;
+import myavocat.legit.dto.FacturePdfDTO;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Rendu PDF d'une facture, réutilisable et sans état par document.
+ *
+ * Les programmes de police (Helvetica / Helvetica-Bold) et les fragments statiques (en-tête du cabinet,
+ * conditions, libellés, format de date) sont préparés une seule fois. Seuls les objets liés à un document
+ * iText (PdfFont, éléments de mise en page) sont recréés à chaque rendu, comme l'impose iText.
+ * Le PDF est écrit directement dans le flux fourni (réponse HTTP, entrée ZIP...), qui n'est pas fermé.
+ */
+@Component
+public class FacturePdfRenderer {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final BigDecimal TAUX_TVA = new BigDecimal("0.2");
+    private static final float[] COLONNES_MONTANTS = {3, 2};
+
+    // Fragments statiques
+    private static final String CABINET_NOM = "Votre Cabinet d'Avocats";
+    private static final String[] CABINET_COORDONNEES = {
+            "Adresse: 123 rue du Palais, 75000 Paris",
+            "Tél: 01 23 45 67 89",
+            "Email: contact@cabinet.fr"
+    };
+    private static final String CONDITIONS_PAIEMENT = "Paiement à réception de facture. En cas de retard de paiement, " +
+            "des pénalités seront appliquées au taux légal en vigueur.";
+    private static final String REMERCIEMENTS = "Merci pour votre confiance !";
+
+    private final FontProgram titreProgram;
+    private final FontProgram texteProgram;
+
+    public FacturePdfRenderer() {
+        try {
+            this.titreProgram = FontProgramFactory.createFont(StandardFonts.HELVETICA_BOLD);
+            this.texteProgram = FontProgramFactory.createFont(StandardFonts.HELVETICA);
+        } catch (IOException e) {
+            throw new IllegalStateException("Polices PDF indisponibles", e);
+        }
+    }
+
+    /**
+     * Écrit le PDF de la facture dans le flux (le flux reste ouvert)
+     */
+    public void render(FacturePdfDTO facture, OutputStream out) {
+        render(facture, out, PdfFontFactory.createFont(titreProgram), PdfFontFactory.createFont(texteProgram));
+    }
+
+    private void render(FacturePdfDTO facture, OutputStream out, PdfFont titleFont, PdfFont regularFont) {
+        try {
+            PdfWriter writer = new PdfWriter(out);
+            writer.setCloseStream(false); // le flux appartient à l'appelant
+            Document document = new Document(new PdfDocument(writer));
+            document.setMargins(50, 50, 50, 50);
+
+            ajouterEnTete(document, titleFont, regularFont);
+
+            // Titre Facture
+            document.add(new Paragraph("FACTURE")
+                    .setFont(titleFont)
+                    .setFontSize(24)
+                    .setTextAlignment(TextAlignment.CENTER)
+                    .setMarginTop(30)
+                    .setMarginBottom(30));
+
+            // Informations de la facture et du client
+            Table infoTable = new Table(2).useAllAvailableWidth();
+
+            Cell factureInfos = new Cell().setBorder(Border.NO_BORDER);
+            factureInfos.add(new Paragraph("N° Facture: " + facture.getNumeroFacture()).setFont(regularFont));
+            factureInfos.add(new Paragraph("Date d'émission: " + facture.getDateEmission().format(DATE_FORMAT)).setFont(regularFont));
+            factureInfos.add(new Paragraph("Référence dossier: " + facture.getDossierReference()).setFont(regularFont));
+
+            Cell clientInfos = new Cell().setBorder(Border.NO_BORDER);
+            clientInfos.add(new Paragraph("Client:").setFont(titleFont).setFontSize(14));
+            clientInfos.add(new Paragraph(facture.getClientNom() + " " + facture.getClientPrenom()).setFont(regularFont));
+
+            infoTable.addCell(factureInfos);
+            infoTable.addCell(clientInfos);
+            document.add(infoTable);
+
+            // Contenu de la facture
+            document.add(titreSection("Détails de la prestation", titleFont, 20));
+
+            Table detailsTable = new Table(COLONNES_MONTANTS).useAllAvailableWidth();
+            detailsTable.addHeaderCell(new Cell().add(new Paragraph("Description").setFont(titleFont)).setBackgroundColor(ColorConstants.LIGHT_GRAY));
+            detailsTable.addHeaderCell(new Cell().add(new Paragraph("Montant").setFont(titleFont)).setBackgroundColor(ColorConstants.LIGHT_GRAY));
+            detailsTable.addCell(new Cell().add(new Paragraph(facture.getIntitule()).setFont(regularFont)));
+            detailsTable.addCell(new Cell().add(new Paragraph(facture.getMontantHt() + " €").setFont(regularFont)));
+            document.add(detailsTable);
+
+            // Totaux
+            Table totalsTable = new Table(COLONNES_MONTANTS).useAllAvailableWidth();
+            totalsTable.setMarginTop(10);
+            if (Boolean.TRUE.equals(facture.getTvaApplicable())) {
+                BigDecimal tva = facture.getMontantHt().multiply(TAUX_TVA);
+                totalsTable.addCell(celluleSansBordure("TVA (20%)", regularFont));
+                totalsTable.addCell(celluleSansBordure(tva + " €", regularFont));
+            }
+            totalsTable.addCell(celluleSansBordure("Total TTC", titleFont));
+            totalsTable.addCell(celluleSansBordure(facture.getMontantTtc() + " €", titleFont));
+            document.add(totalsTable);
+
+            // Informations de paiement
+            document.add(titreSection("Informations de paiement", titleFont, 30));
+
+            Table paymentTable = new Table(1).useAllAvailableWidth();
+            paymentTable.addCell(celluleSansBordure("Mode de paiement: " +
+                    (facture.getModePaiement() != null ? facture.getModePaiement().toString() : "Non spécifié"), regularFont));
+            paymentTable.addCell(celluleSansBordure("Statut: " + facture.getStatutPaiement(), regularFont));
+            document.add(paymentTable);
+
+            // Notes et conditions
+            document.add(titreSection("Conditions de paiement", titleFont, 30));
+            document.add(new Paragraph(CONDITIONS_PAIEMENT).setFont(regularFont));
+
+            // Pied de page
+            document.add(new Paragraph(REMERCIEMENTS).setFont(regularFont).setTextAlignment(TextAlignment.CENTER).setMarginTop(30));
+
+            document.close();
+        } catch (Exception e) {
+            throw new RuntimeException("Erreur lors de la génération du PDF: " + e.getMessage(), e);
+        }
+    }
+
+    private void ajouterEnTete(Document document, PdfFont titleFont, PdfFont regularFont) {
+        Table header = new Table(2).useAllAvailableWidth();
+
+        // Emplacement du logo (à adapter selon vos ressources)
+        header.addCell(new Cell().setBorder(Border.NO_BORDER));
+
+        Cell infoCell = new Cell().setBorder(Border.NO_BORDER);
+        infoCell.add(new Paragraph(CABINET_NOM).setFont(titleFont).setFontSize(20));
+        for (String ligne : CABINET_COORDONNEES) {
+            infoCell.add(new Paragraph(ligne).setFont(regularFont));
+        }
+        header.addCell(infoCell);
+
+        document.add(header);
+    }
+
+    private Paragraph titreSection(String titre, PdfFont titleFont, float margeHaut) {
+        return new Paragraph(titre).setFont(titleFont).setFontSize(14).setMarginTop(margeHaut);
+    }
+
+    private Cell celluleSansBordure(String texte, PdfFont font) {
+        return new Cell().add(new Paragraph(texte).setFont(font)).setBorder(Border.NO_BORDER);
+    }
+}
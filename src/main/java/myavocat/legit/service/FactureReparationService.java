@@ -0,0 +1,96 @@
+package myavocat.legit.service;
+
+import myavocat.legit.model.Facture;
+import myavocat.legit.model.StatutPaiement;
+import myavocat.legit.repository.FactureRepository;
+import myavocat.legit.repository.PaiementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Réparation du montant réglé persisté sur les factures (Facture.montantRegle).
+ *
+ * Le montant est maintenu par PaiementService ; ce job le recalcule en masse à partir de la table paiements
+ * pour les seules factures incohérentes (au démarrage, notamment après l'ajout de la colonne, puis chaque nuit),
+ * puis reconstruit les agrégats mensuels (FactureKpiService) des cabinets concernés.
+ * Au démarrage, il renseigne aussi le cabinet (Paiement.officeId) des paiements antérieurs à cette colonne.
+ */
+@Service
+public class FactureReparationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FactureReparationService.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final FactureRepository factureRepository;
+    private final PaiementRepository paiementRepository;
+    private final FactureKpiService factureKpiService;
+    private final TransactionTemplate transactionTemplate;
+
+    public FactureReparationService(FactureRepository factureRepository, PaiementRepository paiementRepository,
+                                    FactureKpiService factureKpiService, PlatformTransactionManager transactionManager) {
+        this.factureRepository = factureRepository;
+        this.paiementRepository = paiementRepository;
+        this.factureKpiService = factureKpiService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reparerAuDemarrage() {
+        Integer paiements = transactionTemplate.execute(status -> paiementRepository.renseignerOfficeIdManquants());
+        if (paiements != null && paiements > 0) {
+            logger.info("Cabinet renseigné sur {} paiement(s)", paiements);
+        }
+        reparerMontantsRegles();
+    }
+
+    @Scheduled(cron = "${facture.reparation.cron:0 30 3 * * *}")
+    public void reparationPlanifiee() {
+        reparerMontantsRegles();
+    }
+
+    /**
+     * Recalcule montantRegle et le statut des factures incohérentes, par lots transactionnels
+     *
+     * @return le nombre de factures corrigées
+     */
+    public int reparerMontantsRegles() {
+        List<UUID> ids = factureRepository.findIdsMontantRegleIncoherent();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        Set<UUID> offices = new HashSet<>();
+        for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+            List<UUID> lot = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                factureRepository.recalculerMontantRegle(lot);
+                // Statut recalculé à partir du montant corrigé (les factures annulées restent annulées)
+                for (Facture facture : factureRepository.findAllById(lot)) {
+                    offices.add(facture.getDossier().getOffice().getId());
+                    if (facture.getStatutPaiement() != StatutPaiement.ANNULEE) {
+                        facture.updateStatutPaiement();
+                    }
+                }
+            });
+        }
+
+        // Les agrégats mensuels des cabinets concernés sont reconstruits à partir des montants corrigés
+        for (UUID officeId : offices) {
+            transactionTemplate.executeWithoutResult(status -> factureKpiService.recalculer(officeId));
+        }
+
+        logger.info("Montant réglé recalculé pour {} facture(s)", ids.size());
+        return ids.size();
+    }
+}
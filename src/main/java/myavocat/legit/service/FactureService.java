@@ -7,15 +7,12 @@ import myavocat.legit.repository.ClientRepository;
 import myavocat.legit.repository.DossierRepository;
 import myavocat.legit.repository.FactureRepository;
 import java.time.LocalDateTime;
-import java.time.temporal.TemporalAdjusters;
-import myavocat.legit.repository.UserRepository;
+import myavocat.legit.security.CurrentUser;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.temporal.TemporalAdjusters;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -27,32 +24,21 @@ public class FactureService {
     private final FactureRepository factureRepository;
     private final ClientRepository clientRepository;
     private final DossierRepository dossierRepository;
-    private final UserRepository userRepository;
-
-    public FactureService(FactureRepository factureRepository, ClientRepository clientRepository, DossierRepository dossierRepository, UserRepository userRepository) {
+    private final CurrentUser currentUser;
+    private final FactureNumeroService factureNumeroService;
+    private final FactureKpiService factureKpiService;
+    private final RelanceService relanceService;
+
+    public FactureService(FactureRepository factureRepository, ClientRepository clientRepository, DossierRepository dossierRepository,
+                          CurrentUser currentUser, FactureNumeroService factureNumeroService, FactureKpiService factureKpiService,
+                          RelanceService relanceService) {
         this.factureRepository = factureRepository;
         this.clientRepository = clientRepository;
         this.dossierRepository = dossierRepository;
-        this.userRepository = userRepository;
-    }
-
-    private String genererNumeroFacture(Client client) {
-        String initials = (client.getNom().substring(0, 1) + client.getPrenom().substring(0, 1)).toUpperCase();
-        int currentYear = LocalDateTime.now().getYear();
-
-        // Recherche la dernière facture de l'année en cours
-        String pattern = initials + "-" + currentYear + "-%";
-        String lastFacture = factureRepository.findLastFactureByClient(pattern);
-
-        int lastNum = 0;
-        if (lastFacture != null) {
-            try {
-                lastNum = Integer.parseInt(lastFacture.substring(lastFacture.lastIndexOf('-') + 1));
-            } catch (NumberFormatException ignored) {
-            }
-        }
-
-        return initials + "-" + currentYear + "-" + String.format("%03d", lastNum + 1);
+        this.currentUser = currentUser;
+        this.factureNumeroService = factureNumeroService;
+        this.factureKpiService = factureKpiService;
+        this.relanceService = relanceService;
     }
 
     @Transactional
@@ -68,14 +54,13 @@ public class FactureService {
             throw new RuntimeException("Le dossier sélectionné n'est pas associé à ce client.");
         }
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable avec l'ID: " + userId));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
-        if (!dossier.getOffice().getId().equals(user.getOffice().getId())) {
+        if (!dossier.getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé : l'utilisateur ne peut pas créer une facture pour ce dossier.");
         }
 
-        String numeroFacture = genererNumeroFacture(client);
+        String numeroFacture = factureNumeroService.prochainNumero(client);
         BigDecimal montantTtc = tvaApplicable ? montantHt.multiply(BigDecimal.valueOf(1.2)) : montantHt;
 
         Facture facture = new Facture();
@@ -93,30 +78,37 @@ public class FactureService {
         // 🔥 NOUVEAU : Initialiser le montant réclamé
         facture.setMontantReclame(montantTtc);
 
-        return convertToDTO(factureRepository.save(facture));
+        Facture savedFacture = factureRepository.save(facture);
+        factureKpiService.onFactureCreee(savedFacture);
+
+        return convertToDTO(savedFacture);
     }
 
     // 🔥 NOUVELLE MÉTHODE : Mettre à jour le montant réclamé
     @Transactional
     public FactureDTO updateMontantReclame(UUID userId, UUID factureId, BigDecimal nouveauMontantReclame) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Facture facture = factureRepository.findById(factureId)
                 .orElseThrow(() -> new RuntimeException("Facture non trouvée"));
 
         // Vérifier l'accès
-        if (!facture.getDossier().getOffice().getId().equals(user.getOffice().getId())) {
+        if (!facture.getDossier().getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé : cette facture n'appartient pas à votre cabinet.");
         }
 
+        BigDecimal ancienMontantReclame = facture.getMontantReclame();
+
         // Mettre à jour le montant réclamé
         facture.setMontantReclame(nouveauMontantReclame);
 
         // Recalculer automatiquement le statut
         facture.updateStatutPaiement();
 
-        return convertToDTO(factureRepository.save(facture));
+        Facture savedFacture = factureRepository.save(facture);
+        factureKpiService.onMontantsModifies(savedFacture, ancienMontantReclame, savedFacture.getMontantRegleTtc());
+
+        return convertToDTO(savedFacture);
     }
 
     // 🔥 NOUVELLE MÉTHODE : Recalculer le statut après ajout/suppression de paiements
@@ -132,10 +124,7 @@ public class FactureService {
     }
 
     public List<FactureDTO> getAllFactures(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
         return factureRepository.findAllByOffice(officeId)
                 .stream()
@@ -144,10 +133,7 @@ public class FactureService {
     }
 
     public FactureDTO getFactureById(UUID userId, UUID id) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
         Facture facture = factureRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Facture non trouvée"));
@@ -191,52 +177,25 @@ public class FactureService {
     }
 
     public Map<String, BigDecimal> getStatistiquesFactures(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
-
-        List<Facture> factures = factureRepository.findAllByOffice(officeId);
-
-        // 🔥 MISE À JOUR : Utiliser les nouveaux calculs
-        BigDecimal totalEmis = factures.stream()
-                .map(Facture::getMontantReclame)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
-        BigDecimal totalRegle = factures.stream()
-                .map(Facture::getMontantRegleTtc)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalEnAttente = factures.stream()
-                .map(Facture::getMontantRestantDu)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        return Map.of(
-                "Total Facturé", totalEmis,
-                "Total Réglé", totalRegle,
-                "Total en Attente", totalEnAttente
-        );
+        // 🔥 Totaux calculés en base (agrégats mensuels ou SUM), sans charger les factures
+        return factureKpiService.getStatistiques(officeId);
     }
 
+    /**
+     * 🔥 Les relances partent en arrière-plan (RelanceService) : e-mails par lots, débit limité, jamais deux fois
+     */
     public void relancerFacturesImpayees(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
-
-        List<Facture> facturesEnRetard = factureRepository.findFacturesEnRetard(officeId);
+        relanceService.relancerCabinet(userId);
+    }
 
-        for (Facture facture : facturesEnRetard) {
-            System.out.println("⚠ Relance envoyée au client " + facture.getClient().getNom() + " pour la facture " + facture.getNumeroFacture());
-            // Ici, on pourrait envoyer un email de relance au client
-        }
+    public Map<String, Long> getStatistiquesRelances(UUID userId) {
+        return relanceService.getStatistiques(userId);
     }
 
     public List<FactureDTO> getFacturesByDossier(UUID userId, UUID dossierId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
         List<Facture> factures = factureRepository.findByDossierId(dossierId);
 
@@ -254,76 +213,17 @@ public class FactureService {
     }
 
     public Map<String, Object> getKpiFactures(UUID userId) {
-        UUID officeId = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"))
-                .getOffice().getId();
-
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime startOfMonth = now.with(TemporalAdjusters.firstDayOfMonth()).withHour(0).withMinute(0).withSecond(0);
-        LocalDateTime startOfWeek = now.minusDays(now.getDayOfWeek().getValue() - 1).withHour(0).withMinute(0).withSecond(0);
-
-        List<Facture> allFactures = factureRepository.findAllByOffice(officeId);
-        List<Facture> facturesDuMois = allFactures.stream().filter(f -> f.getDateEmission().isAfter(startOfMonth)).collect(Collectors.toList());
-        List<Facture> facturesDeLaSemaine = allFactures.stream().filter(f -> f.getDateEmission().isAfter(startOfWeek)).collect(Collectors.toList());
-        List<Facture> facturesEnAttente = allFactures.stream().filter(f -> f.getStatutPaiement() == StatutPaiement.ATTENTE_REGLEMENT).collect(Collectors.toList());
-
-        // 🔥 MISE À JOUR : Utiliser montantReclame et montantRegleTtc
-        BigDecimal totalFacturesMois = facturesDuMois.stream()
-                .map(Facture::getMontantReclame)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalFacturesSemaine = facturesDeLaSemaine.stream()
-                .map(Facture::getMontantReclame)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalPaiementsEnAttente = facturesEnAttente.stream()
-                .map(Facture::getMontantRestantDu)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        long nombreFacturesMois = facturesDuMois.size();
-        long nombreFacturesPayeesMois = facturesDuMois.stream().filter(Facture::isPayee).count();
-        long nombreFacturesEnAttenteMois = facturesDuMois.stream().filter(f -> f.getMontantRestantDu().compareTo(BigDecimal.ZERO) > 0).count();
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("totalFacturesMois", totalFacturesMois);
-        result.put("totalFacturesSemaine", totalFacturesSemaine);
-        result.put("totalPaiementsEnAttente", totalPaiementsEnAttente);
-        result.put("nombreFacturesMois", nombreFacturesMois);
-        result.put("nombreFacturesPayeesMois", nombreFacturesPayeesMois);
-        result.put("nombreFacturesEnAttenteMois", nombreFacturesEnAttenteMois);
-
-        return result;
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        return factureKpiService.getKpi(officeId);
     }
 
     public Map<String, Object> getKpiFacturesMensuelles(UUID userId) {
-        UUID officeId = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"))
-                .getOffice().getId();
-
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime startOfMonth = now.with(TemporalAdjusters.firstDayOfMonth()).withHour(0).withMinute(0).withSecond(0);
-
-        List<Facture> facturesDuMois = factureRepository.findAllByOffice(officeId).stream()
-                .filter(f -> f.getDateEmission().isAfter(startOfMonth))
-                .collect(Collectors.toList());
-
-        // 🔥 MISE À JOUR : Utiliser les nouveaux calculs
-        BigDecimal totalFacturesMois = facturesDuMois.stream()
-                .map(Facture::getMontantReclame)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalFacturesRegleesMois = facturesDuMois.stream()
-                .map(Facture::getMontantRegleTtc)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalFacturesImpayeesMois = facturesDuMois.stream()
-                .map(Facture::getMontantRestantDu)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        return factureKpiService.getKpiMensuelles(officeId);
+    }
 
-        return Map.of(
-                "totalFacturesMois", totalFacturesMois,
-                "totalFacturesRegleesMois", totalFacturesRegleesMois,
-                "totalFacturesImpayeesMois", totalFacturesImpayeesMois
-        );
+    public List<Map<String, Object>> getHistoriqueMensuel(UUID userId, int nombreMois) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        return factureKpiService.getHistoriqueMensuel(officeId, nombreMois);
     }
 }
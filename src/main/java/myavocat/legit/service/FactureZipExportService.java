@@ -0,0 +1,198 @@
+package myavocat.legit.service;
+
+import jakarta.annotation.PreDestroy;
+import myavocat.legit.dto.FacturePdfDTO;
+import myavocat.legit.model.StatutPaiement;
+import myavocat.legit.repository.FactureRepository;
+import myavocat.legit.security.CurrentUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Export en masse des factures d'un cabinet sous forme d'archive ZIP.
+ *
+ * Les PDF sont rendus en parallèle sur un pool borné (facture.export.threads) et écrits dans le ZIP
+ * au fil de l'eau, dans l'ordre de la sélection. Au plus FENETRE PDF sont en mémoire à un instant donné
+ * et les données sont lues par lots : la mémoire reste constante quel que soit le nombre de factures.
+ * Les PDF, déjà compressés, sont stockés sans recompression (STORED), comme dans DossierArchiveService.
+ */
+@Service
+public class FactureZipExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FactureZipExportService.class);
+
+    private static final int LOT_LECTURE = 100;
+    private static final LocalDateTime DEBUT_MIN = LocalDate.of(1970, 1, 1).atStartOfDay();
+    private static final LocalDateTime FIN_MAX = LocalDate.of(9999, 1, 1).atStartOfDay();
+
+    private final FactureRepository factureRepository;
+    private final FactureExportService factureExportService;
+    private final CurrentUser currentUser;
+    private final ExecutorService executor;
+    private final int fenetre;
+
+    public FactureZipExportService(FactureRepository factureRepository,
+                                   FactureExportService factureExportService,
+                                   CurrentUser currentUser,
+                                   @Value("${facture.export.threads:0}") int threads) {
+        this.factureRepository = factureRepository;
+        this.factureExportService = factureExportService;
+        this.currentUser = currentUser;
+
+        int nombreThreads = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(nombreThreads, r -> {
+            Thread t = new Thread(r, "facture-pdf-" + compteur.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.fenetre = nombreThreads * 2;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sélectionne les factures à exporter (à appeler dans le thread de la requête : contrôle d'accès)
+     */
+    public List<UUID> selectionner(UUID userId, LocalDate dateDebut, LocalDate dateFin,
+                                   StatutPaiement statut, UUID dossierId) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+
+        LocalDateTime debut = dateDebut != null ? dateDebut.atStartOfDay() : DEBUT_MIN;
+        LocalDateTime fin = dateFin != null ? dateFin.plusDays(1).atStartOfDay() : FIN_MAX;
+        if (!fin.isAfter(debut)) {
+            throw new RuntimeException("La date de fin doit être postérieure à la date de début");
+        }
+
+        return factureRepository.findIdsPourExport(officeId, debut, fin, statut, dossierId);
+    }
+
+    /**
+     * Écrit l'archive ZIP des factures dans le flux (le flux n'est pas fermé).
+     * Les factures en erreur sont listées dans une entrée ERREURS.txt en fin d'archive.
+     */
+    public void ecrireZip(List<UUID> factureIds, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+
+        Deque<Future<PdfRendu>> enCours = new ArrayDeque<>();
+        Set<String> noms = new HashSet<>();
+        List<String> erreurs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < factureIds.size(); i += LOT_LECTURE) {
+                List<UUID> lot = factureIds.subList(i, Math.min(i + LOT_LECTURE, factureIds.size()));
+                // IN (...) ne garantit pas l'ordre : on le rétablit d'après la sélection
+                Map<UUID, FacturePdfDTO> parId = factureRepository.findPdfDataByIds(lot).stream()
+                        .collect(Collectors.toMap(FacturePdfDTO::getId, Function.identity()));
+                for (UUID id : lot) {
+                    FacturePdfDTO facture = parId.get(id);
+                    if (facture == null) {
+                        continue; // supprimée depuis la sélection
+                    }
+                    if (enCours.size() >= fenetre) {
+                        ecrireEntree(zip, enCours.poll(), noms, erreurs);
+                    }
+                    enCours.add(executor.submit(() -> rendre(facture)));
+                }
+            }
+            while (!enCours.isEmpty()) {
+                ecrireEntree(zip, enCours.poll(), noms, erreurs);
+            }
+
+            if (!erreurs.isEmpty()) {
+                zip.putNextEntry(new ZipEntry("ERREURS.txt"));
+                zip.write(String.join("\n", erreurs).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            // Client déconnecté ou erreur d'écriture : on abandonne les rendus restants
+            enCours.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private PdfRendu rendre(FacturePdfDTO facture) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(16 * 1024);
+            factureExportService.writeFacturePdf(facture, baos);
+            return new PdfRendu(facture.getNumeroFacture(), baos.toByteArray(), null);
+        } catch (RuntimeException e) {
+            logger.warn("Échec du rendu PDF de la facture {}", facture.getNumeroFacture(), e);
+            return new PdfRendu(facture.getNumeroFacture(), null, e.getMessage());
+        }
+    }
+
+    private void ecrireEntree(ZipOutputStream zip, Future<PdfRendu> future, Set<String> noms, List<String> erreurs)
+            throws IOException {
+        PdfRendu rendu;
+        try {
+            rendu = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrompu", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Erreur lors du rendu PDF", e.getCause());
+        }
+
+        if (rendu.contenu() == null) {
+            erreurs.add(rendu.numeroFacture() + " : " + rendu.erreur());
+            return;
+        }
+
+        byte[] contenu = rendu.contenu();
+        CRC32 crc = new CRC32();
+        crc.update(contenu);
+        ZipEntry entree = new ZipEntry(nomUnique(rendu.numeroFacture(), noms));
+        entree.setMethod(ZipEntry.STORED);
+        entree.setSize(contenu.length);
+        entree.setCompressedSize(contenu.length);
+        entree.setCrc(crc.getValue());
+
+        zip.putNextEntry(entree);
+        zip.write(contenu);
+        zip.closeEntry();
+    }
+
+    private String nomUnique(String numeroFacture, Set<String> noms) {
+        String base = "facture_" + numeroFacture.replaceAll("[^A-Za-z0-9._-]", "_");
+        String nom = base + ".pdf";
+        for (int i = 2; !noms.add(nom); i++) {
+            nom = base + "_" + i + ".pdf";
+        }
+        return nom;
+    }
+
+    private record PdfRendu(String numeroFacture, byte[] contenu, String erreur) {
+    }
+}
@@ -326,11 +326,13 @@ public class GmailWebhookService {
             if (part.has("body") && part.get("body").has("attachmentId")) {
                 String attachmentId = part.get("body").get("attachmentId").asText();
 
-                byte[] attachmentData = downloadGmailAttachment(messageId, attachmentId, account);
+                String attachmentData = downloadGmailAttachment(messageId, attachmentId, account);
                 if (attachmentData != null) {
                     String contentType = part.has("mimeType") ? part.get("mimeType").asText() : "application/octet-stream";
-                    attachments.add(new EmailWebhookService.AttachmentData(filename, contentType, attachmentData));
-                    logger.info("Pièce jointe extraite: {} ({})", filename, attachmentData.length + " bytes");
+                    EmailWebhookService.AttachmentData attachment = EmailWebhookService.AttachmentData.base64(
+                            filename, contentType, attachmentData, Base64.getUrlDecoder());
+                    attachments.add(attachment);
+                    logger.info("Pièce jointe extraite: {} ({})", filename, attachment.getSize() + " bytes");
                 }
             }
         }
@@ -342,7 +344,10 @@ public class GmailWebhookService {
         }
     }
 
-    private byte[] downloadGmailAttachment(String messageId, String attachmentId, EmailAccount account) {
+    /**
+     * Contenu de la pièce jointe, encore encodé en base64 (variante URL)
+     */
+    private String downloadGmailAttachment(String messageId, String attachmentId, EmailAccount account) {
         try {
             String accessToken = oauthTokenService.getValidAccessToken(account);
             if (accessToken == null) {
@@ -363,8 +368,7 @@ public class GmailWebhookService {
 
             if (response.getStatusCode() == HttpStatus.OK) {
                 JsonNode attachmentResponse = objectMapper.readTree(response.getBody());
-                String data = attachmentResponse.get("data").asText();
-                return Base64.getUrlDecoder().decode(data);
+                return attachmentResponse.get("data").asText();
             } else {
                 logger.error("Erreur téléchargement pièce jointe Gmail: {}", response.getStatusCode());
                 return null;
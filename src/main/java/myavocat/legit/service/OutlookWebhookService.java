@@ -241,10 +241,11 @@ public class OutlookWebhookService {
 
                 if (attachment.has("contentBytes")) {
                     String contentBytes = attachment.get("contentBytes").asText();
-                    byte[] data = Base64.getDecoder().decode(contentBytes);
+                    EmailWebhookService.AttachmentData data = EmailWebhookService.AttachmentData.base64(
+                            filename, contentType, contentBytes, Base64.getDecoder());
 
-                    attachments.add(new EmailWebhookService.AttachmentData(filename, contentType, data));
-                    logger.info("Pièce jointe Outlook extraite: {} ({} bytes)", filename, data.length);
+                    attachments.add(data);
+                    logger.info("Pièce jointe Outlook extraite: {} ({} bytes)", filename, data.getSize());
                 }
             }
 
@@ -0,0 +1,124 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.PaiementSerieDTO;
+import myavocat.legit.dto.PaiementSeriePointDTO;
+import myavocat.legit.config.BaseDeDonnees;
+import myavocat.legit.security.CurrentUser;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Séries temporelles des encaissements : une seule requête date_trunc groupée par période et par mode de paiement.
+ * S'appuie sur paiements(office_id, date_paiement) : ni jointure vers factures et dossiers, ni requête par période.
+ */
+@Service
+public class PaiementSerieService {
+
+    public static final String JOUR = "jour";
+    public static final String SEMAINE = "semaine";
+    public static final String MOIS = "mois";
+
+    private static final int MAX_POINTS = 1000;
+    private static final String MODE_NON_RENSEIGNE = "NON_RENSEIGNE";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CurrentUser currentUser;
+    // Unités date_trunc autorisées (jamais concaténées depuis la requête HTTP)
+    private final Map<String, String> unites;
+
+    public PaiementSerieService(NamedParameterJdbcTemplate jdbcTemplate, CurrentUser currentUser, BaseDeDonnees baseDeDonnees) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.currentUser = currentUser;
+        // Semaines ISO (lundi) : 'week' sur PostgreSQL, 'iso_week' sur H2 dont 'week' commence le dimanche
+        this.unites = Map.of(
+                JOUR, "day",
+                SEMAINE, baseDeDonnees.isPostgres() ? "week" : "iso_week",
+                MOIS, "month"
+        );
+    }
+
+    /**
+     * Encaissements du cabinet par jour, semaine (lundi) ou mois et par mode de paiement.
+     * Les périodes sans encaissement sont renvoyées à zéro.
+     */
+    @Transactional(readOnly = true)
+    public PaiementSerieDTO getSerieEncaissements(UUID userId, String granularite, LocalDate dateDebut, LocalDate dateFin) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+
+        String unite = unites.get(granularite);
+        if (unite == null) {
+            throw new RuntimeException("Granularité invalide : " + granularite + " (jour, semaine ou mois)");
+        }
+        if (dateFin.isBefore(dateDebut)) {
+            throw new RuntimeException("La date de fin précède la date de début");
+        }
+
+        Map<LocalDate, PaiementSeriePointDTO> points = new LinkedHashMap<>();
+        for (LocalDate periode = debutPeriode(dateDebut, granularite); !periode.isAfter(dateFin);
+             periode = periodeSuivante(periode, granularite)) {
+            if (points.size() >= MAX_POINTS) {
+                throw new RuntimeException("Période trop longue pour une granularité « " + granularite + " »");
+            }
+            points.put(periode, nouveauPoint(periode));
+        }
+
+        String periodeSql = "CAST(date_trunc('" + unite + "', CAST(p.date_paiement AS timestamp)) AS date)";
+        String sql = "SELECT " + periodeSql + ", p.mode_paiement, COUNT(*), SUM(p.montant) " +
+                "FROM paiements p " +
+                "WHERE p.office_id = :officeId AND p.date_paiement BETWEEN :dateDebut AND :dateFin " +
+                "GROUP BY " + periodeSql + ", p.mode_paiement";
+
+        MapSqlParameterSource params = new MapSqlParameterSource("officeId", officeId)
+                .addValue("dateDebut", dateDebut)
+                .addValue("dateFin", dateFin);
+
+        PaiementSerieDTO serie = new PaiementSerieDTO(granularite, dateDebut, dateFin, 0, BigDecimal.ZERO, null);
+        jdbcTemplate.query(sql, params, rs -> {
+            LocalDate periode = rs.getObject(1, LocalDate.class);
+            String mode = rs.getString(2) != null ? rs.getString(2) : MODE_NON_RENSEIGNE;
+            long nombre = rs.getLong(3);
+            BigDecimal montant = rs.getBigDecimal(4);
+
+            PaiementSeriePointDTO point = points.computeIfAbsent(periode, this::nouveauPoint);
+            point.setNombre(point.getNombre() + nombre);
+            point.setMontant(point.getMontant().add(montant));
+            point.getParMode().merge(mode, montant, BigDecimal::add);
+
+            serie.setNombre(serie.getNombre() + nombre);
+            serie.setMontant(serie.getMontant().add(montant));
+        });
+
+        serie.setPoints(new ArrayList<>(points.values()));
+        return serie;
+    }
+
+    private PaiementSeriePointDTO nouveauPoint(LocalDate periode) {
+        return new PaiementSeriePointDTO(periode, 0, BigDecimal.ZERO, new LinkedHashMap<>());
+    }
+
+    private LocalDate debutPeriode(LocalDate date, String granularite) {
+        return switch (granularite) {
+            case SEMAINE -> date.with(DayOfWeek.MONDAY);
+            case MOIS -> date.withDayOfMonth(1);
+            default -> date;
+        };
+    }
+
+    private LocalDate periodeSuivante(LocalDate periode, String granularite) {
+        return switch (granularite) {
+            case SEMAINE -> periode.plusWeeks(1);
+            case MOIS -> periode.plusMonths(1);
+            default -> periode.plusDays(1);
+        };
+    }
+}
@@ -4,11 +4,10 @@ import myavocat.legit.dto.PaiementDTO;
 import myavocat.legit.dto.CreatePaiementDTO;
 import myavocat.legit.model.Paiement;
 import myavocat.legit.model.Facture;
-import myavocat.legit.model.User;
 import myavocat.legit.model.ModePaiement;
 import myavocat.legit.repository.PaiementRepository;
 import myavocat.legit.repository.FactureRepository;
-import myavocat.legit.repository.UserRepository;
+import myavocat.legit.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -31,10 +30,10 @@ public class PaiementService {
     private FactureRepository factureRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private CurrentUser currentUser;
 
     @Autowired
-    private FactureService factureService;
+    private FactureKpiService factureKpiService;
 
     // 🔥 CRÉATION ET MODIFICATION DE PAIEMENTS
 
@@ -44,14 +43,13 @@ public class PaiementService {
     @Transactional
     public PaiementDTO creerPaiement(UUID userId, CreatePaiementDTO createPaiementDTO) {
         // Vérifier l'utilisateur
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
-        // Vérifier la facture et l'accès
-        Facture facture = factureRepository.findById(createPaiementDTO.getFactureId())
+        // Vérifier la facture et l'accès (verrou de ligne : les paiements concurrents d'une facture sont sérialisés)
+        Facture facture = factureRepository.findByIdForUpdate(createPaiementDTO.getFactureId())
                 .orElseThrow(() -> new RuntimeException("Facture introuvable"));
 
-        if (!facture.getDossier().getOffice().getId().equals(user.getOffice().getId())) {
+        if (!facture.getDossier().getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé : cette facture n'appartient pas à votre cabinet");
         }
 
@@ -65,6 +63,7 @@ public class PaiementService {
         // Créer le paiement
         Paiement paiement = new Paiement();
         paiement.setFacture(facture);
+        paiement.setOfficeId(userOfficeId);
         paiement.setMontant(createPaiementDTO.getMontant());
         paiement.setDatePaiement(createPaiementDTO.getDatePaiement());
         paiement.setModePaiement(createPaiementDTO.getModePaiement());
@@ -74,8 +73,10 @@ public class PaiementService {
         // Sauvegarder le paiement
         Paiement savedPaiement = paiementRepository.save(paiement);
 
-        // 🔥 AUTOMATIQUE : Recalculer le statut de la facture
-        factureService.recalculerStatutPaiement(facture.getId());
+        // 🔥 AUTOMATIQUE : Mettre à jour le montant réglé et le statut de la facture
+        BigDecimal ancienRegle = facture.getMontantRegleTtc();
+        facture.appliquerPaiement(savedPaiement.getMontant());
+        factureKpiService.onMontantsModifies(facture, facture.getMontantReclame(), ancienRegle);
 
         return convertToDTO(savedPaiement);
     }
@@ -85,17 +86,19 @@ public class PaiementService {
      */
     @Transactional
     public PaiementDTO modifierPaiement(UUID userId, UUID paiementId, CreatePaiementDTO updateData) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
+        Facture facture = lockFactureDuPaiement(paiementId);
         Paiement paiement = paiementRepository.findById(paiementId)
                 .orElseThrow(() -> new RuntimeException("Paiement introuvable"));
 
         // Vérifier l'accès
-        if (!paiement.getFacture().getDossier().getOffice().getId().equals(user.getOffice().getId())) {
+        if (!facture.getDossier().getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé : ce paiement n'appartient pas à votre cabinet");
         }
 
+        BigDecimal ancienMontant = paiement.getMontant();
+
         // Mettre à jour les champs
         paiement.setMontant(updateData.getMontant());
         paiement.setDatePaiement(updateData.getDatePaiement());
@@ -105,8 +108,10 @@ public class PaiementService {
 
         Paiement updatedPaiement = paiementRepository.save(paiement);
 
-        // 🔥 AUTOMATIQUE : Recalculer le statut de la facture
-        factureService.recalculerStatutPaiement(paiement.getFacture().getId());
+        // 🔥 AUTOMATIQUE : Reporter l'écart sur le montant réglé et le statut de la facture
+        BigDecimal ancienRegle = facture.getMontantRegleTtc();
+        facture.appliquerPaiement(updatedPaiement.getMontant().subtract(ancienMontant));
+        factureKpiService.onMontantsModifies(facture, facture.getMontantReclame(), ancienRegle);
 
         return convertToDTO(updatedPaiement);
     }
@@ -116,24 +121,24 @@ public class PaiementService {
      */
     @Transactional
     public void supprimerPaiement(UUID userId, UUID paiementId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
+        Facture facture = lockFactureDuPaiement(paiementId);
         Paiement paiement = paiementRepository.findById(paiementId)
                 .orElseThrow(() -> new RuntimeException("Paiement introuvable"));
 
         // Vérifier l'accès
-        if (!paiement.getFacture().getDossier().getOffice().getId().equals(user.getOffice().getId())) {
+        if (!facture.getDossier().getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé : ce paiement n'appartient pas à votre cabinet");
         }
 
-        UUID factureId = paiement.getFacture().getId();
-
         // Supprimer le paiement
         paiementRepository.delete(paiement);
 
-        // 🔥 AUTOMATIQUE : Recalculer le statut de la facture
-        factureService.recalculerStatutPaiement(factureId);
+        // 🔥 AUTOMATIQUE : Retirer le paiement du montant réglé et recalculer le statut de la facture
+        BigDecimal ancienRegle = facture.getMontantRegleTtc();
+        facture.appliquerPaiement(paiement.getMontant().negate());
+        factureKpiService.onMontantsModifies(facture, facture.getMontantReclame(), ancienRegle);
     }
 
     // 🔥 CONSULTATION DES PAIEMENTS
@@ -142,14 +147,13 @@ public class PaiementService {
      * Récupérer tous les paiements d'une facture
      */
     public List<PaiementDTO> getPaiementsByFacture(UUID userId, UUID factureId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Facture facture = factureRepository.findById(factureId)
                 .orElseThrow(() -> new RuntimeException("Facture introuvable"));
 
         // Vérifier l'accès
-        if (!facture.getDossier().getOffice().getId().equals(user.getOffice().getId())) {
+        if (!facture.getDossier().getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé : cette facture n'appartient pas à votre cabinet");
         }
 
@@ -161,14 +165,13 @@ public class PaiementService {
      * Récupérer un paiement par ID
      */
     public PaiementDTO getPaiementById(UUID userId, UUID paiementId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Paiement paiement = paiementRepository.findById(paiementId)
                 .orElseThrow(() -> new RuntimeException("Paiement introuvable"));
 
         // Vérifier l'accès
-        if (!paiement.getFacture().getDossier().getOffice().getId().equals(user.getOffice().getId())) {
+        if (!paiement.getFacture().getDossier().getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé : ce paiement n'appartient pas à votre cabinet");
         }
 
@@ -179,10 +182,9 @@ public class PaiementService {
      * Récupérer tous les paiements du cabinet
      */
     public List<PaiementDTO> getAllPaiements(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
-        List<Paiement> paiements = paiementRepository.findAllByOfficeId(user.getOffice().getId());
+        List<Paiement> paiements = paiementRepository.findAllByOfficeId(userOfficeId);
         return paiements.stream().map(this::convertToDTO).collect(Collectors.toList());
     }
 
@@ -190,11 +192,10 @@ public class PaiementService {
      * Récupérer les paiements par période
      */
     public List<PaiementDTO> getPaiementsByPeriode(UUID userId, LocalDate dateDebut, LocalDate dateFin) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         List<Paiement> paiements = paiementRepository.findByOfficeIdAndDateBetween(
-                user.getOffice().getId(), dateDebut, dateFin);
+                userOfficeId, dateDebut, dateFin);
         return paiements.stream().map(this::convertToDTO).collect(Collectors.toList());
     }
 
@@ -204,10 +205,7 @@ public class PaiementService {
      * Statistiques des paiements pour un cabinet
      */
     public Map<String, Object> getStatistiquesPaiements(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
-
-        UUID officeId = user.getOffice().getId();
+        UUID officeId = currentUser.resolveOfficeId(userId);
 
         // Total encaissé
         BigDecimal totalEncaisse = paiementRepository.sumMontantByOfficeId(officeId);
@@ -237,14 +235,13 @@ public class PaiementService {
      * Récapitulatif des paiements d'une facture
      */
     public Map<String, Object> getRecapitulatifPaiements(UUID userId, UUID factureId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Utilisateur introuvable"));
+        UUID userOfficeId = currentUser.resolveOfficeId(userId);
 
         Facture facture = factureRepository.findById(factureId)
                 .orElseThrow(() -> new RuntimeException("Facture introuvable"));
 
         // Vérifier l'accès
-        if (!facture.getDossier().getOffice().getId().equals(user.getOffice().getId())) {
+        if (!facture.getDossier().getOffice().getId().equals(userOfficeId)) {
             throw new RuntimeException("Accès refusé");
         }
 
@@ -263,6 +260,16 @@ public class PaiementService {
 
     // 🔥 MÉTHODES UTILITAIRES
 
+    /**
+     * Verrouille la facture d'un paiement avant de charger le paiement, pour lire un montant réglé à jour
+     */
+    private Facture lockFactureDuPaiement(UUID paiementId) {
+        UUID factureId = paiementRepository.findFactureIdById(paiementId)
+                .orElseThrow(() -> new RuntimeException("Paiement introuvable"));
+        return factureRepository.findByIdForUpdate(factureId)
+                .orElseThrow(() -> new RuntimeException("Facture introuvable"));
+    }
+
     /**
      * Conversion Paiement → PaiementDTO
      */
@@ -0,0 +1,590 @@
+package myavocat.legit.service;
+
+import myavocat.legit.dto.ReleveImportResultDTO;
+import myavocat.legit.model.ModePaiement;
+import myavocat.legit.repository.FactureRepository;
+import myavocat.legit.security.CurrentUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Import d'un relevé bancaire (CSV, CAMT.053, OFX) et rapprochement automatique avec les factures ouvertes du cabinet.
+ *
+ * Les factures non soldées sont chargées une fois dans un index mémoire (numéro, montant restant, nom du client).
+ * Le relevé est lu en flux et traité par lots : une requête pour écarter les opérations déjà importées,
+ * puis une transaction qui verrouille les factures du lot, insère les paiements par lots JDBC
+ * et recalcule en masse montant réglé et statut. Les agrégats KPI du cabinet sont reconstruits une fois à la fin.
+ *
+ * Règles de rapprochement, par ordre de confiance :
+ * 1. numéro de facture présent dans le libellé (montant inférieur ou égal au restant dû) ;
+ * 2. nom du client dans le libellé ou la contrepartie et montant égal au restant dû d'une de ses factures ;
+ * 3. nom du client, qui n'a qu'une facture ouverte, et montant inférieur au restant dû (règlement partiel).
+ * Un montant seul ne suffit pas : il est seulement proposé dans le bilan des lignes non rapprochées.
+ */
+@Service
+public class RapprochementBancaireService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RapprochementBancaireService.class);
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_LIGNES_RAPPORT = 100;
+    private static final int MAX_JETONS_NUMERO = 4;
+
+    private static final String SELECT_FACTURES_OUVERTES = "SELECT f.id, f.numero_facture, " +
+            "f.montant_reclame - f.montant_regle, c.nom, c.prenom " +
+            "FROM factures f JOIN dossiers d ON d.id = f.dossier_id JOIN clients c ON c.id = f.client_id " +
+            "WHERE d.office_id = ? AND f.statut_paiement IN ('ATTENTE_REGLEMENT', 'PARTIELLEMENT_REGLEE') " +
+            "AND f.montant_reclame > f.montant_regle " +
+            "ORDER BY f.date_emission";
+
+    private static final String SELECT_REFERENCES_EXISTANTES = "SELECT p.reference FROM paiements p " +
+            "JOIN factures f ON f.id = p.facture_id JOIN dossiers d ON d.id = f.dossier_id " +
+            "WHERE d.office_id = :officeId AND p.reference IN (:refs)";
+
+    private static final String LOCK_FACTURES = "SELECT id, montant_reclame - montant_regle FROM factures " +
+            "WHERE id IN (:ids) AND statut_paiement <> 'ANNULEE' FOR UPDATE";
+
+    private static final String INSERT_PAIEMENT = "INSERT INTO paiements (id, facture_id, office_id, montant, " +
+            "date_paiement, mode_paiement, reference, notes, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FactureRepository factureRepository;
+    private final FactureKpiService factureKpiService;
+    private final CurrentUser currentUser;
+
+    public RapprochementBancaireService(JdbcTemplate jdbcTemplate,
+                                        PlatformTransactionManager transactionManager,
+                                        FactureRepository factureRepository,
+                                        FactureKpiService factureKpiService,
+                                        CurrentUser currentUser) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.factureRepository = factureRepository;
+        this.factureKpiService = factureKpiService;
+        this.currentUser = currentUser;
+    }
+
+    public ReleveImportResultDTO importerReleve(UUID userId, InputStream input, String format) throws IOException {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+
+        long debut = System.currentTimeMillis();
+        ReleveImportResultDTO result = new ReleveImportResultDTO();
+        Import imp = new Import(officeId, chargerFacturesOuvertes(officeId), result);
+
+        ReleveBancaireParser.lire(input, format, new ReleveBancaireParser.Destination() {
+            @Override
+            public void ligne(ReleveBancaireParser.LigneReleve ligne) {
+                result.setLignesLues(result.getLignesLues() + 1);
+                if (ligne.montant().signum() <= 0) {
+                    result.setLignesDebit(result.getLignesDebit() + 1);
+                    return;
+                }
+                imp.lot.add(ligne);
+                if (imp.lot.size() >= BATCH_SIZE) {
+                    traiterLot(imp);
+                }
+            }
+
+            @Override
+            public void erreur(long numero, String message) {
+                result.setLignesLues(result.getLignesLues() + 1);
+                result.setLignesIgnorees(result.getLignesIgnorees() + 1);
+                if (result.getErreurs().size() < MAX_LIGNES_RAPPORT) {
+                    result.getErreurs().add("Ligne " + numero + " : " + message);
+                }
+            }
+        });
+        traiterLot(imp);
+
+        // Les agrégats mensuels sont reconstruits une fois pour tout le relevé
+        if (result.getPaiementsCrees() > 0) {
+            transactionTemplate.executeWithoutResult(status -> factureKpiService.recalculer(officeId));
+        }
+
+        result.setFacturesMisesAJour(imp.facturesMisesAJour.size());
+        result.setDureeMs(System.currentTimeMillis() - debut);
+        logger.info("Relevé importé pour le cabinet {} : {} lignes, {} paiements créés ({} €) en {} ms",
+                officeId, result.getLignesLues(), result.getPaiementsCrees(), result.getMontantRapproche(), result.getDureeMs());
+        return result;
+    }
+
+    // 🔥 TRAITEMENT PAR LOTS
+
+    private void traiterLot(Import imp) {
+        if (imp.lot.isEmpty()) {
+            return;
+        }
+
+        // Références des opérations : identifiant bancaire, sinon empreinte de la ligne
+        List<String> references = new ArrayList<>(imp.lot.size());
+        for (ReleveBancaireParser.LigneReleve ligne : imp.lot) {
+            references.add(referenceOperation(ligne, imp.occurrences));
+        }
+        Set<String> dejaImportees = new HashSet<>(namedJdbcTemplate.queryForList(SELECT_REFERENCES_EXISTANTES,
+                new MapSqlParameterSource("officeId", imp.officeId).addValue("refs", references), String.class));
+
+        List<Rapprochement> rapprochements = new ArrayList<>();
+        for (int i = 0; i < imp.lot.size(); i++) {
+            ReleveBancaireParser.LigneReleve ligne = imp.lot.get(i);
+            String reference = references.get(i);
+            if (dejaImportees.contains(reference) || !imp.referencesVues.add(reference)) {
+                imp.result.setLignesDejaImportees(imp.result.getLignesDejaImportees() + 1);
+                continue;
+            }
+
+            Rapprochement r = imp.index.rapprocher(ligne);
+            if (r == null) {
+                nonRapprochee(imp.result, ligne, imp.index.suggestion(ligne));
+                continue;
+            }
+            r.reference = reference;
+            rapprochements.add(r);
+        }
+        imp.lot.clear();
+
+        if (!rapprochements.isEmpty()) {
+            enregistrer(imp, rapprochements);
+        }
+    }
+
+    /**
+     * Verrouille les factures du lot, écarte ce qui dépasserait un restant dû modifié entre-temps,
+     * puis insère les paiements et recalcule montants et statuts en masse
+     */
+    private void enregistrer(Import imp, List<Rapprochement> rapprochements) {
+        Set<UUID> factureIds = new LinkedHashSet<>();
+        rapprochements.forEach(r -> factureIds.add(r.facture.id));
+
+        LotEnregistre lot;
+        try {
+            lot = transactionTemplate.execute(status -> enregistrerLot(imp.officeId, rapprochements, factureIds));
+        } catch (DataAccessException e) {
+            // Le lot entier est annulé : les factures retrouvent leur restant dû, le reste du relevé continue
+            logger.warn("Lot de rapprochement rejeté ({} paiements) : {}", rapprochements.size(),
+                    e.getMostSpecificCause().getMessage());
+            for (int i = rapprochements.size() - 1; i >= 0; i--) {
+                imp.index.annuler(rapprochements.get(i));
+            }
+            for (Rapprochement r : rapprochements) {
+                nonRapprochee(imp.result, r.ligne, "lot rejeté (" + e.getMostSpecificCause().getMessage() + ")");
+            }
+            return;
+        }
+
+        // Transaction validée : seules les lignes écartées au verrouillage sont rendues à l'index
+        for (int i = lot.ecartes.size() - 1; i >= 0; i--) {
+            imp.index.annuler(lot.ecartes.get(i));
+        }
+        for (Rapprochement r : lot.ecartes) {
+            nonRapprochee(imp.result, r.ligne, "facture " + r.facture.numero + " modifiée pendant l'import");
+        }
+        imp.result.setPaiementsCrees(imp.result.getPaiementsCrees() + lot.paiements);
+        imp.result.setMontantRapproche(imp.result.getMontantRapproche().add(lot.total));
+        imp.facturesMisesAJour.addAll(lot.modifiees);
+    }
+
+    /**
+     * Écritures du lot ; le bilan et l'index ne sont mis à jour par l'appelant qu'une fois la transaction validée
+     */
+    private LotEnregistre enregistrerLot(UUID officeId, List<Rapprochement> rapprochements, Set<UUID> factureIds) {
+        Map<UUID, BigDecimal> restants = new HashMap<>();
+        namedJdbcTemplate.query(LOCK_FACTURES, new MapSqlParameterSource("ids", factureIds),
+                rs -> {
+                    restants.put(rs.getObject(1, UUID.class), rs.getBigDecimal(2));
+                });
+
+        Timestamp maintenant = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> lignes = new ArrayList<>(rapprochements.size());
+        LotEnregistre lot = new LotEnregistre();
+
+        for (Rapprochement r : rapprochements) {
+            BigDecimal restant = restants.get(r.facture.id);
+            BigDecimal montant = r.ligne.montant();
+            if (restant == null || montant.compareTo(restant) > 0) {
+                lot.ecartes.add(r);
+                continue;
+            }
+            restants.put(r.facture.id, restant.subtract(montant));
+
+            lignes.add(new Object[]{
+                    UUID.randomUUID(),
+                    r.facture.id,
+                    officeId,
+                    montant,
+                    Date.valueOf(r.ligne.date()),
+                    modePaiement(r.ligne).name(),
+                    r.reference,
+                    notes(r),
+                    maintenant,
+                    maintenant
+            });
+            lot.modifiees.add(r.facture.id);
+            lot.total = lot.total.add(montant);
+        }
+
+        if (lignes.isEmpty()) {
+            return lot;
+        }
+        jdbcTemplate.batchUpdate(INSERT_PAIEMENT, lignes);
+        factureRepository.recalculerMontantRegle(lot.modifiees);
+        factureRepository.recalculerStatutPaiement(lot.modifiees);
+        lot.paiements = lignes.size();
+        return lot;
+    }
+
+    private IndexFactures chargerFacturesOuvertes(UUID officeId) {
+        IndexFactures index = new IndexFactures();
+        jdbcTemplate.query(SELECT_FACTURES_OUVERTES, rs -> {
+            index.ajouter(new FactureOuverte(
+                    rs.getObject(1, UUID.class),
+                    rs.getString(2),
+                    rs.getBigDecimal(3),
+                    normaliser(rs.getString(4)),
+                    normaliser(rs.getString(5))));
+        }, officeId);
+        return index;
+    }
+
+    // 🔥 INDEX DES FACTURES OUVERTES
+
+    /**
+     * Index mémoire des factures non soldées du cabinet, mis à jour au fil des rapprochements
+     * pour qu'une même facture ne soit pas réglée deux fois par le même relevé.
+     * Un rapprochement qui n'est finalement pas enregistré est annulé (annuler()).
+     */
+    static final class IndexFactures {
+        private final Map<String, FactureOuverte> parNumero = new HashMap<>();
+        private final Map<BigDecimal, List<FactureOuverte>> parRestant = new HashMap<>();
+        // Premier mot du nom du client -> factures, de la plus ancienne à la plus récente (le nom complet est vérifié ensuite)
+        private final Map<String, List<FactureOuverte>> parNom = new HashMap<>();
+        private int prochainOrdre;
+
+        void ajouter(FactureOuverte facture) {
+            facture.ordre = prochainOrdre++;
+            parNumero.put(cleNumero(facture.numero), facture);
+            parRestant.computeIfAbsent(cleMontant(facture.restant), k -> new ArrayList<>()).add(facture);
+            if (!facture.nom.isEmpty()) {
+                parNom.computeIfAbsent(facture.nom.split(" ")[0], k -> new ArrayList<>()).add(facture);
+            }
+        }
+
+        Rapprochement rapprocher(ReleveBancaireParser.LigneReleve ligne) {
+            String texte = normaliser(concat(ligne.libelle(), ligne.contrepartie()));
+            if (texte.isEmpty()) {
+                return null;
+            }
+            String[] jetons = texte.split(" ");
+            BigDecimal montant = ligne.montant();
+
+            // 1. Numéro de facture
+            FactureOuverte parReference = factureCitee(jetons);
+            if (parReference != null && montant.compareTo(parReference.restant) <= 0) {
+                return imputer(parReference, ligne, "numéro de facture");
+            }
+
+            List<FactureOuverte> duClient = facturesDuClient(texte, jetons);
+            if (duClient.isEmpty()) {
+                return null;
+            }
+
+            // 2. Nom du client et montant exact du restant dû (la plus ancienne facture d'abord)
+            for (FactureOuverte facture : duClient) {
+                if (montant.compareTo(facture.restant) == 0) {
+                    return imputer(facture, ligne, "client et montant");
+                }
+            }
+
+            // 3. Client avec une seule facture ouverte : règlement partiel
+            if (duClient.size() == 1 && montant.compareTo(duClient.get(0).restant) < 0) {
+                return imputer(duClient.get(0), ligne, "client (règlement partiel)");
+            }
+            return null;
+        }
+
+        /**
+         * Motif d'une ligne non rapprochée : facture citée mais trop peu due, ou factures dont le restant dû est le montant
+         */
+        String suggestion(ReleveBancaireParser.LigneReleve ligne) {
+            String texte = normaliser(concat(ligne.libelle(), ligne.contrepartie()));
+            FactureOuverte citee = texte.isEmpty() ? null : factureCitee(texte.split(" "));
+            if (citee != null) {
+                return "montant supérieur au restant dû de " + citee.numero + " (" + citee.restant + " €)";
+            }
+
+            List<FactureOuverte> memeMontant = parRestant.getOrDefault(cleMontant(ligne.montant()), List.of());
+            if (memeMontant.isEmpty()) {
+                return "aucune facture ouverte correspondante";
+            }
+            return "montant égal au restant dû de " + memeMontant.stream().limit(3).map(f -> f.numero).toList()
+                    + (memeMontant.size() > 3 ? " (+" + (memeMontant.size() - 3) + ")" : "") + ", à vérifier";
+        }
+
+        /**
+         * Facture dont le numéro apparaît dans le libellé, éventuellement découpé par la banque ("AB 2025 001")
+         */
+        private FactureOuverte factureCitee(String[] jetons) {
+            for (int i = 0; i < jetons.length; i++) {
+                StringBuilder cle = new StringBuilder();
+                for (int k = i; k < Math.min(jetons.length, i + MAX_JETONS_NUMERO); k++) {
+                    cle.append(jetons[k]);
+                    FactureOuverte facture = parNumero.get(cle.toString());
+                    if (facture != null) {
+                        return facture;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private List<FactureOuverte> facturesDuClient(String texte, String[] jetons) {
+            String texteBorne = " " + texte + " ";
+            List<FactureOuverte> result = new ArrayList<>();
+            Set<String> vus = new HashSet<>();
+            for (String jeton : jetons) {
+                if (!vus.add(jeton)) {
+                    continue;
+                }
+                for (FactureOuverte facture : parNom.getOrDefault(jeton, List.of())) {
+                    if (texteBorne.contains(" " + facture.nom + " ")) {
+                        result.add(facture);
+                    }
+                }
+            }
+            // Homonymes : le prénom, s'il est présent, départage
+            List<FactureOuverte> avecPrenom = result.stream()
+                    .filter(f -> !f.prenom.isEmpty() && texteBorne.contains(" " + f.prenom + " "))
+                    .toList();
+            return avecPrenom.isEmpty() ? result : avecPrenom;
+        }
+
+        private Rapprochement imputer(FactureOuverte facture, ReleveBancaireParser.LigneReleve ligne, String regle) {
+            List<FactureOuverte> memeRestant = parRestant.get(cleMontant(facture.restant));
+            if (memeRestant != null) {
+                memeRestant.remove(facture);
+            }
+
+            facture.restant = facture.restant.subtract(ligne.montant());
+            if (facture.restant.signum() > 0) {
+                parRestant.computeIfAbsent(cleMontant(facture.restant), k -> new ArrayList<>()).add(facture);
+            } else {
+                // Soldée : plus candidate pour la suite du relevé
+                parNumero.remove(cleNumero(facture.numero));
+                List<FactureOuverte> memeNom = parNom.get(facture.nom.split(" ")[0]);
+                if (memeNom != null) {
+                    memeNom.remove(facture);
+                }
+            }
+            return new Rapprochement(facture, ligne, regle);
+        }
+
+        /**
+         * Rend à la facture le montant imputé par un rapprochement non enregistré (lot rejeté,
+         * ou restant dû modifié entre-temps) : elle redevient candidate pour la suite du relevé
+         */
+        void annuler(Rapprochement rapprochement) {
+            FactureOuverte facture = rapprochement.facture;
+            if (facture.restant.signum() > 0) {
+                List<FactureOuverte> memeRestant = parRestant.get(cleMontant(facture.restant));
+                if (memeRestant != null) {
+                    memeRestant.remove(facture);
+                }
+            } else {
+                // Soldée par ce relevé : remise à sa place parmi les factures du client
+                parNumero.put(cleNumero(facture.numero), facture);
+                if (!facture.nom.isEmpty()) {
+                    List<FactureOuverte> memeNom = parNom.computeIfAbsent(facture.nom.split(" ")[0], k -> new ArrayList<>());
+                    int position = 0;
+                    while (position < memeNom.size() && memeNom.get(position).ordre < facture.ordre) {
+                        position++;
+                    }
+                    memeNom.add(position, facture);
+                }
+            }
+
+            facture.restant = facture.restant.add(rapprochement.ligne.montant());
+            parRestant.computeIfAbsent(cleMontant(facture.restant), k -> new ArrayList<>()).add(facture);
+        }
+    }
+
+    static final class FactureOuverte {
+        private final UUID id;
+        private final String numero;
+        private final String nom;
+        private final String prenom;
+        private BigDecimal restant;
+        // Rang de chargement (date d'émission)
+        private int ordre;
+
+        FactureOuverte(UUID id, String numero, BigDecimal restant, String nom, String prenom) {
+            this.id = id;
+            this.numero = numero;
+            this.restant = restant;
+            this.nom = nom;
+            this.prenom = prenom;
+        }
+
+        String numero() {
+            return numero;
+        }
+
+        BigDecimal restant() {
+            return restant;
+        }
+    }
+
+    static final class Rapprochement {
+        private final FactureOuverte facture;
+        private final ReleveBancaireParser.LigneReleve ligne;
+        private final String regle;
+        private String reference;
+
+        private Rapprochement(FactureOuverte facture, ReleveBancaireParser.LigneReleve ligne, String regle) {
+            this.facture = facture;
+            this.ligne = ligne;
+            this.regle = regle;
+        }
+
+        FactureOuverte facture() {
+            return facture;
+        }
+
+        String regle() {
+            return regle;
+        }
+    }
+
+    /**
+     * Résultat d'un lot validé : paiements créés et lignes écartées au verrouillage des factures
+     */
+    private static final class LotEnregistre {
+        private final List<Rapprochement> ecartes = new ArrayList<>();
+        private final Set<UUID> modifiees = new HashSet<>();
+        private int paiements;
+        private BigDecimal total = BigDecimal.ZERO;
+    }
+
+    /**
+     * État d'un import en cours
+     */
+    private static final class Import {
+        private final UUID officeId;
+        private final IndexFactures index;
+        private final ReleveImportResultDTO result;
+        private final List<ReleveBancaireParser.LigneReleve> lot = new ArrayList<>(BATCH_SIZE);
+        private final Set<String> referencesVues = new HashSet<>();
+        private final Map<String, Integer> occurrences = new HashMap<>();
+        private final Set<UUID> facturesMisesAJour = new HashSet<>();
+
+        private Import(UUID officeId, IndexFactures index, ReleveImportResultDTO result) {
+            this.officeId = officeId;
+            this.index = index;
+            this.result = result;
+        }
+    }
+
+    // 🔥 MÉTHODES UTILITAIRES
+
+    /**
+     * Référence enregistrée sur le paiement : identifiant de l'opération fourni par la banque,
+     * sinon empreinte de la ligne (numérotée pour distinguer deux opérations identiques du même relevé).
+     * Elle permet de réimporter un relevé sans créer de doublons.
+     */
+    private static String referenceOperation(ReleveBancaireParser.LigneReleve ligne, Map<String, Integer> occurrences) {
+        if (ligne.referenceBancaire() != null) {
+            String ref = ligne.referenceBancaire();
+            return ref.length() > 100 ? ref.substring(0, 100) : ref;
+        }
+        String contenu = ligne.date() + "|" + ligne.montant().setScale(2, RoundingMode.HALF_UP) + "|"
+                + ligne.libelle() + "|" + ligne.contrepartie();
+        int occurrence = occurrences.merge(contenu, 1, Integer::sum);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest((contenu + "|" + occurrence).getBytes(StandardCharsets.UTF_8));
+            return "RELEVE-" + HexFormat.of().formatHex(hash, 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ModePaiement modePaiement(ReleveBancaireParser.LigneReleve ligne) {
+        String texte = " " + normaliser(ligne.libelle()) + " ";
+        if (texte.contains(" CHQ ") || texte.contains(" CHEQUE ") || texte.contains(" CHEQUES ")) {
+            return ModePaiement.CHEQUE;
+        }
+        if (texte.contains(" CB ") || texte.contains(" CARTE ")) {
+            return ModePaiement.CB;
+        }
+        return ModePaiement.VIREMENT;
+    }
+
+    private static String notes(Rapprochement r) {
+        String libelle = concat(r.ligne.libelle(), r.ligne.contrepartie());
+        return "Import relevé bancaire (rapprochement : " + r.regle + ")" + (libelle.isEmpty() ? "" : " - " + libelle);
+    }
+
+    private static void nonRapprochee(ReleveImportResultDTO result, ReleveBancaireParser.LigneReleve ligne, String motif) {
+        result.setLignesNonRapprochees(result.getLignesNonRapprochees() + 1);
+        if (result.getNonRapprochees().size() < MAX_LIGNES_RAPPORT) {
+            result.getNonRapprochees().add("Ligne " + ligne.numero() + " (" + ligne.date() + ", " + ligne.montant()
+                    + " €, " + concat(ligne.libelle(), ligne.contrepartie()) + ") : " + motif);
+        }
+    }
+
+    private static String cleNumero(String numero) {
+        return normaliser(numero).replace(" ", "");
+    }
+
+    private static BigDecimal cleMontant(BigDecimal montant) {
+        return montant.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static String concat(String a, String b) {
+        if (a == null) {
+            return b == null ? "" : b;
+        }
+        return b == null ? a : a + " " + b;
+    }
+
+    /**
+     * Majuscules sans accents, mots séparés par une espace
+     */
+    private static String normaliser(String valeur) {
+        if (valeur == null) {
+            return "";
+        }
+        String sansAccents = Normalizer.normalize(valeur, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sansAccents.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]+", " ").trim();
+    }
+}
@@ -0,0 +1,149 @@
+package myavocat.legit.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gabarits des e-mails de relance, un par niveau, avec des variables {{...}} comme les modèles de documents.
+ *
+ * Les gabarits intégrés peuvent être remplacés par des fichiers relance-niveau-N.html placés dans
+ * relance.templates.dir ; la première ligne "Objet: ..." d'un fichier donne l'objet du message.
+ * Les gabarits sont découpés une seule fois au démarrage : le rendu d'un message n'est qu'une concaténation.
+ */
+@Component
+public class RelanceMailRenderer {
+
+    public static final int NIVEAU_MAX = 3;
+
+    private static final String PREFIXE_OBJET = "Objet:";
+
+    private static final String[] OBJETS = {
+            "Rappel : facture {{numeroFacture}} arrivée à échéance",
+            "Deuxième rappel : facture {{numeroFacture}} impayée",
+            "Dernier rappel avant mise en demeure : facture {{numeroFacture}}"
+    };
+
+    private static final String[] INTRODUCTIONS = {
+            "Sauf erreur de notre part, la facture ci-dessous arrivée à échéance le {{dateEcheance}} n'a pas encore été réglée.",
+            "Malgré notre premier rappel, la facture ci-dessous, échue depuis le {{dateEcheance}}, reste impayée.",
+            "En l'absence de règlement de la facture ci-dessous, échue depuis le {{dateEcheance}}, nous serons contraints "
+                    + "d'engager une procédure de recouvrement."
+    };
+
+    private static final String CORPS = """
+            <html>
+            <body style="font-family: Arial, sans-serif; font-size: 14px; line-height: 1.6;">
+                <p>Bonjour {{prenomClient}} {{nomClient}},</p>
+                <p>{{introduction}}</p>
+                <table style="border-collapse: collapse;">
+                    <tr><td style="padding-right: 20px;">Facture</td><td><strong>{{numeroFacture}}</strong></td></tr>
+                    <tr><td style="padding-right: 20px;">Intitulé</td><td>{{intitule}}</td></tr>
+                    <tr><td style="padding-right: 20px;">Reste à régler</td><td><strong>{{resteARegler}} €</strong></td></tr>
+                </table>
+                <p>Si vous avez réglé cette facture entre-temps, merci de ne pas tenir compte de ce message.</p>
+                <p>Cordialement,<br/>{{nomCabinet}}<br/>{{telephoneCabinet}}</p>
+            </body>
+            </html>
+            """;
+
+    private final Gabarit[] objets = new Gabarit[NIVEAU_MAX];
+    private final Gabarit[] corps = new Gabarit[NIVEAU_MAX];
+
+    public RelanceMailRenderer(@Value("${relance.templates.dir:}") String repertoire) {
+        for (int i = 0; i < NIVEAU_MAX; i++) {
+            String objet = OBJETS[i];
+            String contenu = CORPS.replace("{{introduction}}", INTRODUCTIONS[i]);
+
+            Path fichier = repertoire.isBlank() ? null : Path.of(repertoire, "relance-niveau-" + (i + 1) + ".html");
+            if (fichier != null && Files.isRegularFile(fichier)) {
+                try {
+                    contenu = Files.readString(fichier, StandardCharsets.UTF_8);
+                    if (contenu.startsWith(PREFIXE_OBJET)) {
+                        int finLigne = contenu.indexOf('\n');
+                        objet = (finLigne < 0 ? contenu : contenu.substring(0, finLigne)).substring(PREFIXE_OBJET.length()).trim();
+                        contenu = finLigne < 0 ? "" : contenu.substring(finLigne + 1);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Gabarit de relance illisible : " + fichier, e);
+                }
+            }
+
+            objets[i] = Gabarit.compiler(objet);
+            corps[i] = Gabarit.compiler(contenu);
+        }
+    }
+
+    /**
+     * Objet du message (texte brut)
+     */
+    public String objet(int niveau, Map<String, String> variables) {
+        return objets[niveau - 1].rendre(variables, false);
+    }
+
+    /**
+     * Corps HTML du message : les valeurs sont échappées
+     */
+    public String corps(int niveau, Map<String, String> variables) {
+        return corps[niveau - 1].rendre(variables, true);
+    }
+
+    /**
+     * Gabarit découpé en morceaux : texte fixe aux indices pairs, nom de variable aux indices impairs
+     */
+    private record Gabarit(String[] morceaux) {
+
+        static Gabarit compiler(String texte) {
+            List<String> morceaux = new ArrayList<>();
+            int position = 0;
+            while (true) {
+                int debut = texte.indexOf("{{", position);
+                int fin = debut < 0 ? -1 : texte.indexOf("}}", debut + 2);
+                if (fin < 0) {
+                    morceaux.add(texte.substring(position));
+                    break;
+                }
+                morceaux.add(texte.substring(position, debut));
+                morceaux.add(texte.substring(debut + 2, fin).trim());
+                position = fin + 2;
+            }
+            return new Gabarit(morceaux.toArray(new String[0]));
+        }
+
+        String rendre(Map<String, String> variables, boolean html) {
+            StringBuilder sb = new StringBuilder(morceaux.length * 32);
+            for (int i = 0; i < morceaux.length; i++) {
+                if (i % 2 == 0) {
+                    sb.append(morceaux[i]);
+                } else {
+                    String valeur = variables.getOrDefault(morceaux[i], "");
+                    sb.append(html ? echapperHtml(valeur) : valeur);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private static String echapperHtml(String texte) {
+        StringBuilder sb = new StringBuilder(texte.length());
+        for (int i = 0; i < texte.length(); i++) {
+            char c = texte.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&#39;");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,479 @@
+package myavocat.legit.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+import myavocat.legit.model.RelanceFacture;
+import myavocat.legit.repository.RelanceFactureRepository;
+import myavocat.legit.security.CurrentUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.text.NumberFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relances automatiques des factures impayées, tous cabinets confondus.
+ *
+ * - Sélection par lots (pagination par id) : chaque lecture est une requête courte, aucune transaction
+ *   n'est ouverte pendant l'envoi.
+ * - Idempotence : la relance "factureId:niveau" est réservée (clé unique) avant l'envoi. Une réservation
+ *   restée EN_COURS après un arrêt brutal n'est jamais renvoyée ; seules les relances en ECHEC sont retentées.
+ * - Envoi via le JavaMailSender de Spring Boot (spring.mail.*) : un appel send(...) par paquet de messages
+ *   réutilise une seule connexion SMTP, avec un débit limité par cabinet (relance.mail.par-cabinet-par-minute).
+ *
+ * Sans spring.mail.host, aucun JavaMailSender n'est configuré et les relances sont désactivées.
+ */
+@Service
+public class RelanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelanceService.class);
+
+    // Messages envoyés sur une même connexion SMTP
+    private static final int TAILLE_SESSION = 20;
+    private static final int TAILLE_ERREUR = 500;
+    private static final DateTimeFormatter FORMAT_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    // Niveau de relance selon l'ancienneté de l'échéance : 1 dès l'échéance, 2 à +15 jours, 3 à +30 jours
+    private static final String NIVEAU_SQL =
+            "CASE WHEN f.date_echeance < :limiteNiveau3 THEN 3 WHEN f.date_echeance < :limiteNiveau2 THEN 2 ELSE 1 END";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final RelanceFactureRepository relanceFactureRepository;
+    private final RelanceMailRenderer renderer;
+    private final ObjectProvider<JavaMailSender> mailSenderProvider;
+    private final CurrentUser currentUser;
+    private final String expediteur;
+    private final int parMinute;
+    private final int maxTentatives;
+    private final int tailleLot;
+
+    // Un seul passage à la fois (planifié ou déclenché par un cabinet), exécuté hors du thread appelant
+    private final ExecutorService coordinateur;
+    private final ExecutorService envois;
+    private final Map<UUID, Debit> debits = new ConcurrentHashMap<>();
+
+    public RelanceService(NamedParameterJdbcTemplate jdbcTemplate,
+                          RelanceFactureRepository relanceFactureRepository,
+                          RelanceMailRenderer renderer,
+                          ObjectProvider<JavaMailSender> mailSenderProvider,
+                          CurrentUser currentUser,
+                          @Value("${relance.mail.from:${spring.mail.username:}}") String expediteur,
+                          @Value("${relance.mail.par-cabinet-par-minute:30}") int parMinute,
+                          @Value("${relance.mail.threads:4}") int threads,
+                          @Value("${relance.max-tentatives:3}") int maxTentatives,
+                          @Value("${relance.lot:500}") int tailleLot) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.relanceFactureRepository = relanceFactureRepository;
+        this.renderer = renderer;
+        this.mailSenderProvider = mailSenderProvider;
+        this.currentUser = currentUser;
+        this.expediteur = expediteur;
+        this.parMinute = Math.max(1, parMinute);
+        this.maxTentatives = Math.max(1, maxTentatives);
+        this.tailleLot = Math.max(1, tailleLot);
+
+        this.coordinateur = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "relance-factures");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger compteur = new AtomicInteger();
+        this.envois = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "relance-smtp-" + compteur.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinateur.shutdownNow();
+        envois.shutdownNow();
+    }
+
+    /**
+     * ⏰ Passage planifié (par défaut : jours ouvrés à 8h)
+     */
+    @Scheduled(cron = "${relance.cron:0 0 8 * * MON-FRI}")
+    public void relancerAutomatiquement() {
+        if (mailSenderProvider.getIfAvailable() == null) {
+            logger.debug("Relances automatiques ignorées : envoi d'e-mails non configuré (spring.mail.host)");
+            return;
+        }
+        coordinateur.submit(() -> executerEnTache(null));
+    }
+
+    /**
+     * ✅ Relance des factures impayées du cabinet de l'utilisateur, en arrière-plan
+     */
+    public void relancerCabinet(UUID userId) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+        if (mailSenderProvider.getIfAvailable() == null) {
+            throw new RuntimeException("Envoi d'e-mails non configuré : impossible d'envoyer les relances.");
+        }
+        coordinateur.submit(() -> executerEnTache(officeId));
+    }
+
+    /**
+     * Nombre de relances par statut pour le cabinet de l'utilisateur
+     */
+    public Map<String, Long> getStatistiques(UUID userId) {
+        UUID officeId = currentUser.resolveOfficeId(userId);
+
+        Map<String, Long> statistiques = new LinkedHashMap<>();
+        statistiques.put(RelanceFacture.ENVOYEE, 0L);
+        statistiques.put(RelanceFacture.EN_COURS, 0L);
+        statistiques.put(RelanceFacture.ECHEC, 0L);
+        for (Object[] ligne : relanceFactureRepository.compterParStatut(officeId)) {
+            statistiques.put((String) ligne[0], ((Number) ligne[1]).longValue());
+        }
+        return statistiques;
+    }
+
+    private void executerEnTache(UUID officeId) {
+        try {
+            executer(officeId);
+        } catch (Exception e) {
+            logger.error("Échec du passage de relances : {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Un passage complet : sélection par lots, réservation, envoi. officeId null = tous les cabinets.
+     * Appelé sans transaction : chaque requête est validée aussitôt.
+     */
+    public Map<String, Long> executer(UUID officeId) {
+        JavaMailSender mailSender = mailSenderProvider.getIfAvailable();
+        if (mailSender == null) {
+            throw new RuntimeException("Envoi d'e-mails non configuré : impossible d'envoyer les relances.");
+        }
+
+        long debut = System.currentTimeMillis();
+        AtomicLong selectionnees = new AtomicLong();
+        AtomicLong dejaReservees = new AtomicLong();
+        AtomicLong envoyees = new AtomicLong();
+        AtomicLong echecs = new AtomicLong();
+
+        LocalDateTime maintenant = LocalDateTime.now();
+        UUID apres = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Candidat> lot = selectionner(officeId, apres, maintenant);
+            if (lot.isEmpty()) {
+                break;
+            }
+            apres = lot.get(lot.size() - 1).factureId();
+            selectionnees.addAndGet(lot.size());
+
+            List<Candidat> reserves = new ArrayList<>(lot.size());
+            for (Candidat candidat : lot) {
+                if (reserver(candidat, maintenant)) {
+                    reserves.add(candidat);
+                } else {
+                    dejaReservees.incrementAndGet();
+                }
+            }
+
+            // Un paquet d'envoi par cabinet ; on attend la fin du lot avant de lire le suivant (mémoire bornée)
+            Map<UUID, List<Candidat>> parCabinet = new LinkedHashMap<>();
+            for (Candidat candidat : reserves) {
+                parCabinet.computeIfAbsent(candidat.officeId(), k -> new ArrayList<>()).add(candidat);
+            }
+            List<Future<?>> taches = new ArrayList<>(parCabinet.size());
+            for (List<Candidat> candidats : parCabinet.values()) {
+                taches.add(envois.submit(() -> envoyerCabinet(mailSender, candidats, envoyees, echecs)));
+            }
+            for (Future<?> tache : taches) {
+                try {
+                    tache.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logger.error("Relances : envoi interrompu : {}", e.getCause().getMessage(), e.getCause());
+                }
+            }
+
+            if (lot.size() < tailleLot) {
+                break;
+            }
+        }
+
+        Map<String, Long> bilan = new LinkedHashMap<>();
+        bilan.put("selectionnees", selectionnees.get());
+        bilan.put("dejaReservees", dejaReservees.get());
+        bilan.put("envoyees", envoyees.get());
+        bilan.put("echecs", echecs.get());
+        logger.info("Relances{} : {} en {} ms", officeId != null ? " (cabinet " + officeId + ")" : "",
+                bilan, System.currentTimeMillis() - debut);
+        return bilan;
+    }
+
+    /**
+     * Factures échues et non soldées dont le niveau de relance courant n'a pas encore été envoyé
+     */
+    private List<Candidat> selectionner(UUID officeId, UUID apres, LocalDateTime maintenant) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT f.id, f.numero_facture, f.intitule, f.montant_reclame - f.montant_regle, f.date_echeance, " +
+                "c.nom, c.prenom, c.email, d.office_id, o.name, o.email, o.phone, " + NIVEAU_SQL + " AS niveau " +
+                "FROM factures f " +
+                "JOIN clients c ON c.id = f.client_id " +
+                "JOIN dossiers d ON d.id = f.dossier_id " +
+                "JOIN offices o ON o.id = d.office_id " +
+                "WHERE f.statut_paiement IN ('ATTENTE_REGLEMENT', 'PARTIELLEMENT_REGLEE') " +
+                "AND f.date_echeance < :maintenant " +
+                "AND f.montant_reclame > f.montant_regle " +
+                "AND o.actif = TRUE " +
+                "AND NOT EXISTS (SELECT 1 FROM relances_factures r WHERE r.facture_id = f.id " +
+                "AND r.niveau >= " + NIVEAU_SQL + " AND (r.statut <> 'ECHEC' OR r.tentatives >= :maxTentatives)) ");
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("maintenant", Timestamp.valueOf(maintenant))
+                .addValue("limiteNiveau2", Timestamp.valueOf(maintenant.minusDays(15)))
+                .addValue("limiteNiveau3", Timestamp.valueOf(maintenant.minusDays(30)))
+                .addValue("maxTentatives", maxTentatives)
+                .addValue("taille", tailleLot);
+        if (officeId != null) {
+            sql.append("AND d.office_id = :officeId ");
+            params.addValue("officeId", officeId);
+        }
+        if (apres != null) {
+            sql.append("AND f.id > :apres ");
+            params.addValue("apres", apres);
+        }
+        sql.append("ORDER BY f.id LIMIT :taille");
+
+        return jdbcTemplate.query(sql.toString(), params, (rs, i) -> new Candidat(
+                rs.getObject(1, UUID.class),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getBigDecimal(4),
+                rs.getTimestamp(5).toLocalDateTime(),
+                rs.getString(6),
+                rs.getString(7),
+                rs.getString(8),
+                rs.getObject(9, UUID.class),
+                rs.getString(10),
+                rs.getString(11),
+                rs.getString(12),
+                rs.getInt(13)
+        ));
+    }
+
+    /**
+     * Réserve la clé d'idempotence : insertion, ou reprise d'une relance en échec qui peut encore être retentée.
+     * Faux si la relance est déjà envoyée ou en cours ailleurs.
+     */
+    private boolean reserver(Candidat candidat, LocalDateTime maintenant) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("id", UUID.randomUUID())
+                .addValue("cle", RelanceFacture.cle(candidat.factureId(), candidat.niveau()))
+                .addValue("factureId", candidat.factureId())
+                .addValue("officeId", candidat.officeId())
+                .addValue("niveau", candidat.niveau())
+                .addValue("destinataire", candidat.emailClient())
+                .addValue("maintenant", Timestamp.valueOf(maintenant))
+                .addValue("maxTentatives", maxTentatives);
+        try {
+            jdbcTemplate.update("INSERT INTO relances_factures " +
+                    "(id, cle, facture_id, office_id, niveau, destinataire, statut, tentatives, created_at) " +
+                    "VALUES (:id, :cle, :factureId, :officeId, :niveau, :destinataire, 'EN_COURS', 1, :maintenant)", params);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return jdbcTemplate.update("UPDATE relances_factures " +
+                    "SET statut = 'EN_COURS', tentatives = tentatives + 1, destinataire = :destinataire, erreur = NULL " +
+                    "WHERE cle = :cle AND statut = 'ECHEC' AND tentatives < :maxTentatives", params) == 1;
+        }
+    }
+
+    /**
+     * Envoie les relances d'un cabinet par paquets : un paquet = une connexion SMTP, au rythme autorisé pour le cabinet
+     */
+    private void envoyerCabinet(JavaMailSender mailSender, List<Candidat> candidats, AtomicLong envoyees, AtomicLong echecs) {
+        Debit debit = debits.computeIfAbsent(candidats.get(0).officeId(), k -> new Debit(parMinute));
+        int taillePaquet = Math.min(TAILLE_SESSION, parMinute);
+
+        for (int i = 0; i < candidats.size(); i += taillePaquet) {
+            List<Candidat> paquet = candidats.subList(i, Math.min(i + taillePaquet, candidats.size()));
+            try {
+                debit.acquerir(paquet.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                marquerEchec(candidats.subList(i, candidats.size()), "Envoi interrompu");
+                echecs.addAndGet(candidats.size() - i);
+                return;
+            }
+
+            List<Candidat> aEnvoyer = new ArrayList<>(paquet.size());
+            List<MimeMessage> messages = new ArrayList<>(paquet.size());
+            for (Candidat candidat : paquet) {
+                try {
+                    messages.add(construireMessage(mailSender, candidat));
+                    aEnvoyer.add(candidat);
+                } catch (Exception e) {
+                    marquerEchec(List.of(candidat), "Message invalide : " + e.getMessage());
+                    echecs.incrementAndGet();
+                }
+            }
+            if (messages.isEmpty()) {
+                continue;
+            }
+
+            Map<Object, Exception> refuses = Map.of();
+            try {
+                mailSender.send(messages.toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                refuses = e.getFailedMessages();
+                if (refuses.isEmpty()) {
+                    refuses = toutRefuser(messages, e);
+                }
+            } catch (MailException e) {
+                refuses = toutRefuser(messages, e);
+            }
+
+            List<Candidat> succes = new ArrayList<>(aEnvoyer.size());
+            for (int j = 0; j < messages.size(); j++) {
+                Exception erreur = refuses.get(messages.get(j));
+                if (erreur == null) {
+                    succes.add(aEnvoyer.get(j));
+                } else {
+                    marquerEchec(List.of(aEnvoyer.get(j)), erreur.getMessage());
+                    echecs.incrementAndGet();
+                }
+            }
+            marquerEnvoyees(succes);
+            envoyees.addAndGet(succes.size());
+        }
+    }
+
+    private MimeMessage construireMessage(JavaMailSender mailSender, Candidat candidat) throws Exception {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("numeroFacture", candidat.numeroFacture());
+        variables.put("intitule", candidat.intitule());
+        variables.put("resteARegler", formaterMontant(candidat.resteARegler()));
+        variables.put("dateEcheance", candidat.dateEcheance().format(FORMAT_DATE));
+        variables.put("nomClient", candidat.nomClient());
+        variables.put("prenomClient", candidat.prenomClient());
+        variables.put("nomCabinet", candidat.nomCabinet());
+        variables.put("telephoneCabinet", candidat.telephoneCabinet() != null ? candidat.telephoneCabinet() : "");
+
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, false, "UTF-8");
+        String from = !expediteur.isBlank() ? expediteur : candidat.emailCabinet();
+        if (from == null || from.isBlank()) {
+            throw new RuntimeException("aucun expéditeur (relance.mail.from ou e-mail du cabinet)");
+        }
+        helper.setFrom(from, candidat.nomCabinet());
+        if (candidat.emailCabinet() != null && !candidat.emailCabinet().isBlank()) {
+            helper.setReplyTo(candidat.emailCabinet());
+        }
+        helper.setTo(candidat.emailClient());
+        helper.setSubject(renderer.objet(candidat.niveau(), variables));
+        helper.setText(renderer.corps(candidat.niveau(), variables), true);
+        message.setHeader("X-Relance-Cle", RelanceFacture.cle(candidat.factureId(), candidat.niveau()));
+        return message;
+    }
+
+    private void marquerEnvoyees(List<Candidat> candidats) {
+        if (candidats.isEmpty()) {
+            return;
+        }
+        Timestamp maintenant = Timestamp.valueOf(LocalDateTime.now());
+        MapSqlParameterSource[] params = candidats.stream()
+                .map(c -> new MapSqlParameterSource("cle", RelanceFacture.cle(c.factureId(), c.niveau()))
+                        .addValue("maintenant", maintenant))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate("UPDATE relances_factures SET statut = 'ENVOYEE', envoyee_at = :maintenant, erreur = NULL " +
+                "WHERE cle = :cle", params);
+    }
+
+    private void marquerEchec(List<Candidat> candidats, String erreur) {
+        String message = erreur == null ? "Erreur inconnue"
+                : erreur.length() > TAILLE_ERREUR ? erreur.substring(0, TAILLE_ERREUR) : erreur;
+        MapSqlParameterSource[] params = candidats.stream()
+                .map(c -> new MapSqlParameterSource("cle", RelanceFacture.cle(c.factureId(), c.niveau()))
+                        .addValue("erreur", message))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate("UPDATE relances_factures SET statut = 'ECHEC', erreur = :erreur WHERE cle = :cle", params);
+    }
+
+    private static Map<Object, Exception> toutRefuser(List<MimeMessage> messages, Exception erreur) {
+        Map<Object, Exception> refuses = new HashMap<>();
+        for (MimeMessage message : messages) {
+            refuses.put(message, erreur);
+        }
+        return refuses;
+    }
+
+    private static String formaterMontant(BigDecimal montant) {
+        NumberFormat format = NumberFormat.getNumberInstance(Locale.FRANCE);
+        format.setMinimumFractionDigits(2);
+        format.setMaximumFractionDigits(2);
+        return format.format(montant.setScale(2, RoundingMode.HALF_UP));
+    }
+
+    private record Candidat(UUID factureId, String numeroFacture, String intitule, BigDecimal resteARegler,
+                            LocalDateTime dateEcheance, String nomClient, String prenomClient, String emailClient,
+                            UUID officeId, String nomCabinet, String emailCabinet, String telephoneCabinet,
+                            int niveau) {
+    }
+
+    /**
+     * Seau à jetons : parMinute messages par minute et par cabinet, rafale limitée à la même valeur
+     */
+    private static final class Debit {
+
+        private final int capacite;
+        private final double jetonsParNano;
+        private double jetons;
+        private long derniereRecharge = System.nanoTime();
+
+        Debit(int parMinute) {
+            this.capacite = parMinute;
+            this.jetonsParNano = parMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.jetons = parMinute;
+        }
+
+        synchronized void acquerir(int nombre) throws InterruptedException {
+            while (true) {
+                long maintenant = System.nanoTime();
+                jetons = Math.min(capacite, jetons + (maintenant - derniereRecharge) * jetonsParNano);
+                derniereRecharge = maintenant;
+                if (jetons >= nombre) {
+                    jetons -= nombre;
+                    return;
+                }
+                long attente = (long) Math.ceil((nombre - jetons) / jetonsParNano);
+                TimeUnit.NANOSECONDS.timedWait(this, attente);
+            }
+        }
+    }
+}
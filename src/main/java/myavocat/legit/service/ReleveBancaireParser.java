@@ -0,0 +1,418 @@
+package myavocat.legit.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Lecture en flux des relevés bancaires : CSV, CAMT.053 (ISO 20022) et OFX (SGML v1 ou XML v2).
+ * Chaque opération est transmise dès qu'elle est lue : la mémoire ne dépend pas de la taille du relevé.
+ */
+final class ReleveBancaireParser {
+
+    static final String FORMAT_CSV = "csv";
+    static final String FORMAT_CAMT053 = "camt053";
+    static final String FORMAT_OFX = "ofx";
+
+    private static final List<DateTimeFormatter> FORMATS_DATE = List.of(
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"),
+            DateTimeFormatter.ofPattern("dd/MM/yy"),
+            DateTimeFormatter.ofPattern("dd-MM-yyyy"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.BASIC_ISO_DATE
+    );
+
+    // En-têtes CSV reconnus (normalisés : minuscules, sans accents ni séparateurs)
+    private static final Map<String, String> COLONNES_CSV = Map.ofEntries(
+            Map.entry("date", "date"), Map.entry("dateoperation", "date"), Map.entry("datecomptable", "date"),
+            Map.entry("datevaleur", "date"), Map.entry("bookingdate", "date"),
+            Map.entry("montant", "montant"), Map.entry("amount", "montant"),
+            Map.entry("credit", "credit"), Map.entry("debit", "debit"),
+            Map.entry("libelle", "libelle"), Map.entry("label", "libelle"), Map.entry("description", "libelle"),
+            Map.entry("motif", "libelle"), Map.entry("communication", "libelle"),
+            Map.entry("reference", "reference"), Map.entry("id", "reference"), Map.entry("transactionid", "reference"),
+            Map.entry("contrepartie", "contrepartie"), Map.entry("emetteur", "contrepartie"),
+            Map.entry("nom", "contrepartie"), Map.entry("tiers", "contrepartie")
+    );
+
+    /**
+     * Opération lue sur le relevé (montant signé : positif pour un crédit)
+     */
+    record LigneReleve(long numero, LocalDate date, BigDecimal montant,
+                       String referenceBancaire, String libelle, String contrepartie) {
+    }
+
+    interface Destination {
+        void ligne(LigneReleve ligne);
+
+        void erreur(long numero, String message);
+    }
+
+    private ReleveBancaireParser() {
+    }
+
+    static void lire(InputStream input, String format, Destination destination) throws IOException {
+        String f = format == null ? FORMAT_CSV : format.toLowerCase(Locale.ROOT).replace(".", "").replace("-", "");
+        switch (f) {
+            case FORMAT_CSV -> lireCsv(input, destination);
+            case FORMAT_CAMT053, "camt" -> lireCamt053(input, destination);
+            case FORMAT_OFX -> lireOfx(input, destination);
+            default -> throw new RuntimeException("Format de relevé non pris en charge : " + format);
+        }
+    }
+
+    // 🔥 CSV
+
+    private static void lireCsv(InputStream input, Destination destination) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            Map<String, Integer> colonnes = null;
+            char separateur = ',';
+            String line;
+            long numero = 0;
+
+            while ((line = reader.readLine()) != null) {
+                numero++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (colonnes == null) {
+                    String entete = line.startsWith("\uFEFF") ? line.substring(1) : line;
+                    // Les montants peuvent contenir des virgules : le séparateur est déterminé une fois sur l'en-tête
+                    separateur = entete.indexOf(';') >= 0 ? ';' : entete.indexOf('\t') >= 0 ? '\t' : ',';
+                    colonnes = colonnesCsv(DossierImportService.parseCsvLine(entete, separateur));
+                    continue;
+                }
+
+                try {
+                    List<String> valeurs = DossierImportService.parseCsvLine(line, separateur);
+                    destination.ligne(ligneCsv(numero, colonnes, valeurs));
+                } catch (RuntimeException e) {
+                    destination.erreur(numero, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static Map<String, Integer> colonnesCsv(List<String> entetes) {
+        Map<String, Integer> colonnes = new HashMap<>();
+        for (int i = 0; i < entetes.size(); i++) {
+            String champ = COLONNES_CSV.get(normaliserEntete(entetes.get(i)));
+            if (champ != null) {
+                colonnes.putIfAbsent(champ, i);
+            }
+        }
+        if (!colonnes.containsKey("date") || !(colonnes.containsKey("montant") || colonnes.containsKey("credit"))) {
+            throw new RuntimeException("En-tête CSV invalide : colonnes date et montant (ou credit) obligatoires");
+        }
+        return colonnes;
+    }
+
+    private static LigneReleve ligneCsv(long numero, Map<String, Integer> colonnes, List<String> valeurs) {
+        String date = valeur(colonnes, valeurs, "date");
+        if (date == null) {
+            throw new IllegalArgumentException("date manquante");
+        }
+
+        BigDecimal montant;
+        String montantBrut = valeur(colonnes, valeurs, "montant");
+        if (montantBrut != null) {
+            montant = parseMontant(montantBrut);
+        } else {
+            String credit = valeur(colonnes, valeurs, "credit");
+            String debit = valeur(colonnes, valeurs, "debit");
+            if (credit == null && debit == null) {
+                throw new IllegalArgumentException("montant manquant");
+            }
+            montant = credit != null ? parseMontant(credit).abs() : parseMontant(debit).abs().negate();
+        }
+
+        return new LigneReleve(numero, parseDate(date), montant,
+                valeur(colonnes, valeurs, "reference"),
+                valeur(colonnes, valeurs, "libelle"),
+                valeur(colonnes, valeurs, "contrepartie"));
+    }
+
+    private static String valeur(Map<String, Integer> colonnes, List<String> valeurs, String champ) {
+        Integer index = colonnes.get(champ);
+        if (index == null || index >= valeurs.size()) {
+            return null;
+        }
+        String v = valeurs.get(index);
+        return (v == null || v.isBlank()) ? null : v.trim();
+    }
+
+    // 🔥 CAMT.053
+
+    private static void lireCamt053(InputStream input, Destination destination) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Relevé reçu de l'extérieur : ni DTD ni entités externes
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        XMLStreamReader xml = null;
+        try {
+            xml = factory.createXMLStreamReader(input);
+            Deque<String> pile = new ArrayDeque<>();
+            StringBuilder texte = new StringBuilder();
+            EntreeCamt entree = null;
+            long numero = 0;
+
+            while (xml.hasNext()) {
+                switch (xml.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        String nom = xml.getLocalName();
+                        if ("Ntry".equals(nom)) {
+                            entree = new EntreeCamt();
+                            numero++;
+                        }
+                        pile.push(nom);
+                        texte.setLength(0);
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> texte.append(xml.getText());
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        String nom = pile.pop();
+                        if (entree == null) {
+                            continue;
+                        }
+                        if ("Ntry".equals(nom)) {
+                            try {
+                                destination.ligne(entree.toLigne(numero));
+                            } catch (RuntimeException e) {
+                                destination.erreur(numero, e.getMessage());
+                            }
+                            entree = null;
+                        } else {
+                            entree.champ(nom, pile.peek(), pile, texte.toString().trim());
+                        }
+                        texte.setLength(0);
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Relevé CAMT.053 illisible : " + e.getMessage());
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignored) {
+                    // le flux est fermé par l'appelant
+                }
+            }
+        }
+    }
+
+    private static final class EntreeCamt {
+        private String montant;
+        private String sens;
+        private String date;
+        private String reference;
+        private String contrepartie;
+        private final StringBuilder libelle = new StringBuilder();
+
+        void champ(String nom, String parent, Deque<String> pile, String valeur) {
+            if (valeur.isEmpty()) {
+                return;
+            }
+            switch (nom) {
+                case "Amt" -> {
+                    if ("Ntry".equals(parent)) {
+                        montant = valeur;
+                    }
+                }
+                case "CdtDbtInd" -> {
+                    if ("Ntry".equals(parent)) {
+                        sens = valeur;
+                    }
+                }
+                case "Dt", "DtTm" -> {
+                    if ("BookgDt".equals(parent) || ("ValDt".equals(parent) && date == null)) {
+                        date = valeur.length() > 10 ? valeur.substring(0, 10) : valeur;
+                    }
+                }
+                case "AcctSvcrRef" -> {
+                    if ("Ntry".equals(parent) || reference == null) {
+                        reference = valeur;
+                    }
+                }
+                case "EndToEndId" -> {
+                    if (reference == null && !"NOTPROVIDED".equalsIgnoreCase(valeur)) {
+                        reference = valeur;
+                    }
+                }
+                case "Nm" -> {
+                    // Débiteur de l'opération (le client qui paie)
+                    if (contrepartie == null && pile.contains("Dbtr")) {
+                        contrepartie = valeur;
+                    }
+                }
+                case "Ustrd", "AddtlNtryInf", "AddtlTxInf" -> ajouterLibelle(valeur);
+                case "Ref" -> {
+                    if ("CdtrRefInf".equals(parent)) {
+                        ajouterLibelle(valeur);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void ajouterLibelle(String valeur) {
+            if (!libelle.isEmpty()) {
+                libelle.append(' ');
+            }
+            libelle.append(valeur);
+        }
+
+        LigneReleve toLigne(long numero) {
+            if (montant == null || date == null) {
+                throw new IllegalArgumentException("opération sans montant ou sans date");
+            }
+            BigDecimal valeur = parseMontant(montant).abs();
+            if ("DBIT".equalsIgnoreCase(sens)) {
+                valeur = valeur.negate();
+            }
+            return new LigneReleve(numero, parseDate(date), valeur, reference,
+                    libelle.isEmpty() ? null : libelle.toString(), contrepartie);
+        }
+    }
+
+    // 🔥 OFX
+
+    /**
+     * Lecture balise par balise : couvre l'OFX 1.x (SGML, balises non fermées) comme l'OFX 2.x (XML)
+     */
+    private static void lireOfx(InputStream input, Destination destination) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            Map<String, String> transaction = null;
+            long numero = 0;
+            StringBuilder balise = new StringBuilder();
+            StringBuilder texte = new StringBuilder();
+            String baliseCourante = null;
+            int c;
+
+            while ((c = reader.read()) != -1) {
+                if (c != '<') {
+                    texte.append((char) c);
+                    continue;
+                }
+
+                // Valeur de la balise précédente (OFX 1.x : elle s'arrête à la balise suivante)
+                if (transaction != null && baliseCourante != null) {
+                    String valeur = decoderEntites(texte.toString().trim());
+                    if (!valeur.isEmpty()) {
+                        transaction.putIfAbsent(baliseCourante, valeur);
+                    }
+                }
+                texte.setLength(0);
+
+                balise.setLength(0);
+                while ((c = reader.read()) != -1 && c != '>') {
+                    balise.append((char) c);
+                }
+                String nom = balise.toString().trim().toUpperCase(Locale.ROOT);
+                baliseCourante = null;
+
+                if (nom.equals("STMTTRN")) {
+                    transaction = new HashMap<>();
+                    numero++;
+                } else if (nom.equals("/STMTTRN")) {
+                    if (transaction != null) {
+                        try {
+                            destination.ligne(ligneOfx(numero, transaction));
+                        } catch (RuntimeException e) {
+                            destination.erreur(numero, e.getMessage());
+                        }
+                    }
+                    transaction = null;
+                } else if (!nom.startsWith("/") && !nom.startsWith("?") && !nom.startsWith("!")) {
+                    baliseCourante = nom;
+                }
+            }
+        }
+    }
+
+    private static LigneReleve ligneOfx(long numero, Map<String, String> transaction) {
+        String montant = transaction.get("TRNAMT");
+        String date = transaction.get("DTPOSTED");
+        if (montant == null || date == null || date.length() < 8) {
+            throw new IllegalArgumentException("opération sans montant ou sans date");
+        }
+        String libelle = transaction.get("MEMO");
+        String nom = transaction.get("NAME");
+        String cheque = transaction.get("CHECKNUM");
+        if (cheque != null) {
+            libelle = libelle == null ? cheque : libelle + " " + cheque;
+        }
+        return new LigneReleve(numero, parseDate(date.substring(0, 8)), parseMontant(montant),
+                transaction.get("FITID"), libelle, nom);
+    }
+
+    private static String decoderEntites(String valeur) {
+        if (valeur.indexOf('&') < 0) {
+            return valeur;
+        }
+        return valeur.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&amp;", "&");
+    }
+
+    // 🔥 CONVERSIONS
+
+    /**
+     * Montant au format français ou anglais : "1 234,56", "1.234,56", "1234.56", "-12,00 €"
+     */
+    static BigDecimal parseMontant(String brut) {
+        String v = brut.replace("\u00A0", "").replace("\u202F", "").replace(" ", "")
+                .replace("€", "").replace("EUR", "").replace("+", "");
+        int virgule = v.lastIndexOf(',');
+        int point = v.lastIndexOf('.');
+        if (virgule >= 0 && point >= 0) {
+            // Le dernier séparateur est le séparateur décimal
+            v = virgule > point ? v.replace(".", "").replace(',', '.') : v.replace(",", "");
+        } else if (virgule >= 0) {
+            v = v.replace(',', '.');
+        }
+        try {
+            return new BigDecimal(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("montant invalide : " + brut);
+        }
+    }
+
+    static LocalDate parseDate(String brut) {
+        String v = brut.trim();
+        for (DateTimeFormatter format : FORMATS_DATE) {
+            try {
+                return LocalDate.parse(v, format);
+            } catch (DateTimeParseException ignored) {
+                // format suivant
+            }
+        }
+        throw new IllegalArgumentException("date invalide : " + brut);
+    }
+
+    private static String normaliserEntete(String entete) {
+        String sansAccents = Normalizer.normalize(entete, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sansAccents.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
+    }
+}
@@ -0,0 +1,167 @@
+package myavocat.legit.service;
+
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Réception d'un fichier en un seul passage, sans le charger en mémoire :
+ * le début du flux sert à reconnaître le type réel (octets magiques), puis chaque bloc lu est
+ * à la fois ajouté à l'empreinte SHA-256, compté (taille maximale) et écrit dans un fichier temporaire
+ * du répertoire de stockage (même système de fichiers : le déplacement final par BlobStore est atomique).
+ */
+@Component
+public class UploadPipeline {
+
+    private static final int TAILLE_BLOC = 64 * 1024;
+    // %PDF- peut être précédé de quelques octets (norme : dans le premier Ko)
+    private static final int TAILLE_ENTETE = 1024;
+
+    private static final byte[] MAGIC_PDF = {'%', 'P', 'D', 'F', '-'};
+    private static final byte[] MAGIC_PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] MAGIC_JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] MAGIC_ZIP = {'P', 'K', 0x03, 0x04};
+    private static final byte[] MAGIC_OLE = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+
+    private static final Map<String, String> TYPES_MIME = Map.of(
+            "pdf", "application/pdf",
+            "png", "image/png",
+            "jpg", "image/jpeg",
+            "jpeg", "image/jpeg",
+            "docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "doc", "application/msword",
+            "txt", "text/plain"
+    );
+
+    private final BlobStore blobStore;
+    private final long tailleMax;
+
+    public UploadPipeline(BlobStore blobStore,
+                          @Value("${documents.upload.max-bytes:262144000}") long tailleMax) {
+        this.blobStore = blobStore;
+        this.tailleMax = tailleMax;
+    }
+
+    /**
+     * Fichier reçu et vérifié, en attente de publication (close() supprime le temporaire s'il n'a pas été déplacé)
+     */
+    public record FichierRecu(Path fichierTemporaire, String sha256, long taille, String typeMime) implements AutoCloseable {
+        @Override
+        public void close() throws IOException {
+            Files.deleteIfExists(fichierTemporaire);
+        }
+    }
+
+    public FichierRecu recevoir(InputStream source, String nomFichier, Collection<String> extensionsAutorisees) throws IOException {
+        return recevoir(Channels.newChannel(source), nomFichier, extensionsAutorisees);
+    }
+
+    /**
+     * Lit la source jusqu'au bout. Lève une RuntimeException si l'extension n'est pas autorisée, si le contenu
+     * ne correspond pas à l'extension ou si la taille maximale est dépassée (le temporaire est alors supprimé).
+     */
+    public FichierRecu recevoir(ReadableByteChannel source, String nomFichier, Collection<String> extensionsAutorisees) throws IOException {
+        String extension = FilenameUtils.getExtension(nomFichier == null ? "" : nomFichier).toLowerCase(Locale.ROOT);
+        if (!extensionsAutorisees.contains(extension) || !TYPES_MIME.containsKey(extension)) {
+            throw new RuntimeException("Type de fichier non autorisé : " + (extension.isEmpty() ? "sans extension" : extension));
+        }
+
+        MessageDigest digest = sha256();
+        ByteBuffer bloc = ByteBuffer.allocateDirect(TAILLE_BLOC);
+
+        // En-tête : lu avant toute écriture pour refuser au plus tôt un contenu qui ne correspond pas
+        boolean fin = false;
+        while (bloc.position() < TAILLE_ENTETE && !fin) {
+            fin = source.read(bloc) < 0;
+        }
+        bloc.flip();
+        if (!bloc.hasRemaining()) {
+            throw new RuntimeException("Fichier vide");
+        }
+        if (!correspond(extension, bloc)) {
+            throw new RuntimeException("Le contenu du fichier ne correspond pas à son extension (" + extension + ")");
+        }
+
+        Path temporaire = blobStore.nouveauFichierTemporaire();
+        long taille = 0;
+        try (FileChannel sortie = FileChannel.open(temporaire, StandardOpenOption.WRITE)) {
+            while (true) {
+                if (bloc.hasRemaining()) {
+                    taille += bloc.remaining();
+                    if (taille > tailleMax) {
+                        throw new RuntimeException("Fichier trop volumineux (maximum " + tailleMax / (1024 * 1024) + " Mo)");
+                    }
+                    digest.update(bloc.duplicate());
+                    while (bloc.hasRemaining()) {
+                        sortie.write(bloc);
+                    }
+                }
+                if (fin) {
+                    break;
+                }
+                bloc.clear();
+                fin = source.read(bloc) < 0;
+                bloc.flip();
+            }
+            sortie.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaire);
+            throw e;
+        }
+
+        return new FichierRecu(temporaire, HexFormat.of().formatHex(digest.digest()), taille, TYPES_MIME.get(extension));
+    }
+
+    private static boolean correspond(String extension, ByteBuffer entete) {
+        byte[] octets = new byte[entete.remaining()];
+        entete.duplicate().get(octets);
+        return switch (extension) {
+            case "pdf" -> indexOf(octets, MAGIC_PDF) >= 0;
+            case "png" -> commencePar(octets, MAGIC_PNG);
+            case "jpg", "jpeg" -> commencePar(octets, MAGIC_JPEG);
+            case "docx" -> commencePar(octets, MAGIC_ZIP);
+            case "doc" -> commencePar(octets, MAGIC_OLE);
+            // Texte : aucun octet nul, ni signature d'un format binaire connu
+            case "txt" -> indexOf(octets, new byte[]{0}) < 0 && !commencePar(octets, MAGIC_PDF);
+            default -> false;
+        };
+    }
+
+    private static boolean commencePar(byte[] octets, byte[] magic) {
+        return octets.length >= magic.length && Arrays.equals(octets, 0, magic.length, magic, 0, magic.length);
+    }
+
+    private static int indexOf(byte[] octets, byte[] motif) {
+        for (int i = 0; i + motif.length <= octets.length; i++) {
+            if (Arrays.equals(octets, i, i + motif.length, motif, 0, motif.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package myavocat.legit.util;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
@@ -9,9 +10,13 @@ import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class JwtUtil {
@@ -25,13 +30,25 @@ public class JwtUtil {
     // Expiration courte pour les tokens temporaires (5 minutes)
     private static final long TEMP_TOKEN_EXPIRATION = 300; // En secondes
 
+    // Nombre maximal de tokens vérifiés gardés en mémoire
+    private static final int MAX_CACHED_TOKENS = 10_000;
+
     private SecretKey key;
 
+    // Parser construit une seule fois (thread-safe), réutilisé pour chaque vérification
+    private JwtParser parser;
+
+    // Claims déjà vérifiés, indexés par le hash SHA-256 du token ; valables jusqu'à l'expiration du token
+    private final Map<String, Claims> verifiedClaims = new ConcurrentHashMap<>();
+
     // Initialisation après injection des valeurs
     @PostConstruct
     public void init() {
         byte[] decodedKey = Base64.getDecoder().decode(secretKey);
         this.key = Keys.hmacShaKeyFor(decodedKey);
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
     }
 
     public String generateToken(String username) {
@@ -55,6 +72,19 @@ public class JwtUtil {
                 .compact();
     }
 
+    // Génère un token utilisateur incluant son identifiant (évite une lecture en base à chaque requête)
+    public String generateToken(String username, UUID userId, UUID officeId, String officeName) {
+        return Jwts.builder()
+                .setSubject(username)
+                .claim("userId", userId.toString())
+                .claim("officeId", officeId.toString())
+                .claim("officeName", officeName)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + (expirationTime * 1000))) // Convertir en ms
+                .signWith(key)
+                .compact();
+    }
+
     // Génère un token temporaire pour l'authentification du cabinet
     public String generateTempOfficeToken(String officeName, String officeId) {
         return Jwts.builder()
@@ -68,8 +98,8 @@ public class JwtUtil {
     }
 
     public boolean validateToken(String token, String username) {
-        String tokenUsername = extractUsername(token);
-        return (username.equals(tokenUsername) && !isTokenExpired(token));
+        Claims claims = verifyToken(token);
+        return username.equals(claims.getSubject()) && claims.getExpiration().after(new Date());
     }
 
     // Valide un token temporaire de cabinet
@@ -81,7 +111,7 @@ public class JwtUtil {
 
             return "temp".equals(tokenType) &&
                     officeName.equals(tokenOfficeName) &&
-                    !isTokenExpired(token);
+                    claims.getExpiration().after(new Date());
         } catch (Exception e) {
             return false;
         }
@@ -96,6 +126,16 @@ public class JwtUtil {
         return officeIdStr != null ? UUID.fromString(officeIdStr) : null;
     }
 
+    public UUID extractUserId(Claims claims) {
+        String userIdStr = (String) claims.get("userId");
+        return userIdStr != null ? UUID.fromString(userIdStr) : null;
+    }
+
+    public UUID extractOfficeId(Claims claims) {
+        String officeIdStr = (String) claims.get("officeId");
+        return officeIdStr != null ? UUID.fromString(officeIdStr) : null;
+    }
+
     public String extractOfficeName(String token) {
         return (String) extractClaims(token).get("officeName");
     }
@@ -105,10 +145,53 @@ public class JwtUtil {
     }
 
     public Claims extractClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    /**
+     * Vérifie le token (signature + expiration) une seule fois et met les claims en cache.
+     * Les appels suivants avec le même token ne refont pas la vérification HMAC tant qu'il n'a pas expiré.
+     * Lève une JwtException si le token est invalide ou expiré.
+     */
+    public Claims verifyToken(String token) {
+        String cacheKey = hash(token);
+        Claims cached = verifiedClaims.get(cacheKey);
+        long now = System.currentTimeMillis();
+
+        if (cached != null) {
+            if (cached.getExpiration() != null && cached.getExpiration().getTime() > now) {
+                return cached;
+            }
+            verifiedClaims.remove(cacheKey);
+        }
+
+        // parseClaimsJws rejette déjà les tokens expirés
+        Claims claims = extractClaims(token);
+        if (claims.getExpiration() != null) {
+            if (verifiedClaims.size() >= MAX_CACHED_TOKENS) {
+                evictExpired(now);
+            }
+            if (verifiedClaims.size() < MAX_CACHED_TOKENS) {
+                verifiedClaims.put(cacheKey, claims);
+            }
+        }
+        return claims;
+    }
+
+    private void evictExpired(long now) {
+        verifiedClaims.values().removeIf(c -> c.getExpiration().getTime() <= now);
+        // Toujours plein : on repart de zéro plutôt que de grossir sans limite
+        if (verifiedClaims.size() >= MAX_CACHED_TOKENS) {
+            verifiedClaims.clear();
+        }
+    }
+
+    private String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package myavocat.legit.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Écriture en flux d'un classeur XLSX à une feuille : les lignes sont écrites dans l'archive au fur et à mesure,
+ * sans modèle en mémoire (chaînes en ligne, pas de table de chaînes partagées).
+ *
+ * Styles disponibles : dates (format court) et en-tête en gras.
+ */
+public class XlsxStreamWriter implements Closeable {
+
+    private static final LocalDate EPOQUE_EXCEL = LocalDate.of(1899, 12, 30);
+
+    private static final String CONTENT_TYPES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+            "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+            "<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+            "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>" +
+            "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>" +
+            "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>" +
+            "</Types>";
+
+    private static final String RELS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+            "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>" +
+            "</Relationships>";
+
+    private static final String WORKBOOK_RELS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+            "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>" +
+            "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>" +
+            "</Relationships>";
+
+    // cellXfs : 0 = standard, 1 = date (numFmt 14), 2 = gras
+    private static final String STYLES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" +
+            "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font><font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>" +
+            "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>" +
+            "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>" +
+            "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>" +
+            "<cellXfs count=\"3\">" +
+            "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>" +
+            "<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>" +
+            "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/>" +
+            "</cellXfs>" +
+            "</styleSheet>";
+
+    private final ZipOutputStream zip;
+    private final Writer writer;
+
+    public XlsxStreamWriter(OutputStream out, String nomFeuille) throws IOException {
+        this.zip = new ZipOutputStream(out);
+        this.writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+
+        ecrirePartie("[Content_Types].xml", CONTENT_TYPES);
+        ecrirePartie("_rels/.rels", RELS);
+        ecrirePartie("xl/workbook.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+                "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" " +
+                "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">" +
+                "<sheets><sheet name=\"" + echapper(nomFeuille) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+        ecrirePartie("xl/_rels/workbook.xml.rels", WORKBOOK_RELS);
+        ecrirePartie("xl/styles.xml", STYLES);
+
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+                "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+    }
+
+    /**
+     * Ligne d'en-tête (gras)
+     */
+    public void entete(String... titres) throws IOException {
+        writer.write("<row>");
+        for (String titre : titres) {
+            ecrireTexte(titre, 2);
+        }
+        writer.write("</row>");
+    }
+
+    /**
+     * Ligne de données : nombres, dates (LocalDate) et texte ; null laisse la cellule vide
+     */
+    public void ligne(Object... valeurs) throws IOException {
+        writer.write("<row>");
+        for (Object valeur : valeurs) {
+            if (valeur == null) {
+                writer.write("<c/>");
+            } else if (valeur instanceof BigDecimal nombre) {
+                writer.write("<c><v>" + nombre.toPlainString() + "</v></c>");
+            } else if (valeur instanceof Number nombre) {
+                writer.write("<c><v>" + nombre + "</v></c>");
+            } else if (valeur instanceof LocalDate date) {
+                writer.write("<c s=\"1\"><v>" + ChronoUnit.DAYS.between(EPOQUE_EXCEL, date) + "</v></c>");
+            } else {
+                ecrireTexte(valeur.toString(), 0);
+            }
+        }
+        writer.write("</row>");
+    }
+
+    /**
+     * Termine le classeur sans fermer le flux sous-jacent
+     */
+    @Override
+    public void close() throws IOException {
+        writer.write("</sheetData></worksheet>");
+        writer.flush();
+        zip.closeEntry();
+        zip.finish();
+    }
+
+    private void ecrireTexte(String texte, int style) throws IOException {
+        writer.write("<c t=\"inlineStr\"" + (style != 0 ? " s=\"" + style + "\"" : "") + "><is><t xml:space=\"preserve\">");
+        writer.write(echapper(texte));
+        writer.write("</t></is></c>");
+    }
+
+    private void ecrirePartie(String nom, String contenu) throws IOException {
+        zip.putNextEntry(new ZipEntry(nom));
+        writer.write(contenu);
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    private static String echapper(String texte) {
+        StringBuilder sb = new StringBuilder(texte.length());
+        for (int i = 0; i < texte.length(); i++) {
+            char c = texte.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                default -> {
+                    // Caractères de contrôle interdits en XML 1.0
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
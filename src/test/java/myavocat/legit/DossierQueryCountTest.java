@@ -0,0 +1,167 @@
+package myavocat.legit;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import myavocat.legit.dto.DossierDTO;
+import myavocat.legit.model.*;
+import myavocat.legit.repository.*;
+import myavocat.legit.service.DossierService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Vérifie que la liste des dossiers et les parties prenantes se chargent
+ * en un nombre constant de requêtes, quel que soit le nombre de dossiers.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+@ActiveProfiles("test")
+class DossierQueryCountTest {
+
+    @Autowired
+    private OfficeRepository officeRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private AdversaireRepository adversaireRepository;
+
+    @Autowired
+    private DossierRepository dossierRepository;
+
+    @Autowired
+    private DossierService dossierService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Office office;
+    private User avocat;
+    private int sequence;
+
+    @BeforeEach
+    void setup() {
+        office = new Office();
+        office.setName("Cabinet Test");
+        office.setPassword("hashed-password");
+        officeRepository.save(office);
+
+        Role roleAvocat = new Role();
+        roleAvocat.setName("AVOCAT_QC");
+        roleAvocat.setDescription("Rôle avocat");
+        roleRepository.save(roleAvocat);
+
+        avocat = new User();
+        avocat.setEmail("avocat-qc@test.com");
+        avocat.setNom("Dupont");
+        avocat.setPrenom("Jean");
+        avocat.setPassword("hashed-password");
+        avocat.setRole(roleAvocat);
+        avocat.setOffice(office);
+        userRepository.save(avocat);
+    }
+
+    @Test
+    void getAllDossierDTOs_nombreDeRequetesIndependantDuNombreDeDossiers() {
+        creerDossiers(3);
+        long requetesPetitePage = compterRequetes(() -> {
+            List<DossierDTO> dossiers = dossierService.getAllDossierDTOs(avocat.getId());
+            assertThat(dossiers).hasSize(3);
+            assertThat(dossiers).allSatisfy(dto -> {
+                assertThat(dto.getClients()).hasSize(2);
+                assertThat(dto.getAdversaires()).hasSize(2);
+                assertThat(dto.getAvocat().getNom()).isEqualTo("Dupont");
+            });
+        });
+
+        creerDossiers(30);
+        long requetesGrandePage = compterRequetes(() ->
+                assertThat(dossierService.getAllDossierDTOs(avocat.getId())).hasSize(33));
+
+        assertThat(requetesGrandePage).isEqualTo(requetesPetitePage);
+        // Cabinet de l'utilisateur + dossiers + clients + adversaires
+        assertThat(requetesGrandePage).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    void getPartiesPrenantes_nombreDeRequetesConstant() {
+        Dossier dossier = creerDossiers(1).get(0);
+
+        long requetes = compterRequetes(() -> {
+            Map<String, Object> parties = dossierService.getPartiesPrenantes(avocat.getId(), dossier.getId());
+            assertThat(parties.get("totalClients")).isEqualTo(2);
+            assertThat(parties.get("totalAdversaires")).isEqualTo(2);
+        });
+
+        assertThat(requetes).isLessThanOrEqualTo(4);
+    }
+
+    private long compterRequetes(Runnable action) {
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private List<Dossier> creerDossiers(int nombre) {
+        List<Dossier> dossiers = new ArrayList<>();
+        for (int i = 0; i < nombre; i++) {
+            int n = sequence++;
+
+            Dossier dossier = new Dossier();
+            dossier.setReference("QC-" + n);
+            dossier.setNomDossier("Dossier " + n);
+            dossier.setTypeAffaire("Civil");
+            dossier.setStatut("En cours");
+            dossier.setQualiteProcedurale("Demandeur");
+            dossier.setAvocat(avocat);
+            dossier.setOffice(office);
+
+            for (int j = 0; j < 2; j++) {
+                Client client = new Client();
+                client.setNom("Client" + n + "-" + j);
+                client.setPrenom("Alice");
+                client.setEmail("client-" + n + "-" + j + "@test.com");
+                client.setType("Particulier");
+                client.setQualite("Demandeur");
+                client.setOffice(office);
+                dossier.addClient(clientRepository.save(client));
+
+                Adversaire adversaire = new Adversaire();
+                adversaire.setNom("Adversaire" + n + "-" + j);
+                adversaire.setEmail("adversaire-" + n + "-" + j + "@test.com");
+                adversaire.setOffice(office);
+                dossier.addAdversaire(adversaireRepository.save(adversaire));
+            }
+            dossier.setClient(dossier.getClients().get(0));
+
+            dossiers.add(dossierRepository.save(dossier));
+        }
+        return dossiers;
+    }
+}
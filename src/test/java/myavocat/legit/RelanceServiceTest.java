@@ -0,0 +1,212 @@
+package myavocat.legit;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import myavocat.legit.model.*;
+import myavocat.legit.repository.*;
+import myavocat.legit.service.RelanceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Passages de relances sur H2 avec un serveur SMTP simulé : idempotence et nombre de tentatives.
+ * Pas de @Transactional : l'envoi se fait sur les threads du service, qui doivent voir les données du test.
+ */
+@SpringBootTest(properties = "relance.max-tentatives=2")
+@ActiveProfiles("test")
+class RelanceServiceTest {
+
+    private static final String ADRESSE_REFUSEE = "refuse@test.com";
+
+    @Autowired
+    private OfficeRepository officeRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private DossierRepository dossierRepository;
+
+    @Autowired
+    private FactureRepository factureRepository;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RelanceService relanceService;
+
+    @Autowired
+    private FauxServeurSmtp serveurSmtp;
+
+    private Office office;
+    private Dossier dossier;
+    private String suffixe;
+
+    @BeforeEach
+    void setup() {
+        suffixe = UUID.randomUUID().toString().substring(0, 8);
+
+        office = new Office();
+        office.setName("Cabinet Relance " + suffixe);
+        office.setEmail("cabinet-" + suffixe + "@test.com");
+        office.setPassword("hashed-password");
+        officeRepository.save(office);
+
+        Role role = new Role();
+        role.setName("AVOCAT_REL_" + suffixe);
+        role.setDescription("Rôle avocat");
+        roleRepository.save(role);
+
+        User avocat = new User();
+        avocat.setEmail("avocat-" + suffixe + "@test.com");
+        avocat.setNom("Dupont");
+        avocat.setPrenom("Jean");
+        avocat.setPassword("hashed-password");
+        avocat.setRole(role);
+        avocat.setOffice(office);
+        userRepository.save(avocat);
+
+        dossier = new Dossier();
+        dossier.setReference("REL-" + suffixe);
+        dossier.setNomDossier("Dossier relance");
+        dossier.setTypeAffaire("Civil");
+        dossier.setStatut("En cours");
+        dossier.setQualiteProcedurale("Demandeur");
+        dossier.setAvocat(avocat);
+        dossier.setOffice(office);
+        dossierRepository.save(dossier);
+    }
+
+    @Test
+    void unSecondPassageNEnvoieRien() {
+        Facture facture = creerFactureEchue("client-" + suffixe + "@test.com");
+
+        Map<String, Long> premier = relanceService.executer(office.getId());
+        assertThat(premier.get("envoyees")).isEqualTo(1);
+        assertThat(serveurSmtp.envoisVers("client-" + suffixe + "@test.com")).isEqualTo(1);
+
+        Map<String, Long> second = relanceService.executer(office.getId());
+        assertThat(second.get("selectionnees")).isZero();
+        assertThat(second.get("envoyees")).isZero();
+        assertThat(serveurSmtp.envoisVers("client-" + suffixe + "@test.com")).isEqualTo(1);
+        assertThat(relance(facture)).containsEntry("statut", RelanceFacture.ENVOYEE);
+    }
+
+    @Test
+    void destinataireRefuseMarqueEnEchecEtRetenteJusquAuMaximum() {
+        Facture facture = creerFactureEchue(ADRESSE_REFUSEE);
+        int envoisAvant = serveurSmtp.envoisVers(ADRESSE_REFUSEE);
+
+        assertThat(relanceService.executer(office.getId()).get("echecs")).isEqualTo(1);
+        assertThat(relance(facture))
+                .containsEntry("statut", RelanceFacture.ECHEC)
+                .containsEntry("tentatives", 1);
+
+        // relance.max-tentatives=2 : une seule nouvelle tentative
+        assertThat(relanceService.executer(office.getId()).get("echecs")).isEqualTo(1);
+        assertThat(relance(facture))
+                .containsEntry("statut", RelanceFacture.ECHEC)
+                .containsEntry("tentatives", 2);
+
+        Map<String, Long> troisieme = relanceService.executer(office.getId());
+        assertThat(troisieme.get("selectionnees")).isZero();
+        assertThat(serveurSmtp.envoisVers(ADRESSE_REFUSEE) - envoisAvant).isEqualTo(2);
+    }
+
+    private Facture creerFactureEchue(String emailClient) {
+        Client client = new Client();
+        client.setNom("Martin");
+        client.setPrenom("Alice");
+        client.setEmail(emailClient);
+        client.setType("Particulier");
+        client.setQualite("Demandeur");
+        client.setOffice(office);
+        clientRepository.save(client);
+
+        Facture facture = new Facture();
+        facture.setNumeroFacture("REL-" + suffixe);
+        facture.setDossier(dossier);
+        facture.setClient(client);
+        facture.setIntitule("Honoraires");
+        facture.setMontantHt(new BigDecimal("1000.00"));
+        facture.setDateEcheance(LocalDateTime.now().minusDays(3));
+        return factureRepository.save(facture);
+    }
+
+    private Map<String, Object> relance(Facture facture) {
+        return jdbcTemplate.queryForMap("SELECT statut, tentatives FROM relances_factures WHERE facture_id = :factureId",
+                new MapSqlParameterSource("factureId", facture.getId()));
+    }
+
+    @TestConfiguration
+    static class Configuration {
+
+        @Bean
+        FauxServeurSmtp fauxServeurSmtp() {
+            return new FauxServeurSmtp();
+        }
+    }
+
+    /**
+     * Enregistre les messages au lieu de les envoyer ; refuse ceux adressés à ADRESSE_REFUSEE
+     */
+    static class FauxServeurSmtp extends JavaMailSenderImpl {
+
+        private final List<String> destinataires = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(MimeMessage... messages) {
+            Map<Object, Exception> refuses = new LinkedHashMap<>();
+            for (MimeMessage message : messages) {
+                String destinataire = destinataire(message);
+                destinataires.add(destinataire);
+                if (ADRESSE_REFUSEE.equals(destinataire)) {
+                    refuses.put(message, new MessagingException("550 destinataire inconnu"));
+                }
+            }
+            if (!refuses.isEmpty()) {
+                throw new MailSendException(refuses);
+            }
+        }
+
+        int envoisVers(String adresse) {
+            return (int) destinataires.stream().filter(adresse::equals).count();
+        }
+
+        private static String destinataire(MimeMessage message) {
+            try {
+                Address[] adresses = message.getAllRecipients();
+                return adresses[0].toString();
+            } catch (MessagingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package myavocat.legit.service;
+
+import myavocat.legit.service.RapprochementBancaireService.FactureOuverte;
+import myavocat.legit.service.RapprochementBancaireService.IndexFactures;
+import myavocat.legit.service.RapprochementBancaireService.Rapprochement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Règles de rapprochement de l'index des factures ouvertes, sans base de données.
+ */
+class RapprochementBancaireServiceTest {
+
+    private IndexFactures index;
+    private FactureOuverte martinAncienne;
+    private FactureOuverte martinRecente;
+    private FactureOuverte durand;
+
+    @BeforeEach
+    void setUp() {
+        index = new IndexFactures();
+        // Ordre de chargement = date d'émission
+        martinAncienne = facture("AI-2026-001", "300.00", "MARTIN", "ALICE");
+        martinRecente = facture("AI-2026-002", "300.00", "MARTIN", "ALICE");
+        durand = facture("AI-2026-003", "1250.00", "DURAND", "PAUL");
+    }
+
+    @Test
+    void rapprocheParNumeroDeFacture() {
+        Rapprochement r = index.rapprocher(ligne("1000.00", "VIR SEPA REGLEMENT FACTURE AI-2026-003", null));
+
+        assertThat(r).isNotNull();
+        assertThat(r.facture()).isSameAs(durand);
+        assertThat(r.regle()).isEqualTo("numéro de facture");
+        assertThat(durand.restant()).isEqualByComparingTo("250.00");
+    }
+
+    @Test
+    void rapprocheUnNumeroDecoupeParLaBanque() {
+        Rapprochement r = index.rapprocher(ligne("1250.00", "VIR FACT AI 2026 003", null));
+
+        assertThat(r).isNotNull();
+        assertThat(r.facture()).isSameAs(durand);
+    }
+
+    @Test
+    void numeroCiteMaisMontantSuperieurAuRestant() {
+        ReleveBancaireParser.LigneReleve ligne = ligne("2000.00", "FACTURE AI-2026-003", null);
+
+        assertThat(index.rapprocher(ligne)).isNull();
+        assertThat(index.suggestion(ligne)).contains("AI-2026-003");
+        assertThat(durand.restant()).isEqualByComparingTo("1250.00");
+    }
+
+    @Test
+    void rapprocheParClientEtMontantExactLaPlusAncienneDabord() {
+        Rapprochement premier = index.rapprocher(ligne("300.00", "VIREMENT", "Mme Alice Martin"));
+        Rapprochement second = index.rapprocher(ligne("300.00", "VIREMENT", "Mme Alice Martin"));
+
+        assertThat(premier.facture()).isSameAs(martinAncienne);
+        assertThat(premier.regle()).isEqualTo("client et montant");
+        assertThat(second.facture()).isSameAs(martinRecente);
+        // Les deux factures sont soldées : une troisième opération n'est plus rapprochée
+        assertThat(index.rapprocher(ligne("300.00", "VIREMENT", "Mme Alice Martin"))).isNull();
+    }
+
+    @Test
+    void reglementPartielSeulementSiLeClientNaQuuneFacture() {
+        Rapprochement r = index.rapprocher(ligne("500.00", "VIR M PAUL DURAND", null));
+
+        assertThat(r).isNotNull();
+        assertThat(r.facture()).isSameAs(durand);
+        assertThat(r.regle()).isEqualTo("client (règlement partiel)");
+
+        // Deux factures ouvertes pour ce client : montant partiel ambigu
+        assertThat(index.rapprocher(ligne("100.00", "VIR ALICE MARTIN", null))).isNull();
+    }
+
+    @Test
+    void montantSeulNeSuffitPas() {
+        ReleveBancaireParser.LigneReleve ligne = ligne("1250.00", "VIREMENT RECU", "SCI DES LILAS");
+
+        assertThat(index.rapprocher(ligne)).isNull();
+        assertThat(index.suggestion(ligne)).contains("AI-2026-003").contains("à vérifier");
+    }
+
+    @Test
+    void annulerRendLaFactureSoldeeCandidateASaPlace() {
+        Rapprochement r = index.rapprocher(ligne("300.00", "VIREMENT", "Alice Martin"));
+        assertThat(r.facture()).isSameAs(martinAncienne);
+        assertThat(martinAncienne.restant()).isEqualByComparingTo("0");
+
+        // Lot rejeté : le restant dû est rendu et la facture reste la plus ancienne du client
+        index.annuler(r);
+
+        assertThat(martinAncienne.restant()).isEqualByComparingTo("300.00");
+        Rapprochement nouvelEssai = index.rapprocher(ligne("300.00", "VIREMENT", "Alice Martin"));
+        assertThat(nouvelEssai.facture()).isSameAs(martinAncienne);
+        assertThat(index.rapprocher(ligne("300.00", "FACTURE AI-2026-002", null)).facture()).isSameAs(martinRecente);
+    }
+
+    @Test
+    void annulerUnReglementPartiel() {
+        Rapprochement acompte = index.rapprocher(ligne("250.00", "FACTURE AI-2026-003", null));
+        Rapprochement solde = index.rapprocher(ligne("1000.00", "FACTURE AI-2026-003", null));
+        assertThat(durand.restant()).isEqualByComparingTo("0");
+
+        index.annuler(solde);
+        index.annuler(acompte);
+
+        assertThat(durand.restant()).isEqualByComparingTo("1250.00");
+        assertThat(index.suggestion(ligne("1250.00", "VIREMENT", null))).contains("AI-2026-003");
+        assertThat(index.rapprocher(ligne("1250.00", "DURAND PAUL", null)).facture()).isSameAs(durand);
+    }
+
+    private FactureOuverte facture(String numero, String restant, String nom, String prenom) {
+        FactureOuverte facture = new FactureOuverte(UUID.randomUUID(), numero, new BigDecimal(restant), nom, prenom);
+        index.ajouter(facture);
+        return facture;
+    }
+
+    private static ReleveBancaireParser.LigneReleve ligne(String montant, String libelle, String contrepartie) {
+        return new ReleveBancaireParser.LigneReleve(1, LocalDate.of(2026, 3, 2), new BigDecimal(montant),
+                null, libelle, contrepartie);
+    }
+}
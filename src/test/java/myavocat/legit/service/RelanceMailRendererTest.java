@@ -0,0 +1,41 @@
+package myavocat.legit.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rendu des gabarits intégrés de relance : les valeurs saisies par le client ne doivent pas injecter de HTML.
+ */
+class RelanceMailRendererTest {
+
+    private final RelanceMailRenderer renderer = new RelanceMailRenderer("");
+
+    @Test
+    void corpsEchappeLesValeurs() {
+        String corps = renderer.corps(1, Map.of(
+                "nomClient", "<script>alert('x')</script>",
+                "prenomClient", "Tom & \"Jerry\"",
+                "intitule", "<b>Honoraires</b>"));
+
+        assertThat(corps)
+                .contains("Tom &amp; &quot;Jerry&quot;")
+                .contains("&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt;")
+                .contains("&lt;b&gt;Honoraires&lt;/b&gt;")
+                .doesNotContain("<script>")
+                .doesNotContain("<b>Honoraires");
+    }
+
+    @Test
+    void objetResteEnTexteBrut() {
+        assertThat(renderer.objet(3, Map.of("numeroFacture", "AI-2026-<1>")))
+                .isEqualTo("Dernier rappel avant mise en demeure : facture AI-2026-<1>");
+    }
+
+    @Test
+    void variableAbsenteRenduVide() {
+        assertThat(renderer.corps(2, Map.of())).contains("<p>Bonjour  ,</p>");
+    }
+}
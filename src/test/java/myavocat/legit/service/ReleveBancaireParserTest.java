@@ -0,0 +1,212 @@
+package myavocat.legit.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Lecture des relevés CSV, CAMT.053 et OFX.
+ */
+class ReleveBancaireParserTest {
+
+    @Test
+    void csvPointVirguleAvecMontantsFrancais() throws IOException {
+        String csv = """
+                \uFEFFDate opération;Libellé;Montant;Référence
+                02/03/2026;VIR SEPA M DURAND FACTURE AI-2026-003;1 250,00;REF-1
+                03/03/2026;PRLV EDF;-84,12;
+
+                hier;LIGNE INVALIDE;10,00;
+                """;
+
+        Resultat r = lire(csv, "csv");
+
+        assertThat(r.lignes).hasSize(2);
+        ReleveBancaireParser.LigneReleve premiere = r.lignes.get(0);
+        assertThat(premiere.numero()).isEqualTo(2);
+        assertThat(premiere.date()).isEqualTo(LocalDate.of(2026, 3, 2));
+        assertThat(premiere.montant()).isEqualByComparingTo("1250.00");
+        assertThat(premiere.libelle()).isEqualTo("VIR SEPA M DURAND FACTURE AI-2026-003");
+        assertThat(premiere.referenceBancaire()).isEqualTo("REF-1");
+        assertThat(r.lignes.get(1).montant()).isEqualByComparingTo("-84.12");
+        assertThat(r.lignes.get(1).referenceBancaire()).isNull();
+        assertThat(r.erreurs).containsExactly("5 : date invalide : hier");
+    }
+
+    @Test
+    void csvVirguleAvecColonnesCreditDebit() throws IOException {
+        String csv = """
+                date,label,credit,debit,tiers
+                2026-03-02,"Virement, facture AI-2026-001",300.00,,Alice Martin
+                2026-03-03,Frais,,12.50,
+                """;
+
+        Resultat r = lire(csv, "CSV");
+
+        assertThat(r.erreurs).isEmpty();
+        assertThat(r.lignes).hasSize(2);
+        assertThat(r.lignes.get(0).libelle()).isEqualTo("Virement, facture AI-2026-001");
+        assertThat(r.lignes.get(0).contrepartie()).isEqualTo("Alice Martin");
+        assertThat(r.lignes.get(0).montant()).isEqualByComparingTo("300.00");
+        assertThat(r.lignes.get(1).montant()).isEqualByComparingTo("-12.50");
+    }
+
+    @Test
+    void csvSansColonneMontantEstRefuse() {
+        assertThatThrownBy(() -> lire("date;libelle\n02/03/2026;x\n", "csv"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("En-tête CSV invalide");
+    }
+
+    @Test
+    void camt053() throws IOException {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <Document xmlns="urn:iso:std:iso:20022:tech:xsd:camt.053.001.02">
+                  <BkToCstmrStmt><Stmt>
+                    <Ntry>
+                      <Amt Ccy="EUR">1250.00</Amt>
+                      <CdtDbtInd>CRDT</CdtDbtInd>
+                      <BookgDt><Dt>2026-03-02</Dt></BookgDt>
+                      <ValDt><Dt>2026-03-03</Dt></ValDt>
+                      <AcctSvcrRef>BANK-REF-42</AcctSvcrRef>
+                      <NtryDtls><TxDtls>
+                        <Refs><EndToEndId>NOTPROVIDED</EndToEndId></Refs>
+                        <RltdPties><Dbtr><Nm>Paul Durand</Nm></Dbtr></RltdPties>
+                        <RmtInf><Ustrd>Facture AI-2026-003</Ustrd></RmtInf>
+                      </TxDtls></NtryDtls>
+                    </Ntry>
+                    <Ntry>
+                      <Amt Ccy="EUR">84.12</Amt>
+                      <CdtDbtInd>DBIT</CdtDbtInd>
+                      <BookgDt><DtTm>2026-03-04T10:15:00</DtTm></BookgDt>
+                      <AddtlNtryInf>PRLV EDF</AddtlNtryInf>
+                    </Ntry>
+                    <Ntry>
+                      <CdtDbtInd>CRDT</CdtDbtInd>
+                    </Ntry>
+                  </Stmt></BkToCstmrStmt>
+                </Document>
+                """;
+
+        Resultat r = lire(xml, "camt.053");
+
+        assertThat(r.lignes).hasSize(2);
+        ReleveBancaireParser.LigneReleve credit = r.lignes.get(0);
+        assertThat(credit.montant()).isEqualByComparingTo("1250.00");
+        assertThat(credit.date()).isEqualTo(LocalDate.of(2026, 3, 2));
+        assertThat(credit.referenceBancaire()).isEqualTo("BANK-REF-42");
+        assertThat(credit.contrepartie()).isEqualTo("Paul Durand");
+        assertThat(credit.libelle()).isEqualTo("Facture AI-2026-003");
+
+        ReleveBancaireParser.LigneReleve debit = r.lignes.get(1);
+        assertThat(debit.montant()).isEqualByComparingTo("-84.12");
+        assertThat(debit.date()).isEqualTo(LocalDate.of(2026, 3, 4));
+        assertThat(debit.libelle()).isEqualTo("PRLV EDF");
+        assertThat(r.erreurs).containsExactly("3 : opération sans montant ou sans date");
+    }
+
+    @Test
+    void ofxSgml() throws IOException {
+        String ofx = """
+                OFXHEADER:100
+                DATA:OFXSGML
+
+                <OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>
+                <STMTTRN>
+                <TRNTYPE>CREDIT
+                <DTPOSTED>20260302120000[+1:CET]
+                <TRNAMT>300.00
+                <FITID>OFX-1
+                <NAME>MARTIN ALICE
+                <MEMO>FACTURE AI-2026-001 &amp; AI-2026-002
+                </STMTTRN>
+                <STMTTRN>
+                <TRNTYPE>CHECK
+                <DTPOSTED>20260303
+                <TRNAMT>-45.00
+                <CHECKNUM>1234567
+                </STMTTRN>
+                </BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>
+                """;
+
+        Resultat r = lire(ofx, "ofx");
+
+        assertThat(r.erreurs).isEmpty();
+        assertThat(r.lignes).hasSize(2);
+        ReleveBancaireParser.LigneReleve credit = r.lignes.get(0);
+        assertThat(credit.date()).isEqualTo(LocalDate.of(2026, 3, 2));
+        assertThat(credit.montant()).isEqualByComparingTo("300.00");
+        assertThat(credit.referenceBancaire()).isEqualTo("OFX-1");
+        assertThat(credit.contrepartie()).isEqualTo("MARTIN ALICE");
+        assertThat(credit.libelle()).isEqualTo("FACTURE AI-2026-001 & AI-2026-002");
+        assertThat(r.lignes.get(1).libelle()).isEqualTo("1234567");
+        assertThat(r.lignes.get(1).montant()).isEqualByComparingTo("-45.00");
+    }
+
+    @Test
+    void ofxXml() throws IOException {
+        String ofx = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>
+                  <STMTTRN><DTPOSTED>20260305</DTPOSTED><TRNAMT>1250.00</TRNAMT><FITID>X-9</FITID><NAME>DURAND</NAME></STMTTRN>
+                </BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>
+                """;
+
+        Resultat r = lire(ofx, "ofx");
+
+        assertThat(r.lignes).hasSize(1);
+        assertThat(r.lignes.get(0).date()).isEqualTo(LocalDate.of(2026, 3, 5));
+        assertThat(r.lignes.get(0).referenceBancaire()).isEqualTo("X-9");
+        assertThat(r.lignes.get(0).contrepartie()).isEqualTo("DURAND");
+    }
+
+    @Test
+    void formatInconnu() {
+        assertThatThrownBy(() -> lire("", "qif"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Format de relevé non pris en charge");
+    }
+
+    @Test
+    void montantsFrancaisEtAnglais() {
+        assertThat(ReleveBancaireParser.parseMontant("1 234,56")).isEqualByComparingTo(new BigDecimal("1234.56"));
+        assertThat(ReleveBancaireParser.parseMontant("1.234,56")).isEqualByComparingTo(new BigDecimal("1234.56"));
+        assertThat(ReleveBancaireParser.parseMontant("1,234.56")).isEqualByComparingTo(new BigDecimal("1234.56"));
+        assertThat(ReleveBancaireParser.parseMontant("-12,00 €")).isEqualByComparingTo(new BigDecimal("-12.00"));
+        assertThat(ReleveBancaireParser.parseMontant("+1 000 EUR")).isEqualByComparingTo(new BigDecimal("1000"));
+        assertThatThrownBy(() -> ReleveBancaireParser.parseMontant("douze"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Resultat lire(String contenu, String format) throws IOException {
+        Resultat resultat = new Resultat();
+        ReleveBancaireParser.lire(new ByteArrayInputStream(contenu.getBytes(StandardCharsets.UTF_8)), format,
+                new ReleveBancaireParser.Destination() {
+                    @Override
+                    public void ligne(ReleveBancaireParser.LigneReleve ligne) {
+                        resultat.lignes.add(ligne);
+                    }
+
+                    @Override
+                    public void erreur(long numero, String message) {
+                        resultat.erreurs.add(numero + " : " + message);
+                    }
+                });
+        return resultat;
+    }
+
+    private static final class Resultat {
+        private final List<ReleveBancaireParser.LigneReleve> lignes = new ArrayList<>();
+        private final List<String> erreurs = new ArrayList<>();
+    }
+}
@@ -0,0 +1,168 @@
+package myavocat.legit.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Réception en flux : type réel, taille maximale, empreinte et nettoyage du fichier temporaire.
+ */
+class UploadPipelineTest {
+
+    private static final Set<String> EXTENSIONS = Set.of("pdf", "png", "txt");
+    private static final long TAILLE_MAX = 200 * 1024;
+
+    @TempDir
+    Path repertoire;
+
+    private UploadPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        // Le dépôt des blobs n'est pas utilisé par la réception
+        pipeline = new UploadPipeline(new BlobStore(null, repertoire.toString()), TAILLE_MAX);
+    }
+
+    @Test
+    void recoitUnPdfEnPlusieursBlocs() throws Exception {
+        byte[] contenu = pdf(150 * 1024);
+
+        UploadPipeline.FichierRecu recu = pipeline.recevoir(new ByteArrayInputStream(contenu), "Conclusions.PDF", EXTENSIONS);
+
+        assertThat(recu.typeMime()).isEqualTo("application/pdf");
+        assertThat(recu.taille()).isEqualTo(contenu.length);
+        assertThat(recu.sha256()).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(contenu)));
+        assertThat(Files.readAllBytes(recu.fichierTemporaire())).isEqualTo(contenu);
+
+        recu.close();
+        assertThat(recu.fichierTemporaire()).doesNotExist();
+        assertThat(temporaires()).isEmpty();
+    }
+
+    @Test
+    void signaturePdfApresQuelquesOctets() throws IOException {
+        byte[] contenu = ("\r\n" + new String(pdf(100), StandardCharsets.ISO_8859_1)).getBytes(StandardCharsets.ISO_8859_1);
+
+        try (UploadPipeline.FichierRecu recu = pipeline.recevoir(new ByteArrayInputStream(contenu), "a.pdf", EXTENSIONS)) {
+            assertThat(recu.taille()).isEqualTo(contenu.length);
+        }
+    }
+
+    @Test
+    void contenuQuiNeCorrespondPasALExtension() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+
+        assertThatThrownBy(() -> pipeline.recevoir(new ByteArrayInputStream(png), "facture.pdf", EXTENSIONS))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("ne correspond pas à son extension (pdf)");
+        assertThatThrownBy(() -> pipeline.recevoir(new ByteArrayInputStream(pdf(100)), "note.txt", EXTENSIONS))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("(txt)");
+        // Refusé avant toute écriture
+        assertThat(temporaires()).isEmpty();
+    }
+
+    @Test
+    void extensionNonAutorisee() {
+        assertThatThrownBy(() -> pipeline.recevoir(new ByteArrayInputStream(pdf(100)), "script.exe", EXTENSIONS))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Type de fichier non autorisé : exe");
+        assertThatThrownBy(() -> pipeline.recevoir(new ByteArrayInputStream(pdf(100)), "sans-extension", EXTENSIONS))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Type de fichier non autorisé : sans extension");
+    }
+
+    @Test
+    void fichierVide() {
+        assertThatThrownBy(() -> pipeline.recevoir(new ByteArrayInputStream(new byte[0]), "vide.pdf", EXTENSIONS))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Fichier vide");
+        assertThat(temporaires()).isEmpty();
+    }
+
+    @Test
+    void tailleMaximaleDepasseeSupprimeLeTemporaire() {
+        assertThatThrownBy(() -> pipeline.recevoir(new ByteArrayInputStream(pdf((int) TAILLE_MAX + 1)), "gros.pdf", EXTENSIONS))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Fichier trop volumineux");
+        assertThat(temporaires()).isEmpty();
+    }
+
+    @Test
+    void tailleMaximaleExacteAcceptee() throws IOException {
+        try (UploadPipeline.FichierRecu recu = pipeline.recevoir(new ByteArrayInputStream(pdf((int) TAILLE_MAX)), "limite.pdf", EXTENSIONS)) {
+            assertThat(recu.taille()).isEqualTo(TAILLE_MAX);
+        }
+        assertThat(temporaires()).isEmpty();
+    }
+
+    @Test
+    void erreurDeLectureSupprimeLeTemporaire() {
+        byte[] debut = pdf(100 * 1024);
+        InputStream interrompu = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position >= debut.length) {
+                    throw new IOException("connexion interrompue");
+                }
+                return debut[position++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= debut.length) {
+                    throw new IOException("connexion interrompue");
+                }
+                int n = Math.min(len, debut.length - position);
+                System.arraycopy(debut, position, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+
+        assertThatThrownBy(() -> pipeline.recevoir(interrompu, "coupe.pdf", EXTENSIONS))
+                .isInstanceOf(IOException.class)
+                .hasMessage("connexion interrompue");
+        assertThat(temporaires()).isEmpty();
+    }
+
+    /**
+     * Contenu commençant par la signature PDF, complété jusqu'à la taille demandée
+     */
+    private static byte[] pdf(int taille) {
+        byte[] contenu = new byte[taille];
+        Arrays.fill(contenu, (byte) 'x');
+        byte[] entete = "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(entete, 0, contenu, 0, Math.min(entete.length, taille));
+        return contenu;
+    }
+
+    private Path[] temporaires() {
+        Path tmp = repertoire.resolve("blobs").resolve("tmp");
+        if (!Files.isDirectory(tmp)) {
+            return new Path[0];
+        }
+        try (Stream<Path> fichiers = Files.list(tmp)) {
+            return fichiers.toArray(Path[]::new);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}